@@ -1,6 +1,6 @@
 object Config {
     const val version = "10.0.0-beta03"
-    val submodules = listOf("auth", "common", "firestore", "database", "storage")
+    val submodules = listOf("auth", "common", "firestore", "database", "storage", "ktx")
 
     object SdkVersions {
         const val compile = 36
@@ -12,6 +12,8 @@ android {
 
         resourcePrefix("fui_")
         vectorDrawables.useSupportLibrary = true
+
+        testInstrumentationRunner = "androidx.test.runner.AndroidJUnitRunner"
     }
 
     testOptions {
@@ -51,5 +53,12 @@ dependencies {
     api(libs.androidx.lifecycle.runtime)
     api(libs.androidx.lifecycle.viewmodel)
     implementation(libs.androidx.annotation)
+    compileOnly(libs.androidx.recyclerview)
     annotationProcessor(libs.androidx.lifecycle.compiler)
+
+    androidTestImplementation(libs.androidx.recyclerview)
+    androidTestImplementation(libs.junit)
+    androidTestImplementation(libs.junit.ext)
+    androidTestImplementation(libs.test.runner)
+    androidTestImplementation(libs.test.rules)
 }
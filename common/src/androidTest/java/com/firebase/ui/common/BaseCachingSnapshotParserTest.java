@@ -0,0 +1,105 @@
+package com.firebase.ui.common;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class BaseCachingSnapshotParserTest {
+
+    /** The number of models the parser keeps. */
+    private static final int CACHE_SIZE = 100;
+
+    private final AtomicInteger mParseCount = new AtomicInteger();
+    private BaseCachingSnapshotParser<TestSnapshot, Integer> mParser;
+
+    @Before
+    public void setUp() {
+        mParser = new BaseCachingSnapshotParser<TestSnapshot, Integer>(snapshot -> {
+            mParseCount.incrementAndGet();
+            return snapshot.getValue();
+        }) {
+            @NonNull
+            @Override
+            public String getId(@NonNull TestSnapshot snapshot) {
+                return snapshot.getKey();
+            }
+        };
+    }
+
+    @Test
+    public void testParseIsCached() {
+        assertFalse(mParser.isCached(snapshot(0)));
+        assertEquals(Integer.valueOf(0), mParser.parseSnapshot(snapshot(0)));
+        assertEquals(Integer.valueOf(0), mParser.parseSnapshot(snapshot(0)));
+
+        assertTrue(mParser.isCached(snapshot(0)));
+        assertEquals(1, mParseCount.get());
+    }
+
+    @Test
+    public void testParseUncachedSkipsCache() {
+        mParser.parseUncached(snapshot(0));
+        assertFalse(mParser.isCached(snapshot(0)));
+
+        mParser.put(snapshot(0), 5);
+        assertEquals(Integer.valueOf(5), mParser.parseSnapshot(snapshot(0)));
+        assertEquals(1, mParseCount.get());
+    }
+
+    @Test
+    public void testIsCachedDoesNotRefreshRecency() {
+        fill();
+        assertTrue(mParser.isCached(snapshot(0)));
+
+        mParser.parseSnapshot(snapshot(CACHE_SIZE));
+        assertFalse(mParser.isCached(snapshot(0)));
+        assertTrue(mParser.isCached(snapshot(1)));
+    }
+
+    @Test
+    public void testParseRefreshesRecency() {
+        fill();
+        mParser.parseSnapshot(snapshot(0));
+
+        mParser.parseSnapshot(snapshot(CACHE_SIZE));
+        assertTrue(mParser.isCached(snapshot(0)));
+        assertFalse(mParser.isCached(snapshot(1)));
+    }
+
+    @Test
+    public void testRemovalsAreNotCached() {
+        fill();
+        mParser.invalidate(snapshot(0));
+        assertFalse(mParser.isCached(snapshot(0)));
+
+        mParser.trimToSize(CACHE_SIZE / 2);
+        assertFalse(mParser.isCached(snapshot(CACHE_SIZE / 2 - 1)));
+        assertTrue(mParser.isCached(snapshot(CACHE_SIZE / 2)));
+
+        mParser.clear();
+        assertFalse(mParser.isCached(snapshot(CACHE_SIZE - 1)));
+        assertEquals(0, mParser.size());
+    }
+
+    private void fill() {
+        for (int i = 0; i < CACHE_SIZE; i++) {
+            mParser.parseSnapshot(snapshot(i));
+        }
+    }
+
+    @NonNull
+    private static TestSnapshot snapshot(int value) {
+        return new TestSnapshot("k" + value, value);
+    }
+}
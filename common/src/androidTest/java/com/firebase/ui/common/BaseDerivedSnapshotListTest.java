@@ -0,0 +1,262 @@
+package com.firebase.ui.common;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class BaseDerivedSnapshotListTest {
+
+    private static final int OPERATIONS = 2000;
+
+    private static final Comparator<TestSnapshot> ORDER = (a, b) -> {
+        int result = Integer.compare(a.getValue(), b.getValue());
+        return result != 0 ? result : a.getKey().compareTo(b.getKey());
+    };
+
+    /** Items whose value is a multiple of this are left out of the view. */
+    private int mModulo = 3;
+
+    /** Whether the view under test has a comparator. */
+    private boolean mSorted;
+
+    private final List<TestSnapshot> mSource = new ArrayList<>();
+    private final List<String> mMirror = new ArrayList<>();
+    private BaseDerivedSnapshotList<TestSnapshot, Integer> mList;
+
+    @Test
+    public void testFilterKeepsSourceOrder() {
+        mList = newList(null);
+        add("a", 1);
+        add("b", 3);
+        add("c", 2);
+        assertView("a", "c");
+
+        move(2, 0, 2);
+        assertView("c", "a");
+
+        // A change can move an item out of and back into the view
+        change(0, 6);
+        assertView("a");
+        change(0, 5);
+        assertView("c", "a");
+    }
+
+    @Test
+    public void testComparatorSortsByModelThenKey() {
+        mList = newList(Integer::compare);
+        add("b", 2);
+        add("a", 2);
+        add("c", 1);
+        add("d", 9);
+        assertView("c", "a", "b");
+
+        change(0, 4);
+        assertView("c", "a", "b");
+        change(2, 5);
+        assertView("a", "b", "c");
+
+        // Source moves don't affect the view
+        move(3, 0, 4);
+        assertView("a", "b", "d", "c");
+    }
+
+    @Test
+    public void testRefilterReportsItemsEnteringAndLeaving() {
+        mList = newList(null);
+        for (int i = 1; i <= 6; i++) {
+            add("k" + i, i);
+        }
+        assertView("k1", "k2", "k4", "k5");
+
+        mModulo = 2;
+        mList.refilter();
+        assertView("k1", "k3", "k5");
+    }
+
+    @Test
+    public void testRefilterKeysOnlyVisitsThoseItems() {
+        mList = newList(null);
+        for (int i = 1; i <= 6; i++) {
+            add("k" + i, i);
+        }
+
+        // k4 is left out by the new filter, but isn't re-evaluated
+        mModulo = 2;
+        mList.refilter(Arrays.asList("k3", "k2", "k6"));
+        assertEquals(Arrays.asList("k1", "k3", "k4", "k5"), mMirror);
+    }
+
+    @Test
+    public void testRandomOperationsUnsorted() {
+        runRandomOperations(newList(null), new Random(1));
+    }
+
+    @Test
+    public void testRandomOperationsSorted() {
+        runRandomOperations(newList(Integer::compare), new Random(2));
+    }
+
+    private void runRandomOperations(@NonNull BaseDerivedSnapshotList<TestSnapshot, Integer> list,
+                                     @NonNull Random random) {
+        mList = list;
+        int nextKey = 0;
+        for (int i = 0; i < OPERATIONS; i++) {
+            int operation = mSource.isEmpty() ? 0 : random.nextInt(10);
+            if (operation < 4) {
+                insert(random.nextInt(mSource.size() + 1), "k" + nextKey++, random.nextInt(50));
+            } else if (operation < 6) {
+                remove(random.nextInt(mSource.size()));
+            } else if (operation < 8) {
+                move(random.nextInt(mSource.size()),
+                        random.nextInt(mSource.size()),
+                        random.nextBoolean() ? random.nextInt(50) : -1);
+            } else if (operation < 9) {
+                change(random.nextInt(mSource.size()), random.nextInt(50));
+            } else if (random.nextBoolean()) {
+                mModulo = 2 + random.nextInt(4);
+                mList.refilter();
+            } else {
+                int modulo = 2 + random.nextInt(4);
+                List<String> keys = getAffectedKeys(modulo);
+                // Unaffected and unknown keys must be ignored
+                keys.add(mSource.get(random.nextInt(mSource.size())).getKey());
+                keys.add("unknown");
+                Collections.shuffle(keys, random);
+                mModulo = modulo;
+                mList.refilter(keys);
+            }
+            assertMatchesSource();
+        }
+    }
+
+    @NonNull
+    private BaseDerivedSnapshotList<TestSnapshot, Integer> newList(
+            @Nullable Comparator<Integer> comparator) {
+        mSorted = comparator != null;
+        BaseDerivedSnapshotList.Callback<TestSnapshot> callback =
+                new BaseDerivedSnapshotList.Callback<TestSnapshot>() {
+                    @Override
+                    public void onInserted(@NonNull TestSnapshot snapshot, int index) {
+                        mMirror.add(index, snapshot.getKey());
+                    }
+
+                    @Override
+                    public void onRemoved(@NonNull TestSnapshot snapshot, int index) {
+                        assertEquals(snapshot.getKey(), mMirror.remove(index));
+                    }
+
+                    @Override
+                    public void onMoved(@NonNull TestSnapshot snapshot,
+                                        int fromIndex,
+                                        int toIndex) {
+                        assertEquals(snapshot.getKey(), mMirror.remove(fromIndex));
+                        mMirror.add(toIndex, snapshot.getKey());
+                    }
+
+                    @Override
+                    public void onChanged(@NonNull ChangeEventType type,
+                                          @NonNull TestSnapshot snapshot,
+                                          int index) {
+                        assertEquals(snapshot.getKey(), mMirror.get(index));
+                    }
+                };
+        return new BaseDerivedSnapshotList<TestSnapshot, Integer>(
+                model -> model % mModulo != 0, comparator, callback) {
+            @NonNull
+            @Override
+            public String getKey(@NonNull TestSnapshot snapshot) {
+                return snapshot.getKey();
+            }
+        };
+    }
+
+    private void add(@NonNull String key, int value) {
+        insert(mSource.size(), key, value);
+    }
+
+    private void insert(int index, @NonNull String key, int value) {
+        TestSnapshot snapshot = new TestSnapshot(key, value);
+        mSource.add(index, snapshot);
+        mList.onSourceAdded(snapshot, value, index);
+    }
+
+    private void remove(int index) {
+        mList.onSourceRemoved(mSource.remove(index), index);
+    }
+
+    /**
+     * @param value the new value of the moved item, or -1 to keep it.
+     */
+    private void move(int fromIndex, int toIndex, int value) {
+        TestSnapshot old = mSource.remove(fromIndex);
+        TestSnapshot snapshot = value == -1 ? old : new TestSnapshot(old.getKey(), value);
+        mSource.add(toIndex, snapshot);
+        mList.onSourceMoved(snapshot, snapshot.getValue(), fromIndex, toIndex, value != -1);
+    }
+
+    private void change(int index, int value) {
+        TestSnapshot snapshot = new TestSnapshot(mSource.get(index).getKey(), value);
+        mSource.set(index, snapshot);
+        mList.onSourceChanged(ChangeEventType.CHANGED, snapshot, value, index);
+    }
+
+    /**
+     * @return the keys of the source items whose inclusion changes with the given modulo.
+     */
+    @NonNull
+    private List<String> getAffectedKeys(int modulo) {
+        List<String> keys = new ArrayList<>();
+        for (TestSnapshot snapshot : mSource) {
+            if ((snapshot.getValue() % mModulo == 0) != (snapshot.getValue() % modulo == 0)) {
+                keys.add(snapshot.getKey());
+            }
+        }
+        return keys;
+    }
+
+    private void assertView(@NonNull String... keys) {
+        assertMatchesSource();
+        assertEquals(Arrays.asList(keys), mMirror);
+    }
+
+    /**
+     * Check the view and the notified changes against filtering, and sorting, the source from
+     * scratch.
+     */
+    private void assertMatchesSource() {
+        List<TestSnapshot> expected = new ArrayList<>();
+        for (TestSnapshot snapshot : mSource) {
+            if (snapshot.getValue() % mModulo != 0) {
+                expected.add(snapshot);
+            }
+        }
+        if (mSorted) {
+            Collections.sort(expected, ORDER);
+        }
+
+        List<String> keys = new ArrayList<>(expected.size());
+        for (TestSnapshot snapshot : expected) {
+            keys.add(snapshot.getKey());
+        }
+        assertEquals(keys, mMirror);
+        assertEquals(expected.size(), mList.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i), mList.get(i));
+            assertEquals(Integer.valueOf(expected.get(i).getValue()), mList.getModel(i));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.firebase.ui.common;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class BaseIdentityCachingSnapshotParserTest {
+
+    /** The number of models the parser keeps. */
+    private static final int CACHE_SIZE = 100;
+
+    private final AtomicInteger mParseCount = new AtomicInteger();
+    private BaseIdentityCachingSnapshotParser<TestSnapshot, Integer> mParser;
+
+    @Before
+    public void setUp() {
+        mParser = new BaseIdentityCachingSnapshotParser<TestSnapshot, Integer>(snapshot -> {
+            mParseCount.incrementAndGet();
+            return snapshot.getValue();
+        }) {
+            @NonNull
+            @Override
+            public String getId(@NonNull TestSnapshot snapshot) {
+                return snapshot.getKey();
+            }
+        };
+    }
+
+    @Test
+    public void testSameInstanceIsParsedOnce() {
+        TestSnapshot snapshot = new TestSnapshot("a", 1);
+
+        assertEquals(Integer.valueOf(1), mParser.parseSnapshot(snapshot));
+        assertEquals(Integer.valueOf(1), mParser.parseSnapshot(snapshot));
+        assertEquals(1, mParseCount.get());
+    }
+
+    @Test
+    public void testReplacedInstanceIsParsedAgain() {
+        mParser.parseSnapshot(new TestSnapshot("a", 1));
+
+        // A newer page holds another instance with the same ID, whose content may differ
+        assertEquals(Integer.valueOf(2), mParser.parseSnapshot(new TestSnapshot("a", 2)));
+        assertEquals(2, mParseCount.get());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedModelIsEvicted() {
+        TestSnapshot first = new TestSnapshot("k0", 0);
+        mParser.parseSnapshot(first);
+        for (int i = 1; i < CACHE_SIZE; i++) {
+            mParser.parseSnapshot(new TestSnapshot("k" + i, i));
+        }
+        mParser.parseSnapshot(first);
+        assertEquals(CACHE_SIZE, mParseCount.get());
+
+        mParser.parseSnapshot(new TestSnapshot("k" + CACHE_SIZE, CACHE_SIZE));
+        mParser.parseSnapshot(first);
+        assertEquals(CACHE_SIZE + 1, mParseCount.get());
+    }
+
+    @Test
+    public void testClearDropsModels() {
+        TestSnapshot snapshot = new TestSnapshot("a", 1);
+        mParser.parseSnapshot(snapshot);
+        mParser.clear();
+
+        mParser.parseSnapshot(snapshot);
+        assertEquals(2, mParseCount.get());
+    }
+}
@@ -0,0 +1,382 @@
+package com.firebase.ui.common;
+
+import android.app.Instrumentation;
+import android.view.ViewGroup;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.RecyclerView;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class BaseListStateRestorerTest {
+
+    private static final ModelCodec<Integer> CODEC = new ModelCodec<Integer>() {
+        @Override
+        public void write(@NonNull Integer model, @NonNull DataOutput out) throws IOException {
+            out.writeInt(model);
+        }
+
+        @NonNull
+        @Override
+        public Integer read(@NonNull DataInput in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    private static final TestSnapshotArray.Listener NO_OP_LISTENER =
+            new TestSnapshotArray.Listener() {
+                @Override
+                public void onChildChanged(@NonNull ChangeEventType type,
+                                           @NonNull TestSnapshot snapshot,
+                                           int newIndex,
+                                           int oldIndex) {
+                }
+
+                @Override
+                public void onDataChanged() {
+                }
+
+                @Override
+                public void onError(@NonNull Exception e) {
+                }
+            };
+
+    private final Instrumentation mInstrumentation = InstrumentationRegistry.getInstrumentation();
+
+    /** Reconciles waiting to be computed, run by the test to control when they complete. */
+    private final List<Runnable> mTasks = Collections.synchronizedList(new ArrayList<>());
+
+    private ListStateStore<Integer> mStore;
+    private TestSnapshotArray mArray;
+    private TestAdapter mAdapter;
+    private RecordingObserver mObserver;
+    private TestRestorer mRestorer;
+
+    @Before
+    public void setUp() {
+        mStore = new ListStateStore<>(mInstrumentation.getTargetContext(),
+                "BaseListStateRestorerTest",
+                CODEC);
+        mStore.clear();
+
+        mInstrumentation.runOnMainSync(() -> {
+            mArray = new TestSnapshotArray();
+            mAdapter = new TestAdapter();
+            mObserver = new RecordingObserver();
+            mAdapter.registerAdapterDataObserver(mObserver);
+            mRestorer = new TestRestorer(mTasks::add);
+            mRestorer.start();
+            // Stands in for the adapter, which keeps the array listening after restoring ends
+            mArray.addChangeEventListener(NO_OP_LISTENER);
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mInstrumentation.runOnMainSync(() -> {
+            mRestorer.stop();
+            mArray.removeAllListeners();
+        });
+        mStore.clear();
+    }
+
+    @Test
+    public void testRestoredItemsShownUntilLoaded() {
+        restore("a", 1, "b", 2, "c", 3);
+        mInstrumentation.runOnMainSync(() -> {
+            assertTrue(mRestorer.isShowingRestoredItems());
+            assertEquals(3, mAdapter.getItemCount());
+            assertEquals("b", mRestorer.getRestoredItem(1).getKey());
+            assertEquals(Integer.valueOf(2), mRestorer.getRestoredItem(1).getModel());
+
+            // Child events alone don't end restoring
+            add("a", 1, "c", 4, "d", 5);
+            assertTrue(mRestorer.isShowingRestoredItems());
+            mArray.loaded();
+        });
+        runTasks();
+
+        assertReconciled("a", "b", "c");
+    }
+
+    @Test
+    public void testRestoredItemsIgnoredOnceArrayLoaded() {
+        mInstrumentation.runOnMainSync(() -> {
+            add("a", 1);
+            mArray.loaded();
+        });
+        restore("a", 1, "b", 2);
+
+        mInstrumentation.runOnMainSync(() -> assertFalse(mRestorer.isShowingRestoredItems()));
+        assertTrue(mObserver.mEvents.isEmpty());
+        assertTrue(mTasks.isEmpty());
+    }
+
+    @Test
+    public void testErrorDiscardsRestoredItems() {
+        restore("a", 1, "b", 2);
+        mInstrumentation.runOnMainSync(() -> mArray.fail(new Exception("Permission denied")));
+
+        mInstrumentation.runOnMainSync(() -> assertFalse(mRestorer.isShowingRestoredItems()));
+        assertEquals(Arrays.asList("inserted 0 2", "changed"), mObserver.mEvents);
+        assertFalse(mArray.isListening(mRestorer));
+    }
+
+    @Test
+    public void testChangeWhileReconcilingStartsOver() {
+        restore("a", 1, "b", 2, "c", 3);
+        mInstrumentation.runOnMainSync(() -> {
+            add("a", 1, "b", 2);
+            mArray.loaded();
+        });
+        assertEquals(1, mTasks.size());
+
+        mInstrumentation.runOnMainSync(() -> {
+            // The result is posted behind this change to the array
+            mTasks.remove(0).run();
+            mArray.addSnapshot(2, new TestSnapshot("c", 3));
+            mArray.loaded();
+        });
+        mInstrumentation.waitForIdleSync();
+        assertEquals(1, mTasks.size());
+        mInstrumentation.runOnMainSync(() -> assertTrue(mRestorer.isShowingRestoredItems()));
+
+        runTasks();
+        assertReconciled("a", "b", "c");
+        // The restored and live lists were equal in the end
+        assertEquals(Collections.singletonList("inserted 0 3"), mObserver.mEvents);
+    }
+
+    @Test
+    public void testLiveItemsBeyondPrefixAreInserted() {
+        restore("b", 2, "c", 3);
+        mInstrumentation.runOnMainSync(() -> {
+            add("a", 1, "b", 2, "c", 3, "d", 4, "e", 5, "f", 6, "g", 7);
+            mArray.loaded();
+        });
+        runTasks();
+
+        assertReconciled("b", "c");
+        // Only twice the restored items are diffed, the rest are inserted in one go
+        assertEquals("inserted 4 3", mObserver.mEvents.get(mObserver.mEvents.size() - 1));
+    }
+
+    @Test
+    public void testEqualItemsAreNotNotified() {
+        restore("a", 1, "b", 2);
+        mInstrumentation.runOnMainSync(() -> {
+            add("a", 1, "b", 2);
+            mArray.loaded();
+        });
+        runTasks();
+
+        assertEquals(Collections.singletonList("inserted 0 2"), mObserver.mEvents);
+        mInstrumentation.runOnMainSync(() -> {
+            assertFalse(mRestorer.isShowingRestoredItems());
+            // Models parsed while reconciling are kept
+            assertTrue(mArray.isModelCached(mArray.getSnapshot(0)));
+            assertTrue(mArray.isModelCached(mArray.getSnapshot(1)));
+        });
+    }
+
+    @Test
+    public void testStopWhileShowingDiscardsRestoredItems() {
+        restore("a", 1);
+        mInstrumentation.runOnMainSync(() -> {
+            mArray.loaded();
+            mRestorer.stop();
+            mRestorer.stop();
+        });
+        runTasks();
+
+        mInstrumentation.runOnMainSync(() -> assertFalse(mRestorer.isShowingRestoredItems()));
+        assertEquals(Arrays.asList("inserted 0 1", "changed"), mObserver.mEvents);
+        assertEquals(1, mRestorer.mStops);
+    }
+
+    /**
+     * Show restored items, bypassing the store so the test controls when they arrive.
+     *
+     * @param keysAndValues alternating keys and values.
+     */
+    private void restore(@NonNull Object... keysAndValues) {
+        List<ListStateStore.Item<Integer>> items = new ArrayList<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            items.add(new ListStateStore.Item<>((String) keysAndValues[i],
+                    (Integer) keysAndValues[i + 1]));
+        }
+        mInstrumentation.runOnMainSync(() -> mRestorer.onLoaded(items));
+    }
+
+    /**
+     * Append snapshots to the array. Must be called on the main thread.
+     *
+     * @param keysAndValues alternating keys and values.
+     */
+    private void add(@NonNull Object... keysAndValues) {
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            mArray.addSnapshot(mArray.size(),
+                    new TestSnapshot((String) keysAndValues[i], (int) keysAndValues[i + 1]));
+        }
+    }
+
+    /**
+     * Parse and diff the pending reconciles and post their results to the main thread, until none
+     * are left.
+     */
+    private void runTasks() {
+        while (!mTasks.isEmpty()) {
+            mTasks.remove(0).run();
+            mInstrumentation.waitForIdleSync();
+        }
+    }
+
+    /**
+     * Replay the recorded notifications over the restored keys and check that they lead to the
+     * array's keys, with only the items missing from the restored ones inserted.
+     */
+    private void assertReconciled(@NonNull String... restoredKeys) {
+        mInstrumentation.runOnMainSync(() -> {
+            assertFalse(mRestorer.isShowingRestoredItems());
+            assertFalse(mArray.isListening(mRestorer));
+
+            List<String> events = mObserver.mEvents;
+            assertEquals("inserted 0 " + restoredKeys.length, events.get(0));
+            List<String> mirror = new ArrayList<>(Arrays.asList(restoredKeys));
+            for (String event : events.subList(1, events.size())) {
+                String[] parts = event.split(" ");
+                switch (parts[0]) {
+                    case "inserted":
+                        for (int i = 0; i < Integer.parseInt(parts[2]); i++) {
+                            mirror.add(Integer.parseInt(parts[1]) + i, "+");
+                        }
+                        break;
+                    case "removed":
+                        for (int i = 0; i < Integer.parseInt(parts[2]); i++) {
+                            mirror.remove(Integer.parseInt(parts[1]));
+                        }
+                        break;
+                    case "moved":
+                        mirror.add(Integer.parseInt(parts[2]),
+                                mirror.remove(Integer.parseInt(parts[1])));
+                        break;
+                    case "changed":
+                        break;
+                    default:
+                        throw new AssertionError(event);
+                }
+            }
+
+            Set<String> restored = new HashSet<>(Arrays.asList(restoredKeys));
+            assertEquals(mArray.size(), mirror.size());
+            assertEquals(mArray.size(), mAdapter.getItemCount());
+            for (int i = 0; i < mArray.size(); i++) {
+                String key = mArray.getSnapshot(i).getKey();
+                assertEquals(restored.contains(key) ? key : "+", mirror.get(i));
+            }
+        });
+    }
+
+    private final class TestRestorer extends BaseListStateRestorer<TestSnapshot, Exception, Integer>
+            implements TestSnapshotArray.Listener {
+        int mStops;
+
+        TestRestorer(@NonNull Executor executor) {
+            super(mStore, mArray, mAdapter, executor);
+        }
+
+        @Override
+        protected void onStart() {
+            mArray.addChangeEventListener(this);
+        }
+
+        @Override
+        protected void onStop() {
+            mStops++;
+            mArray.removeChangeEventListener(this);
+        }
+    }
+
+    /**
+     * Shows the restored items while there are any, like the library's adapters.
+     */
+    private final class TestAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
+        @NonNull
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int getItemCount() {
+            return mRestorer.isShowingRestoredItems()
+                    ? mRestorer.getRestoredCount()
+                    : mArray.size();
+        }
+    }
+
+    /**
+     * Records the notifications of an adapter.
+     */
+    private static final class RecordingObserver extends RecyclerView.AdapterDataObserver {
+        final List<String> mEvents = new ArrayList<>();
+
+        @Override
+        public void onChanged() {
+            mEvents.add("changed");
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            onItemRangeChanged(positionStart, itemCount, null);
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount, @Nullable Object payload) {
+            mEvents.add("changed " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            mEvents.add("inserted " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            mEvents.add("removed " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            mEvents.add("moved " + fromPosition + " " + toPosition);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.firebase.ui.common;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import androidx.annotation.NonNull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(AndroidJUnit4.class)
+public class BaseMergedSnapshotListTest {
+
+    private static final int SOURCES = 3;
+    private static final int KEYS = 30;
+    private static final int OPERATIONS = 3000;
+
+    private static final Comparator<TestSnapshot> ORDER = (a, b) -> {
+        int result = Integer.compare(a.getValue(), b.getValue());
+        return result != 0 ? result : a.getKey().compareTo(b.getKey());
+    };
+
+    /** The snapshots held by each source, by key. */
+    private final List<Map<String, TestSnapshot>> mSources = new ArrayList<>();
+    private final List<String> mMirror = new ArrayList<>();
+    private BaseMergedSnapshotList<TestSnapshot, Integer> mList;
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < SOURCES; i++) {
+            mSources.add(new LinkedHashMap<>());
+        }
+
+        BaseDerivedSnapshotList.Callback<TestSnapshot> callback =
+                new BaseDerivedSnapshotList.Callback<TestSnapshot>() {
+                    @Override
+                    public void onInserted(@NonNull TestSnapshot snapshot, int index) {
+                        mMirror.add(index, snapshot.getKey());
+                    }
+
+                    @Override
+                    public void onRemoved(@NonNull TestSnapshot snapshot, int index) {
+                        assertEquals(snapshot.getKey(), mMirror.remove(index));
+                    }
+
+                    @Override
+                    public void onMoved(@NonNull TestSnapshot snapshot,
+                                        int fromIndex,
+                                        int toIndex) {
+                        assertEquals(snapshot.getKey(), mMirror.remove(fromIndex));
+                        mMirror.add(toIndex, snapshot.getKey());
+                    }
+
+                    @Override
+                    public void onChanged(@NonNull ChangeEventType type,
+                                          @NonNull TestSnapshot snapshot,
+                                          int index) {
+                        assertEquals(snapshot.getKey(), mMirror.get(index));
+                    }
+                };
+        mList = new BaseMergedSnapshotList<TestSnapshot, Integer>(
+                SOURCES, Integer::compare, callback) {
+            @NonNull
+            @Override
+            public String getKey(@NonNull TestSnapshot snapshot) {
+                return snapshot.getKey();
+            }
+        };
+    }
+
+    @Test
+    public void testSharedItemsAppearOnce() {
+        add(1, "a", 4);
+        add(0, "b", 3);
+        add(0, "a", 1);
+        assertMerged("a", "b");
+        // The lowest source's copy is shown
+        assertEquals(Integer.valueOf(1), mList.getModel(0));
+
+        remove(0, "a");
+        assertMerged("b", "a");
+        assertEquals(Integer.valueOf(4), mList.getModel(1));
+
+        remove(1, "a");
+        assertMerged("b");
+    }
+
+    @Test
+    public void testChangesToHiddenCopiesAreIgnored() {
+        add(0, "a", 5);
+        add(2, "a", 1);
+        add(1, "b", 3);
+        assertMerged("b", "a");
+
+        change(2, "a", 9);
+        move(2, "a", 0);
+        assertMerged("b", "a");
+
+        change(0, "a", 2);
+        assertMerged("a", "b");
+    }
+
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(3);
+        for (int i = 0; i < OPERATIONS; i++) {
+            int source = random.nextInt(SOURCES);
+            String key = "k" + random.nextInt(KEYS);
+            int value = random.nextInt(20);
+            boolean held = mSources.get(source).containsKey(key);
+            int operation = random.nextInt(4);
+            if (!held) {
+                add(source, key, value);
+            } else if (operation == 0) {
+                remove(source, key);
+            } else if (operation == 1) {
+                change(source, key, value);
+            } else {
+                move(source, key, operation == 2 ? value : -1);
+            }
+            assertMatchesSources();
+        }
+    }
+
+    private void add(int source, @NonNull String key, int value) {
+        TestSnapshot snapshot = new TestSnapshot(key, value);
+        mSources.get(source).put(key, snapshot);
+        mList.onSourceAdded(source, snapshot, value);
+    }
+
+    private void remove(int source, @NonNull String key) {
+        mList.onSourceRemoved(source, mSources.get(source).remove(key));
+    }
+
+    private void change(int source, @NonNull String key, int value) {
+        TestSnapshot snapshot = new TestSnapshot(key, value);
+        mSources.get(source).put(key, snapshot);
+        mList.onSourceChanged(source, ChangeEventType.CHANGED, snapshot, value);
+    }
+
+    /**
+     * @param value the new value of the moved item, or -1 to keep it.
+     */
+    private void move(int source, @NonNull String key, int value) {
+        TestSnapshot old = mSources.get(source).get(key);
+        TestSnapshot snapshot = value == -1 ? old : new TestSnapshot(key, value);
+        mSources.get(source).put(key, snapshot);
+        mList.onSourceMoved(source, snapshot, snapshot.getValue(), value != -1);
+    }
+
+    private void assertMerged(@NonNull String... keys) {
+        assertMatchesSources();
+        assertEquals(Arrays.asList(keys), mMirror);
+    }
+
+    /**
+     * Check the merged list and the notified changes against merging the sources from scratch.
+     */
+    private void assertMatchesSources() {
+        Map<String, TestSnapshot> shown = new LinkedHashMap<>();
+        for (Map<String, TestSnapshot> source : mSources) {
+            for (TestSnapshot snapshot : source.values()) {
+                if (!shown.containsKey(snapshot.getKey())) {
+                    shown.put(snapshot.getKey(), snapshot);
+                }
+            }
+        }
+        List<TestSnapshot> expected = new ArrayList<>(shown.values());
+        Collections.sort(expected, ORDER);
+
+        List<String> keys = new ArrayList<>(expected.size());
+        for (TestSnapshot snapshot : expected) {
+            keys.add(snapshot.getKey());
+        }
+        assertEquals(keys, mMirror);
+        assertEquals(expected.size(), mList.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), mList.get(i));
+            assertEquals(Integer.valueOf(expected.get(i).getValue()), mList.getModel(i));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package com.firebase.ui.common;
+
+import android.app.Instrumentation;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class BaseObservableSnapshotArrayTest {
+
+    private static final Executor DIRECT = Runnable::run;
+    private static final Executor REJECTING = command -> {
+        throw new RejectedExecutionException();
+    };
+
+    private final Instrumentation mInstrumentation = InstrumentationRegistry.getInstrumentation();
+
+    /** Prefetches waiting to run, run by the test to control when they complete. */
+    private final List<Runnable> mTasks = Collections.synchronizedList(new ArrayList<>());
+
+    /** Keys of the snapshots the parser fails on. */
+    private final Set<String> mFailingKeys = Collections.synchronizedSet(new HashSet<>());
+    private final AtomicInteger mParseCount = new AtomicInteger();
+
+    private TestSnapshotArray mArray;
+
+    @Before
+    public void setUp() {
+        mArray = new TestSnapshotArray(snapshot -> {
+            if (mFailingKeys.contains(snapshot.getKey())) {
+                throw new IllegalStateException("Unparseable snapshot");
+            }
+            mParseCount.incrementAndGet();
+            return snapshot.getValue();
+        });
+        mInstrumentation.runOnMainSync(() -> {
+            for (int i = 0; i < 4; i++) {
+                mArray.addSnapshot(i, new TestSnapshot("k" + i, i));
+            }
+        });
+    }
+
+    @Test
+    public void testPrefetchCachesModelsInRange() {
+        prefetch(1, 3, DIRECT);
+
+        mInstrumentation.runOnMainSync(() -> {
+            assertFalse(mArray.isModelCached(mArray.getSnapshot(0)));
+            assertTrue(mArray.isModelCached(mArray.getSnapshot(1)));
+            assertTrue(mArray.isModelCached(mArray.getSnapshot(2)));
+            assertFalse(mArray.isModelCached(mArray.getSnapshot(3)));
+
+            assertEquals(Integer.valueOf(1), mArray.get(1));
+            assertEquals(Integer.valueOf(2), mArray.get(2));
+        });
+        assertEquals(2, mParseCount.get());
+    }
+
+    @Test
+    public void testPrefetchIgnoresIndicesOutsideArray() {
+        prefetch(-2, 10, DIRECT);
+
+        assertEquals(4, mParseCount.get());
+    }
+
+    @Test
+    public void testPrefetchSkipsCachedAndPendingSnapshots() {
+        prefetch(0, 2, mTasks::add);
+        prefetch(0, 3, mTasks::add);
+        runTasks();
+        prefetch(0, 4, DIRECT);
+
+        assertEquals(4, mParseCount.get());
+    }
+
+    @Test
+    public void testModelOfReplacedSnapshotIsNotCached() {
+        prefetch(0, 2, mTasks::add);
+        mInstrumentation.runOnMainSync(() -> {
+            // The parse completes before the change, but is only applied after it
+            runTasks();
+            mArray.changeSnapshot(0, new TestSnapshot("k0", 10));
+        });
+        mInstrumentation.waitForIdleSync();
+
+        mInstrumentation.runOnMainSync(() -> {
+            assertFalse(mArray.isModelCached(mArray.getSnapshot(0)));
+            assertEquals(Integer.valueOf(10), mArray.get(0));
+            assertTrue(mArray.isModelCached(mArray.getSnapshot(1)));
+        });
+    }
+
+    @Test
+    public void testFailedPrefetchCanBeRetried() {
+        mFailingKeys.add("k1");
+        prefetch(0, 3, DIRECT);
+
+        mInstrumentation.runOnMainSync(() -> {
+            assertTrue(mArray.isModelCached(mArray.getSnapshot(0)));
+            assertFalse(mArray.isModelCached(mArray.getSnapshot(1)));
+            assertFalse(mArray.isModelCached(mArray.getSnapshot(2)));
+        });
+
+        mFailingKeys.clear();
+        prefetch(0, 3, DIRECT);
+        mInstrumentation.runOnMainSync(() -> {
+            assertTrue(mArray.isModelCached(mArray.getSnapshot(1)));
+            assertTrue(mArray.isModelCached(mArray.getSnapshot(2)));
+        });
+    }
+
+    @Test
+    public void testRejectedPrefetchCanBeRetried() {
+        prefetch(0, 2, REJECTING);
+        prefetch(0, 2, DIRECT);
+
+        mInstrumentation.runOnMainSync(() -> {
+            assertTrue(mArray.isModelCached(mArray.getSnapshot(0)));
+            assertTrue(mArray.isModelCached(mArray.getSnapshot(1)));
+        });
+    }
+
+    /**
+     * Prefetch on the main thread and wait for the parsed models to be applied.
+     */
+    private void prefetch(int fromIndex, int toIndex, Executor executor) {
+        mInstrumentation.runOnMainSync(() -> mArray.prefetch(fromIndex, toIndex, executor));
+        mInstrumentation.waitForIdleSync();
+    }
+
+    private void runTasks() {
+        List<Runnable> tasks = new ArrayList<>(mTasks);
+        mTasks.clear();
+        for (Runnable task : tasks) {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package com.firebase.ui.common;
+
+import android.content.Context;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class ListStateStoreTest {
+
+    private static final int TIMEOUT_SECONDS = 5;
+
+    private static final ModelCodec<Integer> CODEC = new ModelCodec<Integer>() {
+        @Override
+        public void write(@NonNull Integer model, @NonNull DataOutput out) throws IOException {
+            out.writeInt(model);
+        }
+
+        @NonNull
+        @Override
+        public Integer read(@NonNull DataInput in) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    /** Encodes a model as that many bytes. */
+    private static final ModelCodec<Integer> SIZE_CODEC = new ModelCodec<Integer>() {
+        @Override
+        public void write(@NonNull Integer model, @NonNull DataOutput out) throws IOException {
+            out.write(new byte[model]);
+        }
+
+        @NonNull
+        @Override
+        public Integer read(@NonNull DataInput in) throws IOException {
+            int size = 0;
+            try {
+                while (true) {
+                    in.readByte();
+                    size++;
+                }
+            } catch (EOFException e) {
+                return size;
+            }
+        }
+    };
+
+    private static final ModelCodec<Integer> FAILING_CODEC = new ModelCodec<Integer>() {
+        @Override
+        public void write(@NonNull Integer model, @NonNull DataOutput out) throws IOException {
+            CODEC.write(model, out);
+        }
+
+        @NonNull
+        @Override
+        public Integer read(@NonNull DataInput in) throws IOException {
+            throw new IOException("Unreadable model");
+        }
+    };
+
+    private Context mContext;
+    private final List<ListStateStore<Integer>> mStores = new ArrayList<>();
+
+    /** Holds state, so loading it shows that all earlier reads have completed. */
+    private ListStateStore<Integer> mMarker;
+
+    @Before
+    public void setUp() {
+        mContext = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        mMarker = newStore("marker", CODEC, ListStateStore.DEFAULT_MAX_ITEMS);
+        mMarker.save(Collections.singletonList("marker"), Collections.singletonList(0));
+    }
+
+    @After
+    public void tearDown() {
+        for (ListStateStore<Integer> store : mStores) {
+            store.clear();
+        }
+    }
+
+    @Test
+    public void testSaveAndLoadRoundTrip() throws Exception {
+        ListStateStore<Integer> store = newStore("round-trip", CODEC, 10);
+        store.save(Arrays.asList("a", "b", "c"), Arrays.asList(1, 2, 3));
+
+        List<ListStateStore.Item<Integer>> items = load(store);
+        assertNotNull(items);
+        assertEquals(Arrays.asList("a", "b", "c"), getKeys(items));
+        assertEquals(Arrays.asList(1, 2, 3), getModels(items));
+    }
+
+    @Test
+    public void testSaveReplacesPreviousState() throws Exception {
+        ListStateStore<Integer> store = newStore("replace", CODEC, 10);
+        store.save(Arrays.asList("a", "b"), Arrays.asList(1, 2));
+        store.save(Collections.singletonList("c"), Collections.singletonList(3));
+
+        List<ListStateStore.Item<Integer>> items = load(store);
+        assertNotNull(items);
+        assertEquals(Collections.singletonList("c"), getKeys(items));
+    }
+
+    @Test
+    public void testSaveKeepsLeadingItems() throws Exception {
+        ListStateStore<Integer> store = newStore("leading", CODEC, 2);
+        store.save(Arrays.asList("a", "b", "c"), Arrays.asList(1, 2, 3));
+
+        List<ListStateStore.Item<Integer>> items = load(store);
+        assertNotNull(items);
+        assertEquals(Arrays.asList("a", "b"), getKeys(items));
+    }
+
+    @Test
+    public void testLargeListIsCutOff() throws Exception {
+        ListStateStore<Integer> store = newStore("large", SIZE_CODEC, 10);
+        int size = ListStateStore.MAX_LIST_BYTES / 2;
+        store.save(Arrays.asList("a", "b", "c"), Arrays.asList(size, size, size));
+
+        List<ListStateStore.Item<Integer>> items = load(store);
+        assertNotNull(items);
+        assertEquals(Arrays.asList(size, size), getModels(items));
+    }
+
+    @Test
+    public void testClearDeletesState() throws Exception {
+        ListStateStore<Integer> store = newStore("clear", CODEC, 10);
+        store.save(Collections.singletonList("a"), Collections.singletonList(1));
+        store.clear();
+
+        assertNull(load(store));
+    }
+
+    @Test
+    public void testExpiredStateIsDiscarded() throws Exception {
+        ListStateStore<Integer> store = new ListStateStore<>(mContext, "expired", CODEC, 10, 0);
+        mStores.add(store);
+        store.save(Collections.singletonList("a"), Collections.singletonList(1));
+        Thread.sleep(10);
+
+        assertNull(load(store));
+    }
+
+    @Test
+    public void testShortLivedStoreKeepsOtherStoresState() throws Exception {
+        ListStateStore<Integer> store = newStore("long-lived", CODEC, 10);
+        store.save(Collections.singletonList("a"), Collections.singletonList(1));
+        Thread.sleep(10);
+
+        // Saving evicts expired lists, which must not use this store's maximum age for others
+        ListStateStore<Integer> shortLived =
+                new ListStateStore<>(mContext, "short-lived", CODEC, 10, 1);
+        mStores.add(shortLived);
+        shortLived.save(Collections.singletonList("b"), Collections.singletonList(2));
+
+        List<ListStateStore.Item<Integer>> items = load(store);
+        assertNotNull(items);
+        assertEquals(Collections.singletonList("a"), getKeys(items));
+    }
+
+    @Test
+    public void testUnreadableStateIsDeleted() throws Exception {
+        ListStateStore<Integer> failing = newStore("unreadable", FAILING_CODEC, 10);
+        failing.save(Collections.singletonList("a"), Collections.singletonList(1));
+        assertNull(load(failing));
+
+        // The file was deleted, so a working codec doesn't find it either
+        assertNull(load(newStore("unreadable", CODEC, 10)));
+    }
+
+    @Test
+    public void testStoresAreSeparate() throws Exception {
+        ListStateStore<Integer> first = newStore("first", CODEC, 10);
+        ListStateStore<Integer> second = newStore("second", CODEC, 10);
+        first.save(Collections.singletonList("a"), Collections.singletonList(1));
+        second.save(Collections.singletonList("b"), Collections.singletonList(2));
+
+        List<ListStateStore.Item<Integer>> items = load(first);
+        assertNotNull(items);
+        assertEquals(Collections.singletonList("a"), getKeys(items));
+    }
+
+    @NonNull
+    private ListStateStore<Integer> newStore(@NonNull String name,
+                                             @NonNull ModelCodec<Integer> codec,
+                                             int maxItems) {
+        ListStateStore<Integer> store = new ListStateStore<>(mContext,
+                "ListStateStoreTest-" + name,
+                codec,
+                maxItems,
+                ListStateStore.DEFAULT_MAX_AGE_MILLIS);
+        mStores.add(store);
+        return store;
+    }
+
+    /**
+     * Load the state of a store, waiting for the marker to load after it since the listener is
+     * only called if state exists.
+     *
+     * @return the loaded items, or null if there were none.
+     */
+    @Nullable
+    private List<ListStateStore.Item<Integer>> load(@NonNull ListStateStore<Integer> store)
+            throws InterruptedException {
+        final AtomicReference<List<ListStateStore.Item<Integer>>> result =
+                new AtomicReference<>();
+        final CountDownLatch latch = new CountDownLatch(1);
+        store.load(result::set);
+        mMarker.load(items -> latch.countDown());
+
+        assertTrue("Timed out loading list state", latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        return result.get();
+    }
+
+    @NonNull
+    private static List<String> getKeys(@NonNull List<ListStateStore.Item<Integer>> items) {
+        List<String> keys = new ArrayList<>();
+        for (ListStateStore.Item<Integer> item : items) {
+            keys.add(item.getKey());
+        }
+        return keys;
+    }
+
+    @NonNull
+    private static List<Integer> getModels(@NonNull List<ListStateStore.Item<Integer>> items) {
+        List<Integer> models = new ArrayList<>();
+        for (ListStateStore.Item<Integer> item : items) {
+            models.add(item.getModel());
+        }
+        return models;
+    }
+}
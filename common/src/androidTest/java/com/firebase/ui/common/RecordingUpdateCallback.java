@@ -0,0 +1,34 @@
+package com.firebase.ui.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+/**
+ * Records list updates as strings, such as {@code "inserted 0 2"} or {@code "moved 3 1"}.
+ */
+class RecordingUpdateCallback implements ListUpdateCallback {
+    final List<String> mEvents = new ArrayList<>();
+
+    @Override
+    public void onInserted(int position, int count) {
+        mEvents.add("inserted " + position + " " + count);
+    }
+
+    @Override
+    public void onRemoved(int position, int count) {
+        mEvents.add("removed " + position + " " + count);
+    }
+
+    @Override
+    public void onMoved(int fromPosition, int toPosition) {
+        mEvents.add("moved " + fromPosition + " " + toPosition);
+    }
+
+    @Override
+    public void onChanged(int position, int count, @Nullable Object payload) {
+        mEvents.add("changed " + position + " " + count + " " + payload);
+    }
+}
@@ -0,0 +1,250 @@
+package com.firebase.ui.common;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class SearchIndexTest {
+
+    private static final String[] SYLLABLES = {"al", "an", "bo", "ce", "da", "li", "ma", "ri"};
+    private static final int OPERATIONS = 2000;
+
+    private static final class Person {
+        final String mName;
+        final String mCity;
+
+        Person(String name, String city) {
+            mName = name;
+            mCity = city;
+        }
+    }
+
+    private SearchIndex<Person> mIndex;
+
+    @Before
+    public void setUp() {
+        mIndex = new SearchIndex<>(Arrays.<TextExtractor<Person>>asList(
+                person -> person.mName,
+                person -> person.mCity));
+        mIndex.put("alice", new Person("Alice Smith", "London"));
+        mIndex.put("bob", new Person("Bob Jones", "Paris"));
+        mIndex.put("emile", new Person("Émile Zola", null));
+    }
+
+    @Test
+    public void testEmptyQueryMatchesEverything() {
+        assertTrue(mIndex.matches("alice"));
+        assertTrue(mIndex.matches("unknown"));
+
+        mIndex.setQuery("  ");
+        assertTrue(mIndex.matches("bob"));
+    }
+
+    @Test
+    public void testEveryQueryTokenMustPrefixModelToken() {
+        mIndex.setQuery("ali smi");
+        assertTrue(mIndex.matches("alice"));
+        assertFalse(mIndex.matches("bob"));
+
+        mIndex.setQuery("ali jon");
+        assertFalse(mIndex.matches("alice"));
+        assertFalse(mIndex.matches("bob"));
+
+        // Tokens don't match in the middle of words
+        mIndex.setQuery("lice");
+        assertFalse(mIndex.matches("alice"));
+    }
+
+    @Test
+    public void testCaseAndDiacriticsAreIgnored() {
+        mIndex.setQuery("EMI");
+        assertTrue(mIndex.matches("emile"));
+
+        mIndex.setQuery("zolá");
+        assertTrue(mIndex.matches("emile"));
+    }
+
+    @Test
+    public void testAllExtractorsAreIndexed() {
+        mIndex.setQuery("paris");
+        assertTrue(mIndex.matches("bob"));
+
+        mIndex.setQuery("bob par");
+        assertTrue(mIndex.matches("bob"));
+        assertFalse(mIndex.matches("alice"));
+    }
+
+    @Test
+    public void testPutUpdatesMatches() {
+        mIndex.setQuery("lon");
+        assertFalse(mIndex.matches("bob"));
+
+        mIndex.put("bob", new Person("Bob Jones", "London"));
+        assertTrue(mIndex.matches("bob"));
+
+        mIndex.put("alice", new Person("Alice Smith", "Leeds"));
+        assertFalse(mIndex.matches("alice"));
+    }
+
+    @Test
+    public void testRemoveDropsMatch() {
+        mIndex.setQuery("ali");
+        mIndex.remove("alice");
+        assertFalse(mIndex.matches("alice"));
+
+        // The key is no longer indexed when the query changes either
+        mIndex.setQuery("smi");
+        assertFalse(mIndex.matches("alice"));
+    }
+
+    @Test
+    public void testSetQueryReportsTokenChanges() {
+        assertTrue(mIndex.setQuery("Ali"));
+        assertFalse(mIndex.setQuery("ali "));
+        assertFalse(mIndex.setQuery("a ALI"));
+        assertEquals("a ALI", mIndex.getQuery());
+
+        assertTrue(mIndex.setQuery(null));
+        assertEquals("", mIndex.getQuery());
+    }
+
+    @Test
+    public void testSetQueryReportsChangedKeys() {
+        List<String> changed = new ArrayList<>();
+        mIndex.setQuery("ali", changed);
+        assertEquals(new HashSet<>(Arrays.asList("bob", "emile")), new HashSet<>(changed));
+
+        changed.clear();
+        mIndex.setQuery("bob", changed);
+        assertEquals(new HashSet<>(Arrays.asList("alice", "bob")), new HashSet<>(changed));
+
+        changed.clear();
+        mIndex.setQuery("bob par", changed);
+        assertTrue(changed.isEmpty());
+
+        changed.clear();
+        mIndex.setQuery(null, changed);
+        assertEquals(new HashSet<>(Arrays.asList("alice", "emile")), new HashSet<>(changed));
+    }
+
+    @Test
+    public void testClearKeepsQuery() {
+        mIndex.setQuery("ali");
+        mIndex.clear();
+        assertEquals("ali", mIndex.getQuery());
+        assertFalse(mIndex.matches("alice"));
+
+        mIndex.put("alice", new Person("Alice Smith", "London"));
+        assertTrue(mIndex.matches("alice"));
+    }
+
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(5);
+        Map<String, Person> people = new HashMap<>();
+        mIndex.clear();
+        mIndex.setQuery(null);
+        for (int i = 0; i < OPERATIONS; i++) {
+            String key = "p" + random.nextInt(50);
+            int operation = random.nextInt(4);
+            if (operation < 2) {
+                Person person = new Person(randomWords(random, 2), randomWords(random, 1));
+                people.put(key, person);
+                mIndex.put(key, person);
+            } else if (operation == 2) {
+                people.remove(key);
+                mIndex.remove(key);
+            } else {
+                Set<String> expected = new HashSet<>();
+                for (Map.Entry<String, Person> entry : people.entrySet()) {
+                    if (mIndex.matches(entry.getKey())) {
+                        expected.add(entry.getKey());
+                    }
+                }
+                String query = randomQuery(random);
+                for (Map.Entry<String, Person> entry : people.entrySet()) {
+                    if (matches(entry.getValue(), query)) {
+                        // Keys that match both before and after are not changed
+                        if (!expected.remove(entry.getKey())) {
+                            expected.add(entry.getKey());
+                        }
+                    }
+                }
+
+                List<String> changed = new ArrayList<>();
+                mIndex.setQuery(query, changed);
+                assertEquals(expected, new HashSet<>(changed));
+                assertEquals(expected.size(), changed.size());
+            }
+
+            for (Map.Entry<String, Person> entry : people.entrySet()) {
+                assertEquals(matches(entry.getValue(), mIndex.getQuery()),
+                        mIndex.matches(entry.getKey()));
+            }
+        }
+    }
+
+    /**
+     * @return whether every word of the query starts one of the words of the person, checked
+     * from scratch.
+     */
+    private static boolean matches(@NonNull Person person, @NonNull String query) {
+        String text = (person.mName + " " + person.mCity).toLowerCase(Locale.ROOT);
+        for (String prefix : query.toLowerCase(Locale.ROOT).split(" ")) {
+            boolean found = false;
+            for (String word : text.split(" ")) {
+                found |= word.startsWith(prefix);
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return one or two prefixes of random words.
+     */
+    @NonNull
+    private static String randomQuery(@NonNull Random random) {
+        StringBuilder query = new StringBuilder();
+        for (int i = 0; i < 1 + random.nextInt(2); i++) {
+            String word = randomWords(random, 1);
+            query.append(word, 0, 1 + random.nextInt(word.length())).append(' ');
+        }
+        return query.toString().trim();
+    }
+
+    @NonNull
+    private static String randomWords(@NonNull Random random, int count) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            for (int j = 0; j < 2 + random.nextInt(2); j++) {
+                text.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,232 @@
+package com.firebase.ui.common;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class SectionIndexTest {
+
+    private static final String REBIND = "?";
+    private static final String[] KEYS = {"A", "B", "C"};
+    private static final int OPERATIONS = 3000;
+
+    /**
+     * Applies the updates to the rows shown by an adapter, marking inserted and changed rows to
+     * be bound again.
+     */
+    private static final class MirrorCallback extends RecordingUpdateCallback {
+        final List<String> mRows = new ArrayList<>();
+
+        @Override
+        public void onInserted(int position, int count) {
+            super.onInserted(position, count);
+            for (int i = 0; i < count; i++) {
+                mRows.add(position, REBIND);
+            }
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            super.onRemoved(position, count);
+            for (int i = 0; i < count; i++) {
+                mRows.remove(position);
+            }
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            super.onMoved(fromPosition, toPosition);
+            mRows.add(toPosition, mRows.remove(fromPosition));
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            super.onChanged(position, count, payload);
+            for (int i = 0; i < count; i++) {
+                mRows.set(position + i, REBIND);
+            }
+        }
+    }
+
+    /** The IDs and section keys of the children, in order. */
+    private final List<Integer> mIds = new ArrayList<>();
+    private final List<String> mKeys = new ArrayList<>();
+    private int mNextId;
+
+    private MirrorCallback mCallback;
+    private SectionIndex<String> mIndex;
+
+    @Before
+    public void setUp() {
+        mCallback = new MirrorCallback();
+        mIndex = new SectionIndex<>(mCallback);
+    }
+
+    @Test
+    public void testInsertIntoEmptyAddsHeaderAndChild() {
+        insert(0, "A");
+        assertEquals(Collections.singletonList("inserted 0 2"), mCallback.mEvents);
+        assertRows("[A]", "#0");
+    }
+
+    @Test
+    public void testInsertJoinsNextSection() {
+        insert(0, "A");
+        insert(0, "A");
+        assertRows("[A]", "#1", "#0");
+        // The header stays in place, only the child is new
+        assertEquals("inserted 1 1", lastEvent());
+    }
+
+    @Test
+    public void testInsertSplitsSection() {
+        insert(0, "A");
+        insert(1, "A");
+        insert(1, "B");
+        assertRows("[A]", "#0", "[B]", "#2", "[A]", "#1");
+    }
+
+    @Test
+    public void testRemoveMergesSections() {
+        insert(0, "A");
+        insert(1, "B");
+        insert(2, "A");
+        remove(1);
+        assertRows("[A]", "#0", "#2");
+    }
+
+    @Test
+    public void testRemoveFirstChildKeepsHeader() {
+        insert(0, "A");
+        insert(1, "A");
+        mCallback.mEvents.clear();
+
+        remove(0);
+        assertEquals(Collections.singletonList("removed 1 1"), mCallback.mEvents);
+        assertRows("[A]", "#1");
+    }
+
+    @Test
+    public void testMoveToOtherSection() {
+        insert(0, "A");
+        insert(1, "A");
+        insert(2, "B");
+        move(0, 2, "B");
+        assertRows("[A]", "#1", "[B]", "#2", "#0");
+    }
+
+    @Test
+    public void testChangeOfKeyUpdatesHeader() {
+        insert(0, "A");
+        insert(1, "B");
+        change(0, "C");
+        assertRows("[C]", "#0", "[B]", "#1");
+
+        change(1, "C");
+        assertRows("[C]", "#0", "#1");
+    }
+
+    @Test
+    public void testRandomOperations() {
+        Random random = new Random(4);
+        for (int i = 0; i < OPERATIONS; i++) {
+            int size = mIds.size();
+            String key = KEYS[random.nextInt(KEYS.length)];
+            int operation = size == 0 ? 0 : random.nextInt(8);
+            if (operation < 3) {
+                insert(random.nextInt(size + 1), key);
+            } else if (operation < 5) {
+                remove(random.nextInt(size));
+            } else if (operation < 7) {
+                move(random.nextInt(size), random.nextInt(size), key);
+            } else {
+                change(random.nextInt(size), key);
+            }
+            assertLayout();
+        }
+    }
+
+    private void insert(int index, @NonNull String key) {
+        mIds.add(index, mNextId++);
+        mKeys.add(index, key);
+        mIndex.insert(index, key);
+    }
+
+    private void remove(int index) {
+        mIds.remove(index);
+        mKeys.remove(index);
+        mIndex.remove(index);
+    }
+
+    private void move(int fromIndex, int toIndex, @NonNull String key) {
+        mIds.add(toIndex, mIds.remove(fromIndex));
+        mKeys.remove(fromIndex);
+        mKeys.add(toIndex, key);
+        mIndex.move(fromIndex, toIndex, key);
+    }
+
+    private void change(int index, @NonNull String key) {
+        mKeys.set(index, key);
+        mIndex.change(index, key, null);
+    }
+
+    @NonNull
+    private String lastEvent() {
+        return mCallback.mEvents.get(mCallback.mEvents.size() - 1);
+    }
+
+    private void assertRows(@NonNull String... rows) {
+        assertLayout();
+        assertEquals(Arrays.asList(rows), mCallback.mRows);
+    }
+
+    /**
+     * Check the index and the notified rows against laying out the children from scratch. Rows
+     * that were inserted or changed are bound again, rows that weren't must still be correct.
+     */
+    private void assertLayout() {
+        List<String> expected = new ArrayList<>();
+        List<Integer> childIndices = new ArrayList<>();
+        for (int i = 0; i < mIds.size(); i++) {
+            if (i == 0 || !mKeys.get(i - 1).equals(mKeys.get(i))) {
+                expected.add("[" + mKeys.get(i) + "]");
+                childIndices.add(i);
+            }
+            assertEquals(expected.size(), mIndex.getPosition(i));
+            expected.add("#" + mIds.get(i));
+            childIndices.add(i);
+        }
+
+        List<String> rows = mCallback.mRows;
+        assertEquals(expected.size(), rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            if (REBIND.equals(rows.get(i))) {
+                rows.set(i, expected.get(i));
+            }
+        }
+        assertEquals(expected, rows);
+
+        assertEquals(mIds.size(), mIndex.getChildCount());
+        assertEquals(expected.size(), mIndex.getPositionCount());
+        for (int position = 0; position < expected.size(); position++) {
+            int index = childIndices.get(position);
+            assertEquals(expected.get(position).startsWith("["), mIndex.isHeader(position));
+            assertEquals(index, mIndex.getChildIndex(position));
+            assertEquals(mKeys.get(index), mIndex.getSectionKey(position));
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.firebase.ui.common;
+
+import android.app.Instrumentation;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class SnapshotListTransitionTest {
+
+    private static final DiffUtil.ItemCallback<TestSnapshot> ITEM_CALLBACK =
+            new DiffUtil.ItemCallback<TestSnapshot>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull TestSnapshot oldItem,
+                                               @NonNull TestSnapshot newItem) {
+                    return oldItem.getKey().equals(newItem.getKey());
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull TestSnapshot oldItem,
+                                                  @NonNull TestSnapshot newItem) {
+                    return oldItem.getValue() == newItem.getValue();
+                }
+            };
+
+    /**
+     * Serves fixed snapshot lists and records the diffs it receives.
+     */
+    private static class TestCallback implements SnapshotListTransition.Callback<TestSnapshot> {
+        volatile List<TestSnapshot> mOld = Collections.emptyList();
+        volatile List<TestSnapshot> mNew = Collections.emptyList();
+        final List<DiffUtil.DiffResult> mResults = new ArrayList<>();
+        int mCopies;
+
+        @NonNull
+        @Override
+        public List<TestSnapshot> getOldSnapshots() {
+            return new ArrayList<>(mOld);
+        }
+
+        @NonNull
+        @Override
+        public List<TestSnapshot> getNewSnapshots() {
+            mCopies++;
+            return new ArrayList<>(mNew);
+        }
+
+        @Override
+        public void onDiffReady(@NonNull DiffUtil.DiffResult result) {
+            mResults.add(result);
+        }
+    }
+
+    private final Instrumentation mInstrumentation = InstrumentationRegistry.getInstrumentation();
+
+    /** Diffs waiting to be computed, run by the test to control when they complete. */
+    private final List<Runnable> mTasks = Collections.synchronizedList(new ArrayList<>());
+
+    private TestCallback mCallback;
+    private SnapshotListTransition<TestSnapshot> mTransition;
+
+    @Before
+    public void setUp() {
+        mCallback = new TestCallback();
+        mCallback.mOld = snapshots("a", 1, "b", 2, "c", 3);
+        mInstrumentation.runOnMainSync(() -> mTransition =
+                new SnapshotListTransition<>(ITEM_CALLBACK, mCallback, mTasks::add));
+    }
+
+    @Test
+    public void testDiffStartsOnceNewDataLoaded() {
+        mCallback.mNew = snapshots("a", 1, "b", 2, "c", 3, "d", 4);
+
+        mInstrumentation.runOnMainSync(mTransition::onChanged);
+        assertTrue(mTasks.isEmpty());
+
+        mInstrumentation.runOnMainSync(mTransition::onNewDataChanged);
+        runTasks();
+        assertEquals(Collections.singletonList("inserted 3 1"), dispatchResult());
+
+        // Later batches of the new array don't diff again
+        mInstrumentation.runOnMainSync(mTransition::onNewDataChanged);
+        assertTrue(mTasks.isEmpty());
+        assertEquals(1, mCallback.mResults.size());
+    }
+
+    @Test
+    public void testDiffKeepsItemsPresentInBoth() {
+        mCallback.mNew = snapshots("a", 1, "c", 4);
+
+        mInstrumentation.runOnMainSync(mTransition::onNewDataChanged);
+        runTasks();
+
+        List<String> events = dispatchResult();
+        assertEquals(2, events.size());
+        assertTrue(events.contains("removed 1 1"));
+        assertTrue(events.contains("changed 2 1 null"));
+    }
+
+    @Test
+    public void testChangeWhileDiffingStartsOver() {
+        mCallback.mNew = snapshots("a", 1, "b", 2, "c", 3, "d", 4);
+        mInstrumentation.runOnMainSync(mTransition::onNewDataChanged);
+
+        // The new array changes before the first diff completes
+        mCallback.mNew = snapshots("a", 1, "b", 2, "c", 3, "d", 4, "e", 5);
+        mInstrumentation.runOnMainSync(mTransition::onChanged);
+        runTasks();
+
+        assertEquals(2, mCallback.mCopies);
+        assertEquals(Collections.singletonList("inserted 3 2"), dispatchResult());
+    }
+
+    @Test
+    public void testStopDiscardsDiff() {
+        mCallback.mNew = snapshots("a", 1);
+        mInstrumentation.runOnMainSync(mTransition::onNewDataChanged);
+        mInstrumentation.runOnMainSync(mTransition::stop);
+        runTasks();
+
+        assertTrue(mCallback.mResults.isEmpty());
+    }
+
+    /**
+     * Compute the pending diffs and deliver their results on the main thread, until none are
+     * left.
+     */
+    private void runTasks() {
+        while (!mTasks.isEmpty()) {
+            mTasks.remove(0).run();
+            mInstrumentation.waitForIdleSync();
+        }
+    }
+
+    @NonNull
+    private List<String> dispatchResult() {
+        assertEquals(1, mCallback.mResults.size());
+        RecordingUpdateCallback updates = new RecordingUpdateCallback();
+        mCallback.mResults.get(0).dispatchUpdatesTo(updates);
+        return updates.mEvents;
+    }
+
+    /**
+     * @param keysAndValues alternating keys and values.
+     */
+    @NonNull
+    private static List<TestSnapshot> snapshots(@NonNull Object... keysAndValues) {
+        List<TestSnapshot> snapshots = new ArrayList<>(keysAndValues.length / 2);
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            snapshots.add(new TestSnapshot((String) keysAndValues[i], (int) keysAndValues[i + 1]));
+        }
+        return snapshots;
+    }
+}
@@ -0,0 +1,166 @@
+package com.firebase.ui.common;
+
+import android.app.Instrumentation;
+import android.content.ComponentCallbacks;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.ContextWrapper;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+@RunWith(AndroidJUnit4.class)
+public class SnapshotMemoryTrimmerTest {
+
+    private static final int SIZE = 4;
+
+    private static final TestSnapshotArray.Listener NO_OP_LISTENER =
+            new TestSnapshotArray.Listener() {
+                @Override
+                public void onChildChanged(@NonNull ChangeEventType type,
+                                           @NonNull TestSnapshot snapshot,
+                                           int newIndex,
+                                           int oldIndex) {
+                }
+
+                @Override
+                public void onDataChanged() {
+                }
+
+                @Override
+                public void onError(@NonNull Exception e) {
+                }
+            };
+
+    /** The trimmer registered by {@link SnapshotMemoryTrimmer#install}, which only runs once. */
+    private static ComponentCallbacks2 sTrimmer;
+
+    private final Instrumentation mInstrumentation = InstrumentationRegistry.getInstrumentation();
+
+    private TestSnapshotArray mArray;
+
+    @BeforeClass
+    public static void install() {
+        Context context = new ContextWrapper(ApplicationProvider.getApplicationContext()) {
+            @Override
+            public Context getApplicationContext() {
+                return this;
+            }
+
+            @Override
+            public void registerComponentCallbacks(ComponentCallbacks callback) {
+                sTrimmer = (ComponentCallbacks2) callback;
+            }
+        };
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(
+                () -> SnapshotMemoryTrimmer.install(context));
+        assertNotNull(sTrimmer);
+    }
+
+    @Before
+    public void setUp() {
+        mArray = new TestSnapshotArray();
+        mInstrumentation.runOnMainSync(() -> {
+            mArray.addChangeEventListener(NO_OP_LISTENER);
+            populate(mArray);
+        });
+    }
+
+    @After
+    public void tearDown() {
+        mInstrumentation.runOnMainSync(() -> mArray.removeAllListeners());
+    }
+
+    @Test
+    public void testRunningLevelsAreIgnored() {
+        trim(ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL);
+
+        assertEquals(SIZE, cachedCount(mArray));
+    }
+
+    @Test
+    public void testUiHiddenHalvesParserCache() {
+        trim(ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN);
+
+        assertEquals(SIZE / 2, cachedCount(mArray));
+        assertEquals(SIZE, mArray.size());
+    }
+
+    @Test
+    public void testBackgroundClearsParserCache() {
+        trim(ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+
+        assertEquals(0, cachedCount(mArray));
+        assertEquals(SIZE, mArray.size());
+    }
+
+    @Test
+    public void testLowMemoryClearsParserCache() {
+        mInstrumentation.runOnMainSync(() -> sTrimmer.onLowMemory());
+
+        assertEquals(0, cachedCount(mArray));
+    }
+
+    @Test
+    public void testArraysWithoutListenersAreNotTrimmed() {
+        TestSnapshotArray idle = new TestSnapshotArray();
+        mInstrumentation.runOnMainSync(() -> populate(idle));
+
+        trim(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+
+        assertEquals(0, cachedCount(mArray));
+        assertEquals(SIZE, cachedCount(idle));
+    }
+
+    @Test
+    public void testRemovingLastListenerUnregisters() {
+        TestSnapshotArray other = new TestSnapshotArray();
+        mInstrumentation.runOnMainSync(() -> {
+            other.addChangeEventListener(NO_OP_LISTENER);
+            other.removeChangeEventListener(NO_OP_LISTENER);
+            // Filled after destruction, so only a trim could empty the cache
+            populate(other);
+        });
+
+        trim(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+
+        assertEquals(SIZE, cachedCount(other));
+    }
+
+    private void trim(int level) {
+        mInstrumentation.runOnMainSync(() -> sTrimmer.onTrimMemory(level));
+    }
+
+    /**
+     * Add snapshots and parse them all, so each has a cached model.
+     */
+    private static void populate(@NonNull TestSnapshotArray array) {
+        for (int i = 0; i < SIZE; i++) {
+            array.addSnapshot(i, new TestSnapshot("k" + i, i));
+            array.get(i);
+        }
+    }
+
+    private int cachedCount(@NonNull TestSnapshotArray array) {
+        int[] count = new int[1];
+        mInstrumentation.runOnMainSync(() -> {
+            for (int i = 0; i < array.size(); i++) {
+                if (array.isModelCached(array.getSnapshot(i))) {
+                    count[0]++;
+                }
+            }
+        });
+        return count[0];
+    }
+}
@@ -0,0 +1,67 @@
+package com.firebase.ui.common;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class StableIdMapTest {
+
+    private static final long NO_ID = -1;
+
+    @Test
+    public void testSameKeyKeepsId() {
+        StableIdMap ids = new StableIdMap();
+        long id = ids.getId("a");
+
+        assertEquals(id, ids.getId("a"));
+        assertEquals(id, ids.getId(3, "a"));
+        // A key keeps its ID when it moves to another position
+        assertEquals(id, ids.getId(0, "a"));
+    }
+
+    @Test
+    public void testDistinctKeysHaveDistinctIds() {
+        StableIdMap ids = new StableIdMap();
+        Set<Long> seen = new HashSet<>();
+        for (int i = 0; i < 10000; i++) {
+            long id = ids.getId(i, "key" + i);
+            assertNotEquals(NO_ID, id);
+            assertTrue(seen.add(id));
+        }
+    }
+
+    @Test
+    public void testPositionCacheFollowsKeyAtPosition() {
+        StableIdMap ids = new StableIdMap();
+        long a = ids.getId(0, "a");
+        long b = ids.getId(0, "b");
+
+        assertNotEquals(a, b);
+        assertEquals(a, ids.getId(0, "a"));
+        // An equal key from another snapshot is looked up by value
+        assertEquals(b, ids.getId(0, new String(new char[]{'b'})));
+    }
+
+    @Test
+    public void testClearKeepsIdsValid() {
+        StableIdMap ids = new StableIdMap();
+        String key = "a";
+        long before = ids.getId(0, key);
+
+        ids.clear();
+        long after = ids.getId(0, key);
+        assertNotEquals(NO_ID, after);
+        assertEquals(after, ids.getId("a"));
+        // IDs are derived from the key, so they survive clearing unless they collide
+        assertEquals(before, after);
+    }
+}
@@ -0,0 +1,31 @@
+package com.firebase.ui.common;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Minimal snapshot with a key and an integer value, which tests use as its model.
+ */
+final class TestSnapshot {
+    private final String mKey;
+    private final int mValue;
+
+    TestSnapshot(@NonNull String key, int value) {
+        mKey = key;
+        mValue = value;
+    }
+
+    @NonNull
+    String getKey() {
+        return mKey;
+    }
+
+    int getValue() {
+        return mValue;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return mKey + "=" + mValue;
+    }
+}
@@ -0,0 +1,62 @@
+package com.firebase.ui.common;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Snapshot array over {@link TestSnapshot}s whose contents are changed directly by tests. Models
+ * are the snapshots' values. Use from the main thread only.
+ */
+class TestSnapshotArray extends BaseObservableSnapshotArray<TestSnapshot, Exception,
+        TestSnapshotArray.Listener, Integer> {
+
+    interface Listener extends BaseChangeEventListener<TestSnapshot, Exception> {
+    }
+
+    private final List<TestSnapshot> mSnapshots = new ArrayList<>();
+
+    TestSnapshotArray() {
+        this(TestSnapshot::getValue);
+    }
+
+    TestSnapshotArray(@NonNull BaseSnapshotParser<TestSnapshot, Integer> parser) {
+        super(new BaseCachingSnapshotParser<TestSnapshot, Integer>(parser) {
+            @NonNull
+            @Override
+            public String getId(@NonNull TestSnapshot snapshot) {
+                return snapshot.getKey();
+            }
+        });
+    }
+
+    @NonNull
+    @Override
+    protected List<TestSnapshot> getSnapshots() {
+        return mSnapshots;
+    }
+
+    void addSnapshot(int index, @NonNull TestSnapshot snapshot) {
+        mSnapshots.add(index, snapshot);
+        notifyOnChildChanged(ChangeEventType.ADDED, snapshot, index, -1);
+    }
+
+    void changeSnapshot(int index, @NonNull TestSnapshot snapshot) {
+        mSnapshots.set(index, snapshot);
+        notifyOnChildChanged(ChangeEventType.CHANGED, snapshot, index, index);
+    }
+
+    void removeSnapshot(int index) {
+        TestSnapshot snapshot = mSnapshots.remove(index);
+        notifyOnChildChanged(ChangeEventType.REMOVED, snapshot, -1, index);
+    }
+
+    void loaded() {
+        notifyOnDataChanged();
+    }
+
+    void fail(@NonNull Exception e) {
+        notifyOnError(e);
+    }
+}
@@ -2,7 +2,12 @@ package com.firebase.ui.common;
 
 import android.util.LruCache;
 
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RestrictTo;
 
 /**
@@ -14,7 +19,20 @@ public abstract class BaseCachingSnapshotParser<S, T> implements BaseSnapshotPar
 
     private static final int MAX_CACHE_SIZE = 100;
 
-    private final LruCache<String, T> mObjectCache = new LruCache<>(MAX_CACHE_SIZE);
+    /** IDs of the cached models, to check for a model without refreshing its recency. */
+    private final Set<String> mCachedIds =
+            Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final LruCache<String, T> mObjectCache = new LruCache<String, T>(MAX_CACHE_SIZE) {
+        @Override
+        protected void entryRemoved(boolean evicted,
+                                    @NonNull String key,
+                                    @NonNull T oldValue,
+                                    @Nullable T newValue) {
+            if (newValue == null) {
+                mCachedIds.remove(key);
+            }
+        }
+    };
     private final BaseSnapshotParser<S, T> mParser;
 
     public BaseCachingSnapshotParser(@NonNull BaseSnapshotParser<S, T> parser) {
@@ -34,12 +52,54 @@ public abstract class BaseCachingSnapshotParser<S, T> implements BaseSnapshotPar
         T result = mObjectCache.get(id);
         if (result == null) {
             T object = mParser.parseSnapshot(snapshot);
+            mCachedIds.add(id);
             mObjectCache.put(id, object);
             result = object;
         }
         return result;
     }
 
+    /**
+     * Returns whether a model for the given snapshot is currently cached. Unlike parsing, this
+     * doesn't count as a use of the model, so it doesn't protect the model from eviction.
+     */
+    public boolean isCached(@NonNull S snapshot) {
+        return mCachedIds.contains(getId(snapshot));
+    }
+
+    /**
+     * Parse a snapshot with the underlying parser without reading or writing the cache, for
+     * example to parse ahead of time on a background thread.
+     */
+    @NonNull
+    public T parseUncached(@NonNull S snapshot) {
+        return mParser.parseSnapshot(snapshot);
+    }
+
+    /**
+     * Store a model that was parsed ahead of time, for example on a background thread, so that
+     * the next call to {@link #parseSnapshot(Object)} for the same snapshot is a cache hit.
+     */
+    public void put(@NonNull S snapshot, @NonNull T model) {
+        String id = getId(snapshot);
+        mCachedIds.add(id);
+        mObjectCache.put(id, model);
+    }
+
+    /**
+     * Evict the least recently used models until at most {@code maxSize} remain.
+     */
+    public void trimToSize(int maxSize) {
+        mObjectCache.trimToSize(maxSize);
+    }
+
+    /**
+     * @return the number of models currently cached.
+     */
+    public int size() {
+        return mObjectCache.size();
+    }
+
     /**
      * Clear all data in the cache.
      */
@@ -1,5 +1,7 @@
 package com.firebase.ui.common;
 
+import java.util.Set;
+
 import androidx.annotation.NonNull;
 
 /**
@@ -19,6 +21,26 @@ public interface BaseChangeEventListener<S, E> {
     void onChildChanged(
             @NonNull ChangeEventType type, @NonNull S snapshot, int newIndex, int oldIndex);
 
+    /**
+     * A callback for when the content of a child changed and the array knows which of its
+     * top-level fields changed. Called instead of {@link #onChildChanged(ChangeEventType, Object,
+     * int, int)} for {@link ChangeEventType#CHANGED} and {@link
+     * ChangeEventType#MOVED_AND_CHANGED} events when the previous snapshot is available.
+     * <p>
+     * The default implementation ignores the changed fields.
+     *
+     * @param changedFields the names of the top-level fields whose values changed, computed
+     *                      lazily on first access. Empty if they could not be determined.
+     * @see #onChildChanged(ChangeEventType, Object, int, int)
+     */
+    default void onChildChanged(@NonNull ChangeEventType type,
+                                @NonNull S snapshot,
+                                int newIndex,
+                                int oldIndex,
+                                @NonNull Set<String> changedFields) {
+        onChildChanged(type, snapshot, newIndex, oldIndex);
+    }
+
     /**
      * Callback triggered after all child events in a particular snapshot have been
      * processed.
@@ -0,0 +1,94 @@
+package com.firebase.ui.common;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+
+/**
+ * The names of the top-level fields whose values differ between two versions of a snapshot.
+ * <p>
+ * The difference is only computed on first access, so changes to items that are never rebound
+ * cost nothing. An empty set means the changed fields could not be determined and the whole
+ * item should be treated as changed.
+ *
+ * @param <S> the snapshot class.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+public abstract class BaseChangedFields<S> extends AbstractSet<String> {
+
+    private S mPrevious;
+    private S mCurrent;
+    private Set<String> mFields;
+
+    public BaseChangedFields(@NonNull S previous, @NonNull S current) {
+        mPrevious = previous;
+        mCurrent = current;
+    }
+
+    /**
+     * Compute the names of the top-level fields that differ between the two snapshots.
+     */
+    @NonNull
+    protected abstract Set<String> computeChangedFields(@NonNull S previous, @NonNull S current);
+
+    /**
+     * Get the names of the keys whose values differ between two maps, including keys that are
+     * only present in one of them.
+     */
+    @NonNull
+    protected static Set<String> diffKeys(@Nullable Map<String, ?> previous,
+                                          @Nullable Map<String, ?> current) {
+        if (previous == null || current == null) {
+            return Collections.emptySet();
+        }
+
+        Set<String> changed = new HashSet<>();
+        for (Map.Entry<String, ?> entry : current.entrySet()) {
+            if (!Objects.equals(entry.getValue(), previous.get(entry.getKey()))
+                    || !previous.containsKey(entry.getKey())) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String key : previous.keySet()) {
+            if (!current.containsKey(key)) {
+                changed.add(key);
+            }
+        }
+        return changed;
+    }
+
+    @NonNull
+    private Set<String> getFields() {
+        if (mFields == null) {
+            mFields = computeChangedFields(mPrevious, mCurrent);
+            // The snapshots are no longer needed, don't keep them alive
+            mPrevious = null;
+            mCurrent = null;
+        }
+        return mFields;
+    }
+
+    @NonNull
+    @Override
+    public Iterator<String> iterator() {
+        return Collections.unmodifiableSet(getFields()).iterator();
+    }
+
+    @Override
+    public int size() {
+        return getFields().size();
+    }
+
+    @Override
+    public boolean contains(@Nullable Object o) {
+        return getFields().contains(o);
+    }
+}
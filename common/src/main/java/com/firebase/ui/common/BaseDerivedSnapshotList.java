@@ -0,0 +1,568 @@
+package com.firebase.ui.common;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+
+/**
+ * Filtered and/or sorted view over the snapshots of a source array, maintained incrementally from
+ * the source's child events.
+ * <p>
+ * Without a comparator, the view keeps the source order: every source item is kept in an implicit
+ * treap ordered by source position, which counts the included items of each subtree so that source
+ * indices translate to view indices in O(log n). With a comparator, only included items are kept,
+ * in a treap ordered by the comparator and then by key. Either way, each source event costs
+ * O(log n) plus one call to the filter, and is reported through {@link Callback} with indices in
+ * the view.
+ * <p>
+ * Models are stored alongside their snapshots so that the filter and comparator don't parse
+ * snapshots repeatedly, and so that {@link #refilter()} can re-evaluate the filter without
+ * parsing. If only some items can be affected by a change to the filter, {@link
+ * #refilter(Collection)} re-evaluates just those. Not thread safe, use from the main thread only.
+ *
+ * @param <S> the snapshot class.
+ * @param <T> the model object class.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+public abstract class BaseDerivedSnapshotList<S, T> extends AbstractList<S> {
+
+    /**
+     * Receives changes to the view, with indices in the view.
+     */
+    public interface Callback<S> {
+        void onInserted(@NonNull S snapshot, int index);
+
+        void onRemoved(@NonNull S snapshot, int index);
+
+        void onMoved(@NonNull S snapshot, int fromIndex, int toIndex);
+
+        void onChanged(@NonNull ChangeEventType type, @NonNull S snapshot, int index);
+    }
+
+    private final ModelFilter<T> mFilter;
+    private final Comparator<T> mComparator;
+    private final Callback<S> mCallback;
+
+    /** Nodes by key. When sorting, only the included ones, the others are in mExcluded. */
+    private final Map<String, Node<S, T>> mNodes = new HashMap<>();
+    private final Map<String, Node<S, T>> mExcluded = new HashMap<>();
+    private final Random mRandom = new Random();
+    private Node<S, T> mRoot;
+
+    // Results of the last split, to avoid allocating a pair for every split
+    private Node<S, T> mSplitLeft;
+    private Node<S, T> mSplitRight;
+
+    /** Number of included items before the node last removed by {@link #removeAt(int)}. */
+    private int mRemovedIndex;
+
+    public BaseDerivedSnapshotList(@Nullable ModelFilter<T> filter,
+                                   @Nullable Comparator<T> comparator,
+                                   @NonNull Callback<S> callback) {
+        mFilter = filter;
+        mComparator = comparator;
+        mCallback = Preconditions.checkNotNull(callback);
+    }
+
+    /**
+     * Get a unique identifier for a snapshot, should not depend on snapshot content.
+     */
+    @NonNull
+    public abstract String getKey(@NonNull S snapshot);
+
+    /**
+     * Decide whether an item is part of the view. Uses the filter by default.
+     */
+    protected boolean include(@NonNull S snapshot, @NonNull T model) {
+        return mFilter == null || mFilter.include(model);
+    }
+
+    @NonNull
+    @Override
+    public S get(int index) {
+        return nodeAt(index).mSnapshot;
+    }
+
+    /**
+     * @return the model of the item at the given index in the view.
+     */
+    @NonNull
+    public T getModel(int index) {
+        return nodeAt(index).mModel;
+    }
+
+    @Override
+    public int size() {
+        return included(mRoot);
+    }
+
+    @Override
+    public void clear() {
+        mRoot = null;
+        mNodes.clear();
+        mExcluded.clear();
+    }
+
+    /**
+     * Re-evaluate {@link #include(Object, Object)} for every item, for example after the criteria
+     * of the filter changed, and report the items that entered or left the view. Costs O(n) calls
+     * to the filter plus O(log n) per item whose inclusion changed.
+     */
+    public void refilter() {
+        List<Node<S, T>> nodes = new ArrayList<>(size(mRoot));
+        collect(mRoot, nodes);
+
+        if (mComparator == null) {
+            int index = 0;
+            for (int position = 0; position < nodes.size(); position++) {
+                Node<S, T> node = nodes.get(position);
+                boolean included = include(node.mSnapshot, node.mModel);
+                if (included != node.mIncluded) {
+                    setIncluded(position, included);
+                    if (included) {
+                        mCallback.onInserted(node.mSnapshot, index);
+                    } else {
+                        mCallback.onRemoved(node.mSnapshot, index);
+                    }
+                }
+                if (included) {
+                    index++;
+                }
+            }
+            return;
+        }
+
+        List<Node<S, T>> excluded = new ArrayList<>(mExcluded.values());
+        for (Node<S, T> node : nodes) {
+            if (!include(node.mSnapshot, node.mModel)) {
+                int index = removeSorted(node);
+                node.mIncluded = false;
+                mExcluded.put(node.mKey, node);
+                mCallback.onRemoved(node.mSnapshot, index);
+            }
+        }
+        for (Node<S, T> node : excluded) {
+            if (include(node.mSnapshot, node.mModel)) {
+                mExcluded.remove(node.mKey);
+                node.mIncluded = true;
+                node.update();
+                mCallback.onInserted(node.mSnapshot, insertSorted(node));
+            }
+        }
+    }
+
+    /**
+     * Re-evaluate {@link #include(Object, Object)} for the items with the given keys only, for
+     * example when the filter is backed by an index that knows which items a change affects.
+     * Unknown keys are ignored. Costs O(log n) per key.
+     */
+    public void refilter(@NonNull Collection<String> keys) {
+        for (String key : keys) {
+            if (mComparator == null) {
+                Node<S, T> node = mNodes.get(key);
+                if (node != null && include(node.mSnapshot, node.mModel) != node.mIncluded) {
+                    toggleIncluded(node);
+                }
+                continue;
+            }
+
+            Node<S, T> node = mNodes.get(key);
+            if (node != null) {
+                if (!include(node.mSnapshot, node.mModel)) {
+                    int index = removeSorted(node);
+                    node.mIncluded = false;
+                    mExcluded.put(key, node);
+                    mCallback.onRemoved(node.mSnapshot, index);
+                }
+            } else {
+                node = mExcluded.get(key);
+                if (node != null && include(node.mSnapshot, node.mModel)) {
+                    mExcluded.remove(key);
+                    node.mIncluded = true;
+                    node.update();
+                    mCallback.onInserted(node.mSnapshot, insertSorted(node));
+                }
+            }
+        }
+    }
+
+    /**
+     * Flip whether a node in source order is included, walking up from it to find its index in
+     * the view and to update the counts of its ancestors.
+     */
+    private void toggleIncluded(@NonNull Node<S, T> node) {
+        int index = included(node.mLeft);
+        for (Node<S, T> child = node, parent = node.mParent;
+                parent != null;
+                child = parent, parent = parent.mParent) {
+            if (child == parent.mRight) {
+                index += included(parent.mLeft) + (parent.mIncluded ? 1 : 0);
+            }
+        }
+
+        node.mIncluded = !node.mIncluded;
+        for (Node<S, T> ancestor = node; ancestor != null; ancestor = ancestor.mParent) {
+            ancestor.update();
+        }
+        if (node.mIncluded) {
+            mCallback.onInserted(node.mSnapshot, index);
+        } else {
+            mCallback.onRemoved(node.mSnapshot, index);
+        }
+    }
+
+    /**
+     * A snapshot was inserted into the source at the given index.
+     */
+    public void onSourceAdded(@NonNull S snapshot, @NonNull T model, int sourceIndex) {
+        Node<S, T> node = newNode(snapshot, model);
+        if (mComparator == null) {
+            int index = insertAt(node, sourceIndex);
+            if (node.mIncluded) {
+                mCallback.onInserted(snapshot, index);
+            }
+        } else if (node.mIncluded) {
+            mCallback.onInserted(snapshot, insertSorted(node));
+        } else {
+            mExcluded.put(node.mKey, node);
+        }
+    }
+
+    /**
+     * The given snapshot was removed from the source at the given index.
+     */
+    public void onSourceRemoved(@NonNull S snapshot, int sourceIndex) {
+        if (mComparator == null) {
+            Node<S, T> node = removeAt(sourceIndex);
+            if (node.mIncluded) {
+                mCallback.onRemoved(node.mSnapshot, mRemovedIndex);
+            }
+        } else {
+            String key = getKey(snapshot);
+            Node<S, T> node = mNodes.get(key);
+            if (node != null) {
+                mCallback.onRemoved(node.mSnapshot, removeSorted(node));
+            } else {
+                mExcluded.remove(key);
+            }
+        }
+    }
+
+    /**
+     * A snapshot moved in the source, and its content changed if {@code changed} is true.
+     */
+    public void onSourceMoved(@NonNull S snapshot,
+                              @NonNull T model,
+                              int fromIndex,
+                              int toIndex,
+                              boolean changed) {
+        if (mComparator != null) {
+            // Source order doesn't matter, but the content may have changed along with the order
+            update(ChangeEventType.CHANGED, snapshot, model, -1, changed);
+            return;
+        }
+
+        Node<S, T> old = removeAt(fromIndex);
+        int from = mRemovedIndex;
+        Node<S, T> node = newNode(snapshot, model);
+        int to = insertAt(node, toIndex);
+        dispatch(ChangeEventType.CHANGED, old.mIncluded, from, node, to, changed);
+    }
+
+    /**
+     * The content of the snapshot at the given source index changed.
+     *
+     * @param type {@link ChangeEventType#CHANGED} or {@link ChangeEventType#METADATA_CHANGED}.
+     */
+    public void onSourceChanged(@NonNull ChangeEventType type,
+                                @NonNull S snapshot,
+                                @NonNull T model,
+                                int sourceIndex) {
+        update(type, snapshot, model, sourceIndex, true);
+    }
+
+    private void update(@NonNull ChangeEventType type,
+                        @NonNull S snapshot,
+                        @NonNull T model,
+                        int sourceIndex,
+                        boolean changed) {
+        Node<S, T> node = newNode(snapshot, model);
+        if (mComparator == null) {
+            Node<S, T> old = removeAt(sourceIndex);
+            int from = mRemovedIndex;
+            int to = insertAt(node, sourceIndex);
+            dispatch(type, old.mIncluded, from, node, to, changed);
+        } else {
+            Node<S, T> old = mNodes.get(node.mKey);
+            int from = old == null ? -1 : removeSorted(old);
+            mExcluded.remove(node.mKey);
+            int to = -1;
+            if (node.mIncluded) {
+                to = insertSorted(node);
+            } else {
+                mExcluded.put(node.mKey, node);
+            }
+            dispatch(type, old != null, from, node, to, changed);
+        }
+    }
+
+    private void dispatch(@NonNull ChangeEventType type,
+                          boolean wasIncluded,
+                          int from,
+                          @NonNull Node<S, T> node,
+                          int to,
+                          boolean changed) {
+        if (wasIncluded && node.mIncluded) {
+            if (from != to) {
+                mCallback.onMoved(node.mSnapshot, from, to);
+            }
+            if (changed) {
+                mCallback.onChanged(type, node.mSnapshot, to);
+            }
+        } else if (wasIncluded) {
+            mCallback.onRemoved(node.mSnapshot, from);
+        } else if (node.mIncluded) {
+            mCallback.onInserted(node.mSnapshot, to);
+        }
+    }
+
+    @NonNull
+    private Node<S, T> newNode(@NonNull S snapshot, @NonNull T model) {
+        boolean included = include(snapshot, model);
+        return new Node<>(snapshot, model, getKey(snapshot), included, mRandom.nextInt());
+    }
+
+    @NonNull
+    private Node<S, T> nodeAt(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+        }
+
+        Node<S, T> node = mRoot;
+        while (true) {
+            int left = included(node.mLeft);
+            if (index < left) {
+                node = node.mLeft;
+            } else if (index == left && node.mIncluded) {
+                return node;
+            } else {
+                index -= left + (node.mIncluded ? 1 : 0);
+                node = node.mRight;
+            }
+        }
+    }
+
+    /**
+     * Change whether the node at the given source position is included.
+     */
+    private void setIncluded(int position, boolean included) {
+        int delta = included ? 1 : -1;
+        Node<S, T> node = mRoot;
+        while (true) {
+            node.mIncludedCount += delta;
+            int left = size(node.mLeft);
+            if (position < left) {
+                node = node.mLeft;
+            } else if (position == left) {
+                node.mIncluded = included;
+                return;
+            } else {
+                position -= left + 1;
+                node = node.mRight;
+            }
+        }
+    }
+
+    /**
+     * Add the nodes of a treap to the given list, in order.
+     */
+    private static <S, T> void collect(@Nullable Node<S, T> root, @NonNull List<Node<S, T>> out) {
+        if (root != null) {
+            collect(root.mLeft, out);
+            out.add(root);
+            collect(root.mRight, out);
+        }
+    }
+
+    /**
+     * Insert a node at the given source position.
+     *
+     * @return the number of included items before the node.
+     */
+    private int insertAt(@NonNull Node<S, T> node, int position) {
+        splitAt(mRoot, position);
+        Node<S, T> left = mSplitLeft;
+        int index = included(left);
+        setRoot(merge(merge(left, node), mSplitRight));
+        mNodes.put(node.mKey, node);
+        return index;
+    }
+
+    /**
+     * Remove the node at the given source position, and store the number of included items
+     * before it in {@link #mRemovedIndex}.
+     */
+    @NonNull
+    private Node<S, T> removeAt(int position) {
+        splitAt(mRoot, position);
+        Node<S, T> left = mSplitLeft;
+        mRemovedIndex = included(left);
+        splitAt(mSplitRight, 1);
+        Node<S, T> node = mSplitLeft;
+        setRoot(merge(left, mSplitRight));
+        if (mNodes.get(node.mKey) == node) {
+            mNodes.remove(node.mKey);
+        }
+        return node;
+    }
+
+    /**
+     * @return the index of the inserted node.
+     */
+    private int insertSorted(@NonNull Node<S, T> node) {
+        splitBefore(mRoot, node);
+        Node<S, T> left = mSplitLeft;
+        int index = size(left);
+        setRoot(merge(merge(left, node), mSplitRight));
+        mNodes.put(node.mKey, node);
+        return index;
+    }
+
+    /**
+     * @return the index the node was removed from.
+     */
+    private int removeSorted(@NonNull Node<S, T> node) {
+        splitBefore(mRoot, node);
+        Node<S, T> left = mSplitLeft;
+        int index = size(left);
+        splitAt(mSplitRight, 1);
+        setRoot(merge(left, mSplitRight));
+        mNodes.remove(node.mKey);
+        return index;
+    }
+
+    private void setRoot(@Nullable Node<S, T> root) {
+        mRoot = root;
+        if (root != null) {
+            root.mParent = null;
+        }
+    }
+
+    private int compare(@NonNull Node<S, T> a, @NonNull Node<S, T> b) {
+        int result = mComparator.compare(a.mModel, b.mModel);
+        return result != 0 ? result : a.mKey.compareTo(b.mKey);
+    }
+
+    /**
+     * Split a treap into its first {@code count} nodes and the rest.
+     */
+    private void splitAt(@Nullable Node<S, T> root, int count) {
+        if (root == null) {
+            mSplitLeft = null;
+            mSplitRight = null;
+        } else if (size(root.mLeft) < count) {
+            splitAt(root.mRight, count - size(root.mLeft) - 1);
+            root.setRight(mSplitLeft);
+            mSplitLeft = root;
+        } else {
+            splitAt(root.mLeft, count);
+            root.setLeft(mSplitRight);
+            mSplitRight = root;
+        }
+    }
+
+    /**
+     * Split a sorted treap into the nodes ordered before the given node and the rest.
+     */
+    private void splitBefore(@Nullable Node<S, T> root, @NonNull Node<S, T> node) {
+        if (root == null) {
+            mSplitLeft = null;
+            mSplitRight = null;
+        } else if (compare(root, node) < 0) {
+            splitBefore(root.mRight, node);
+            root.setRight(mSplitLeft);
+            mSplitLeft = root;
+        } else {
+            splitBefore(root.mLeft, node);
+            root.setLeft(mSplitRight);
+            mSplitRight = root;
+        }
+    }
+
+    @Nullable
+    private static <S, T> Node<S, T> merge(@Nullable Node<S, T> a, @Nullable Node<S, T> b) {
+        if (a == null) {
+            return b;
+        } else if (b == null) {
+            return a;
+        } else if (a.mPriority > b.mPriority) {
+            a.setRight(merge(a.mRight, b));
+            return a;
+        } else {
+            b.setLeft(merge(a, b.mLeft));
+            return b;
+        }
+    }
+
+    private static int size(@Nullable Node<?, ?> node) {
+        return node == null ? 0 : node.mSize;
+    }
+
+    private static int included(@Nullable Node<?, ?> node) {
+        return node == null ? 0 : node.mIncludedCount;
+    }
+
+    private static final class Node<S, T> {
+        final S mSnapshot;
+        final T mModel;
+        final String mKey;
+        final int mPriority;
+
+        boolean mIncluded;
+
+        Node<S, T> mLeft;
+        Node<S, T> mRight;
+        Node<S, T> mParent;
+        int mSize;
+        int mIncludedCount;
+
+        Node(S snapshot, T model, String key, boolean included, int priority) {
+            mSnapshot = snapshot;
+            mModel = model;
+            mKey = key;
+            mIncluded = included;
+            mPriority = priority;
+            update();
+        }
+
+        void setLeft(@Nullable Node<S, T> left) {
+            mLeft = left;
+            if (left != null) {
+                left.mParent = this;
+            }
+            update();
+        }
+
+        void setRight(@Nullable Node<S, T> right) {
+            mRight = right;
+            if (right != null) {
+                right.mParent = this;
+            }
+            update();
+        }
+
+        void update() {
+            mSize = 1 + size(mLeft) + size(mRight);
+            mIncludedCount = (mIncluded ? 1 : 0) + included(mLeft) + included(mRight);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.firebase.ui.common;
+
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+
+/**
+ * Implementation of {@link BaseSnapshotParser} that caches results for snapshots which are
+ * replaced rather than updated, such as the items of a page loaded by the Paging library.
+ * <p>
+ * A cached model is only returned for the exact snapshot instance it was parsed from, so when a
+ * snapshot is replaced by a newer one with the same ID, the new snapshot is parsed again.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+public abstract class BaseIdentityCachingSnapshotParser<S, T> implements BaseSnapshotParser<S, T> {
+
+    private static final int MAX_CACHE_SIZE = 100;
+
+    private final LruCache<String, Entry<S, T>> mObjectCache = new LruCache<>(MAX_CACHE_SIZE);
+    private final BaseSnapshotParser<S, T> mParser;
+
+    public BaseIdentityCachingSnapshotParser(@NonNull BaseSnapshotParser<S, T> parser) {
+        mParser = parser;
+    }
+
+    /**
+     * Get a unique identifier for a snapshot, should not depend on snapshot content.
+     */
+    @NonNull
+    public abstract String getId(@NonNull S snapshot);
+
+    @NonNull
+    @Override
+    public T parseSnapshot(@NonNull S snapshot) {
+        String id = getId(snapshot);
+        Entry<S, T> entry = mObjectCache.get(id);
+        if (entry == null || entry.mSnapshot != snapshot) {
+            entry = new Entry<>(snapshot, mParser.parseSnapshot(snapshot));
+            mObjectCache.put(id, entry);
+        }
+        return entry.mModel;
+    }
+
+    /**
+     * Clear all data in the cache.
+     */
+    public void clear() {
+        mObjectCache.evictAll();
+    }
+
+    private static final class Entry<S, T> {
+        final S mSnapshot;
+        final T mModel;
+
+        Entry(S snapshot, T model) {
+            mSnapshot = snapshot;
+            mModel = model;
+        }
+    }
+}
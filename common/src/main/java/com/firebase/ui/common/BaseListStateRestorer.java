@@ -0,0 +1,251 @@
+package com.firebase.ui.common;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Shows the items persisted by a {@link ListStateStore} in an adapter until its snapshot array
+ * has loaded, then dispatches the difference between the persisted and live items.
+ * <p>
+ * While persisted items are shown, the adapter must take its item count and models from this
+ * class and ignore the array's child events. Reconciling copies the leading snapshots on the main
+ * thread, then parses the ones not cached yet and diffs them against the persisted items on a
+ * background executor, so the array's parser must be safe to call from that executor. If the
+ * array changes meanwhile, the result is discarded and reconciling starts over. An error from the
+ * array discards the persisted items.
+ *
+ * @param <S> the snapshot class.
+ * @param <E> the error type raised for the listener.
+ * @param <T> the model object class.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+@MainThread
+public abstract class BaseListStateRestorer<S, E, T>
+        implements BaseChangeEventListener<S, E>, ListStateStore.OnLoadedListener<T> {
+
+    private static final Executor DEFAULT_EXECUTOR = new SerialExecutor("FirebaseUI-restore");
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final ListStateStore<T> mStore;
+    private final BaseObservableSnapshotArray<S, E, ?, T> mArray;
+    private final RecyclerView.Adapter<?> mAdapter;
+    private final Executor mExecutor;
+
+    private List<ListStateStore.Item<T>> mRestored;
+    private int mGeneration;
+    private boolean mLoaded;
+    private boolean mReconciling;
+    private boolean mDone;
+
+    public BaseListStateRestorer(@NonNull ListStateStore<T> store,
+                                 @NonNull BaseObservableSnapshotArray<S, E, ?, T> array,
+                                 @NonNull RecyclerView.Adapter<?> adapter) {
+        this(store, array, adapter, DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * @param executor the executor to parse and diff on when reconciling.
+     */
+    public BaseListStateRestorer(@NonNull ListStateStore<T> store,
+                                 @NonNull BaseObservableSnapshotArray<S, E, ?, T> array,
+                                 @NonNull RecyclerView.Adapter<?> adapter,
+                                 @NonNull Executor executor) {
+        mStore = Preconditions.checkNotNull(store);
+        mArray = Preconditions.checkNotNull(array);
+        mAdapter = Preconditions.checkNotNull(adapter);
+        mExecutor = Preconditions.checkNotNull(executor);
+    }
+
+    /**
+     * Start listening to the array. Called once, from {@link #start()}. Must be registered before
+     * the adapter, so that the adapter's {@code onDataChanged} comes after reconciling has
+     * started.
+     */
+    protected abstract void onStart();
+
+    /**
+     * Stop listening to the array. Called once, when the persisted items have been reconciled or
+     * discarded.
+     */
+    protected abstract void onStop();
+
+    /**
+     * @return true while persisted items are shown instead of the array's items.
+     */
+    public boolean isShowingRestoredItems() {
+        return mRestored != null;
+    }
+
+    /**
+     * @return the number of persisted items shown.
+     * @throws IllegalStateException if no persisted items are shown.
+     */
+    public int getRestoredCount() {
+        return getRestored().size();
+    }
+
+    /**
+     * @return the persisted item shown at the given position.
+     * @throws IllegalStateException if no persisted items are shown.
+     */
+    @NonNull
+    public ListStateStore.Item<T> getRestoredItem(int position) {
+        return getRestored().get(position);
+    }
+
+    @NonNull
+    private List<ListStateStore.Item<T>> getRestored() {
+        if (mRestored == null) {
+            throw new IllegalStateException("No restored items are shown");
+        }
+        return mRestored;
+    }
+
+    /**
+     * Start listening to the array and load the persisted items, unless the array has already
+     * loaded.
+     */
+    public final void start() {
+        // Replays onDataChanged right away if the array has already loaded
+        onStart();
+        if (!mLoaded && !mDone) {
+            mStore.load(this);
+        }
+    }
+
+    /**
+     * Stop listening to the array and discard the persisted items if they are still shown.
+     */
+    public final void stop() {
+        if (mDone) {
+            return;
+        }
+        mDone = true;
+
+        boolean wasShowing = mRestored != null;
+        mRestored = null;
+        onStop();
+        if (wasShowing) {
+            mAdapter.notifyDataSetChanged();
+        }
+    }
+
+    @Override
+    public void onLoaded(@NonNull List<ListStateStore.Item<T>> items) {
+        if (mDone || mLoaded || mArray.size() != 0) {
+            return;
+        }
+
+        mRestored = items;
+        mAdapter.notifyItemRangeInserted(0, items.size());
+    }
+
+    @Override
+    public void onChildChanged(@NonNull ChangeEventType type,
+                               @NonNull S snapshot,
+                               int newIndex,
+                               int oldIndex) {
+        mGeneration++;
+    }
+
+    @Override
+    public void onDataChanged() {
+        mGeneration++;
+        mLoaded = true;
+        if (mRestored == null) {
+            stop();
+        } else if (!mReconciling) {
+            reconcile();
+        }
+    }
+
+    @Override
+    public void onError(@NonNull E e) {
+        stop();
+    }
+
+    private void reconcile() {
+        mReconciling = true;
+        final int generation = mGeneration;
+        final List<ListStateStore.Item<T>> restored = mRestored;
+
+        // Only the persisted items can match, so diff against a bounded prefix of the live items
+        // and insert the rest in one go.
+        final int size = mArray.size();
+        final int prefix = Math.min(size, restored.size() * 2);
+        final List<S> snapshots = new ArrayList<>(prefix);
+        final List<T> models = new ArrayList<>(prefix);
+        final boolean[] cached = new boolean[prefix];
+        for (int i = 0; i < prefix; i++) {
+            S snapshot = mArray.getSnapshot(i);
+            cached[i] = mArray.isModelCached(snapshot);
+            snapshots.add(snapshot);
+            models.add(cached[i] ? mArray.parseSnapshot(snapshot) : null);
+        }
+
+        mExecutor.execute(() -> {
+            for (int i = 0; i < prefix; i++) {
+                if (!cached[i]) {
+                    models.set(i, mArray.parseUncachedModel(snapshots.get(i)));
+                }
+            }
+            final DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return restored.size();
+                }
+
+                @Override
+                public int getNewListSize() {
+                    return prefix;
+                }
+
+                @Override
+                public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+                    return restored.get(oldItemPosition).getKey()
+                            .equals(mArray.getSnapshotKey(snapshots.get(newItemPosition)));
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+                    return restored.get(oldItemPosition).getModel()
+                            .equals(models.get(newItemPosition));
+                }
+            });
+
+            mMainHandler.post(() -> {
+                mReconciling = false;
+                if (mDone) {
+                    return;
+                }
+                if (generation != mGeneration) {
+                    // The array changed while reconciling, try again
+                    reconcile();
+                    return;
+                }
+
+                for (int i = 0; i < prefix; i++) {
+                    if (!cached[i]) {
+                        mArray.cacheParsedModel(snapshots.get(i), models.get(i));
+                    }
+                }
+                mRestored = null;
+                result.dispatchUpdatesTo(mAdapter);
+                if (size > prefix) {
+                    mAdapter.notifyItemRangeInserted(prefix, size - prefix);
+                }
+                stop();
+            });
+        });
+    }
+}
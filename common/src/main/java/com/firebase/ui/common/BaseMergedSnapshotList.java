@@ -0,0 +1,198 @@
+package com.firebase.ui.common;
+
+import java.util.AbstractList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+
+/**
+ * Sorted merge of the snapshots of several source arrays, maintained incrementally from the
+ * sources' child events.
+ * <p>
+ * Items are deduplicated by key: an item held by several sources appears once, using the copy of
+ * the lowest-numbered source that holds it. The merged order is kept in a {@link
+ * BaseDerivedSnapshotList}, so each source event costs O(log n) and is reported through its
+ * {@link BaseDerivedSnapshotList.Callback} with indices in the merged list.
+ * <p>
+ * Not thread safe, use from the main thread only.
+ *
+ * @param <S> the snapshot class.
+ * @param <T> the model object class.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+public abstract class BaseMergedSnapshotList<S, T> extends AbstractList<S> {
+
+    private final int mSourceCount;
+    private final BaseDerivedSnapshotList<S, T> mMerged;
+    private final Map<String, Copies> mCopies = new HashMap<>();
+
+    public BaseMergedSnapshotList(int sourceCount,
+                                  @NonNull Comparator<T> comparator,
+                                  @NonNull BaseDerivedSnapshotList.Callback<S> callback) {
+        mSourceCount = sourceCount;
+        mMerged = new BaseDerivedSnapshotList<S, T>(null, comparator, callback) {
+            @NonNull
+            @Override
+            public String getKey(@NonNull S snapshot) {
+                return BaseMergedSnapshotList.this.getKey(snapshot);
+            }
+        };
+    }
+
+    /**
+     * Get a unique identifier for a snapshot, should not depend on snapshot content. Snapshots
+     * with the same key in different sources are considered the same item.
+     */
+    @NonNull
+    public abstract String getKey(@NonNull S snapshot);
+
+    @NonNull
+    @Override
+    public S get(int index) {
+        return mMerged.get(index);
+    }
+
+    /**
+     * @return the model of the item at the given index in the merged list.
+     */
+    @NonNull
+    public T getModel(int index) {
+        return mMerged.getModel(index);
+    }
+
+    @Override
+    public int size() {
+        return mMerged.size();
+    }
+
+    @Override
+    public void clear() {
+        mMerged.clear();
+        mCopies.clear();
+    }
+
+    /**
+     * A snapshot was added to the given source.
+     */
+    public void onSourceAdded(int source, @NonNull S snapshot, @NonNull T model) {
+        String key = getKey(snapshot);
+        Copies copies = mCopies.get(key);
+        if (copies == null) {
+            copies = new Copies(mSourceCount);
+            mCopies.put(key, copies);
+            copies.set(source, snapshot, model);
+            mMerged.onSourceAdded(snapshot, model, -1);
+            return;
+        }
+
+        int shown = copies.shown();
+        copies.set(source, snapshot, model);
+        if (source < shown) {
+            mMerged.onSourceChanged(ChangeEventType.CHANGED, snapshot, model, -1);
+        }
+    }
+
+    /**
+     * A snapshot was removed from the given source.
+     */
+    public void onSourceRemoved(int source, @NonNull S snapshot) {
+        String key = getKey(snapshot);
+        Copies copies = mCopies.get(key);
+        if (copies == null) {
+            return;
+        }
+
+        int shown = copies.shown();
+        copies.set(source, null, null);
+        int next = copies.shown();
+        if (next == -1) {
+            mCopies.remove(key);
+            mMerged.onSourceRemoved(snapshot, -1);
+        } else if (next != shown) {
+            mMerged.onSourceChanged(ChangeEventType.CHANGED,
+                    copies.snapshot(next), copies.model(next), -1);
+        }
+    }
+
+    /**
+     * A snapshot moved within the given source, and its content changed if {@code changed} is
+     * true. Only the content matters for the merged order.
+     */
+    public void onSourceMoved(int source,
+                              @NonNull S snapshot,
+                              @NonNull T model,
+                              boolean changed) {
+        Copies copies = mCopies.get(getKey(snapshot));
+        if (copies == null) {
+            return;
+        }
+
+        copies.set(source, snapshot, model);
+        if (copies.shown() == source) {
+            mMerged.onSourceMoved(snapshot, model, -1, -1, changed);
+        }
+    }
+
+    /**
+     * The content of a snapshot in the given source changed.
+     *
+     * @param type {@link ChangeEventType#CHANGED} or {@link ChangeEventType#METADATA_CHANGED}.
+     */
+    public void onSourceChanged(int source,
+                                @NonNull ChangeEventType type,
+                                @NonNull S snapshot,
+                                @NonNull T model) {
+        Copies copies = mCopies.get(getKey(snapshot));
+        if (copies == null) {
+            return;
+        }
+
+        copies.set(source, snapshot, model);
+        if (copies.shown() == source) {
+            mMerged.onSourceChanged(type, snapshot, model, -1);
+        }
+    }
+
+    /**
+     * The copies of one item across all sources, indexed by source.
+     */
+    private final class Copies {
+        private final Object[] mSnapshots;
+        private final Object[] mModels;
+
+        Copies(int sourceCount) {
+            mSnapshots = new Object[sourceCount];
+            mModels = new Object[sourceCount];
+        }
+
+        void set(int source, S snapshot, T model) {
+            mSnapshots[source] = snapshot;
+            mModels[source] = model;
+        }
+
+        /**
+         * @return the lowest source holding the item, or -1 if none does.
+         */
+        int shown() {
+            for (int i = 0; i < mSnapshots.length; i++) {
+                if (mSnapshots[i] != null) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @SuppressWarnings("unchecked")
+        S snapshot(int source) {
+            return (S) mSnapshots[source];
+        }
+
+        @SuppressWarnings("unchecked")
+        T model(int source) {
+            return (T) mModels[source];
+        }
+    }
+}
@@ -1,10 +1,22 @@
 package com.firebase.ui.common;
 
+import android.content.ComponentCallbacks2;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
 import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
 import androidx.annotation.CallSuper;
+import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 
 /**
@@ -19,9 +31,15 @@ import androidx.annotation.NonNull;
 public abstract class BaseObservableSnapshotArray<S, E, L extends BaseChangeEventListener<S, E>, T>
         extends AbstractList<T> {
 
+    private static final String TAG = "ObservableSnapshotArray";
+
     private final List<L> mListeners = new CopyOnWriteArrayList<>();
     private final BaseCachingSnapshotParser<S, T> mCachingParser;
 
+    /** Snapshots currently being parsed by {@link #prefetch(int, int, Executor)}. */
+    private final Set<S> mPrefetching = Collections.newSetFromMap(new IdentityHashMap<>());
+    private Handler mMainHandler;
+
     /**
      * True if there has been a "data changed" event since the array was created or last reset,
      * false otherwise.
@@ -57,6 +75,35 @@ public abstract class BaseObservableSnapshotArray<S, E, L extends BaseChangeEven
         return getSnapshots().size();
     }
 
+    /**
+     * Parse a snapshot of this array into a model, using the array's parser and cache.
+     */
+    @NonNull
+    public T parseSnapshot(@NonNull S snapshot) {
+        return mCachingParser.parseSnapshot(snapshot);
+    }
+
+    /**
+     * Get the key the parser cache uses for a snapshot.
+     */
+    @NonNull
+    String getSnapshotKey(@NonNull S snapshot) {
+        return mCachingParser.getId(snapshot);
+    }
+
+    boolean isModelCached(@NonNull S snapshot) {
+        return mCachingParser.isCached(snapshot);
+    }
+
+    /**
+     * Parse a snapshot without touching the cache, safe to call from a background thread if the
+     * parser is.
+     */
+    @NonNull
+    T parseUncachedModel(@NonNull S snapshot) {
+        return mCachingParser.parseUncached(snapshot);
+    }
+
     /**
      * Returns the snapshot at the specified position in this list.
      *
@@ -70,6 +117,90 @@ public abstract class BaseObservableSnapshotArray<S, E, L extends BaseChangeEven
         return getSnapshots().get(index);
     }
 
+    /**
+     * Parse the snapshots in the range {@code [fromIndex, toIndex)} that aren't cached yet on the
+     * given executor, so that a later {@link #get(int)} for those indices is a cache hit. Indices
+     * outside of the array are ignored.
+     * <p>
+     * Parsed models are added to the cache on the main thread, and only if the snapshot they were
+     * parsed from is still within the same range. The parser must be safe to call from the
+     * executor's threads.
+     */
+    @MainThread
+    public void prefetch(int fromIndex, int toIndex, @NonNull Executor executor) {
+        List<S> snapshots = getSnapshots();
+        final int start = Math.max(fromIndex, 0);
+        final int end = Math.min(toIndex, snapshots.size());
+
+        final List<S> pending = new ArrayList<>();
+        for (int i = start; i < end; i++) {
+            S snapshot = snapshots.get(i);
+            if (!mPrefetching.contains(snapshot) && !mCachingParser.isCached(snapshot)) {
+                mPrefetching.add(snapshot);
+                pending.add(snapshot);
+            }
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        if (mMainHandler == null) {
+            mMainHandler = new Handler(Looper.getMainLooper());
+        }
+        try {
+            executor.execute(() -> {
+                final List<T> models = new ArrayList<>(pending.size());
+                try {
+                    for (S snapshot : pending) {
+                        models.add(mCachingParser.parseUncached(snapshot));
+                    }
+                } catch (RuntimeException e) {
+                    // Keep the models parsed so far, the rest are parsed again when read, which
+                    // reports the failure on the main thread
+                    Log.w(TAG, "Failed to prefetch models", e);
+                }
+                mMainHandler.post(() -> onPrefetched(start, end, pending, models));
+            });
+        } catch (RejectedExecutionException e) {
+            mPrefetching.removeAll(pending);
+        }
+    }
+
+    /**
+     * @param models the models parsed from the leading snapshots, which may be fewer than the
+     *               snapshots if parsing failed.
+     */
+    private void onPrefetched(int start,
+                              int end,
+                              @NonNull List<S> snapshots,
+                              @NonNull List<T> models) {
+        List<S> current = getSnapshots();
+        for (int i = 0; i < snapshots.size(); i++) {
+            S snapshot = snapshots.get(i);
+            mPrefetching.remove(snapshot);
+            if (i >= models.size()) {
+                continue;
+            }
+
+            // Only trust the model if no change event has replaced the snapshot in the meantime.
+            // A snapshot that shifted out of the range is skipped too, to avoid an O(n) search.
+            int index = indexOf(current, snapshot, start, end);
+            if (index != -1) {
+                cacheParsedModel(snapshot, models.get(i));
+            }
+        }
+    }
+
+    private static <S> int indexOf(@NonNull List<S> snapshots, @NonNull S snapshot,
+                                   int fromIndex, int toIndex) {
+        for (int i = fromIndex; i < Math.min(toIndex, snapshots.size()); i++) {
+            if (snapshots.get(i) == snapshot) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     /**
      * Attach a {@link BaseChangeEventListener} to this array. The listener will receive one {@link
      * ChangeEventType#ADDED} event for each item that already exists in the array at the time of
@@ -130,7 +261,9 @@ public abstract class BaseObservableSnapshotArray<S, E, L extends BaseChangeEven
      * the Firebase database.
      */
     @CallSuper
-    protected void onCreate() {}
+    protected void onCreate() {
+        SnapshotMemoryTrimmer.register(this);
+    }
 
     /**
      * Called when the {@link BaseObservableSnapshotArray} is inactive and should stop listening to
@@ -140,11 +273,71 @@ public abstract class BaseObservableSnapshotArray<S, E, L extends BaseChangeEven
      */
     @CallSuper
     protected void onDestroy() {
+        SnapshotMemoryTrimmer.unregister(this);
         mHasDataChanged = false;
         getSnapshots().clear();
         mCachingParser.clear();
     }
 
+    /**
+     * Release memory in response to a {@link ComponentCallbacks2} trim level. Called by {@link
+     * SnapshotMemoryTrimmer} on the main thread while the array is listening, since inactive
+     * arrays hold no data.
+     * <p>
+     * Once the UI is hidden ({@link ComponentCallbacks2#TRIM_MEMORY_UI_HIDDEN}), the parser cache
+     * is halved and spare list capacity is released. Once the process is in the background ({@link
+     * ComponentCallbacks2#TRIM_MEMORY_BACKGROUND}), the parser cache is cleared since models can
+     * always be parsed again. Snapshots are kept, since they mirror the live query.
+     */
+    @CallSuper
+    @MainThread
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            mCachingParser.clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            mCachingParser.trimToSize(mCachingParser.size() / 2);
+        }
+
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            compact();
+        }
+    }
+
+    /**
+     * Release spare capacity of the lists backing this array. The default implementation trims
+     * the list returned by {@link #getSnapshots()} if it is an {@link ArrayList}.
+     */
+    @CallSuper
+    protected void compact() {
+        List<S> snapshots = getSnapshots();
+        if (snapshots instanceof ArrayList) {
+            ((ArrayList<S>) snapshots).trimToSize();
+        }
+    }
+
+    /**
+     * Estimate the heap retained by this array's snapshots, in bytes. Parsed models held in the
+     * parser cache are not included. Walks all snapshot data, so avoid calling this frequently.
+     */
+    @MainThread
+    public long getEstimatedRetainedSize() {
+        List<S> snapshots = getSnapshots();
+        long size = SizeEstimator.OBJECT_SIZE + SizeEstimator.REFERENCE_SIZE * snapshots.size();
+        for (S snapshot : snapshots) {
+            size += estimateSize(snapshot);
+        }
+        return size;
+    }
+
+    /**
+     * Estimate the heap retained by a single snapshot, in bytes.
+     *
+     * @see #getEstimatedRetainedSize()
+     */
+    protected long estimateSize(@NonNull S snapshot) {
+        return SizeEstimator.OBJECT_SIZE;
+    }
+
     /**
      * @return true if the array is listening for change events from the Firebase database, false
      * otherwise
@@ -172,15 +365,47 @@ public abstract class BaseObservableSnapshotArray<S, E, L extends BaseChangeEven
                                               @NonNull S snapshot,
                                               int newIndex,
                                               int oldIndex) {
-        if (type == ChangeEventType.CHANGED || type == ChangeEventType.REMOVED) {
-            mCachingParser.invalidate(snapshot);
-        }
+        invalidateIfChanged(type, snapshot);
 
         for (L listener : mListeners) {
             listener.onChildChanged(type, snapshot, newIndex, oldIndex);
         }
     }
 
+    /**
+     * Notify listeners of a content change along with the top-level fields that changed.
+     *
+     * @see BaseChangeEventListener#onChildChanged(ChangeEventType, Object, int, int, Set)
+     */
+    protected final void notifyOnChildChanged(@NonNull ChangeEventType type,
+                                              @NonNull S snapshot,
+                                              int newIndex,
+                                              int oldIndex,
+                                              @NonNull Set<String> changedFields) {
+        invalidateIfChanged(type, snapshot);
+
+        for (L listener : mListeners) {
+            listener.onChildChanged(type, snapshot, newIndex, oldIndex, changedFields);
+        }
+    }
+
+    private void invalidateIfChanged(@NonNull ChangeEventType type, @NonNull S snapshot) {
+        if (type == ChangeEventType.CHANGED
+                || type == ChangeEventType.MOVED_AND_CHANGED
+                || type == ChangeEventType.METADATA_CHANGED
+                || type == ChangeEventType.REMOVED) {
+            mCachingParser.invalidate(snapshot);
+        }
+    }
+
+    /**
+     * Seed the parser cache with a model that was parsed ahead of time. Must be called after the
+     * corresponding child event has been dispatched, since change events invalidate the cache.
+     */
+    protected final void cacheParsedModel(@NonNull S snapshot, @NonNull T model) {
+        mCachingParser.put(snapshot, model);
+    }
+
     protected final void notifyOnDataChanged() {
         mHasDataChanged = true;
 
@@ -23,6 +23,24 @@ public enum ChangeEventType {
     /**
      * An element in the array has new content, which caused a change in position.
      */
-    MOVED
+    MOVED,
+
+    /**
+     * An element in the array has new content, which caused a change in position. Unlike {@link
+     * #MOVED}, which is followed by a separate {@link #CHANGED} event, this single event covers
+     * both the move and the content change.
+     * <p>
+     * Only emitted by arrays that have been configured to combine move and change events.
+     */
+    MOVED_AND_CHANGED,
+
+    /**
+     * Only the metadata of an element in the array changed, such as its sync state. Its content
+     * and position are the same.
+     * <p>
+     * Only emitted by arrays that have been configured to report metadata-only changes
+     * separately, otherwise these are reported as {@link #CHANGED}.
+     */
+    METADATA_CHANGED
 
 }
@@ -0,0 +1,320 @@
+package com.firebase.ui.common;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Persists the last rendered items of a list to app-private storage, so that an adapter can show
+ * them immediately on a cold start while the live query is still loading.
+ * <p>
+ * Each store is identified by a name, which should be unique per query. Items are saved as their
+ * keys plus the models encoded with a {@link ModelCodec}. Only the first items of a list are
+ * saved, state older than the maximum age of the store that saved it is discarded, and the least
+ * recently saved lists are evicted once more than {@link #MAX_STORED_LISTS} lists exist.
+ *
+ * @param <T> the model object class.
+ */
+public class ListStateStore<T> {
+
+    public static final int DEFAULT_MAX_ITEMS = 50;
+    public static final long DEFAULT_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(7);
+
+    /** Maximum number of lists kept on disk across all stores. */
+    public static final int MAX_STORED_LISTS = 20;
+
+    /** Maximum size of the encoded models of a single list. */
+    public static final int MAX_LIST_BYTES = 256 * 1024;
+
+    private static final String TAG = "ListStateStore";
+    private static final String DIRECTORY = "firebaseui_list_state";
+    private static final int MAGIC = 0x46554c53;
+    private static final int VERSION = 2;
+
+    private static final Executor IO_EXECUTOR = new SerialExecutor("FirebaseUI-list-state");
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final File mDirectory;
+    private final String mName;
+    private final ModelCodec<T> mCodec;
+    private final int mMaxItems;
+    private final long mMaxAgeMillis;
+
+    /**
+     * Create a store that keeps up to {@link #DEFAULT_MAX_ITEMS} items for up to {@link
+     * #DEFAULT_MAX_AGE_MILLIS}.
+     *
+     * @see #ListStateStore(Context, String, ModelCodec, int, long)
+     */
+    public ListStateStore(@NonNull Context context,
+                          @NonNull String name,
+                          @NonNull ModelCodec<T> codec) {
+        this(context, name, codec, DEFAULT_MAX_ITEMS, DEFAULT_MAX_AGE_MILLIS);
+    }
+
+    /**
+     * @param name         identifies the list, should be unique per query.
+     * @param codec        the {@link ModelCodec} used to persist models.
+     * @param maxItems     the maximum number of leading items to persist.
+     * @param maxAgeMillis the age after which persisted state is discarded instead of shown.
+     */
+    public ListStateStore(@NonNull Context context,
+                          @NonNull String name,
+                          @NonNull ModelCodec<T> codec,
+                          int maxItems,
+                          long maxAgeMillis) {
+        mDirectory = new File(context.getApplicationContext().getFilesDir(), DIRECTORY);
+        mName = Preconditions.checkNotNull(name);
+        mCodec = Preconditions.checkNotNull(codec);
+        mMaxItems = maxItems;
+        mMaxAgeMillis = maxAgeMillis;
+    }
+
+    /**
+     * @return the maximum number of leading items to persist.
+     */
+    public int getMaxItems() {
+        return mMaxItems;
+    }
+
+    /**
+     * Read the persisted items on a background thread. The listener is called on the main thread,
+     * and only if fresh state exists.
+     */
+    @MainThread
+    public void load(@NonNull final OnLoadedListener<T> listener) {
+        IO_EXECUTOR.execute(() -> {
+            final List<Item<T>> items = read();
+            if (items != null && !items.isEmpty()) {
+                mMainHandler.post(() -> listener.onLoaded(items));
+            }
+        });
+    }
+
+    /**
+     * Persist the given items on a background thread, replacing any previous state. Items past
+     * {@link #getMaxItems()} are ignored.
+     *
+     * @param keys   the keys of the items, in display order.
+     * @param models the models of the items, parallel to {@code keys}.
+     */
+    @MainThread
+    public void save(@NonNull List<String> keys, @NonNull List<T> models) {
+        int count = Math.min(mMaxItems, Math.min(keys.size(), models.size()));
+        final List<String> keyCopy = new ArrayList<>(keys.subList(0, count));
+        final List<T> modelCopy = new ArrayList<>(models.subList(0, count));
+        IO_EXECUTOR.execute(() -> write(keyCopy, modelCopy));
+    }
+
+    /**
+     * Delete the persisted state of this list.
+     */
+    public void clear() {
+        IO_EXECUTOR.execute(() -> {
+            if (!getFile().delete()) {
+                Log.w(TAG, "Failed to delete list state: " + mName);
+            }
+        });
+    }
+
+    @NonNull
+    private File getFile() {
+        return new File(mDirectory, Integer.toHexString(mName.hashCode()));
+    }
+
+    @WorkerThread
+    private List<Item<T>> read() {
+        File file = getFile();
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !mName.equals(in.readUTF())) {
+                // Written by an incompatible version or for another list with the same hash
+                return null;
+            }
+
+            long savedAt = in.readLong();
+            in.readLong(); // The maximum age when saved, this store's own takes precedence
+            if (System.currentTimeMillis() - savedAt > mMaxAgeMillis) {
+                file.delete();
+                return null;
+            }
+
+            int count = in.readInt();
+            List<Item<T>> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                int length = in.readInt();
+                byte[] bytes = new byte[length];
+                in.readFully(bytes);
+                T model = mCodec.read(new DataInputStream(new ByteArrayInputStream(bytes)));
+                items.add(new Item<>(key, model));
+            }
+            return Collections.unmodifiableList(items);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Failed to read list state: " + mName, e);
+            file.delete();
+            return null;
+        }
+    }
+
+    @WorkerThread
+    private void write(@NonNull List<String> keys, @NonNull List<T> models) {
+        if (!mDirectory.exists() && !mDirectory.mkdirs()) {
+            Log.w(TAG, "Failed to create list state directory");
+            return;
+        }
+
+        File file = getFile();
+        File temp = new File(mDirectory, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream modelOut = new DataOutputStream(buffer);
+
+            // Encode models first so that the list can be cut off once it grows too large
+            List<byte[]> encoded = new ArrayList<>(models.size());
+            int total = 0;
+            for (T model : models) {
+                buffer.reset();
+                mCodec.write(model, modelOut);
+                modelOut.flush();
+                total += buffer.size();
+                if (total > MAX_LIST_BYTES) {
+                    break;
+                }
+                encoded.add(buffer.toByteArray());
+            }
+
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(mName);
+            out.writeLong(System.currentTimeMillis());
+            out.writeLong(mMaxAgeMillis);
+            out.writeInt(encoded.size());
+            for (int i = 0; i < encoded.size(); i++) {
+                out.writeUTF(keys.get(i));
+                out.writeInt(encoded.get(i).length);
+                out.write(encoded.get(i));
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Failed to write list state: " + mName, e);
+            temp.delete();
+            return;
+        }
+
+        if (!temp.renameTo(file)) {
+            Log.w(TAG, "Failed to save list state: " + mName);
+            temp.delete();
+            return;
+        }
+        evict();
+    }
+
+    /**
+     * Delete expired lists, then the least recently saved lists past {@link #MAX_STORED_LISTS}.
+     * Each list expires after the maximum age of the store that saved it, since other stores
+     * sharing the directory may keep their lists for longer than this one.
+     */
+    @WorkerThread
+    private void evict() {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        List<File> remaining = new ArrayList<>(files.length);
+        for (File file : files) {
+            if (now > readExpiry(file)) {
+                file.delete();
+            } else {
+                remaining.add(file);
+            }
+        }
+
+        if (remaining.size() > MAX_STORED_LISTS) {
+            File[] sorted = remaining.toArray(new File[0]);
+            Arrays.sort(sorted, (a, b) -> Long.compare(b.lastModified(), a.lastModified()));
+            for (int i = MAX_STORED_LISTS; i < sorted.length; i++) {
+                sorted[i].delete();
+            }
+        }
+    }
+
+    /**
+     * @return the time after which a list file expires, or 0 if it can't be read.
+     */
+    @WorkerThread
+    private static long readExpiry(@NonNull File file) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return 0;
+            }
+            in.readUTF();
+            long savedAt = in.readLong();
+            long maxAgeMillis = in.readLong();
+            return maxAgeMillis > Long.MAX_VALUE - savedAt ? Long.MAX_VALUE
+                    : savedAt + maxAgeMillis;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Receives the items read by {@link #load(OnLoadedListener)}.
+     */
+    public interface OnLoadedListener<T> {
+        @MainThread
+        void onLoaded(@NonNull List<Item<T>> items);
+    }
+
+    /**
+     * A persisted list item.
+     */
+    public static final class Item<T> {
+        private final String mKey;
+        private final T mModel;
+
+        Item(@NonNull String key, @NonNull T model) {
+            mKey = key;
+            mModel = model;
+        }
+
+        @NonNull
+        public String getKey() {
+            return mKey;
+        }
+
+        @NonNull
+        public T getModel() {
+            return mModel;
+        }
+    }
+}
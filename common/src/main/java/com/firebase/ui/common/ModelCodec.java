@@ -0,0 +1,29 @@
+package com.firebase.ui.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Converts model objects to and from a compact binary form, so that they can be persisted by a
+ * {@link ListStateStore}.
+ * <p>
+ * Implementations are called on a background thread.
+ *
+ * @param <T> the model object class.
+ */
+public interface ModelCodec<T> {
+
+    /**
+     * Write the given model to the output.
+     */
+    void write(@NonNull T model, @NonNull DataOutput out) throws IOException;
+
+    /**
+     * Read a model previously written by {@link #write(Object, DataOutput)}.
+     */
+    @NonNull
+    T read(@NonNull DataInput in) throws IOException;
+}
@@ -0,0 +1,16 @@
+package com.firebase.ui.common;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Decides which model objects are included in a derived snapshot array.
+ *
+ * @param <T> the model object class.
+ */
+public interface ModelFilter<T> {
+
+    /**
+     * @return true if the model should be included, false otherwise.
+     */
+    boolean include(@NonNull T model);
+}
@@ -0,0 +1,85 @@
+package com.firebase.ui.common;
+
+import java.util.concurrent.Executor;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * {@link RecyclerView.OnScrollListener} that parses the models of items about to scroll into view
+ * on a background executor, so that binding them during a fling hits the parser cache instead of
+ * deserializing inside the frame.
+ * <p>
+ * Looks ahead of the visible range in the current scroll direction by at least one screen, or by
+ * the configured prefetch count if that is larger. Requires a {@link LinearLayoutManager} (which
+ * includes {@code GridLayoutManager}), and an adapter whose positions match the indices of the
+ * snapshot array, such as the real-time recycler adapters:
+ * <pre>{@code
+ * recyclerView.addOnScrollListener(new ParsePrefetcher(adapter.getSnapshots(), executor));
+ * }</pre>
+ * A prefetcher is bound to a single array, so replace it after calling {@code updateOptions} on the
+ * adapter.
+ */
+public class ParsePrefetcher extends RecyclerView.OnScrollListener {
+
+    public static final int DEFAULT_PREFETCH_COUNT = 10;
+
+    private final BaseObservableSnapshotArray<?, ?, ?, ?> mSnapshots;
+    private final Executor mExecutor;
+    private final int mPrefetchCount;
+
+    private boolean mForward = true;
+
+    /**
+     * Create a prefetcher that looks {@link #DEFAULT_PREFETCH_COUNT} items ahead.
+     *
+     * @see #ParsePrefetcher(BaseObservableSnapshotArray, Executor, int)
+     */
+    public ParsePrefetcher(@NonNull BaseObservableSnapshotArray<?, ?, ?, ?> snapshots,
+                           @NonNull Executor executor) {
+        this(snapshots, executor, DEFAULT_PREFETCH_COUNT);
+    }
+
+    /**
+     * @param snapshots     the array backing the adapter.
+     * @param executor      the executor to parse snapshots on. The array's parser must be safe to
+     *                      call from its threads.
+     * @param prefetchCount the minimum number of items to parse ahead of the visible range.
+     */
+    public ParsePrefetcher(@NonNull BaseObservableSnapshotArray<?, ?, ?, ?> snapshots,
+                           @NonNull Executor executor,
+                           int prefetchCount) {
+        mSnapshots = Preconditions.checkNotNull(snapshots);
+        mExecutor = Preconditions.checkNotNull(executor);
+        mPrefetchCount = prefetchCount;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        RecyclerView.LayoutManager manager = recyclerView.getLayoutManager();
+        if (!(manager instanceof LinearLayoutManager)) {
+            return;
+        }
+
+        LinearLayoutManager layout = (LinearLayoutManager) manager;
+        int first = layout.findFirstVisibleItemPosition();
+        int last = layout.findLastVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) {
+            return;
+        }
+
+        // Layout passes report a scroll of 0, in which case keep the last known direction
+        int delta = layout.canScrollVertically() ? dy : dx;
+        if (delta != 0) {
+            mForward = (delta > 0) != layout.getReverseLayout();
+        }
+
+        int count = Math.max(mPrefetchCount, last - first + 1);
+        if (mForward) {
+            mSnapshots.prefetch(last + 1, last + 1 + count, mExecutor);
+        } else {
+            mSnapshots.prefetch(first - count, first, mExecutor);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+package com.firebase.ui.common;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+
+/**
+ * Inverted index from the tokens of each model's text to the keys of the models containing them,
+ * maintained incrementally as models are added, changed and removed.
+ * <p>
+ * Text is split into tokens at anything other than a letter or digit, lower cased and stripped of
+ * diacritics. A query matches a model if every token of the query is a prefix of one of the
+ * model's tokens. Tokens are kept sorted, so resolving a query only walks the tokens starting with
+ * each query token rather than every model. The keys matching the current query are kept up to
+ * date as models change, so {@link #matches(String)} is a single lookup. Not thread safe, use
+ * from the main thread only.
+ *
+ * @param <T> the model object class.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+@MainThread
+public final class SearchIndex<T> {
+
+    private static final String[] NO_TOKENS = new String[0];
+
+    private final List<TextExtractor<T>> mExtractors;
+
+    /** Keys of the models containing each token. */
+    private final TreeMap<String, Set<String>> mPostings = new TreeMap<>();
+
+    /** Tokens of each model, to update the postings when it changes. */
+    private final Map<String, String[]> mTokens = new HashMap<>();
+
+    private String mQuery = "";
+    private String[] mQueryTokens = NO_TOKENS;
+    private Set<String> mMatches = new HashSet<>();
+
+    public SearchIndex(@NonNull List<TextExtractor<T>> extractors) {
+        mExtractors = new ArrayList<>(extractors);
+    }
+
+    /**
+     * Index a new model, or re-index a model whose content changed.
+     */
+    public void put(@NonNull String key, @NonNull T model) {
+        String[] tokens = tokenize(model);
+        String[] old = mTokens.put(key, tokens);
+        if (old != null && Arrays.equals(old, tokens)) {
+            return;
+        }
+
+        if (old != null) {
+            removePostings(key, old);
+        }
+        for (String token : tokens) {
+            Set<String> keys = mPostings.get(token);
+            if (keys == null) {
+                keys = new HashSet<>();
+                mPostings.put(token, keys);
+            }
+            keys.add(key);
+        }
+
+        if (matchesQuery(tokens)) {
+            mMatches.add(key);
+        } else {
+            mMatches.remove(key);
+        }
+    }
+
+    /**
+     * Remove a model from the index.
+     */
+    public void remove(@NonNull String key) {
+        String[] tokens = mTokens.remove(key);
+        if (tokens != null) {
+            removePostings(key, tokens);
+            mMatches.remove(key);
+        }
+    }
+
+    /**
+     * Remove all models from the index, keeping the query.
+     */
+    public void clear() {
+        mPostings.clear();
+        mTokens.clear();
+        mMatches.clear();
+    }
+
+    @NonNull
+    public String getQuery() {
+        return mQuery;
+    }
+
+    /**
+     * Change the query and resolve the keys matching it.
+     *
+     * @return true if the query tokens changed.
+     */
+    public boolean setQuery(@Nullable String query) {
+        return setQuery(query, null);
+    }
+
+    /**
+     * Change the query and resolve the keys matching it.
+     *
+     * @param changedKeys if non-null, receives the keys of the models that started or stopped
+     *                    matching. Only costs time proportional to the matches of the old and new
+     *                    query, unless one of them is empty and every model matches.
+     * @return true if the query tokens changed.
+     */
+    public boolean setQuery(@Nullable String query, @Nullable Collection<String> changedKeys) {
+        mQuery = query == null ? "" : query;
+        String[] tokens = normalizeQuery(tokenize(mQuery));
+        if (Arrays.equals(tokens, mQueryTokens)) {
+            return false;
+        }
+
+        boolean matchedAll = mQueryTokens.length == 0;
+        Set<String> previous = mMatches;
+        mQueryTokens = tokens;
+        mMatches = resolve(tokens);
+        if (changedKeys == null) {
+            return true;
+        }
+
+        if (matchedAll) {
+            addMissing(mTokens.keySet(), mMatches, changedKeys);
+        } else if (tokens.length == 0) {
+            addMissing(mTokens.keySet(), previous, changedKeys);
+        } else {
+            addMissing(previous, mMatches, changedKeys);
+            addMissing(mMatches, previous, changedKeys);
+        }
+        return true;
+    }
+
+    /**
+     * @return the keys matching the given query tokens, or none if there are no tokens.
+     */
+    @NonNull
+    private Set<String> resolve(@NonNull String[] tokens) {
+        Set<String> matches = new HashSet<>();
+        if (tokens.length == 0) {
+            return matches;
+        }
+
+        // Start from the narrowest token to keep the intersections small
+        List<Set<String>> candidates = new ArrayList<>(tokens.length);
+        for (String token : tokens) {
+            Set<String> keys = getKeysWithPrefix(token);
+            if (keys.isEmpty()) {
+                return matches;
+            }
+            candidates.add(keys);
+        }
+        Collections.sort(candidates, (a, b) -> Integer.compare(a.size(), b.size()));
+
+        matches.addAll(candidates.get(0));
+        for (int i = 1; i < candidates.size() && !matches.isEmpty(); i++) {
+            matches.retainAll(candidates.get(i));
+        }
+        return matches;
+    }
+
+    private static void addMissing(@NonNull Set<String> keys,
+                                   @NonNull Set<String> other,
+                                   @NonNull Collection<String> out) {
+        for (String key : keys) {
+            if (!other.contains(key)) {
+                out.add(key);
+            }
+        }
+    }
+
+    /**
+     * @return true if the model with the given key matches the query. Every model matches an
+     * empty query.
+     */
+    public boolean matches(@NonNull String key) {
+        return mQueryTokens.length == 0 || mMatches.contains(key);
+    }
+
+    @NonNull
+    private Set<String> getKeysWithPrefix(@NonNull String prefix) {
+        Collection<Set<String>> postings = mPostings
+                .subMap(prefix, true, prefix + Character.MAX_VALUE, false)
+                .values();
+        if (postings.size() == 1) {
+            return postings.iterator().next();
+        }
+
+        Set<String> keys = new HashSet<>();
+        for (Set<String> posting : postings) {
+            keys.addAll(posting);
+        }
+        return keys;
+    }
+
+    private boolean matchesQuery(@NonNull String[] tokens) {
+        for (String prefix : mQueryTokens) {
+            boolean found = false;
+            for (String token : tokens) {
+                if (token.startsWith(prefix)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void removePostings(@NonNull String key, @NonNull String[] tokens) {
+        for (String token : tokens) {
+            Set<String> keys = mPostings.get(token);
+            if (keys != null && keys.remove(key) && keys.isEmpty()) {
+                mPostings.remove(token);
+            }
+        }
+    }
+
+    @NonNull
+    private String[] tokenize(@NonNull T model) {
+        StringBuilder text = new StringBuilder();
+        for (TextExtractor<T> extractor : mExtractors) {
+            CharSequence part = extractor.getText(model);
+            if (part != null) {
+                text.append(part).append(' ');
+            }
+        }
+        return tokenize(text);
+    }
+
+    /**
+     * @return the distinct tokens of the given text, sorted.
+     */
+    @NonNull
+    private static String[] tokenize(@NonNull CharSequence text) {
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+        Set<String> tokens = new HashSet<>();
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+
+            if (Character.isLetterOrDigit(c)) {
+                token.append(c);
+            } else if (token.length() > 0) {
+                tokens.add(token.toString().toLowerCase(Locale.ROOT));
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString().toLowerCase(Locale.ROOT));
+        }
+
+        if (tokens.isEmpty()) {
+            return NO_TOKENS;
+        }
+        String[] result = tokens.toArray(new String[0]);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Drop query tokens that are a prefix of another query token, since they can't narrow the
+     * results any further.
+     */
+    @NonNull
+    private static String[] normalizeQuery(@NonNull String[] tokens) {
+        List<String> result = new ArrayList<>(tokens.length);
+        for (int i = 0; i < tokens.length; i++) {
+            // Tokens are sorted, so a token can only be a prefix of the ones after it
+            if (i + 1 >= tokens.length || !tokens[i + 1].startsWith(tokens[i])) {
+                result.add(tokens[i]);
+            }
+        }
+        return result.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,405 @@
+package com.firebase.ui.common;
+
+import java.util.Random;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+/**
+ * Lays out a list of children in sections, with a header before the first child of each run of
+ * children sharing a section key, and translates between child indices and adapter positions.
+ * <p>
+ * Children are kept in an implicit treap that counts the headers of each subtree, so translating a
+ * position or applying a child event costs O(log n). Each event only re-examines the headers next
+ * to the affected children, and reports the resulting header and child changes to a {@link
+ * ListUpdateCallback} in adapter positions. Not thread safe, use from the main thread only.
+ *
+ * @param <K> the section key class.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+@MainThread
+public final class SectionIndex<K> {
+
+    private final ListUpdateCallback mCallback;
+    private final Random mRandom = new Random();
+    private Node<K> mRoot;
+
+    // Results of the last split, to avoid allocating a pair for every split
+    private Node<K> mSplitLeft;
+    private Node<K> mSplitRight;
+
+    // Results of the last position lookup
+    private int mFoundIndex;
+    private boolean mFoundHeader;
+
+    public SectionIndex(@NonNull ListUpdateCallback callback) {
+        mCallback = Preconditions.checkNotNull(callback);
+    }
+
+    /**
+     * @return the number of adapter positions, counting both headers and children.
+     */
+    public int getPositionCount() {
+        return size(mRoot) + headers(mRoot);
+    }
+
+    /**
+     * @return the number of children.
+     */
+    public int getChildCount() {
+        return size(mRoot);
+    }
+
+    /**
+     * @return true if the given adapter position holds a section header.
+     */
+    public boolean isHeader(int position) {
+        find(position);
+        return mFoundHeader;
+    }
+
+    /**
+     * @return the index of the child at the given adapter position, or the index of the first
+     * child in the section if the position holds a header.
+     */
+    public int getChildIndex(int position) {
+        find(position);
+        return mFoundIndex;
+    }
+
+    /**
+     * @return the key of the section the given adapter position belongs to.
+     */
+    @NonNull
+    public K getSectionKey(int position) {
+        return find(position).mKey;
+    }
+
+    /**
+     * @return the adapter position of the child at the given index.
+     */
+    public int getPosition(int index) {
+        checkIndex(index, size(mRoot));
+
+        int position = 0;
+        Node<K> node = mRoot;
+        while (true) {
+            int left = size(node.mLeft);
+            if (index < left) {
+                node = node.mLeft;
+            } else {
+                position += left + headers(node.mLeft) + (node.mHeader ? 1 : 0);
+                if (index == left) {
+                    return position;
+                }
+                index -= left + 1;
+                position++;
+                node = node.mRight;
+            }
+        }
+    }
+
+    /**
+     * A child was inserted at the given index.
+     */
+    public void insert(int index, @NonNull K key) {
+        checkIndex(index, size(mRoot) + 1);
+
+        Node<K> node = new Node<>(key, mRandom.nextInt());
+        node.mHeader = index == 0 || !nodeAt(index - 1).mKey.equals(key);
+        boolean join = node.mHeader && index < size(mRoot) && nodeAt(index).mKey.equals(key);
+        insertAt(node, index);
+
+        if (join) {
+            // The child joins the front of the next section, under its existing header
+            setHeader(index + 1, false);
+            mCallback.onInserted(getPosition(index), 1);
+        } else if (node.mHeader) {
+            mCallback.onInserted(getPosition(index) - 1, 2);
+            refresh(index + 1);
+        } else {
+            mCallback.onInserted(getPosition(index), 1);
+        }
+    }
+
+    /**
+     * The child at the given index was removed.
+     */
+    public void remove(int index) {
+        int position = getPosition(index);
+        Node<K> node = removeAt(index);
+
+        if (isJoined(node, index)) {
+            // The next child takes over the header
+            setHeader(index, true);
+            mCallback.onRemoved(position, 1);
+        } else if (node.mHeader) {
+            mCallback.onRemoved(position - 1, 2);
+            refresh(index);
+        } else {
+            mCallback.onRemoved(position, 1);
+        }
+    }
+
+    /**
+     * The child at {@code fromIndex} moved to {@code toIndex}, and now has the given key.
+     */
+    public void move(int fromIndex, int toIndex, @NonNull K key) {
+        int from = getPosition(fromIndex);
+        Node<K> node = removeAt(fromIndex);
+
+        if (isJoined(node, fromIndex)) {
+            setHeader(fromIndex, true);
+        } else if (node.mHeader) {
+            // Drop the header first so that only the child itself moves
+            mCallback.onRemoved(from - 1, 1);
+            from--;
+        }
+
+        checkIndex(toIndex, size(mRoot) + 1);
+        node.mKey = key;
+        node.mHeader = toIndex == 0 || !nodeAt(toIndex - 1).mKey.equals(key);
+        boolean join = node.mHeader
+                && toIndex < size(mRoot)
+                && nodeAt(toIndex).mKey.equals(key);
+        if (!join) {
+            node.mHeader = false;
+        }
+        insertAt(node, toIndex);
+        if (join) {
+            setHeader(toIndex + 1, false);
+        }
+        mCallback.onMoved(from, getPosition(toIndex));
+
+        refresh(toIndex);
+        refresh(toIndex + 1);
+        // The child that used to follow the moved one now follows its old predecessor
+        refresh(toIndex <= fromIndex ? fromIndex + 1 : fromIndex);
+    }
+
+    /**
+     * The child at the given index changed, and now has the given key.
+     *
+     * @param payload passed on to {@link ListUpdateCallback#onChanged(int, int, Object)} for the
+     *                child.
+     */
+    public void change(int index, @NonNull K key, @Nullable Object payload) {
+        Node<K> node = nodeAt(index);
+        mCallback.onChanged(getPosition(index), 1, payload);
+        if (node.mKey.equals(key)) {
+            return;
+        }
+
+        node.mKey = key;
+        boolean wasHeader = node.mHeader;
+        refresh(index);
+        if (wasHeader && node.mHeader) {
+            // The header now shows a different section
+            mCallback.onChanged(getPosition(index) - 1, 1, null);
+        }
+        refresh(index + 1);
+    }
+
+    /**
+     * Remove all children without notifying the callback.
+     */
+    public void clear() {
+        mRoot = null;
+    }
+
+    /**
+     * @return true if the given removed header child was followed by a child of the same section.
+     */
+    private boolean isJoined(@NonNull Node<K> removed, int index) {
+        return removed.mHeader
+                && index < size(mRoot)
+                && nodeAt(index).mKey.equals(removed.mKey);
+    }
+
+    /**
+     * Add or remove the header of the child at the given index to match its predecessor, if the
+     * index is in range.
+     */
+    private void refresh(int index) {
+        if (index < 0 || index >= size(mRoot)) {
+            return;
+        }
+
+        Node<K> node = nodeAt(index);
+        boolean header = index == 0 || !nodeAt(index - 1).mKey.equals(node.mKey);
+        if (node.mHeader == header) {
+            return;
+        }
+
+        if (header) {
+            setHeader(index, true);
+            mCallback.onInserted(getPosition(index) - 1, 1);
+        } else {
+            int position = getPosition(index) - 1;
+            setHeader(index, false);
+            mCallback.onRemoved(position, 1);
+        }
+    }
+
+    private void setHeader(int index, boolean header) {
+        Node<K> node = nodeAt(index);
+        if (node.mHeader == header) {
+            return;
+        }
+
+        int delta = header ? 1 : -1;
+        node = mRoot;
+        while (true) {
+            node.mHeaders += delta;
+            int left = size(node.mLeft);
+            if (index < left) {
+                node = node.mLeft;
+            } else if (index == left) {
+                node.mHeader = header;
+                return;
+            } else {
+                index -= left + 1;
+                node = node.mRight;
+            }
+        }
+    }
+
+    @NonNull
+    private Node<K> find(int position) {
+        checkIndex(position, getPositionCount());
+
+        int index = 0;
+        Node<K> node = mRoot;
+        while (true) {
+            int left = size(node.mLeft) + headers(node.mLeft);
+            if (position < left) {
+                node = node.mLeft;
+                continue;
+            }
+
+            position -= left;
+            index += size(node.mLeft);
+            int rows = node.mHeader ? 2 : 1;
+            if (position < rows) {
+                mFoundIndex = index;
+                mFoundHeader = node.mHeader && position == 0;
+                return node;
+            }
+            position -= rows;
+            index++;
+            node = node.mRight;
+        }
+    }
+
+    @NonNull
+    private Node<K> nodeAt(int index) {
+        checkIndex(index, size(mRoot));
+
+        Node<K> node = mRoot;
+        while (true) {
+            int left = size(node.mLeft);
+            if (index < left) {
+                node = node.mLeft;
+            } else if (index == left) {
+                return node;
+            } else {
+                index -= left + 1;
+                node = node.mRight;
+            }
+        }
+    }
+
+    private void insertAt(@NonNull Node<K> node, int index) {
+        node.update();
+        splitAt(mRoot, index);
+        mRoot = merge(merge(mSplitLeft, node), mSplitRight);
+    }
+
+    @NonNull
+    private Node<K> removeAt(int index) {
+        checkIndex(index, size(mRoot));
+
+        splitAt(mRoot, index);
+        Node<K> left = mSplitLeft;
+        splitAt(mSplitRight, 1);
+        Node<K> node = mSplitLeft;
+        mRoot = merge(left, mSplitRight);
+        return node;
+    }
+
+    /**
+     * Split a treap into its first {@code count} nodes and the rest.
+     */
+    private void splitAt(@Nullable Node<K> root, int count) {
+        if (root == null) {
+            mSplitLeft = null;
+            mSplitRight = null;
+        } else if (size(root.mLeft) < count) {
+            splitAt(root.mRight, count - size(root.mLeft) - 1);
+            root.mRight = mSplitLeft;
+            root.update();
+            mSplitLeft = root;
+        } else {
+            splitAt(root.mLeft, count);
+            root.mLeft = mSplitRight;
+            root.update();
+            mSplitRight = root;
+        }
+    }
+
+    @Nullable
+    private static <K> Node<K> merge(@Nullable Node<K> a, @Nullable Node<K> b) {
+        if (a == null) {
+            return b;
+        } else if (b == null) {
+            return a;
+        } else if (a.mPriority > b.mPriority) {
+            a.mRight = merge(a.mRight, b);
+            a.update();
+            return a;
+        } else {
+            b.mLeft = merge(a, b.mLeft);
+            b.update();
+            return b;
+        }
+    }
+
+    private static void checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        }
+    }
+
+    private static int size(@Nullable Node<?> node) {
+        return node == null ? 0 : node.mSize;
+    }
+
+    private static int headers(@Nullable Node<?> node) {
+        return node == null ? 0 : node.mHeaders;
+    }
+
+    private static final class Node<K> {
+        final int mPriority;
+
+        K mKey;
+        boolean mHeader;
+
+        Node<K> mLeft;
+        Node<K> mRight;
+        int mSize;
+        int mHeaders;
+
+        Node(K key, int priority) {
+            mKey = key;
+            mPriority = priority;
+        }
+
+        void update() {
+            mSize = 1 + size(mLeft) + size(mRight);
+            mHeaders = (mHeader ? 1 : 0) + headers(mLeft) + headers(mRight);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.firebase.ui.common;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Assigns models to sections, for example by day or by category. Consecutive models with equal
+ * section keys share a section header.
+ *
+ * @param <T> the model object class.
+ * @param <K> the section key class, should implement {@link Object#equals(Object)}.
+ */
+public interface SectionKeyFunction<T, K> {
+    /**
+     * @return the key of the section the given model belongs to.
+     */
+    @NonNull
+    K getSectionKey(@NonNull T model);
+}
@@ -0,0 +1,45 @@
+package com.firebase.ui.common;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+
+/**
+ * Executor that runs tasks one at a time on a single background thread.
+ * <p>
+ * The thread is only created when the first task is submitted, and it is a daemon thread, so an
+ * executor held in a static field costs nothing until used and never keeps the process alive.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+public final class SerialExecutor implements Executor {
+
+    private final String mThreadName;
+    private ExecutorService mDelegate;
+
+    /**
+     * @param threadName the name of the background thread, for debugging.
+     */
+    public SerialExecutor(@NonNull String threadName) {
+        mThreadName = Preconditions.checkNotNull(threadName);
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        getDelegate().execute(command);
+    }
+
+    @NonNull
+    private synchronized ExecutorService getDelegate() {
+        if (mDelegate == null) {
+            mDelegate = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, mThreadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return mDelegate;
+    }
+}
@@ -0,0 +1,61 @@
+package com.firebase.ui.common;
+
+import java.util.Collection;
+import java.util.Map;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+
+/**
+ * Rough estimates of the heap retained by the plain Java values that make up snapshot data, for
+ * reporting memory use. The figures approximate a 32-bit ART heap and are not exact.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+public final class SizeEstimator {
+
+    public static final long OBJECT_SIZE = 16;
+    public static final long REFERENCE_SIZE = 4;
+    private static final long STRING_SIZE = 24;
+    private static final long ARRAY_SIZE = 16;
+    private static final long MAP_SIZE = 48;
+    private static final long MAP_ENTRY_SIZE = 32;
+    private static final long COLLECTION_SIZE = 32;
+
+    private SizeEstimator() {
+    }
+
+    /**
+     * Estimate the size of a value made of strings, boxed primitives, byte arrays, maps and
+     * collections. Any other object is counted as a small fixed-size object.
+     */
+    public static long estimate(@Nullable Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof String) {
+            return estimate((String) value);
+        } else if (value instanceof byte[]) {
+            return ARRAY_SIZE + ((byte[]) value).length;
+        } else if (value instanceof Map) {
+            long size = MAP_SIZE;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                size += MAP_ENTRY_SIZE + estimate(entry.getKey()) + estimate(entry.getValue());
+            }
+            return size;
+        } else if (value instanceof Collection) {
+            long size = COLLECTION_SIZE;
+            for (Object item : (Collection<?>) value) {
+                size += REFERENCE_SIZE + estimate(item);
+            }
+            return size;
+        } else {
+            return OBJECT_SIZE;
+        }
+    }
+
+    /**
+     * Estimate the size of a string, including its character array.
+     */
+    public static long estimate(@Nullable String value) {
+        return value == null ? 0 : STRING_SIZE + ARRAY_SIZE + 2L * value.length();
+    }
+}
@@ -0,0 +1,59 @@
+package com.firebase.ui.common;
+
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RestrictTo;
+import androidx.recyclerview.widget.DiffUtil;
+
+/**
+ * Compares two lists of snapshots item by item with a {@link DiffUtil.ItemCallback}, so that
+ * items present in both lists keep their views.
+ *
+ * @param <S> the snapshot class.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+public final class SnapshotListDiffCallback<S> extends DiffUtil.Callback {
+
+    private final List<S> mOldList;
+    private final List<S> mNewList;
+    private final DiffUtil.ItemCallback<S> mItemCallback;
+
+    public SnapshotListDiffCallback(@NonNull List<S> oldList,
+                                    @NonNull List<S> newList,
+                                    @NonNull DiffUtil.ItemCallback<S> itemCallback) {
+        mOldList = oldList;
+        mNewList = newList;
+        mItemCallback = itemCallback;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return mOldList.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return mNewList.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        return mItemCallback.areItemsTheSame(
+                mOldList.get(oldItemPosition), mNewList.get(newItemPosition));
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        return mItemCallback.areContentsTheSame(
+                mOldList.get(oldItemPosition), mNewList.get(newItemPosition));
+    }
+
+    @Nullable
+    @Override
+    public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+        return mItemCallback.getChangePayload(
+                mOldList.get(oldItemPosition), mNewList.get(newItemPosition));
+    }
+}
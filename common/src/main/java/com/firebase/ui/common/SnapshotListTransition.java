@@ -0,0 +1,126 @@
+package com.firebase.ui.common;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+import androidx.recyclerview.widget.DiffUtil;
+
+/**
+ * Computes the difference between the snapshots an adapter currently shows and those of the array
+ * it is switching to, once the new array has loaded.
+ * <p>
+ * Snapshots are copied on the main thread and diffed on a background executor. If either array
+ * changes while diffing, the result is discarded and the diff is computed again, so {@link
+ * Callback#onDiffReady(DiffUtil.DiffResult)} always describes the arrays as they are when it is
+ * called.
+ *
+ * @param <S> the snapshot class.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+@MainThread
+public final class SnapshotListTransition<S> {
+
+    /**
+     * Provides the snapshots to diff and receives the result, always on the main thread.
+     */
+    public interface Callback<S> {
+        /**
+         * @return a copy of the snapshots currently shown by the adapter.
+         */
+        @NonNull
+        List<S> getOldSnapshots();
+
+        /**
+         * @return a copy of the snapshots of the array the adapter is switching to.
+         */
+        @NonNull
+        List<S> getNewSnapshots();
+
+        /**
+         * Called once, when the difference between the current contents of both arrays is known.
+         */
+        void onDiffReady(@NonNull DiffUtil.DiffResult result);
+    }
+
+    private static final Executor DEFAULT_EXECUTOR = new SerialExecutor("FirebaseUI-diff");
+
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final DiffUtil.ItemCallback<S> mItemCallback;
+    private final Callback<S> mCallback;
+    private final Executor mExecutor;
+
+    private int mGeneration;
+    private boolean mLoaded;
+    private boolean mDone;
+
+    public SnapshotListTransition(@NonNull DiffUtil.ItemCallback<S> itemCallback,
+                                  @NonNull Callback<S> callback) {
+        this(itemCallback, callback, DEFAULT_EXECUTOR);
+    }
+
+    /**
+     * @param executor the executor to compute diffs on.
+     */
+    public SnapshotListTransition(@NonNull DiffUtil.ItemCallback<S> itemCallback,
+                                  @NonNull Callback<S> callback,
+                                  @NonNull Executor executor) {
+        mItemCallback = Preconditions.checkNotNull(itemCallback);
+        mCallback = Preconditions.checkNotNull(callback);
+        mExecutor = Preconditions.checkNotNull(executor);
+    }
+
+    /**
+     * One of the arrays reported a child event.
+     */
+    public void onChanged() {
+        mGeneration++;
+    }
+
+    /**
+     * The new array finished processing a batch of events. Starts diffing the first time.
+     */
+    public void onNewDataChanged() {
+        mGeneration++;
+        if (!mLoaded) {
+            mLoaded = true;
+            computeDiff();
+        }
+    }
+
+    /**
+     * Discard any diff in progress, {@link Callback#onDiffReady(DiffUtil.DiffResult)} won't be
+     * called anymore.
+     */
+    public void stop() {
+        mDone = true;
+    }
+
+    private void computeDiff() {
+        final int generation = mGeneration;
+        final List<S> oldList = mCallback.getOldSnapshots();
+        final List<S> newList = mCallback.getNewSnapshots();
+        mExecutor.execute(() -> {
+            final DiffUtil.DiffResult result = DiffUtil.calculateDiff(
+                    new SnapshotListDiffCallback<>(oldList, newList, mItemCallback));
+            mMainHandler.post(() -> {
+                if (mDone) {
+                    return;
+                }
+
+                if (generation == mGeneration) {
+                    mDone = true;
+                    mCallback.onDiffReady(result);
+                } else {
+                    // One of the arrays changed while diffing, try again
+                    computeDiff();
+                }
+            });
+        });
+    }
+}
@@ -0,0 +1,99 @@
+package com.firebase.ui.common;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+/**
+ * {@link ComponentCallbacks2} that forwards memory pressure signals to every listening {@link
+ * BaseObservableSnapshotArray}, see {@link BaseObservableSnapshotArray#onTrimMemory(int)}.
+ * <p>
+ * The recycler adapters install it automatically when attached to a {@code RecyclerView}. Call
+ * {@link #install(Context)} to install it when only using other adapters or the arrays directly.
+ */
+public final class SnapshotMemoryTrimmer implements ComponentCallbacks2 {
+
+    private static final List<WeakReference<BaseObservableSnapshotArray<?, ?, ?, ?>>> ARRAYS =
+            new ArrayList<>();
+
+    private static boolean sInstalled;
+
+    private SnapshotMemoryTrimmer() {
+    }
+
+    /**
+     * Register the trimmer with the application. Subsequent calls have no effect.
+     */
+    @MainThread
+    public static void install(@NonNull Context context) {
+        if (!sInstalled) {
+            sInstalled = true;
+            context.getApplicationContext().registerComponentCallbacks(new SnapshotMemoryTrimmer());
+        }
+    }
+
+    static void register(@NonNull BaseObservableSnapshotArray<?, ?, ?, ?> array) {
+        synchronized (ARRAYS) {
+            prune();
+            ARRAYS.add(new WeakReference<>(array));
+        }
+    }
+
+    static void unregister(@NonNull BaseObservableSnapshotArray<?, ?, ?, ?> array) {
+        synchronized (ARRAYS) {
+            Iterator<WeakReference<BaseObservableSnapshotArray<?, ?, ?, ?>>> iterator =
+                    ARRAYS.iterator();
+            while (iterator.hasNext()) {
+                BaseObservableSnapshotArray<?, ?, ?, ?> registered = iterator.next().get();
+                if (registered == null || registered == array) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private static void prune() {
+        Iterator<WeakReference<BaseObservableSnapshotArray<?, ?, ?, ?>>> iterator =
+                ARRAYS.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().get() == null) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        List<BaseObservableSnapshotArray<?, ?, ?, ?>> arrays = new ArrayList<>();
+        synchronized (ARRAYS) {
+            prune();
+            for (WeakReference<BaseObservableSnapshotArray<?, ?, ?, ?>> ref : ARRAYS) {
+                BaseObservableSnapshotArray<?, ?, ?, ?> array = ref.get();
+                if (array != null) {
+                    arrays.add(array);
+                }
+            }
+        }
+
+        for (BaseObservableSnapshotArray<?, ?, ?, ?> array : arrays) {
+            array.onTrimMemory(level);
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+    }
+}
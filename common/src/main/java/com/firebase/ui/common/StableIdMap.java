@@ -0,0 +1,97 @@
+package com.firebase.ui.common;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.RestrictTo;
+
+/**
+ * Assigns stable 64-bit item IDs to snapshot keys for adapters with stable IDs enabled.
+ * <p>
+ * IDs are derived from a hash of the key and checked for collisions, so two different keys never
+ * share an ID. A key keeps its ID for the lifetime of the map, including across full refreshes of
+ * the data set. The ID of each position is cached for as long as the same key instance is found at
+ * that position, so repeated lookups from {@code getItemId} don't allocate.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+@MainThread
+public final class StableIdMap {
+
+    /**
+     * Matches {@code RecyclerView.NO_ID}, which must never be handed out as a stable ID.
+     */
+    private static final long NO_ID = -1;
+
+    private final Map<String, Long> mIds = new HashMap<>();
+    private final Map<Long, String> mKeys = new HashMap<>();
+
+    private String[] mPositionKeys = new String[0];
+    private long[] mPositionIds = new long[0];
+
+    /**
+     * Get the stable ID of the item with the given key at the given position.
+     */
+    public long getId(int position, @NonNull String key) {
+        if (position < mPositionKeys.length && mPositionKeys[position] == key) {
+            return mPositionIds[position];
+        }
+
+        long id = getId(key);
+        if (position >= mPositionKeys.length) {
+            int capacity = Math.max(position + 1, mPositionKeys.length * 2);
+            mPositionKeys = Arrays.copyOf(mPositionKeys, capacity);
+            mPositionIds = Arrays.copyOf(mPositionIds, capacity);
+        }
+        mPositionKeys[position] = key;
+        mPositionIds[position] = id;
+        return id;
+    }
+
+    /**
+     * Get the stable ID of the item with the given key, assigning a new one if needed.
+     */
+    public long getId(@NonNull String key) {
+        Long existing = mIds.get(key);
+        if (existing != null) {
+            return existing;
+        }
+
+        long id = hash(key);
+        while (id == NO_ID || mKeys.containsKey(id)) {
+            id++;
+        }
+        mIds.put(key, id);
+        mKeys.put(id, key);
+        return id;
+    }
+
+    /**
+     * Forget all assigned IDs.
+     */
+    public void clear() {
+        mIds.clear();
+        mKeys.clear();
+        Arrays.fill(mPositionKeys, null);
+    }
+
+    /**
+     * 64-bit FNV-1a over the key's characters, finished with the MurmurHash3 mixer so that keys
+     * differing only in their last characters are spread across the whole range.
+     */
+    private static long hash(@NonNull String key) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            h ^= key.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
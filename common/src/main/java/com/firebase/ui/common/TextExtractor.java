@@ -0,0 +1,17 @@
+package com.firebase.ui.common;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Extracts the searchable text of a model, for example a name or a description.
+ *
+ * @param <T> the model object class.
+ */
+public interface TextExtractor<T> {
+    /**
+     * @return the text to index for the given model, or null if there is none.
+     */
+    @Nullable
+    CharSequence getText(@NonNull T model);
+}
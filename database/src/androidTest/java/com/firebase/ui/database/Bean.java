@@ -42,4 +42,23 @@ public class Bean {
     public void setBool(boolean bool) {
         mBool = bool;
     }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        Bean bean = (Bean) o;
+        return mNumber == bean.mNumber
+                && mBool == bean.mBool
+                && (mText == null ? bean.mText == null : mText.equals(bean.mText));
+    }
+
+    @Override
+    public int hashCode() {
+        int result = mNumber;
+        result = 31 * result + (mText == null ? 0 : mText.hashCode());
+        result = 31 * result + (mBool ? 1 : 0);
+        return result;
+    }
 }
@@ -17,7 +17,10 @@ package com.firebase.ui.database;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
+import com.firebase.ui.common.ChangeEventType;
 import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.FirebaseDatabase;
 
@@ -26,7 +29,13 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.annotation.NonNull;
 
 import static com.firebase.ui.database.TestUtils.getAppInstance;
 import static com.firebase.ui.database.TestUtils.runAndWaitUntil;
@@ -104,4 +113,44 @@ public class FirebaseArrayOfObjectsTest {
                 () -> pushRef.setValue(new Bean(6), 100),
                 () -> mArray.get(3).getNumber() == 6);
     }
+
+    @Test
+    public void testChangeReportsChangedFields() throws Exception {
+        final AtomicReference<Set<String>> changedFields = new AtomicReference<>();
+        ChangeEventListener listener = mArray.addChangeEventListener(new ChangeEventListener() {
+            @Override
+            public void onChildChanged(@NonNull ChangeEventType type,
+                                       @NonNull DataSnapshot snapshot,
+                                       int newIndex,
+                                       int oldIndex) {
+            }
+
+            @Override
+            public void onChildChanged(@NonNull ChangeEventType type,
+                                       @NonNull DataSnapshot snapshot,
+                                       int newIndex,
+                                       int oldIndex,
+                                       @NonNull Set<String> fields) {
+                if (type == ChangeEventType.CHANGED) {
+                    changedFields.set(new HashSet<>(fields));
+                }
+            }
+
+            @Override
+            public void onDataChanged() {
+            }
+
+            @Override
+            public void onError(@NonNull DatabaseError error) {
+            }
+        });
+
+        try {
+            runAndWaitUntil(mArray,
+                    () -> mArray.getSnapshot(0).getRef().child("text").setValue("Changed"),
+                    () -> Collections.singleton("text").equals(changedFields.get()));
+        } finally {
+            mArray.removeChangeEventListener(listener);
+        }
+    }
 }
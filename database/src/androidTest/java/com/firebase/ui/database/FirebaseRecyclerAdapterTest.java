@@ -0,0 +1,313 @@
+package com.firebase.ui.database;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.firebase.ui.common.ListStateStore;
+import com.firebase.ui.common.ModelCodec;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.Query;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.RecyclerView;
+
+import static com.firebase.ui.database.TestUtils.getAppInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class FirebaseRecyclerAdapterTest {
+    private static final int INITIAL_SIZE = 3;
+    private static final int TIMEOUT = 10000;
+    private static final int VERIFY_INTERVAL = 100;
+
+    private DatabaseReference mRef;
+    private FirebaseRecyclerAdapter<Bean, RecyclerView.ViewHolder> mAdapter;
+    private RecordingObserver mObserver;
+
+    @Before
+    public void setUp() throws Exception {
+        FirebaseApp app = getAppInstance(ApplicationProvider.getApplicationContext());
+        mRef = FirebaseDatabase.getInstance(app)
+                .getReference()
+                .child("firebaserecycleradapter");
+
+        List<Task<Void>> writes = new ArrayList<>();
+        writes.add(mRef.removeValue());
+        for (int i = 1; i <= INITIAL_SIZE; i++) {
+            writes.add(mRef.child("bean" + i).setValue(new Bean(i), i));
+        }
+        Tasks.await(Tasks.whenAll(writes), TIMEOUT, TimeUnit.MILLISECONDS);
+
+        mAdapter = newAdapter(mRef);
+        mObserver = new RecordingObserver();
+        mAdapter.registerAdapterDataObserver(mObserver);
+        runAndWaitUntil(mAdapter::startListening, () -> mAdapter.getItemCount() == INITIAL_SIZE);
+        mObserver.mEvents.clear();
+    }
+
+    @After
+    public void tearDown() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(mAdapter::stopListening);
+        mRef.getRoot().removeValue();
+    }
+
+    @Test
+    public void testChangePassesChangedFieldsAsPayload() throws Exception {
+        runAndWaitUntil(() -> mRef.child("bean2").child("text").setValue("Changed"),
+                () -> mObserver.mEvents.contains("changed 1 1 [text]"));
+    }
+
+    @Test
+    public void testUpdateOptionsKeepsDataUntilLoaded() throws Exception {
+        final FirebaseRecyclerOptions<Bean> options = new FirebaseRecyclerOptions.Builder<Bean>()
+                .setQuery(mRef.orderByPriority().startAt(2), Bean.class)
+                .build();
+        final int[] countBeforeLoad = new int[1];
+
+        runAndWaitUntil(() -> {
+            mAdapter.updateOptions(options, true);
+            countBeforeLoad[0] = mAdapter.getItemCount();
+        }, () -> mAdapter.getSnapshots() == options.getSnapshots()
+                && mAdapter.getItemCount() == 2
+                && mAdapter.getItem(0).getNumber() == 2);
+
+        assertEquals(INITIAL_SIZE, countBeforeLoad[0]);
+        // Only the item missing from the new query is removed, the others keep their views
+        assertEquals(Collections.singletonList("removed 0 1"), mObserver.mEvents);
+    }
+
+    @Test
+    public void testUpdateOptionsDuringTransitionCancelsIt() throws Exception {
+        final FirebaseRecyclerOptions<Bean> first = new FirebaseRecyclerOptions.Builder<Bean>()
+                .setQuery(mRef.orderByPriority().startAt(2), Bean.class)
+                .build();
+        final FirebaseRecyclerOptions<Bean> second = new FirebaseRecyclerOptions.Builder<Bean>()
+                .setQuery(mRef.orderByPriority().startAt(3), Bean.class)
+                .build();
+
+        runAndWaitUntil(() -> {
+            mAdapter.updateOptions(first, true);
+            mAdapter.updateOptions(second, true);
+        }, () -> mAdapter.getSnapshots() == second.getSnapshots()
+                && mAdapter.getItemCount() == 1);
+
+        assertFalse(first.getSnapshots().isListening());
+        assertEquals(Collections.singletonList("removed 0 2"), mObserver.mEvents);
+    }
+
+    @Test
+    public void testStableIdsFollowKeys() throws Exception {
+        final FirebaseRecyclerAdapter<Bean, RecyclerView.ViewHolder> adapter = newAdapter(mRef);
+        adapter.setHasStableIds(true);
+        final long[] ids = new long[INITIAL_SIZE];
+
+        try {
+            runAndWaitUntil(adapter::startListening,
+                    () -> adapter.getItemCount() == INITIAL_SIZE);
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+                for (int i = 0; i < INITIAL_SIZE; i++) {
+                    ids[i] = adapter.getItemId(i);
+                }
+            });
+            assertEquals(INITIAL_SIZE, new HashSet<>(Arrays.asList(ids[0], ids[1], ids[2])).size());
+
+            // Moving the last item to the front moves its ID along with it
+            runAndWaitUntil(() -> mRef.child("bean3").setPriority(0.5),
+                    () -> adapter.getItem(0).getNumber() == 3
+                            && adapter.getItemId(0) == ids[2]
+                            && adapter.getItemId(1) == ids[0]
+                            && adapter.getItemId(2) == ids[1]);
+        } finally {
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(adapter::stopListening);
+        }
+    }
+
+    @Test
+    public void testStateStoreRestoresItemsUntilLoaded() throws Exception {
+        ListStateStore<Bean> store = new ListStateStore<>(
+                ApplicationProvider.getApplicationContext(),
+                "FirebaseRecyclerAdapterTest",
+                new BeanCodec());
+        final FirebaseRecyclerAdapter<Bean, RecyclerView.ViewHolder> saving =
+                newAdapter(new FirebaseRecyclerOptions.Builder<Bean>()
+                        .setQuery(mRef, Bean.class)
+                        .setStateStore(store)
+                        .build());
+        runAndWaitUntil(saving::startListening, () -> saving.getItemCount() == INITIAL_SIZE);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(saving::stopListening);
+
+        // Offline, a location that was never loaded stays empty until it is written locally
+        DatabaseReference restoredRef = mRef.getRoot().child("firebaserecycleradapter-restored");
+        final FirebaseRecyclerAdapter<Bean, RecyclerView.ViewHolder> restoring =
+                newAdapter(new FirebaseRecyclerOptions.Builder<Bean>()
+                        .setQuery(restoredRef, Bean.class)
+                        .setStateStore(store)
+                        .build());
+        RecordingObserver observer = new RecordingObserver();
+        restoring.registerAdapterDataObserver(observer);
+        mRef.getDatabase().goOffline();
+        try {
+            runAndWaitUntil(restoring::startListening,
+                    () -> restoring.isShowingRestoredItems()
+                            && restoring.getItemCount() == INITIAL_SIZE
+                            && restoring.getItem(0).getNumber() == 1);
+
+            Map<String, Object> beans = new HashMap<>();
+            for (int i = 1; i <= INITIAL_SIZE; i++) {
+                beans.put("bean" + i, new Bean(i));
+            }
+            runAndWaitUntil(() -> restoredRef.setValue(beans),
+                    () -> !restoring.isShowingRestoredItems()
+                            && restoring.getItemCount() == INITIAL_SIZE);
+
+            // The live items equal the restored ones, so their views are kept
+            assertEquals(Collections.singletonList("inserted 0 " + INITIAL_SIZE),
+                    observer.mEvents);
+        } finally {
+            mRef.getDatabase().goOnline();
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(restoring::stopListening);
+            store.clear();
+        }
+    }
+
+    /**
+     * Encodes {@link Bean}s for a {@link ListStateStore}.
+     */
+    private static class BeanCodec implements ModelCodec<Bean> {
+        @Override
+        public void write(@NonNull Bean model, @NonNull DataOutput out) throws IOException {
+            out.writeInt(model.getNumber());
+            out.writeUTF(model.getText());
+            out.writeBoolean(model.isBool());
+        }
+
+        @NonNull
+        @Override
+        public Bean read(@NonNull DataInput in) throws IOException {
+            return new Bean(in.readInt(), in.readUTF(), in.readBoolean());
+        }
+    }
+
+    /**
+     * Records the notifications of an adapter, with payloads that are sets of changed fields
+     * printed in sorted order.
+     */
+    private static class RecordingObserver extends RecyclerView.AdapterDataObserver {
+        final List<String> mEvents = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void onChanged() {
+            mEvents.add("changed");
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            onItemRangeChanged(positionStart, itemCount, null);
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount, @Nullable Object payload) {
+            Object printed = payload instanceof Collection
+                    ? new TreeSet<>((Collection<?>) payload)
+                    : payload;
+            mEvents.add("changed " + positionStart + " " + itemCount + " " + printed);
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            mEvents.add("inserted " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            mEvents.add("removed " + positionStart + " " + itemCount);
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            mEvents.add("moved " + fromPosition + " " + toPosition);
+        }
+    }
+
+    @NonNull
+    private static FirebaseRecyclerAdapter<Bean, RecyclerView.ViewHolder> newAdapter(
+            @NonNull Query query) {
+        return newAdapter(new FirebaseRecyclerOptions.Builder<Bean>()
+                .setQuery(query, Bean.class)
+                .build());
+    }
+
+    @NonNull
+    private static FirebaseRecyclerAdapter<Bean, RecyclerView.ViewHolder> newAdapter(
+            @NonNull FirebaseRecyclerOptions<Bean> options) {
+        return new FirebaseRecyclerAdapter<Bean, RecyclerView.ViewHolder>(options) {
+            @NonNull
+            @Override
+            public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent,
+                                                              int viewType) {
+                return new RecyclerView.ViewHolder(new View(parent.getContext())) {};
+            }
+
+            @Override
+            protected void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder,
+                                            int position,
+                                            @NonNull Bean model) {
+            }
+        };
+    }
+
+    /**
+     * Runs a task on the main thread, then checks a condition on the main thread until it is met.
+     * Times out after {@link #TIMEOUT}.
+     */
+    private static void runAndWaitUntil(final Runnable task,
+                                        final Callable<Boolean> done) throws Exception {
+        final boolean[] isDone = new boolean[1];
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(task);
+
+        long startedAt = System.currentTimeMillis();
+        while (!isDone[0] && System.currentTimeMillis() - startedAt < TIMEOUT) {
+            Thread.sleep(VERIFY_INTERVAL);
+            InstrumentationRegistry.getInstrumentation().runOnMainSync(() -> {
+                try {
+                    isDone[0] = done.call();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+        assertTrue("Timed out waiting for expected results on FirebaseRecyclerAdapter", isDone[0]);
+    }
+}
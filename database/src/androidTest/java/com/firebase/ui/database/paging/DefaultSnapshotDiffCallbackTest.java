@@ -0,0 +1,142 @@
+package com.firebase.ui.database.paging;
+
+import android.app.Instrumentation;
+
+import com.firebase.ui.database.SnapshotParser;
+import com.firebase.ui.database.TestUtils;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+import androidx.paging.PagingConfig;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(AndroidJUnit4.class)
+public class DefaultSnapshotDiffCallbackTest {
+    private static final int TIMEOUT_SECONDS = 10;
+
+    /** Parses the first letter of the value, so different values can make equal models. */
+    private static final SnapshotParser<String> INITIAL_PARSER =
+            snapshot -> snapshot.getValue(String.class).substring(0, 1);
+
+    private final Instrumentation mInstrumentation = InstrumentationRegistry.getInstrumentation();
+    private DatabaseReference mRef;
+
+    @Before
+    public void setUp() {
+        FirebaseApp app = TestUtils.getAppInstance(ApplicationProvider.getApplicationContext());
+        mRef = FirebaseDatabase.getInstance(app).getReference().child("diff_callback_test");
+    }
+
+    @After
+    public void tearDown() {
+        mRef.removeValue();
+    }
+
+    @Test
+    public void testSameKeyIsSameItem() throws Exception {
+        DiffUtil.ItemCallback<DataSnapshot> callback =
+                new DefaultSnapshotDiffCallback<>(INITIAL_PARSER);
+
+        assertTrue(callback.areItemsTheSame(snapshot("a", "Ann"), snapshot("a", "Bob")));
+        assertFalse(callback.areItemsTheSame(snapshot("a", "Ann"), snapshot("b", "Ann")));
+    }
+
+    @Test
+    public void testEqualValuesAreSameContents() throws Exception {
+        DiffUtil.ItemCallback<DataSnapshot> callback =
+                new DefaultSnapshotDiffCallback<>(INITIAL_PARSER);
+
+        // Separate reads, so the snapshots are different instances
+        assertTrue(callback.areContentsTheSame(snapshot("a", "Ann"), snapshot("a", "Ann")));
+        assertFalse(callback.areContentsTheSame(snapshot("a", "Ann"), snapshot("a", "Amy")));
+    }
+
+    @Test
+    public void testPriorityIsCompared() throws Exception {
+        DiffUtil.ItemCallback<DataSnapshot> callback =
+                new DefaultSnapshotDiffCallback<>(INITIAL_PARSER);
+        DataSnapshot first = snapshot("a", "Ann");
+        Tasks.await(mRef.child("a").setValue("Ann", 1), TIMEOUT_SECONDS, TimeUnit.SECONDS);
+
+        assertFalse(callback.areContentsTheSame(first, read("a")));
+    }
+
+    @Test
+    public void testModelsAreComparedByEquality() throws Exception {
+        DiffUtil.ItemCallback<DataSnapshot> callback =
+                new DefaultSnapshotDiffCallback<>(INITIAL_PARSER, true);
+
+        assertTrue(callback.areContentsTheSame(snapshot("a", "Ann"), snapshot("a", "Amy")));
+        assertFalse(callback.areContentsTheSame(snapshot("a", "Ann"), snapshot("a", "Bob")));
+    }
+
+    @Test
+    public void testDiffByModelEqualityIsUsedByDefaultCallback() throws Exception {
+        DiffUtil.ItemCallback<DataSnapshot> callback = buildOptions(true).getDiffCallback();
+
+        assertTrue(callback.areContentsTheSame(snapshot("a", "Ann"), snapshot("a", "Amy")));
+    }
+
+    @Test
+    public void testValuesAreComparedByDefault() throws Exception {
+        DiffUtil.ItemCallback<DataSnapshot> callback = buildOptions(false).getDiffCallback();
+
+        assertFalse(callback.areContentsTheSame(snapshot("a", "Ann"), snapshot("a", "Amy")));
+    }
+
+    /**
+     * Build options on the main thread, where the lifecycle they are cached in must be created.
+     */
+    @NonNull
+    private DatabasePagingOptions<String> buildOptions(boolean diffByModelEquality) {
+        AtomicReference<DatabasePagingOptions<String>> options = new AtomicReference<>();
+        mInstrumentation.runOnMainSync(() -> options.set(
+                new DatabasePagingOptions.Builder<String>()
+                        .setLifecycleOwner(new TestLifecycleOwner())
+                        .setQuery(mRef, new PagingConfig(10), INITIAL_PARSER)
+                        .setDiffByModelEquality(diffByModelEquality)
+                        .build()));
+        return options.get();
+    }
+
+    @NonNull
+    private DataSnapshot snapshot(@NonNull String key, @NonNull String value) throws Exception {
+        Tasks.await(mRef.child(key).setValue(value), TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        return read(key);
+    }
+
+    @NonNull
+    private DataSnapshot read(@NonNull String key) throws Exception {
+        return Tasks.await(mRef.child(key).get(), TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    private static final class TestLifecycleOwner implements LifecycleOwner {
+        private final LifecycleRegistry mLifecycle = new LifecycleRegistry(this);
+
+        @NonNull
+        @Override
+        public LifecycleRegistry getLifecycle() {
+            return mLifecycle;
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.firebase.ui.database;
+
+import com.firebase.ui.common.BaseChangedFields;
+import com.google.firebase.database.DataSnapshot;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Implementation of {@link BaseChangedFields} for {@link DataSnapshot}. The top-level fields of a
+ * snapshot are its direct children.
+ */
+class ChangedFields extends BaseChangedFields<DataSnapshot> {
+
+    ChangedFields(@NonNull DataSnapshot previous, @NonNull DataSnapshot current) {
+        super(previous, current);
+    }
+
+    @NonNull
+    @Override
+    protected Set<String> computeChangedFields(@NonNull DataSnapshot previous,
+                                               @NonNull DataSnapshot current) {
+        if (!previous.hasChildren() || !current.hasChildren()) {
+            // Leaf values have no fields, the whole item changed
+            return Collections.emptySet();
+        }
+        return diffKeys(getChildValues(previous), getChildValues(current));
+    }
+
+    @NonNull
+    private static Map<String, Object> getChildValues(@NonNull DataSnapshot snapshot) {
+        Map<String, Object> values = new HashMap<>();
+        for (DataSnapshot child : snapshot.getChildren()) {
+            values.put(child.getKey(), child.getValue());
+        }
+        return values;
+    }
+}
@@ -77,8 +77,9 @@ public class FirebaseArray<T> extends ObservableSnapshotArray<T>
     public void onChildChanged(@NonNull DataSnapshot snapshot, @Nullable String previousChildKey) {
         int index = getIndexForKey(snapshot.getKey());
 
-        mSnapshots.set(index, snapshot);
-        notifyOnChildChanged(ChangeEventType.CHANGED, snapshot, index, -1);
+        DataSnapshot previous = mSnapshots.set(index, snapshot);
+        notifyOnChildChanged(ChangeEventType.CHANGED, snapshot, index, -1,
+                new ChangedFields(previous, snapshot));
     }
 
     @Override
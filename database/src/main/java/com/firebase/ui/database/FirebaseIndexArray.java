@@ -45,7 +45,7 @@ public class FirebaseIndexArray<T> extends ObservableSnapshotArray<T>
      * contains keys that exist in the backing {@link FirebaseArray}, but their data hasn't been
      * downloaded yet in this array.
      */
-    private final List<String> mKeysWithPendingUpdate = new ArrayList<>();
+    private final ArrayList<String> mKeysWithPendingUpdate = new ArrayList<>();
     /**
      * Moves or deletions don't need to fetch new data so they can be performed instantly once the
      * backing {@link FirebaseArray} is done updating. This will be true if the backing {@link
@@ -129,6 +129,12 @@ public class FirebaseIndexArray<T> extends ObservableSnapshotArray<T>
         return mDataSnapshots;
     }
 
+    @Override
+    protected void compact() {
+        super.compact();
+        mKeysWithPendingUpdate.trimToSize();
+    }
+
     private int returnOrFindIndexForKey(int index, String key) {
         int realIndex;
         if (isKeyAtIndex(key, index)) {
@@ -221,8 +227,9 @@ public class FirebaseIndexArray<T> extends ObservableSnapshotArray<T>
             if (snapshot.getValue() != null) {
                 if (isKeyAtIndex(key, index)) {
                     // We already know about this data, just update it
-                    mDataSnapshots.set(index, snapshot);
-                    notifyOnChildChanged(ChangeEventType.CHANGED, snapshot, index, -1);
+                    DataSnapshot previous = mDataSnapshots.set(index, snapshot);
+                    notifyOnChildChanged(ChangeEventType.CHANGED, snapshot, index, -1,
+                            new ChangedFields(previous, snapshot));
                 } else {
                     // We don't already know about this data, add it
                     mDataSnapshots.add(index, snapshot);
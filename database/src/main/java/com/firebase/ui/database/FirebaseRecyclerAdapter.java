@@ -2,15 +2,28 @@ package com.firebase.ui.database;
 
 import android.util.Log;
 
+import com.firebase.ui.common.BaseListStateRestorer;
 import com.firebase.ui.common.ChangeEventType;
+import com.firebase.ui.common.ListStateStore;
+import com.firebase.ui.common.SnapshotListTransition;
+import com.firebase.ui.common.SnapshotMemoryTrimmer;
+import com.firebase.ui.common.StableIdMap;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseReference;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleOwner;
 import androidx.lifecycle.OnLifecycleEvent;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 /**
@@ -29,9 +42,45 @@ public abstract class FirebaseRecyclerAdapter<T, VH extends RecyclerView.ViewHol
         extends RecyclerView.Adapter<VH> implements FirebaseAdapter<T> {
     private static final String TAG = "FirebaseRecyclerAdapter";
 
+    /** Compares snapshots by key, so that children present in both queries keep their views. */
+    private static final DiffUtil.ItemCallback<DataSnapshot> SNAPSHOT_DIFF =
+            new DiffUtil.ItemCallback<DataSnapshot>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull DataSnapshot oldItem,
+                                               @NonNull DataSnapshot newItem) {
+                    return oldItem.getKey().equals(newItem.getKey());
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull DataSnapshot oldItem,
+                                                  @NonNull DataSnapshot newItem) {
+                    return Objects.equals(oldItem.getValue(true), newItem.getValue(true));
+                }
+
+                @Nullable
+                @Override
+                public Object getChangePayload(@NonNull DataSnapshot oldItem,
+                                               @NonNull DataSnapshot newItem) {
+                    return new ChangedFields(oldItem, newItem);
+                }
+            };
+
     private FirebaseRecyclerOptions<T> mOptions;
     private ObservableSnapshotArray<T> mSnapshots;
 
+    /** Fields changed by the child event currently being dispatched, if known. */
+    private Set<String> mChangedFields;
+
+    /** In-progress diff-based switch to new options, if any. */
+    private Transition mTransition;
+    private boolean mIgnoreEvents;
+
+    /** Stable item IDs, created once stable IDs are first requested. */
+    private StableIdMap mStableIds;
+
+    /** Items restored from the options' state store, shown until the query has loaded. */
+    private StateRestorer mRestorer;
+
     /**
      * Initialize a {@link RecyclerView.Adapter} that listens to a Firebase query. See
      * {@link FirebaseRecyclerOptions} for configuration options.
@@ -49,6 +98,12 @@ public abstract class FirebaseRecyclerAdapter<T, VH extends RecyclerView.ViewHol
     @OnLifecycleEvent(Lifecycle.Event.ON_START)
     public void startListening() {
         if (!mSnapshots.isListening(this)) {
+            ListStateStore<T> store = mOptions.getStateStore();
+            if (store != null && mRestorer == null) {
+                // Registered before the adapter so that it reconciles before onDataChanged
+                mRestorer = new StateRestorer(store, mSnapshots);
+                mRestorer.start();
+            }
             mSnapshots.addChangeEventListener(this);
         }
     }
@@ -56,6 +111,11 @@ public abstract class FirebaseRecyclerAdapter<T, VH extends RecyclerView.ViewHol
     @Override
     @OnLifecycleEvent(Lifecycle.Event.ON_STOP)
     public void stopListening() {
+        if (mTransition != null) {
+            mTransition.finish(null);
+        }
+        saveState();
+        discardRestoredState();
         mSnapshots.removeChangeEventListener(this);
     }
 
@@ -69,12 +129,16 @@ public abstract class FirebaseRecyclerAdapter<T, VH extends RecyclerView.ViewHol
                                @NonNull DataSnapshot snapshot,
                                int newIndex,
                                int oldIndex) {
+        if (mIgnoreEvents || isShowingRestoredItems()) {
+            return;
+        }
+
         switch (type) {
             case ADDED:
                 notifyItemInserted(newIndex);
                 break;
             case CHANGED:
-                notifyItemChanged(newIndex);
+                notifyItemChanged(newIndex, mChangedFields);
                 break;
             case REMOVED:
                 notifyItemRemoved(newIndex);
@@ -82,11 +146,33 @@ public abstract class FirebaseRecyclerAdapter<T, VH extends RecyclerView.ViewHol
             case MOVED:
                 notifyItemMoved(oldIndex, newIndex);
                 break;
+            case MOVED_AND_CHANGED:
+                notifyItemMoved(oldIndex, newIndex);
+                notifyItemChanged(newIndex, mChangedFields);
+                break;
+            case METADATA_CHANGED:
+                notifyItemChanged(newIndex);
+                break;
             default:
                 throw new IllegalStateException("Incomplete case statement");
         }
     }
 
+    @Override
+    public void onChildChanged(@NonNull ChangeEventType type,
+                               @NonNull DataSnapshot snapshot,
+                               int newIndex,
+                               int oldIndex,
+                               @NonNull Set<String> changedFields) {
+        // Route through the regular callback so that subclasses overriding it still see the event
+        mChangedFields = changedFields;
+        try {
+            onChildChanged(type, snapshot, newIndex, oldIndex);
+        } finally {
+            mChangedFields = null;
+        }
+    }
+
     @Override
     public void onDataChanged() {
     }
@@ -102,28 +188,81 @@ public abstract class FirebaseRecyclerAdapter<T, VH extends RecyclerView.ViewHol
         return mSnapshots;
     }
 
+    /**
+     * Returns whether the adapter shows the items restored from the options' {@link
+     * ListStateStore} because the query has not loaded yet. Positions then don't correspond to
+     * {@link #getSnapshots()} and {@link #getRef(int)} is unavailable, while {@link #getItem(int)}
+     * returns the restored models.
+     */
+    public boolean isShowingRestoredItems() {
+        return mRestorer != null && mRestorer.isShowingRestoredItems();
+    }
+
     @NonNull
     @Override
     public T getItem(int position) {
+        if (isShowingRestoredItems()) {
+            return mRestorer.getRestoredItem(position).getModel();
+        }
         return mSnapshots.get(position);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @throws IllegalStateException if the adapter shows restored items, see {@link
+     *                               #isShowingRestoredItems()}.
+     */
     @NonNull
     @Override
     public DatabaseReference getRef(int position) {
+        if (isShowingRestoredItems()) {
+            throw new IllegalStateException(
+                    "Restored items have no reference until the query has loaded");
+        }
         return mSnapshots.getSnapshot(position).getRef();
     }
 
     @Override
     public int getItemCount() {
+        if (isShowingRestoredItems()) {
+            return mRestorer.getRestoredCount();
+        }
         return mSnapshots.isListening(this) ? mSnapshots.size() : 0;
     }
 
+    /**
+     * Returns a stable ID derived from the snapshot key at the given position if stable IDs have
+     * been enabled with {@link #setHasStableIds(boolean)}, or {@link RecyclerView#NO_ID} otherwise.
+     * <p>
+     * IDs are checked for collisions and an item keeps its ID for the lifetime of the adapter, so
+     * views are reused precisely across full refreshes.
+     */
+    @Override
+    public long getItemId(int position) {
+        if (!hasStableIds()) {
+            return RecyclerView.NO_ID;
+        }
+        if (mStableIds == null) {
+            mStableIds = new StableIdMap();
+        }
+        String key = isShowingRestoredItems()
+                ? mRestorer.getRestoredItem(position).getKey()
+                : mSnapshots.getSnapshot(position).getKey();
+        return mStableIds.getId(position, key);
+    }
+
     /**
      * Re-initialize the Adapter with a new set of options. Can be used to change the query
      * without re-constructing the entire adapter.
      */
     public void updateOptions(@NonNull FirebaseRecyclerOptions<T> options) {
+        if (mTransition != null) {
+            mTransition.cancel();
+        }
+        saveState();
+        discardRestoredState();
+
         // Tear down old options
         boolean wasListening = mSnapshots.isListening(this);
         if (mOptions.getOwner() != null) {
@@ -143,14 +282,277 @@ public abstract class FirebaseRecyclerAdapter<T, VH extends RecyclerView.ViewHol
         }
     }
 
+    /**
+     * Re-initialize the Adapter with a new set of options, optionally keeping the current items on
+     * screen until the new data has loaded.
+     * <p>
+     * If {@code keepDataUntilLoaded} is true and the adapter is listening, the current items stay
+     * visible until the new snapshot array delivers its first {@link #onDataChanged()}. The old and
+     * new items are then diffed by key on a background thread and only the minimal set of inserts,
+     * removes, moves and changes is applied, so children present in both queries keep their views.
+     * Otherwise this behaves like {@link #updateOptions(FirebaseRecyclerOptions)}.
+     */
+    public void updateOptions(@NonNull FirebaseRecyclerOptions<T> options,
+                              boolean keepDataUntilLoaded) {
+        if (!keepDataUntilLoaded || !mSnapshots.isListening(this)) {
+            updateOptions(options);
+            return;
+        }
+
+        if (mTransition != null) {
+            mTransition.cancel();
+        }
+        saveState();
+        discardRestoredState();
+        mTransition = new Transition(options);
+        mTransition.start();
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        SnapshotMemoryTrimmer.install(recyclerView.getContext());
+    }
+
     @Override
     public void onBindViewHolder(@NonNull VH holder, int position) {
         onBindViewHolder(holder, position, getItem(position));
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onBindViewHolder(@NonNull VH holder, int position, @NonNull List<Object> payloads) {
+        Set<String> changedFields = new HashSet<>();
+        for (Object payload : payloads) {
+            if (payload instanceof Set && !((Set<?>) payload).isEmpty()) {
+                changedFields.addAll((Set<String>) payload);
+            } else {
+                // Unknown payload or unknown changed fields, fall back to a full bind
+                changedFields.clear();
+                break;
+            }
+        }
+
+        if (changedFields.isEmpty()) {
+            onBindViewHolder(holder, position);
+        } else {
+            onBindViewHolder(holder, position, getItem(position), changedFields);
+        }
+    }
+
+    /**
+     * Persist the leading items to the options' state store, if the query has loaded. Empty lists
+     * are not persisted, since there would be nothing to show on the next start.
+     */
+    private void saveState() {
+        ListStateStore<T> store = mOptions.getStateStore();
+        if (store == null
+                || mRestorer != null
+                || !mSnapshots.isListening(this)
+                || mSnapshots.isEmpty()) {
+            return;
+        }
+
+        int count = Math.min(mSnapshots.size(), store.getMaxItems());
+        List<String> keys = new ArrayList<>(count);
+        List<T> models = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(mSnapshots.getSnapshot(i).getKey());
+            models.add(mSnapshots.get(i));
+        }
+        store.save(keys, models);
+    }
+
+    private void discardRestoredState() {
+        if (mRestorer != null) {
+            mRestorer.stop();
+        }
+    }
+
+    @NonNull
+    private static List<DataSnapshot> copySnapshots(@NonNull ObservableSnapshotArray<?> array) {
+        List<DataSnapshot> snapshots = new ArrayList<>(array.size());
+        for (int i = 0; i < array.size(); i++) {
+            snapshots.add(array.getSnapshot(i));
+        }
+        return snapshots;
+    }
+
     /**
      * @param model the model object containing the data that should be used to populate the view.
      * @see #onBindViewHolder(RecyclerView.ViewHolder, int)
      */
     protected abstract void onBindViewHolder(@NonNull VH holder, int position, @NonNull T model);
+
+    /**
+     * Called instead of a full bind when the item's content changed and the top-level children
+     * that changed are known. Override this to only update the views that depend on those
+     * children, for example to avoid reloading an image that did not change.
+     * <p>
+     * The default implementation performs a full bind.
+     *
+     * @param model         the model object containing the data that should be used to populate
+     *                      the view.
+     * @param changedFields the keys of the direct children that changed since the item was last
+     *                      bound. Never empty.
+     * @see #onBindViewHolder(RecyclerView.ViewHolder, int, Object)
+     */
+    protected void onBindViewHolder(@NonNull VH holder,
+                                    int position,
+                                    @NonNull T model,
+                                    @NonNull Set<String> changedFields) {
+        onBindViewHolder(holder, position, model);
+    }
+
+    /**
+     * Shows the items persisted by the options' state store until the query has loaded, then
+     * dispatches the difference between the persisted and live items.
+     */
+    private final class StateRestorer extends BaseListStateRestorer<DataSnapshot, DatabaseError, T>
+            implements ChangeEventListener {
+        private final ObservableSnapshotArray<T> mArray;
+
+        StateRestorer(@NonNull ListStateStore<T> store, @NonNull ObservableSnapshotArray<T> array) {
+            super(store, array, FirebaseRecyclerAdapter.this);
+            mArray = array;
+        }
+
+        @Override
+        protected void onStart() {
+            mArray.addChangeEventListener(this);
+        }
+
+        @Override
+        protected void onStop() {
+            mArray.removeChangeEventListener(this);
+            if (mRestorer == this) {
+                mRestorer = null;
+            }
+        }
+    }
+
+    /**
+     * Keeps the adapter on the old snapshot array until the new one has loaded, then swaps to the
+     * new array and dispatches the difference between the two.
+     */
+    private final class Transition
+            implements ChangeEventListener, SnapshotListTransition.Callback<DataSnapshot> {
+        private final FirebaseRecyclerOptions<T> mNewOptions;
+        private final ObservableSnapshotArray<T> mNewSnapshots;
+        private final ObservableSnapshotArray<T> mOldSnapshots;
+        private final SnapshotListTransition<DataSnapshot> mDiffer =
+                new SnapshotListTransition<>(SNAPSHOT_DIFF, this);
+
+        /** Watches the old array so that a diff computed against stale data is discarded. */
+        private final ChangeEventListener mOldWatcher = new ChangeEventListener() {
+            @Override
+            public void onChildChanged(@NonNull ChangeEventType type,
+                                       @NonNull DataSnapshot snapshot,
+                                       int newIndex,
+                                       int oldIndex) {
+                mDiffer.onChanged();
+            }
+
+            @Override
+            public void onDataChanged() {
+            }
+
+            @Override
+            public void onError(@NonNull DatabaseError error) {
+            }
+        };
+
+        Transition(@NonNull FirebaseRecyclerOptions<T> options) {
+            mNewOptions = options;
+            mNewSnapshots = options.getSnapshots();
+            mOldSnapshots = mSnapshots;
+        }
+
+        void start() {
+            mOldSnapshots.addChangeEventListener(mOldWatcher);
+            mNewSnapshots.addChangeEventListener(this);
+        }
+
+        @Override
+        public void onChildChanged(@NonNull ChangeEventType type,
+                                   @NonNull DataSnapshot snapshot,
+                                   int newIndex,
+                                   int oldIndex) {
+            mDiffer.onChanged();
+        }
+
+        @Override
+        public void onDataChanged() {
+            mDiffer.onNewDataChanged();
+        }
+
+        @Override
+        public void onError(@NonNull DatabaseError error) {
+            FirebaseRecyclerAdapter.this.onError(error);
+        }
+
+        @NonNull
+        @Override
+        public List<DataSnapshot> getOldSnapshots() {
+            return copySnapshots(mOldSnapshots);
+        }
+
+        @NonNull
+        @Override
+        public List<DataSnapshot> getNewSnapshots() {
+            return copySnapshots(mNewSnapshots);
+        }
+
+        @Override
+        public void onDiffReady(@NonNull DiffUtil.DiffResult result) {
+            finish(result);
+        }
+
+        /**
+         * Swap the adapter to the new options.
+         *
+         * @param result the difference between the old and new data, or null to reset the
+         *               adapter without animating.
+         */
+        void finish(@Nullable DiffUtil.DiffResult result) {
+            mDiffer.stop();
+            mTransition = null;
+
+            boolean wasListening = mOldSnapshots.isListening(FirebaseRecyclerAdapter.this);
+            mOldSnapshots.removeChangeEventListener(mOldWatcher);
+            if (mOptions.getOwner() != null) {
+                mOptions.getOwner().getLifecycle().removeObserver(FirebaseRecyclerAdapter.this);
+            }
+            mOldSnapshots.removeChangeEventListener(FirebaseRecyclerAdapter.this);
+
+            mOptions = mNewOptions;
+            mSnapshots = mNewSnapshots;
+            if (result != null && wasListening) {
+                // The new array already holds the data, only dispatch the difference
+                mIgnoreEvents = true;
+                try {
+                    mNewSnapshots.addChangeEventListener(FirebaseRecyclerAdapter.this);
+                } finally {
+                    mIgnoreEvents = false;
+                }
+                result.dispatchUpdatesTo(FirebaseRecyclerAdapter.this);
+            } else {
+                notifyDataSetChanged();
+            }
+            mNewSnapshots.removeChangeEventListener(this);
+
+            // Observing a started owner starts listening right away, which must find the adapter
+            // already registered above rather than registering it a second time.
+            if (mNewOptions.getOwner() != null) {
+                mNewOptions.getOwner().getLifecycle().addObserver(FirebaseRecyclerAdapter.this);
+            }
+        }
+
+        void cancel() {
+            mDiffer.stop();
+            mTransition = null;
+            mOldSnapshots.removeChangeEventListener(mOldWatcher);
+            mNewSnapshots.removeChangeEventListener(this);
+        }
+    }
 }
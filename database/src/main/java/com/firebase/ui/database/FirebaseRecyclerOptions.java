@@ -1,5 +1,6 @@
 package com.firebase.ui.database;
 
+import com.firebase.ui.common.ListStateStore;
 import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.Query;
 
@@ -24,11 +25,14 @@ public final class FirebaseRecyclerOptions<T> {
 
     private final ObservableSnapshotArray<T> mSnapshots;
     private final LifecycleOwner mOwner;
+    private final ListStateStore<T> mStateStore;
 
     private FirebaseRecyclerOptions(ObservableSnapshotArray<T> snapshots,
-                                    @Nullable LifecycleOwner owner) {
+                                    @Nullable LifecycleOwner owner,
+                                    @Nullable ListStateStore<T> stateStore) {
         mSnapshots = snapshots;
         mOwner = owner;
+        mStateStore = stateStore;
     }
 
     /**
@@ -48,6 +52,14 @@ public final class FirebaseRecyclerOptions<T> {
         return mOwner;
     }
 
+    /**
+     * Get the (optional) {@link ListStateStore} used to persist the rendered items.
+     */
+    @Nullable
+    public ListStateStore<T> getStateStore() {
+        return mStateStore;
+    }
+
     /**
      * Builder for a {@link FirebaseRecyclerOptions}.
      *
@@ -57,6 +69,7 @@ public final class FirebaseRecyclerOptions<T> {
 
         private ObservableSnapshotArray<T> mSnapshots;
         private LifecycleOwner mOwner;
+        private ListStateStore<T> mStateStore;
 
         /**
          * Directly set the {@link ObservableSnapshotArray} to be listened to.
@@ -129,6 +142,17 @@ public final class FirebaseRecyclerOptions<T> {
             return setIndexedQuery(keyQuery, dataRef, new ClassSnapshotParser<>(modelClass));
         }
 
+        /**
+         * Set the (optional) {@link ListStateStore} to persist the leading items of the list. On
+         * the next start, the persisted items are shown while the query loads, and then
+         * reconciled with the live data so that only the differences are animated.
+         */
+        @NonNull
+        public Builder<T> setStateStore(@Nullable ListStateStore<T> stateStore) {
+            mStateStore = stateStore;
+            return this;
+        }
+
         /**
          * Set the (optional) {@link LifecycleOwner}. Listens will start and stop after the
          * appropriate lifecycle events.
@@ -146,7 +170,7 @@ public final class FirebaseRecyclerOptions<T> {
         public FirebaseRecyclerOptions<T> build() {
             assertNonNull(mSnapshots, ERR_SNAPSHOTS_NULL);
 
-            return new FirebaseRecyclerOptions<>(mSnapshots, mOwner);
+            return new FirebaseRecyclerOptions<>(mSnapshots, mOwner, mStateStore);
         }
     }
 
@@ -0,0 +1,273 @@
+package com.firebase.ui.database;
+
+import android.util.Log;
+import android.view.ViewGroup;
+
+import com.firebase.ui.common.ChangeEventType;
+import com.firebase.ui.common.Preconditions;
+import com.firebase.ui.common.SectionIndex;
+import com.firebase.ui.common.SectionKeyFunction;
+import com.firebase.ui.common.SnapshotMemoryTrimmer;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseReference;
+
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.OnLifecycleEvent;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * {@link RecyclerView} adapter that shows the items of a Firebase query in sections, with a header
+ * before each run of consecutive items that share a section key, for example a date header in a
+ * chat.
+ * <p>
+ * Headers are maintained incrementally as child events arrive: each event only re-examines the
+ * headers around the affected items and is dispatched as the matching header and item
+ * notifications, and positions are translated in O(log n). The query should be ordered so that
+ * items of the same section are adjacent. The options' state store is not used by this adapter.
+ *
+ * @param <T>   The Java class that maps to the type of objects stored in the Firebase location.
+ * @param <K>   The section key class, for example a date.
+ * @param <HVH> The {@link RecyclerView.ViewHolder} class for section headers.
+ * @param <VH>  The {@link RecyclerView.ViewHolder} class for items.
+ */
+public abstract class FirebaseSectionedRecyclerAdapter<T, K,
+        HVH extends RecyclerView.ViewHolder, VH extends RecyclerView.ViewHolder>
+        extends RecyclerView.Adapter<RecyclerView.ViewHolder>
+        implements ChangeEventListener, LifecycleObserver {
+    private static final String TAG = "FirebaseSectionedAdapter";
+
+    /** View type of the section headers. */
+    public static final int VIEW_TYPE_HEADER = 1;
+
+    /** Default view type of the items. */
+    public static final int VIEW_TYPE_ITEM = 0;
+
+    private final FirebaseRecyclerOptions<T> mOptions;
+    private final ObservableSnapshotArray<T> mSnapshots;
+    private final SectionKeyFunction<T, K> mSectionKeys;
+    private final SectionIndex<K> mSections = new SectionIndex<>(
+            new AdapterListUpdateCallback(this));
+
+    /** Fields changed by the child event currently being dispatched, if known. */
+    private Set<String> mChangedFields;
+
+    /**
+     * Initialize a sectioned {@link RecyclerView.Adapter} that listens to a Firebase query. See
+     * {@link FirebaseRecyclerOptions} for configuration options.
+     *
+     * @param sectionKeys assigns each model to a section.
+     */
+    public FirebaseSectionedRecyclerAdapter(@NonNull FirebaseRecyclerOptions<T> options,
+                                            @NonNull SectionKeyFunction<T, K> sectionKeys) {
+        mOptions = options;
+        mSnapshots = options.getSnapshots();
+        mSectionKeys = Preconditions.checkNotNull(sectionKeys);
+
+        if (mOptions.getOwner() != null) {
+            mOptions.getOwner().getLifecycle().addObserver(this);
+        }
+    }
+
+    /**
+     * Start listening for database changes and populate the adapter.
+     */
+    @OnLifecycleEvent(Lifecycle.Event.ON_START)
+    public void startListening() {
+        if (!mSnapshots.isListening(this)) {
+            mSnapshots.addChangeEventListener(this);
+        }
+    }
+
+    /**
+     * Stop listening for database changes and clear all items in the adapter.
+     */
+    @OnLifecycleEvent(Lifecycle.Event.ON_STOP)
+    public void stopListening() {
+        mSnapshots.removeChangeEventListener(this);
+        if (mSections.getChildCount() != 0) {
+            mSections.clear();
+            notifyDataSetChanged();
+        }
+    }
+
+    @OnLifecycleEvent(Lifecycle.Event.ON_DESTROY)
+    void cleanup(LifecycleOwner source) {
+        source.getLifecycle().removeObserver(this);
+    }
+
+    @Override
+    public void onChildChanged(@NonNull ChangeEventType type,
+                               @NonNull DataSnapshot snapshot,
+                               int newIndex,
+                               int oldIndex) {
+        switch (type) {
+            case ADDED:
+                mSections.insert(newIndex, getSectionKeyAt(newIndex));
+                break;
+            case CHANGED:
+                mSections.change(newIndex, getSectionKeyAt(newIndex), mChangedFields);
+                break;
+            case REMOVED:
+                mSections.remove(newIndex);
+                break;
+            case MOVED:
+                mSections.move(oldIndex, newIndex, getSectionKeyAt(newIndex));
+                break;
+            case MOVED_AND_CHANGED:
+                K key = getSectionKeyAt(newIndex);
+                mSections.move(oldIndex, newIndex, key);
+                mSections.change(newIndex, key, mChangedFields);
+                break;
+            case METADATA_CHANGED:
+                mSections.change(newIndex, getSectionKeyAt(newIndex), null);
+                break;
+            default:
+                throw new IllegalStateException("Incomplete case statement");
+        }
+    }
+
+    @Override
+    public void onChildChanged(@NonNull ChangeEventType type,
+                               @NonNull DataSnapshot snapshot,
+                               int newIndex,
+                               int oldIndex,
+                               @NonNull Set<String> changedFields) {
+        // Route through the regular callback so that subclasses overriding it still see the event
+        mChangedFields = changedFields;
+        try {
+            onChildChanged(type, snapshot, newIndex, oldIndex);
+        } finally {
+            mChangedFields = null;
+        }
+    }
+
+    @Override
+    public void onDataChanged() {
+    }
+
+    @Override
+    public void onError(@NonNull DatabaseError error) {
+        Log.w(TAG, error.toException());
+    }
+
+    /**
+     * Returns the backing {@link ObservableSnapshotArray} used to populate this adapter.
+     */
+    @NonNull
+    public ObservableSnapshotArray<T> getSnapshots() {
+        return mSnapshots;
+    }
+
+    /**
+     * @return true if the given adapter position holds a section header.
+     */
+    public boolean isHeader(int position) {
+        return mSections.isHeader(position);
+    }
+
+    /**
+     * @return the key of the section the given adapter position belongs to.
+     */
+    @NonNull
+    public K getSectionKey(int position) {
+        return mSections.getSectionKey(position);
+    }
+
+    /**
+     * Gets the item at the given adapter position, or the first item of the section if the
+     * position holds a header.
+     */
+    @NonNull
+    public T getItem(int position) {
+        return mSnapshots.get(mSections.getChildIndex(position));
+    }
+
+    /**
+     * Gets the reference of the item at the given adapter position, or of the first item of the
+     * section if the position holds a header.
+     */
+    @NonNull
+    public DatabaseReference getRef(int position) {
+        return mSnapshots.getSnapshot(mSections.getChildIndex(position)).getRef();
+    }
+
+    /**
+     * @return the adapter position of the item at the given index in the snapshot array.
+     */
+    public int getItemPosition(int index) {
+        return mSections.getPosition(index);
+    }
+
+    @Override
+    public int getItemCount() {
+        return mSections.getPositionCount();
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return isHeader(position) ? VIEW_TYPE_HEADER : VIEW_TYPE_ITEM;
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        SnapshotMemoryTrimmer.install(recyclerView.getContext());
+    }
+
+    @NonNull
+    @Override
+    public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        if (viewType == VIEW_TYPE_HEADER) {
+            return onCreateHeaderViewHolder(parent);
+        }
+        return onCreateItemViewHolder(parent, viewType);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        if (isHeader(position)) {
+            onBindHeaderViewHolder((HVH) holder, position, getSectionKey(position));
+        } else {
+            onBindViewHolder((VH) holder, position, getItem(position));
+        }
+    }
+
+    @NonNull
+    private K getSectionKeyAt(int index) {
+        return mSectionKeys.getSectionKey(mSnapshots.get(index));
+    }
+
+    /**
+     * Create the view holder for a section header.
+     */
+    @NonNull
+    protected abstract HVH onCreateHeaderViewHolder(@NonNull ViewGroup parent);
+
+    /**
+     * Create the view holder for an item.
+     *
+     * @param viewType the view type returned by {@link #getItemViewType(int)}.
+     */
+    @NonNull
+    protected abstract VH onCreateItemViewHolder(@NonNull ViewGroup parent, int viewType);
+
+    /**
+     * @param sectionKey the key of the section the header introduces.
+     */
+    protected abstract void onBindHeaderViewHolder(@NonNull HVH holder,
+                                                   int position,
+                                                   @NonNull K sectionKey);
+
+    /**
+     * @param model the model object containing the data that should be used to populate the view.
+     */
+    protected abstract void onBindViewHolder(@NonNull VH holder, int position, @NonNull T model);
+}
@@ -1,6 +1,7 @@
 package com.firebase.ui.database;
 
 import com.firebase.ui.common.BaseObservableSnapshotArray;
+import com.firebase.ui.common.SizeEstimator;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 
@@ -24,4 +25,11 @@ public abstract class ObservableSnapshotArray<T>
     public ObservableSnapshotArray(@NonNull SnapshotParser<T> parser) {
         super(new CachingSnapshotParser<>(parser));
     }
+
+    @Override
+    protected long estimateSize(@NonNull DataSnapshot snapshot) {
+        return SizeEstimator.OBJECT_SIZE
+                + SizeEstimator.estimate(snapshot.getKey())
+                + SizeEstimator.estimate(snapshot.getValue());
+    }
 }
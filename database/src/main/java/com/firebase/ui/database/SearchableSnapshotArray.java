@@ -0,0 +1,110 @@
+package com.firebase.ui.database;
+
+import com.firebase.ui.common.ChangeEventType;
+import com.firebase.ui.common.SearchIndex;
+import com.firebase.ui.common.TextExtractor;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * {@link DerivedSnapshotArray} that only includes the items matching a text query, for example to
+ * filter a list of contacts as the user types.
+ * <p>
+ * The text of each model is indexed incrementally as items are added, changed and removed. Changing
+ * the query with {@link #setQuery(String)} resolves the matching keys from the index instead of
+ * parsing or scanning every item, and only the items entering or leaving the view are visited and
+ * reported. A
+ * query matches an item if each of its words is a prefix of a word in the item's text, ignoring
+ * case and diacritics. Items keep the order of the source array, and every item is included while
+ * the query is empty.
+ */
+public class SearchableSnapshotArray<T> extends DerivedSnapshotArray<T> {
+
+    private final ObservableSnapshotArray<T> mSource;
+    private final SearchIndex<T> mIndex;
+
+    /** Indexes each source event before the view filters it. */
+    private final ChangeEventListener mIndexer = new ChangeEventListener() {
+        @Override
+        public void onChildChanged(@NonNull ChangeEventType type,
+                                   @NonNull DataSnapshot snapshot,
+                                   int newIndex,
+                                   int oldIndex) {
+            switch (type) {
+                case ADDED:
+                case CHANGED:
+                case MOVED_AND_CHANGED:
+                    mIndex.put(snapshot.getKey(), mSource.get(newIndex));
+                    break;
+                case REMOVED:
+                    mIndex.remove(snapshot.getKey());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        @Override
+        public void onDataChanged() {
+        }
+
+        @Override
+        public void onError(@NonNull DatabaseError error) {
+        }
+    };
+
+    /**
+     * @param source     the array to search.
+     * @param extractors the text of each model to index, such as a name and a description.
+     */
+    @SafeVarargs
+    public SearchableSnapshotArray(@NonNull ObservableSnapshotArray<T> source,
+                                   @NonNull TextExtractor<T>... extractors) {
+        super(source, null, null);
+        mSource = source;
+        mIndex = new SearchIndex<>(Arrays.asList(extractors));
+    }
+
+    /**
+     * Change the query, updating the view to the items that match it.
+     *
+     * @param query the words to search for, or null or empty to include every item.
+     */
+    public void setQuery(@Nullable String query) {
+        List<String> changed = new ArrayList<>();
+        if (mIndex.setQuery(query, changed)) {
+            refilter(changed);
+        }
+    }
+
+    @NonNull
+    public String getQuery() {
+        return mIndex.getQuery();
+    }
+
+    @Override
+    protected boolean include(@NonNull DataSnapshot snapshot, @NonNull T model) {
+        return mIndex.matches(snapshot.getKey());
+    }
+
+    @Override
+    protected void onCreate() {
+        // Registered before the view's own listener so that the index is always up to date
+        mSource.addChangeEventListener(mIndexer);
+        super.onCreate();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mSource.removeChangeEventListener(mIndexer);
+        mIndex.clear();
+    }
+}
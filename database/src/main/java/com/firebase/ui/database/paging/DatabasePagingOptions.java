@@ -6,6 +6,8 @@ import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.Query;
 import com.google.firebase.database.annotations.NotNull;
 
+import java.util.concurrent.Executor;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.lifecycle.LifecycleOwner;
@@ -27,15 +29,18 @@ public final class DatabasePagingOptions<T> {
     private final LiveData<PagingData<DataSnapshot>> mData;
     private final DiffUtil.ItemCallback<DataSnapshot> mDiffCallback;
     private final LifecycleOwner mOwner;
+    private final Executor mParseExecutor;
 
     private DatabasePagingOptions(@NonNull LiveData<PagingData<DataSnapshot>> data,
                                   @NonNull SnapshotParser<T> parser,
                                   @NonNull DiffUtil.ItemCallback<DataSnapshot> diffCallback,
-                                  @Nullable LifecycleOwner owner) {
+                                  @Nullable LifecycleOwner owner,
+                                  @Nullable Executor parseExecutor) {
         mParser = parser;
         mData = data;
         mDiffCallback = diffCallback;
         mOwner = owner;
+        mParseExecutor = parseExecutor;
     }
 
     @NonNull
@@ -58,6 +63,11 @@ public final class DatabasePagingOptions<T> {
         return mOwner;
     }
 
+    @Nullable
+    public Executor getParseExecutor() {
+        return mParseExecutor;
+    }
+
     /**
      * Builder for {@link DatabasePagingOptions}.
      */
@@ -67,6 +77,8 @@ public final class DatabasePagingOptions<T> {
         private SnapshotParser<T> mParser;
         private LifecycleOwner mOwner;
         private DiffUtil.ItemCallback<DataSnapshot> mDiffCallback;
+        private boolean mDiffByModelEquality;
+        private Executor mParseExecutor;
 
         /**
          * Sets the query using a {@link ClassSnapshotParser} based
@@ -116,6 +128,36 @@ public final class DatabasePagingOptions<T> {
         }
 
 
+        /**
+         * Sets whether the default {@link DiffUtil.ItemCallback} compares item contents by parsing
+         * both snapshots and comparing the models with {@link Object#equals(Object)}.
+         * <p>
+         * By default contents are compared at the snapshot level, which avoids parsing snapshots
+         * during diffing. Has no effect if a custom diff callback is set.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder<T> setDiffByModelEquality(boolean diffByModelEquality) {
+            mDiffByModelEquality = diffByModelEquality;
+            return this;
+        }
+
+        /**
+         * Sets an optional {@link Executor} used to parse snapshots into models as pages are
+         * loaded, so that binding a view holder doesn't have to parse on the main thread.
+         * <p>
+         * Parsed models are kept in a bounded cache for as long as the page holds the same
+         * snapshot instance. Without an executor, models are parsed lazily on first bind.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder<T> setParseExecutor(@NonNull Executor executor) {
+            mParseExecutor = executor;
+            return this;
+        }
+
         /**
          * Sets an optional {@link LifecycleOwner} to control the lifecycle of the adapter. Otherwise,
          * you must manually call {@link FirebaseRecyclerPagingAdapter#startListening()}
@@ -139,10 +181,11 @@ public final class DatabasePagingOptions<T> {
             }
 
             if (mDiffCallback == null) {
-                mDiffCallback = new DefaultSnapshotDiffCallback<>(mParser);
+                mDiffCallback = new DefaultSnapshotDiffCallback<>(mParser, mDiffByModelEquality);
             }
 
-            return new DatabasePagingOptions<>(mData, mParser, mDiffCallback, mOwner);
+            return new DatabasePagingOptions<>(mData, mParser, mDiffCallback, mOwner,
+                    mParseExecutor);
         }
 
     }
@@ -5,20 +5,50 @@ import android.annotation.SuppressLint;
 import com.firebase.ui.database.SnapshotParser;
 import com.google.firebase.database.DataSnapshot;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.annotation.RestrictTo;
 import androidx.recyclerview.widget.DiffUtil;
 
 /**
  * Default diff callback implementation for Firebase Data snapshots.
+ * <p>
+ * By default contents are compared using a 64-bit hash of each snapshot's raw value, including
+ * its priority. The hash is computed once per snapshot and memoised, so no snapshot is parsed
+ * into a model. Optionally the parsed models can be compared with {@link Object#equals(Object)}
+ * instead.
  */
 @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
 public class DefaultSnapshotDiffCallback<T> extends DiffUtil.ItemCallback<DataSnapshot> {
 
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
     private final SnapshotParser<T> mParser;
+    private final boolean mCompareModels;
+
+    /**
+     * Content hashes keyed by snapshot identity, since {@link DataSnapshot} does not override
+     * equals. Weak keys let snapshots from old pages be collected.
+     */
+    private final Map<DataSnapshot, Long> mHashes =
+            Collections.synchronizedMap(new WeakHashMap<>());
 
     public DefaultSnapshotDiffCallback(@NonNull SnapshotParser<T> parser) {
+        this(parser, false);
+    }
+
+    /**
+     * @param compareModels true to compare parsed models instead of raw snapshot values.
+     */
+    public DefaultSnapshotDiffCallback(@NonNull SnapshotParser<T> parser, boolean compareModels) {
         mParser = parser;
+        mCompareModels = compareModels;
     }
 
     @Override
@@ -31,9 +61,73 @@ public class DefaultSnapshotDiffCallback<T> extends DiffUtil.ItemCallback<DataSn
     @Override
     public boolean areContentsTheSame(@NonNull DataSnapshot oldItem,
                                       @NonNull DataSnapshot newItem) {
+        if (oldItem == newItem) {
+            return true;
+        }
+
+        if (!mCompareModels) {
+            return getContentHash(oldItem) == getContentHash(newItem);
+        }
+
         T oldModel = mParser.parseSnapshot(oldItem);
         T newModel = mParser.parseSnapshot(newItem);
 
         return oldModel.equals(newModel);
     }
+
+    private long getContentHash(@NonNull DataSnapshot snapshot) {
+        Long hash = mHashes.get(snapshot);
+        if (hash == null) {
+            hash = hash(snapshot.getValue(true));
+            mHashes.put(snapshot, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Hash a value tree as returned by {@link DataSnapshot#getValue(boolean)}. Map entries are
+     * combined independently of iteration order.
+     */
+    private static long hash(@Nullable Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Map) {
+            long hash = 0x4d;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                hash += mix(hash(entry.getKey()) * FNV_PRIME ^ hash(entry.getValue()));
+            }
+            return hash;
+        } else if (value instanceof List) {
+            long hash = 0x4c;
+            for (Object item : (List<?>) value) {
+                hash = (hash ^ hash(item)) * FNV_PRIME;
+            }
+            return hash;
+        } else if (value instanceof String) {
+            String string = (String) value;
+            long hash = FNV_OFFSET;
+            for (int i = 0; i < string.length(); i++) {
+                hash = (hash ^ string.charAt(i)) * FNV_PRIME;
+            }
+            return hash;
+        } else if (value instanceof Long) {
+            return mix((Long) value);
+        } else if (value instanceof Number) {
+            return mix(Double.doubleToLongBits(((Number) value).doubleValue()) ^ 0x44);
+        } else if (value instanceof Boolean) {
+            return (Boolean) value ? 0x7231 : 0x7237;
+        } else {
+            return mix(value.hashCode());
+        }
+    }
+
+    /**
+     * SplitMix64 finalizer, spreads the bits of a hash so that sums of hashes stay well
+     * distributed.
+     */
+    private static long mix(long hash) {
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
 }
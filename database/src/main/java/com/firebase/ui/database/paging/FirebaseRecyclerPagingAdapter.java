@@ -4,6 +4,8 @@ import com.firebase.ui.database.SnapshotParser;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseReference;
 
+import java.util.concurrent.Executor;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.lifecycle.Lifecycle;
@@ -13,6 +15,7 @@ import androidx.lifecycle.LiveData;
 import androidx.lifecycle.Observer;
 import androidx.paging.PagingData;
 import androidx.paging.PagingDataAdapter;
+import androidx.paging.PagingDataTransforms;
 import androidx.recyclerview.widget.RecyclerView;
 
 /**
@@ -25,7 +28,7 @@ public abstract class FirebaseRecyclerPagingAdapter<T, VH extends RecyclerView.V
         implements LifecycleEventObserver {
 
     private DatabasePagingOptions<T> mOptions;
-    private SnapshotParser<T> mParser;
+    private IdentityCachingSnapshotParser<T> mParser;
     private LiveData<PagingData<DataSnapshot>> mPagingData;
 
     //Data Observer
@@ -35,7 +38,7 @@ public abstract class FirebaseRecyclerPagingAdapter<T, VH extends RecyclerView.V
             if (snapshots == null) {
                 return;
             }
-            submitData(mOptions.getOwner().getLifecycle(), snapshots);
+            submitData(mOptions.getOwner().getLifecycle(), preParse(snapshots));
         }
     };
 
@@ -56,7 +59,7 @@ public abstract class FirebaseRecyclerPagingAdapter<T, VH extends RecyclerView.V
     public void init() {
         mPagingData = mOptions.getData();
 
-        mParser = mOptions.getParser();
+        mParser = new IdentityCachingSnapshotParser<>(mOptions.getParser());
 
         if (mOptions.getOwner() != null) {
             mOptions.getOwner().getLifecycle().addObserver(this);
@@ -109,6 +112,24 @@ public abstract class FirebaseRecyclerPagingAdapter<T, VH extends RecyclerView.V
         }
     }
 
+    /**
+     * Parses each snapshot on the configured parse executor as its page loads, so that the model
+     * is already cached when the item is bound.
+     */
+    @NonNull
+    private PagingData<DataSnapshot> preParse(@NonNull PagingData<DataSnapshot> snapshots) {
+        Executor executor = mOptions.getParseExecutor();
+        if (executor == null) {
+            return snapshots;
+        }
+
+        final SnapshotParser<T> parser = mParser;
+        return PagingDataTransforms.map(snapshots, executor, snapshot -> {
+            parser.parseSnapshot(snapshot);
+            return snapshot;
+        });
+    }
+
     @Override
     public void onBindViewHolder(@NonNull VH viewHolder, int position) {
         DataSnapshot snapshot = getItem(position);
@@ -0,0 +1,25 @@
+package com.firebase.ui.database.paging;
+
+import com.firebase.ui.common.BaseIdentityCachingSnapshotParser;
+import com.firebase.ui.database.SnapshotParser;
+import com.google.firebase.database.DataSnapshot;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Implementation of {@link BaseIdentityCachingSnapshotParser} for {@link DataSnapshot}.
+ */
+class IdentityCachingSnapshotParser<T>
+        extends BaseIdentityCachingSnapshotParser<DataSnapshot, T>
+        implements SnapshotParser<T> {
+
+    IdentityCachingSnapshotParser(@NonNull SnapshotParser<T> parser) {
+        super(parser);
+    }
+
+    @NonNull
+    @Override
+    public String getId(@NonNull DataSnapshot snapshot) {
+        return snapshot.getKey();
+    }
+}
@@ -16,11 +16,14 @@ package com.firebase.ui.firestore;
 
 import android.annotation.SuppressLint;
 import android.content.Context;
+import android.os.Looper;
 import android.util.Log;
 
 import com.firebase.ui.common.ChangeEventType;
+import com.google.android.gms.tasks.CancellationTokenSource;
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
 import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
@@ -29,6 +32,7 @@ import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.FirebaseFirestoreSettings;
+import com.google.firebase.firestore.MetadataChanges;
 import com.google.firebase.firestore.Query;
 
 import org.junit.After;
@@ -36,16 +40,26 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 @RunWith(AndroidJUnit4.class)
@@ -93,11 +107,65 @@ public class FirestoreArrayTest {
         }
     }
 
+    /**
+     * Listener that records the event types, the last error and changed fields, and whether it
+     * was ever called off the main thread.
+     */
+    private static class RecordingListener extends LoggingListener {
+
+        final List<ChangeEventType> mTypes = Collections.synchronizedList(new ArrayList<>());
+        volatile FirebaseFirestoreException mError;
+        volatile Set<String> mChangedFields;
+        volatile boolean mCalledOffMainThread;
+
+        @Override
+        public void onChildChanged(@NonNull ChangeEventType type,
+                                   @NonNull DocumentSnapshot snapshot,
+                                   int newIndex,
+                                   int oldIndex) {
+            checkThread();
+            mTypes.add(type);
+            super.onChildChanged(type, snapshot, newIndex, oldIndex);
+        }
+
+        @Override
+        public void onChildChanged(@NonNull ChangeEventType type,
+                                   @NonNull DocumentSnapshot snapshot,
+                                   int newIndex,
+                                   int oldIndex,
+                                   @NonNull Set<String> changedFields) {
+            if (type == ChangeEventType.CHANGED) {
+                mChangedFields = new HashSet<>(changedFields);
+            }
+            super.onChildChanged(type, snapshot, newIndex, oldIndex, changedFields);
+        }
+
+        @Override
+        public void onDataChanged() {
+            checkThread();
+            super.onDataChanged();
+        }
+
+        @Override
+        public void onError(@NonNull FirebaseFirestoreException e) {
+            mError = e;
+            super.onError(e);
+        }
+
+        private void checkThread() {
+            if (Looper.myLooper() != Looper.getMainLooper()) {
+                mCalledOffMainThread = true;
+            }
+        }
+    }
+
     private static final String TAG = "FirestoreTest";
     private static final String FIREBASE_APP_NAME = "test-app";
     private static final int TIMEOUT = 30000;
     private static final int INITIAL_SIZE = 3;
+    private static final int VERIFY_INTERVAL = 100;
 
+    private FirebaseFirestore mFirestore;
     private CollectionReference mCollectionRef;
     private FirestoreArray<IntegerDocument> mArray;
     private ChangeEventListener mListener;
@@ -107,21 +175,19 @@ public class FirestoreArrayTest {
         FirebaseApp app = getAppInstance(ApplicationProvider.getApplicationContext());
 
         // Configure Firestore and disable persistence
-        FirebaseFirestore.getInstance(app)
-                .setFirestoreSettings(new FirebaseFirestoreSettings.Builder()
-                        .setPersistenceEnabled(false)
-                        .build());
+        mFirestore = FirebaseFirestore.getInstance(app);
+        mFirestore.setFirestoreSettings(new FirebaseFirestoreSettings.Builder()
+                .setPersistenceEnabled(false)
+                .build());
 
         // Get a fresh 'test' subcollection for each test
-        mCollectionRef = FirebaseFirestore.getInstance(app).collection("firestorearray")
+        mCollectionRef = mFirestore.collection("firestorearray")
                 .document().collection("test");
 
         Log.d(TAG, "Test Collection: " + getConsoleLink(mCollectionRef));
 
         // Query is the whole collection ordered by field
-        mArray = new FirestoreArray<>(
-                mCollectionRef.orderBy("field", Query.Direction.ASCENDING),
-                new ClassSnapshotParser<>(IntegerDocument.class));
+        mArray = new FirestoreArray<>(getQuery(), new ClassSnapshotParser<>(IntegerDocument.class));
 
         // Add a listener to the array so that it's active
         mListener = mArray.addChangeEventListener(new LoggingListener());
@@ -189,6 +255,232 @@ public class FirestoreArrayTest {
         });
     }
 
+    /**
+     * Modify a document in place and confirm that the listener receives the changed field.
+     */
+    @Test
+    public void testChangeReportsChangedFields() throws Exception {
+        final RecordingListener listener = new RecordingListener();
+        mArray.addChangeEventListener(listener);
+
+        try {
+            runAndVerify(() -> mArray.getSnapshot(0).getReference().update("field", -5),
+                    () -> Collections.singleton("field").equals(listener.mChangedFields));
+        } finally {
+            mArray.removeChangeEventListener(listener);
+        }
+    }
+
+    /**
+     * Modify a document so that it moves, and confirm that a single combined event is reported
+     * with the changed field.
+     */
+    @Test
+    public void testCombinedMoveAndChange() throws Exception {
+        final FirestoreArray<IntegerDocument> array = new FirestoreArray<>(getQuery(),
+                new ClassSnapshotParser<>(IntegerDocument.class));
+        array.setCombineMoveAndChange(true);
+        final RecordingListener listener = new RecordingListener();
+        array.addChangeEventListener(listener);
+
+        try {
+            runAndVerify(() -> mCollectionRef.document().set(new IntegerDocument(-1)),
+                    () -> hasFields(array, -1, 0, 1, 2));
+            listener.mTypes.clear();
+
+            runAndVerify(() -> array.getSnapshot(0).getReference().update("field", 5),
+                    () -> hasFields(array, 0, 1, 2, 5));
+            assertEquals(Collections.singletonList(ChangeEventType.MOVED_AND_CHANGED),
+                    listener.mTypes);
+            assertEquals(Collections.singleton("field"), listener.mChangedFields);
+        } finally {
+            array.removeChangeEventListener(listener);
+        }
+    }
+
+    /**
+     * Write a document and confirm that the server acknowledging the write, which only changes
+     * its metadata, is reported as such.
+     */
+    @Test
+    public void testMetadataOnlyChangeIsSeparated() throws Exception {
+        verifyMetadataOnlyChangeIsSeparated(null);
+    }
+
+    /**
+     * Same as {@link #testMetadataOnlyChangeIsSeparated()}, with the document data compared on
+     * the executor.
+     */
+    @Test
+    public void testMetadataOnlyChangeIsSeparatedOnExecutor() throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            verifyMetadataOnlyChangeIsSeparated(executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void verifyMetadataOnlyChangeIsSeparated(@Nullable Executor executor)
+            throws Exception {
+        final FirestoreArray<IntegerDocument> array = new FirestoreArray<>(getQuery(),
+                MetadataChanges.INCLUDE,
+                new ClassSnapshotParser<>(IntegerDocument.class),
+                executor);
+        array.setSeparateMetadataChanges(true);
+        final RecordingListener listener = new RecordingListener();
+        array.addChangeEventListener(listener);
+
+        try {
+            runAndVerify(() -> Tasks.forResult(null), () -> array.size() == INITIAL_SIZE
+                    && !hasPendingWrites(array));
+            listener.mTypes.clear();
+
+            // The new value keeps the document last, so both the local and the acknowledged
+            // version of it are reported in place
+            runAndVerify(() -> array.getSnapshot(2).getReference().update("field", 3),
+                    () -> listener.mTypes.contains(ChangeEventType.METADATA_CHANGED));
+            assertEquals(ChangeEventType.CHANGED, listener.mTypes.get(0));
+            assertEquals(3, array.get(2).field);
+        } finally {
+            array.removeChangeEventListener(listener);
+        }
+    }
+
+    /**
+     * Process snapshots on a concurrent executor and confirm that the batches are applied in
+     * order, and that listeners are still only called on the main thread.
+     */
+    @Test
+    public void testExecutorAppliesChangesInOrder() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        final FirestoreArray<IntegerDocument> array = new FirestoreArray<>(getQuery(),
+                MetadataChanges.EXCLUDE,
+                new ClassSnapshotParser<>(IntegerDocument.class),
+                executor);
+        RecordingListener listener = new RecordingListener();
+        array.addChangeEventListener(listener);
+
+        try {
+            runAndVerify(() -> mCollectionRef.document().set(new IntegerDocument(-1)),
+                    () -> hasFields(array, -1, 0, 1, 2));
+            runAndVerify(() -> array.getSnapshot(1).getReference().delete(),
+                    () -> hasFields(array, -1, 1, 2));
+            runAndVerify(() -> array.getSnapshot(0).getReference().set(new IntegerDocument(4)),
+                    () -> hasFields(array, 1, 2, 4));
+
+            assertFalse(listener.mCalledOffMainThread);
+        } finally {
+            array.removeChangeEventListener(listener);
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Create an array from a query that resolves later, and confirm that it starts listening once
+     * the query is known.
+     */
+    @Test
+    public void testQueryTaskListensOnceResolved() throws Exception {
+        final TaskCompletionSource<Query> source = new TaskCompletionSource<>();
+        final FirestoreArray<IntegerDocument> array = new FirestoreArray<>(source.getTask(),
+                MetadataChanges.EXCLUDE,
+                new ClassSnapshotParser<>(IntegerDocument.class),
+                null);
+        RecordingListener listener = new RecordingListener();
+        array.addChangeEventListener(listener);
+
+        try {
+            assertEquals(0, array.size());
+            runAndVerify(() -> {
+                source.setResult(getQuery());
+                return source.getTask();
+            }, () -> hasFields(array, 0, 1, 2));
+        } finally {
+            array.removeChangeEventListener(listener);
+        }
+    }
+
+    /**
+     * Fail to resolve the query and confirm that the error is reported to the current listener,
+     * and again to a listener attached after listening restarts.
+     */
+    @Test
+    public void testQueryTaskFailureIsReportedToLaterListeners() throws Exception {
+        final TaskCompletionSource<Query> source = new TaskCompletionSource<>();
+        FirestoreArray<IntegerDocument> array = new FirestoreArray<>(source.getTask(),
+                MetadataChanges.EXCLUDE,
+                new ClassSnapshotParser<>(IntegerDocument.class),
+                null);
+        final RecordingListener first = new RecordingListener();
+        array.addChangeEventListener(first);
+
+        runAndVerify(() -> {
+            source.setException(new FirebaseFirestoreException("Missing query",
+                    FirebaseFirestoreException.Code.NOT_FOUND));
+            return source.getTask();
+        }, () -> first.mError != null);
+        array.removeChangeEventListener(first);
+        assertEquals(FirebaseFirestoreException.Code.NOT_FOUND, first.mError.getCode());
+
+        RecordingListener second = new RecordingListener();
+        array.addChangeEventListener(second);
+        array.removeChangeEventListener(second);
+        assertEquals(FirebaseFirestoreException.Code.NOT_FOUND, second.mError.getCode());
+    }
+
+    /**
+     * Cancel resolving the query and confirm that the cancellation is reported as an error.
+     */
+    @Test
+    public void testQueryTaskCancellationIsReported() throws Exception {
+        final CancellationTokenSource cancellation = new CancellationTokenSource();
+        final TaskCompletionSource<Query> source =
+                new TaskCompletionSource<>(cancellation.getToken());
+        FirestoreArray<IntegerDocument> array = new FirestoreArray<>(source.getTask(),
+                MetadataChanges.EXCLUDE,
+                new ClassSnapshotParser<>(IntegerDocument.class),
+                null);
+        final RecordingListener listener = new RecordingListener();
+        array.addChangeEventListener(listener);
+
+        try {
+            runAndVerify(() -> {
+                cancellation.cancel();
+                return source.getTask();
+            }, () -> listener.mError != null);
+            assertEquals(FirebaseFirestoreException.Code.CANCELLED, listener.mError.getCode());
+        } finally {
+            array.removeChangeEventListener(listener);
+        }
+    }
+
+    /**
+     * Seed the array from a bundle that can't be loaded and confirm that the load error reaches
+     * the listener.
+     */
+    @Test
+    public void testInvalidBundleIsReported() throws Exception {
+        final FirestoreRecyclerOptions<IntegerDocument> options =
+                new FirestoreRecyclerOptions.Builder<IntegerDocument>()
+                        .setBundle(mFirestore,
+                                new ByteArrayInputStream("not a bundle".getBytes("UTF-8")),
+                                "query",
+                                IntegerDocument.class)
+                        .build();
+        ObservableSnapshotArray<IntegerDocument> array = options.getSnapshots();
+        final RecordingListener listener = new RecordingListener();
+        array.addChangeEventListener(listener);
+
+        try {
+            runAndVerify(options::getLoadBundleTask, () -> listener.mError != null);
+            assertFalse(options.getLoadBundleTask().isSuccessful());
+            assertEquals(0, array.size());
+        } finally {
+            array.removeChangeEventListener(listener);
+        }
+    }
+
     /**
      * Runs some setup action, waits until it is complete, and then waits for a verification
      * condition to be met. Times out after {@link #TIMEOUT}.
@@ -202,11 +494,17 @@ public class FirestoreArrayTest {
         Task task = setup.call();
         task.addOnCompleteListener(task1 -> semaphore.release());
 
-        // Wait for the verification condition to be met, or time out
+        // Wait for the verification condition to be met, or time out. Events applied on the main
+        // thread may lag behind the setup task, so keep verifying once it is complete.
+        boolean isComplete = false;
         boolean isDone = false;
         while (!isDone && (System.currentTimeMillis() - startTime < TIMEOUT)) {
-            boolean acquired = semaphore.tryAcquire(1, TimeUnit.SECONDS);
-            if (acquired) {
+            if (isComplete) {
+                Thread.sleep(VERIFY_INTERVAL);
+            } else {
+                isComplete = semaphore.tryAcquire(1, TimeUnit.SECONDS);
+            }
+            if (isComplete) {
                 try {
                     isDone = verify.call();
                 } catch (Exception e) {
@@ -219,6 +517,31 @@ public class FirestoreArrayTest {
         assertTrue("Timed out waiting for expected results.", isDone);
     }
 
+    private Query getQuery() {
+        return mCollectionRef.orderBy("field", Query.Direction.ASCENDING);
+    }
+
+    private static boolean hasFields(FirestoreArray<IntegerDocument> array, int... fields) {
+        if (array.size() != fields.length) {
+            return false;
+        }
+        for (int i = 0; i < fields.length; i++) {
+            if (array.get(i).field != fields[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasPendingWrites(FirestoreArray<IntegerDocument> array) {
+        for (int i = 0; i < array.size(); i++) {
+            if (array.getSnapshot(i).getMetadata().hasPendingWrites()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private FirebaseApp getAppInstance(Context context) {
         try {
             return FirebaseApp.getInstance(FIREBASE_APP_NAME);
@@ -0,0 +1,133 @@
+package com.firebase.ui.firestore;
+
+import com.firebase.ui.common.ChangeEventType;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+public class MergedSnapshotArrayTest {
+
+    private static final SnapshotParser<String> PARSER = snapshot -> snapshot.getString("value");
+
+    private static final ChangeEventListener NO_OP_LISTENER = new ChangeEventListener() {
+        @Override
+        public void onChildChanged(@NonNull ChangeEventType type,
+                                   @NonNull DocumentSnapshot snapshot,
+                                   int newIndex,
+                                   int oldIndex) {
+        }
+
+        @Override
+        public void onDataChanged() {
+        }
+
+        @Override
+        public void onError(@NonNull FirebaseFirestoreException e) {
+        }
+    };
+
+    /** Array whose contents are changed directly by the tests. */
+    private static final class TestArray extends ObservableSnapshotArray<String> {
+        private final List<DocumentSnapshot> mSnapshots = new ArrayList<>();
+
+        TestArray() {
+            super(PARSER);
+        }
+
+        @NonNull
+        @Override
+        protected List<DocumentSnapshot> getSnapshots() {
+            return mSnapshots;
+        }
+
+        void add(@NonNull DocumentSnapshot snapshot) {
+            mSnapshots.add(snapshot);
+            notifyOnChildChanged(ChangeEventType.ADDED, snapshot, mSnapshots.size() - 1, -1);
+            notifyOnDataChanged();
+        }
+    }
+
+    private final TestArray mFirst = new TestArray();
+    private final TestArray mSecond = new TestArray();
+    private MergedSnapshotArray<String> mMerged;
+
+    @Before
+    public void setUp() {
+        mMerged = new MergedSnapshotArray<>(
+                Arrays.<ObservableSnapshotArray<String>>asList(mFirst, mSecond),
+                PARSER,
+                String::compareTo);
+        mMerged.addChangeEventListener(NO_OP_LISTENER);
+    }
+
+    @After
+    public void tearDown() {
+        mMerged.removeChangeEventListener(NO_OP_LISTENER);
+    }
+
+    @Test
+    public void testSameIdInOtherCollectionIsNotDuplicate() {
+        mFirst.add(snapshot("users/a", "a", "1"));
+        mSecond.add(snapshot("admins/a", "a", "2"));
+
+        assertEquals(Arrays.asList("1", "2"), new ArrayList<>(mMerged));
+    }
+
+    @Test
+    public void testSamePathAppearsOnce() {
+        mFirst.add(snapshot("users/a", "a", "1"));
+        mSecond.add(snapshot("users/a", "a", "2"));
+
+        assertEquals(Arrays.asList("1"), new ArrayList<>(mMerged));
+    }
+
+    @Test
+    public void testParsingDoesNotFillSourceCaches() {
+        DocumentSnapshot user = snapshot("users/a", "a", "1");
+        DocumentSnapshot admin = snapshot("admins/a", "a", "2");
+        mFirst.add(user);
+        mSecond.add(admin);
+
+        assertEquals("2", mMerged.parseSnapshot(admin));
+        assertEquals("1", mMerged.parseSnapshot(user));
+        assertEquals("1", mFirst.parseSnapshot(user));
+        assertEquals("2", mSecond.parseSnapshot(admin));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNoSourcesThrows() {
+        new MergedSnapshotArray<>(new ArrayList<ObservableSnapshotArray<String>>(),
+                PARSER,
+                String::compareTo);
+    }
+
+    @NonNull
+    private static DocumentSnapshot snapshot(@NonNull String path,
+                                             @NonNull String id,
+                                             @NonNull String value) {
+        DocumentReference reference = mock(DocumentReference.class);
+        when(reference.getPath()).thenReturn(path);
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        when(snapshot.getReference()).thenReturn(reference);
+        when(snapshot.getId()).thenReturn(id);
+        when(snapshot.getString("value")).thenReturn(value);
+        return snapshot;
+    }
+}
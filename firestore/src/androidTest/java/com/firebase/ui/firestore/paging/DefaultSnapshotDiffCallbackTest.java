@@ -0,0 +1,122 @@
+package com.firebase.ui.firestore.paging;
+
+import com.firebase.ui.firestore.SnapshotParser;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.SnapshotMetadata;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.MutableLiveData;
+import androidx.paging.PagingData;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+public class DefaultSnapshotDiffCallbackTest {
+
+    /** Parses the first letter of the name, so different names can make equal models. */
+    private static final SnapshotParser<String> INITIAL_PARSER =
+            snapshot -> snapshot.getString("name").substring(0, 1);
+
+    private final DocumentReference mReference = mock(DocumentReference.class);
+
+    @Test
+    public void testSameIdIsSameItem() {
+        DiffUtil.ItemCallback<DocumentSnapshot> callback =
+                new DefaultSnapshotDiffCallback<>(INITIAL_PARSER);
+
+        assertTrue(callback.areItemsTheSame(
+                snapshot("a", "Ann", false), snapshot("a", "Bob", true)));
+        assertFalse(callback.areItemsTheSame(
+                snapshot("a", "Ann", false), snapshot("b", "Ann", false)));
+    }
+
+    @Test
+    public void testMetadataIsIgnored() {
+        DiffUtil.ItemCallback<DocumentSnapshot> callback =
+                new DefaultSnapshotDiffCallback<>(INITIAL_PARSER);
+
+        assertTrue(callback.areContentsTheSame(
+                snapshot("a", "Ann", true), snapshot("a", "Ann", false)));
+    }
+
+    @Test
+    public void testDataIsCompared() {
+        DiffUtil.ItemCallback<DocumentSnapshot> callback =
+                new DefaultSnapshotDiffCallback<>(INITIAL_PARSER);
+
+        assertFalse(callback.areContentsTheSame(
+                snapshot("a", "Ann", false), snapshot("a", "Amy", false)));
+    }
+
+    @Test
+    public void testReferenceIsCompared() {
+        DiffUtil.ItemCallback<DocumentSnapshot> callback =
+                new DefaultSnapshotDiffCallback<>(INITIAL_PARSER);
+        DocumentSnapshot other = snapshot("a", "Ann", false);
+        when(other.getReference()).thenReturn(mock(DocumentReference.class));
+
+        assertFalse(callback.areContentsTheSame(snapshot("a", "Ann", false), other));
+    }
+
+    @Test
+    public void testModelsAreComparedByEquality() {
+        DiffUtil.ItemCallback<DocumentSnapshot> callback =
+                new DefaultSnapshotDiffCallback<>(INITIAL_PARSER, true);
+
+        assertTrue(callback.areContentsTheSame(
+                snapshot("a", "Ann", false), snapshot("a", "Amy", false)));
+        assertFalse(callback.areContentsTheSame(
+                snapshot("a", "Ann", false), snapshot("a", "Bob", false)));
+    }
+
+    @Test
+    public void testDiffByModelEqualityIsUsedByDefaultCallback() {
+        FirestorePagingOptions<String> options = new FirestorePagingOptions.Builder<String>()
+                .setPagingData(new MutableLiveData<PagingData<DocumentSnapshot>>(), INITIAL_PARSER)
+                .setDiffByModelEquality(true)
+                .build();
+
+        assertTrue(options.getDiffCallback().areContentsTheSame(
+                snapshot("a", "Ann", false), snapshot("a", "Amy", false)));
+    }
+
+    @Test
+    public void testSnapshotsAreComparedByDefault() {
+        FirestorePagingOptions<String> options = new FirestorePagingOptions.Builder<String>()
+                .setPagingData(new MutableLiveData<PagingData<DocumentSnapshot>>(), INITIAL_PARSER)
+                .build();
+
+        assertFalse(options.getDiffCallback().areContentsTheSame(
+                snapshot("a", "Ann", false), snapshot("a", "Amy", false)));
+    }
+
+    @NonNull
+    private DocumentSnapshot snapshot(@NonNull String id,
+                                      @NonNull String name,
+                                      boolean hasPendingWrites) {
+        Map<String, Object> data = new HashMap<>(Collections.singletonMap("name", name));
+        SnapshotMetadata metadata = mock(SnapshotMetadata.class);
+        when(metadata.hasPendingWrites()).thenReturn(hasPendingWrites);
+
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        when(snapshot.getId()).thenReturn(id);
+        when(snapshot.getReference()).thenReturn(mReference);
+        when(snapshot.getData()).thenReturn(data);
+        when(snapshot.getString("name")).thenReturn(name);
+        when(snapshot.getMetadata()).thenReturn(metadata);
+        return snapshot;
+    }
+}
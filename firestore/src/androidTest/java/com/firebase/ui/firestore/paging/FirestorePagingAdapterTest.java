@@ -0,0 +1,172 @@
+package com.firebase.ui.firestore.paging;
+
+import android.app.Instrumentation;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.ViewGroup;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+import androidx.lifecycle.MutableLiveData;
+import androidx.paging.PagingData;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(AndroidJUnit4.class)
+public class FirestorePagingAdapterTest {
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private final Instrumentation mInstrumentation = InstrumentationRegistry.getInstrumentation();
+    private final MutableLiveData<PagingData<DocumentSnapshot>> mPagingData =
+            new MutableLiveData<>();
+    private final AtomicInteger mParseCount = new AtomicInteger();
+    private final AtomicInteger mExecutedCount = new AtomicInteger();
+
+    @Test
+    public void testPagesArePreParsedOnExecutor() {
+        TestAdapter adapter = present(command -> {
+            mExecutedCount.incrementAndGet();
+            command.run();
+        });
+
+        assertTrue(mExecutedCount.get() > 0);
+        assertEquals(2, mParseCount.get());
+
+        // Binding uses the cached models instead of parsing again
+        assertEquals(Arrays.asList("Ann", "Bob"), bindAll(adapter));
+        assertEquals(2, mParseCount.get());
+    }
+
+    @Test
+    public void testItemsAreParsedOnBindWithoutExecutor() {
+        TestAdapter adapter = present(null);
+
+        assertEquals(0, mParseCount.get());
+
+        assertEquals(Arrays.asList("Ann", "Bob"), bindAll(adapter));
+        assertEquals(2, mParseCount.get());
+    }
+
+    /**
+     * Build a started adapter on the main thread and wait for it to present a page of two
+     * documents.
+     */
+    @NonNull
+    private TestAdapter present(@Nullable Executor parseExecutor) {
+        AtomicReference<TestAdapter> adapter = new AtomicReference<>();
+        mInstrumentation.runOnMainSync(() -> {
+            TestLifecycleOwner owner = new TestLifecycleOwner();
+            FirestorePagingOptions.Builder<String> builder =
+                    new FirestorePagingOptions.Builder<String>()
+                            .setPagingData(mPagingData, snapshot -> {
+                                mParseCount.incrementAndGet();
+                                return snapshot.getString("name");
+                            })
+                            .setLifecycleOwner(owner);
+            if (parseExecutor != null) {
+                builder.setParseExecutor(parseExecutor);
+            }
+            adapter.set(new TestAdapter(builder.build()));
+
+            owner.getLifecycle().setCurrentState(Lifecycle.State.RESUMED);
+            mPagingData.setValue(PagingData.from(
+                    Arrays.asList(snapshot("a", "Ann"), snapshot("b", "Bob"))));
+        });
+
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT_MILLIS;
+        while (itemCount(adapter.get()) < 2) {
+            if (SystemClock.uptimeMillis() > deadline) {
+                fail("Timed out waiting for the page to be presented");
+            }
+            SystemClock.sleep(10);
+        }
+        return adapter.get();
+    }
+
+    private int itemCount(@NonNull TestAdapter adapter) {
+        AtomicInteger count = new AtomicInteger();
+        mInstrumentation.runOnMainSync(() -> count.set(adapter.getItemCount()));
+        return count.get();
+    }
+
+    @NonNull
+    private List<String> bindAll(@NonNull TestAdapter adapter) {
+        mInstrumentation.runOnMainSync(() -> {
+            for (int i = 0; i < adapter.getItemCount(); i++) {
+                adapter.onBindViewHolder(holder(), i);
+            }
+        });
+        return adapter.mBoundModels;
+    }
+
+    @NonNull
+    private static DocumentSnapshot snapshot(@NonNull String id, @NonNull String name) {
+        DocumentSnapshot snapshot = mock(DocumentSnapshot.class);
+        when(snapshot.getId()).thenReturn(id);
+        when(snapshot.getString("name")).thenReturn(name);
+        return snapshot;
+    }
+
+    @NonNull
+    private static RecyclerView.ViewHolder holder() {
+        View view = new View(ApplicationProvider.getApplicationContext());
+        return new RecyclerView.ViewHolder(view) {};
+    }
+
+    private static final class TestAdapter
+            extends FirestorePagingAdapter<String, RecyclerView.ViewHolder> {
+        final List<String> mBoundModels = Collections.synchronizedList(new ArrayList<>());
+
+        TestAdapter(@NonNull FirestorePagingOptions<String> options) {
+            super(options);
+        }
+
+        @NonNull
+        @Override
+        public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent,
+                                                          int viewType) {
+            return holder();
+        }
+
+        @Override
+        protected void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder,
+                                        int position,
+                                        @NonNull String model) {
+            mBoundModels.add(model);
+        }
+    }
+
+    private static final class TestLifecycleOwner implements LifecycleOwner {
+        private final LifecycleRegistry mLifecycle = new LifecycleRegistry(this);
+
+        @NonNull
+        @Override
+        public LifecycleRegistry getLifecycle() {
+            return mLifecycle;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.firebase.ui.firestore;
+
+import com.firebase.ui.common.BaseChangedFields;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Implementation of {@link BaseChangedFields} for {@link DocumentSnapshot}.
+ */
+class ChangedFields extends BaseChangedFields<DocumentSnapshot> {
+
+    ChangedFields(@NonNull DocumentSnapshot previous, @NonNull DocumentSnapshot current) {
+        super(previous, current);
+    }
+
+    @NonNull
+    @Override
+    protected Set<String> computeChangedFields(@NonNull DocumentSnapshot previous,
+                                               @NonNull DocumentSnapshot current) {
+        return diffKeys(previous.getData(), current.getData());
+    }
+}
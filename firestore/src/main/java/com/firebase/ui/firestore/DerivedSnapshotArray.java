@@ -0,0 +1,214 @@
+package com.firebase.ui.firestore;
+
+import com.firebase.ui.common.BaseDerivedSnapshotList;
+import com.firebase.ui.common.ChangeEventType;
+import com.firebase.ui.common.ModelFilter;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * {@link ObservableSnapshotArray} that shows a filtered and/or sorted view of another array, for
+ * example to hide some documents on the client or to add a secondary sort to a query.
+ * <p>
+ * The view is updated incrementally from the source's events in O(log n) per event, and reports
+ * its own events with indices translated to the view, so it can back a {@link
+ * FirestoreRecyclerAdapter} directly. Without a comparator, the source order is kept.
+ * <p>
+ * Each document is parsed once through the source array when it arrives or changes, and its model
+ * is kept for as long as the view is listening.
+ */
+public class DerivedSnapshotArray<T> extends ObservableSnapshotArray<T> {
+
+    private final ObservableSnapshotArray<T> mSource;
+    private final BaseDerivedSnapshotList<DocumentSnapshot, T> mSnapshots;
+
+    /** Fields changed by the source event currently being handled, if known. */
+    private Set<String> mChangedFields;
+
+    private final ChangeEventListener mSourceListener = new ChangeEventListener() {
+        @Override
+        public void onChildChanged(@NonNull ChangeEventType type,
+                                   @NonNull DocumentSnapshot snapshot,
+                                   int newIndex,
+                                   int oldIndex) {
+            switch (type) {
+                case ADDED:
+                    mSnapshots.onSourceAdded(snapshot, mSource.get(newIndex), newIndex);
+                    break;
+                case REMOVED:
+                    mSnapshots.onSourceRemoved(snapshot, oldIndex);
+                    break;
+                case MOVED:
+                case MOVED_AND_CHANGED:
+                    mSnapshots.onSourceMoved(snapshot, mSource.get(newIndex), oldIndex, newIndex,
+                            type == ChangeEventType.MOVED_AND_CHANGED);
+                    break;
+                case CHANGED:
+                case METADATA_CHANGED:
+                    mSnapshots.onSourceChanged(type, snapshot, mSource.get(newIndex), newIndex);
+                    break;
+                default:
+                    throw new IllegalStateException("Incomplete case statement");
+            }
+        }
+
+        @Override
+        public void onChildChanged(@NonNull ChangeEventType type,
+                                   @NonNull DocumentSnapshot snapshot,
+                                   int newIndex,
+                                   int oldIndex,
+                                   @NonNull Set<String> changedFields) {
+            mChangedFields = changedFields;
+            try {
+                onChildChanged(type, snapshot, newIndex, oldIndex);
+            } finally {
+                mChangedFields = null;
+            }
+        }
+
+        @Override
+        public void onDataChanged() {
+            notifyOnDataChanged();
+        }
+
+        @Override
+        public void onError(@NonNull FirebaseFirestoreException e) {
+            notifyOnError(e);
+        }
+    };
+
+    private final BaseDerivedSnapshotList.Callback<DocumentSnapshot> mCallback =
+            new BaseDerivedSnapshotList.Callback<DocumentSnapshot>() {
+                @Override
+                public void onInserted(@NonNull DocumentSnapshot snapshot, int index) {
+                    notifyOnChildChanged(ChangeEventType.ADDED, snapshot, index, -1);
+                }
+
+                @Override
+                public void onRemoved(@NonNull DocumentSnapshot snapshot, int index) {
+                    notifyOnChildChanged(ChangeEventType.REMOVED, snapshot, -1, index);
+                }
+
+                @Override
+                public void onMoved(@NonNull DocumentSnapshot snapshot,
+                                    int fromIndex,
+                                    int toIndex) {
+                    notifyOnChildChanged(ChangeEventType.MOVED, snapshot, toIndex, fromIndex);
+                }
+
+                @Override
+                public void onChanged(@NonNull ChangeEventType type,
+                                      @NonNull DocumentSnapshot snapshot,
+                                      int index) {
+                    if (mChangedFields != null) {
+                        notifyOnChildChanged(type, snapshot, index, index, mChangedFields);
+                    } else {
+                        notifyOnChildChanged(type, snapshot, index, index);
+                    }
+                }
+            };
+
+    /**
+     * Create a view that only includes the source's items accepted by the filter, in source order.
+     *
+     * @see #DerivedSnapshotArray(ObservableSnapshotArray, ModelFilter, Comparator)
+     */
+    public DerivedSnapshotArray(@NonNull ObservableSnapshotArray<T> source,
+                                @NonNull ModelFilter<T> filter) {
+        this(source, filter, null);
+    }
+
+    /**
+     * Create a view that includes all of the source's items, sorted by the comparator.
+     *
+     * @see #DerivedSnapshotArray(ObservableSnapshotArray, ModelFilter, Comparator)
+     */
+    public DerivedSnapshotArray(@NonNull ObservableSnapshotArray<T> source,
+                                @NonNull Comparator<T> comparator) {
+        this(source, null, comparator);
+    }
+
+    /**
+     * @param source     the array to derive the view from.
+     * @param filter     the (optional) filter deciding which models are included.
+     * @param comparator the (optional) order of the view. Models that compare equal are ordered by
+     *                   document ID.
+     */
+    public DerivedSnapshotArray(@NonNull ObservableSnapshotArray<T> source,
+                                @Nullable ModelFilter<T> filter,
+                                @Nullable Comparator<T> comparator) {
+        super(source::parseSnapshot);
+        mSource = source;
+        mSnapshots = new BaseDerivedSnapshotList<DocumentSnapshot, T>(
+                filter, comparator, mCallback) {
+            @NonNull
+            @Override
+            public String getKey(@NonNull DocumentSnapshot snapshot) {
+                return snapshot.getId();
+            }
+
+            @Override
+            protected boolean include(@NonNull DocumentSnapshot snapshot, @NonNull T model) {
+                return super.include(snapshot, model)
+                        && DerivedSnapshotArray.this.include(snapshot, model);
+            }
+        };
+    }
+
+    /**
+     * Re-evaluate the filter for every item, for example after the criteria the filter depends on
+     * changed. Only the items entering or leaving the view are reported, and no snapshot is parsed
+     * again.
+     */
+    public void refilter() {
+        mSnapshots.refilter();
+    }
+
+    /**
+     * Re-evaluate the filter for the documents with the given IDs only, when the caller knows
+     * which documents a change to the criteria can affect. Costs O(log n) per document.
+     */
+    public void refilter(@NonNull Collection<String> ids) {
+        mSnapshots.refilter(ids);
+    }
+
+    /**
+     * Decide whether an item is part of the view, in addition to the filter. Subclasses can
+     * override this to filter on the snapshot itself. Includes every item by default.
+     */
+    protected boolean include(@NonNull DocumentSnapshot snapshot, @NonNull T model) {
+        return true;
+    }
+
+    @NonNull
+    @Override
+    protected List<DocumentSnapshot> getSnapshots() {
+        return mSnapshots;
+    }
+
+    @NonNull
+    @Override
+    public T get(int index) {
+        return mSnapshots.getModel(index);
+    }
+
+    @Override
+    protected void onCreate() {
+        super.onCreate();
+        mSource.addChangeEventListener(mSourceListener);
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mSource.removeChangeEventListener(mSourceListener);
+    }
+}
@@ -1,6 +1,10 @@
 package com.firebase.ui.firestore;
 
+import android.os.Handler;
+import android.os.Looper;
+
 import com.firebase.ui.common.ChangeEventType;
+import com.google.android.gms.tasks.Task;
 import com.google.firebase.firestore.DocumentChange;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.EventListener;
@@ -8,11 +12,15 @@ import com.google.firebase.firestore.FirebaseFirestoreException;
 import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.MetadataChanges;
 import com.google.firebase.firestore.Query;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.google.firebase.firestore.QuerySnapshot;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -22,9 +30,26 @@ import androidx.annotation.Nullable;
  */
 public class FirestoreArray<T> extends ObservableSnapshotArray<T>
         implements EventListener<QuerySnapshot> {
+    /**
+     * Maximum number of documents parsed ahead of time per background batch. Any more than this
+     * would simply be evicted from the parser cache before they are bound.
+     */
+    private static final int MAX_PREPARSED_MODELS = 100;
+
     private Query mQuery;
+    @Nullable private final Task<Query> mQueryTask;
     private final MetadataChanges mMetadataChanges;
+    private final SnapshotParser<T> mParser;
+    @Nullable private final Executor mExecutor;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    private boolean mCombineMoveAndChange;
+    private volatile boolean mSeparateMetadataChanges;
+
     private ListenerRegistration mRegistration;
+    private BackgroundListener mBackgroundListener;
+    private boolean mResolvingQuery;
+    @Nullable private FirebaseFirestoreException mQueryError;
 
     private final List<DocumentSnapshot> mSnapshots = new ArrayList<>();
 
@@ -46,9 +71,67 @@ public class FirestoreArray<T> extends ObservableSnapshotArray<T>
     public FirestoreArray(@NonNull Query query,
                           @NonNull MetadataChanges changes,
                           @NonNull SnapshotParser<T> parser) {
+        this(query, changes, parser, null);
+    }
+
+    /**
+     * @param executor if non-null, snapshot events are delivered on this executor and the
+     *                 resulting document changes are computed (and the first models parsed) off
+     *                 the main thread. Only the precomputed batch is applied on the main thread.
+     *                 Events are always processed in order, even if the executor is concurrent.
+     * @see #FirestoreArray(Query, MetadataChanges, SnapshotParser)
+     */
+    public FirestoreArray(@NonNull Query query,
+                          @NonNull MetadataChanges changes,
+                          @NonNull SnapshotParser<T> parser,
+                          @Nullable Executor executor) {
         super(parser);
         mQuery = query;
+        mQueryTask = null;
         mMetadataChanges = changes;
+        mParser = parser;
+        mExecutor = executor;
+    }
+
+    /**
+     * Create a new FirestoreArray for a query that is not known yet, such as a named query from a
+     * Firestore bundle. Listening starts as soon as the query resolves.
+     *
+     * @param query task resolving to the query to listen to. If the task fails, is cancelled or
+     *              resolves to {@code null}, the error is reported to listeners through {@code
+     *              onError}, including listeners attached later.
+     * @see #FirestoreArray(Query, MetadataChanges, SnapshotParser, Executor)
+     */
+    public FirestoreArray(@NonNull Task<Query> query,
+                          @NonNull MetadataChanges changes,
+                          @NonNull SnapshotParser<T> parser,
+                          @Nullable Executor executor) {
+        super(parser);
+        mQueryTask = query;
+        mMetadataChanges = changes;
+        mParser = parser;
+        mExecutor = executor;
+    }
+
+    /**
+     * Report a document that was modified and moved as a single {@link
+     * ChangeEventType#MOVED_AND_CHANGED} event, instead of a {@link ChangeEventType#MOVED} event
+     * followed by a {@link ChangeEventType#CHANGED} event. All listeners must handle the combined
+     * event. Disabled by default.
+     */
+    public void setCombineMoveAndChange(boolean combine) {
+        mCombineMoveAndChange = combine;
+    }
+
+    /**
+     * Report modifications that only affect document metadata, such as {@code hasPendingWrites}
+     * or {@code isFromCache}, as {@link ChangeEventType#METADATA_CHANGED} instead of {@link
+     * ChangeEventType#CHANGED}, so listeners can skip a full rebind. Only has an effect when
+     * metadata changes are included in the query listen. All listeners must handle the event.
+     * The document data is compared on the executor, if one was given. Disabled by default.
+     */
+    public void setSeparateMetadataChanges(boolean separate) {
+        mSeparateMetadataChanges = separate;
     }
 
     @NonNull
@@ -60,14 +143,56 @@ public class FirestoreArray<T> extends ObservableSnapshotArray<T>
     @Override
     protected void onCreate() {
         super.onCreate();
-        mRegistration = mQuery.addSnapshotListener(mMetadataChanges, this);
+        if (mQuery != null) {
+            addSnapshotListener();
+        } else if (mQueryError != null) {
+            notifyOnError(mQueryError);
+        } else if (!mResolvingQuery) {
+            // Only observe the task once, however many times listening is restarted
+            mResolvingQuery = true;
+            mQueryTask.addOnCompleteListener(this::onQueryResolved);
+        }
+    }
+
+    private void onQueryResolved(@NonNull Task<Query> task) {
+        if (task.isCanceled()) {
+            mQueryError = new FirebaseFirestoreException("Resolving the query was cancelled",
+                    FirebaseFirestoreException.Code.CANCELLED);
+        } else if (!task.isSuccessful() || task.getResult() == null) {
+            mQueryError = toFirestoreException(task.getException());
+        } else {
+            mQuery = task.getResult();
+        }
+
+        if (!isListening()) {
+            return;
+        }
+        if (mQueryError != null) {
+            notifyOnError(mQueryError);
+        } else if (mRegistration == null) {
+            addSnapshotListener();
+        }
+    }
+
+    private void addSnapshotListener() {
+        if (mExecutor == null) {
+            mRegistration = mQuery.addSnapshotListener(mMetadataChanges, this);
+        } else {
+            mBackgroundListener = new BackgroundListener();
+            mRegistration = mQuery.addSnapshotListener(
+                    new SequentialExecutor(mExecutor), mMetadataChanges, mBackgroundListener);
+        }
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        mRegistration.remove();
-        mRegistration = null;
+        if (mRegistration != null) {
+            mRegistration.remove();
+            mRegistration = null;
+        }
+        // Drop any batches that were computed for the old registration but not yet applied
+        mBackgroundListener = null;
     }
 
     @Override
@@ -77,53 +202,225 @@ public class FirestoreArray<T> extends ObservableSnapshotArray<T>
             return;
         }
 
-        // Break down each document event
+        applyChanges(computeChanges(snapshots, false, null));
+    }
+
+    @NonNull
+    private static FirebaseFirestoreException toFirestoreException(@Nullable Exception e) {
+        if (e instanceof FirebaseFirestoreException) {
+            return (FirebaseFirestoreException) e;
+        } else if (e == null) {
+            return new FirebaseFirestoreException("Query could not be found",
+                    FirebaseFirestoreException.Code.NOT_FOUND);
+        } else {
+            return new FirebaseFirestoreException("Query could not be resolved",
+                    FirebaseFirestoreException.Code.UNKNOWN, e);
+        }
+    }
+
+    /**
+     * Break down each document event into the list of operations to apply to the local copy of
+     * the query results. Does not touch any state, so it is safe to call from any thread.
+     *
+     * @param documents the latest snapshot of each document seen by the caller, by path. If
+     *                  non-null, it is updated and used to find metadata-only changes ahead of
+     *                  time.
+     */
+    @NonNull
+    private List<ChangeOp<T>> computeChanges(@NonNull QuerySnapshot snapshots,
+                                             boolean parse,
+                                             @Nullable Map<String, DocumentSnapshot> documents) {
         List<DocumentChange> changes = snapshots.getDocumentChanges(mMetadataChanges);
+        List<ChangeOp<T>> ops = new ArrayList<>(changes.size());
+        boolean separateMetadata = mSeparateMetadataChanges;
+        int parsed = 0;
         for (DocumentChange change : changes) {
-            switch (change.getType()) {
+            ChangeOp<T> op = new ChangeOp<>(change.getType(),
+                    change.getDocument(),
+                    change.getNewIndex(),
+                    change.getOldIndex());
+            if (parse && parsed < MAX_PREPARSED_MODELS
+                    && change.getType() != DocumentChange.Type.REMOVED) {
+                op.mModel = mParser.parseSnapshot(op.mSnapshot);
+                parsed++;
+            }
+            if (documents != null) {
+                String path = op.mSnapshot.getReference().getPath();
+                DocumentSnapshot previous = change.getType() == DocumentChange.Type.REMOVED
+                        ? documents.remove(path)
+                        : documents.put(path, op.mSnapshot);
+                if (separateMetadata && previous != null
+                        && change.getType() == DocumentChange.Type.MODIFIED
+                        && op.mOldIndex == op.mNewIndex) {
+                    op.mMetadataOnly = isMetadataOnlyChange(previous, op.mSnapshot);
+                }
+            }
+            ops.add(op);
+        }
+        return ops;
+    }
+
+    private void applyChanges(@NonNull List<ChangeOp<T>> ops) {
+        for (ChangeOp<T> op : ops) {
+            switch (op.mType) {
                 case ADDED:
-                    onDocumentAdded(change);
+                    onDocumentAdded(op);
                     break;
                 case REMOVED:
-                    onDocumentRemoved(change);
+                    onDocumentRemoved(op);
                     break;
                 case MODIFIED:
-                    onDocumentModified(change);
+                    onDocumentModified(op);
                     break;
             }
+
+            if (op.mModel != null) {
+                cacheParsedModel(op.mSnapshot, op.mModel);
+            }
         }
 
         notifyOnDataChanged();
     }
 
-    private void onDocumentAdded(DocumentChange change) {
-        QueryDocumentSnapshot snapshot = change.getDocument();
-        mSnapshots.add(change.getNewIndex(), snapshot);
-        notifyOnChildChanged(ChangeEventType.ADDED, snapshot, change.getNewIndex(), -1);
+    private void onDocumentAdded(ChangeOp<T> op) {
+        mSnapshots.add(op.mNewIndex, op.mSnapshot);
+        notifyOnChildChanged(ChangeEventType.ADDED, op.mSnapshot, op.mNewIndex, -1);
     }
 
-    private void onDocumentRemoved(DocumentChange change) {
-        mSnapshots.remove(change.getOldIndex());
-        QueryDocumentSnapshot snapshot = change.getDocument();
-        notifyOnChildChanged(ChangeEventType.REMOVED, snapshot, -1, change.getOldIndex());
+    private void onDocumentRemoved(ChangeOp<T> op) {
+        mSnapshots.remove(op.mOldIndex);
+        notifyOnChildChanged(ChangeEventType.REMOVED, op.mSnapshot, -1, op.mOldIndex);
     }
 
-    private void onDocumentModified(DocumentChange change) {
-        QueryDocumentSnapshot snapshot = change.getDocument();
-        if (change.getOldIndex() == change.getNewIndex()) {
+    private void onDocumentModified(ChangeOp<T> op) {
+        DocumentSnapshot snapshot = op.mSnapshot;
+        if (op.mOldIndex == op.mNewIndex) {
             // Document modified only
-            mSnapshots.set(change.getNewIndex(), snapshot);
-            notifyOnChildChanged(ChangeEventType.CHANGED, snapshot,
-                    change.getNewIndex(), change.getNewIndex());
+            DocumentSnapshot previous = mSnapshots.set(op.mNewIndex, snapshot);
+            if (mSeparateMetadataChanges && (op.mMetadataOnly == null
+                    ? isMetadataOnlyChange(previous, snapshot)
+                    : op.mMetadataOnly)) {
+                notifyOnChildChanged(ChangeEventType.METADATA_CHANGED, snapshot,
+                        op.mNewIndex, op.mNewIndex);
+            } else {
+                notifyOnChildChanged(ChangeEventType.CHANGED, snapshot,
+                        op.mNewIndex, op.mNewIndex, new ChangedFields(previous, snapshot));
+            }
         } else {
             // Document moved and possibly also modified
-            mSnapshots.remove(change.getOldIndex());
-            mSnapshots.add(change.getNewIndex(), snapshot);
+            DocumentSnapshot previous = mSnapshots.remove(op.mOldIndex);
+            mSnapshots.add(op.mNewIndex, snapshot);
+
+            if (mCombineMoveAndChange) {
+                notifyOnChildChanged(ChangeEventType.MOVED_AND_CHANGED, snapshot,
+                        op.mNewIndex, op.mOldIndex, new ChangedFields(previous, snapshot));
+            } else {
+                notifyOnChildChanged(ChangeEventType.MOVED, snapshot,
+                        op.mNewIndex, op.mOldIndex);
+                notifyOnChildChanged(ChangeEventType.CHANGED, snapshot,
+                        op.mNewIndex, op.mNewIndex, new ChangedFields(previous, snapshot));
+            }
+        }
+    }
+
+    private static boolean isMetadataOnlyChange(@NonNull DocumentSnapshot previous,
+                                                @NonNull DocumentSnapshot current) {
+        return !previous.getMetadata().equals(current.getMetadata())
+                && Objects.equals(previous.getData(), current.getData());
+    }
+
+    /**
+     * A single precomputed change to the local copy of the query results.
+     */
+    private static final class ChangeOp<T> {
+        final DocumentChange.Type mType;
+        final DocumentSnapshot mSnapshot;
+        final int mNewIndex;
+        final int mOldIndex;
+
+        /** Model parsed ahead of time, or null if parsing was deferred to the first bind. */
+        @Nullable T mModel;
+
+        /**
+         * Whether a modification in place only changed the document metadata, or null if that
+         * is left to the main thread.
+         */
+        @Nullable Boolean mMetadataOnly;
+
+        ChangeOp(DocumentChange.Type type, DocumentSnapshot snapshot, int newIndex, int oldIndex) {
+            mType = type;
+            mSnapshot = snapshot;
+            mNewIndex = newIndex;
+            mOldIndex = oldIndex;
+        }
+    }
 
-            notifyOnChildChanged(ChangeEventType.MOVED, snapshot,
-                    change.getNewIndex(), change.getOldIndex());
-            notifyOnChildChanged(ChangeEventType.CHANGED, snapshot,
-                    change.getNewIndex(), change.getNewIndex());
+    /**
+     * Receives snapshot events on the background executor and posts the resulting batch of
+     * operations to the main thread.
+     */
+    private final class BackgroundListener implements EventListener<QuerySnapshot> {
+        /**
+         * The documents in the query results as of the last event, only touched on the (serial)
+         * background executor.
+         */
+        private final Map<String, DocumentSnapshot> mDocuments = new HashMap<>();
+
+        @Override
+        public void onEvent(@Nullable final QuerySnapshot snapshots,
+                            @Nullable final FirebaseFirestoreException e) {
+            if (e != null) {
+                mMainHandler.post(() -> {
+                    if (mBackgroundListener == BackgroundListener.this) {
+                        notifyOnError(e);
+                    }
+                });
+                return;
+            }
+
+            final List<ChangeOp<T>> ops = computeChanges(snapshots, true, mDocuments);
+            mMainHandler.post(() -> {
+                if (mBackgroundListener == BackgroundListener.this) {
+                    applyChanges(ops);
+                }
+            });
+        }
+    }
+
+    /**
+     * Runs tasks one at a time and in submission order on top of any executor. The batches
+     * computed for consecutive snapshots must reach the main thread in order, since each one is
+     * relative to the state left by the previous one. Unlike {@link
+     * com.firebase.ui.common.SerialExecutor}, it has no thread of its own.
+     */
+    private static final class SequentialExecutor implements Executor {
+        private final Executor mDelegate;
+        private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+        private Runnable mActive;
+
+        SequentialExecutor(Executor delegate) {
+            mDelegate = delegate;
+        }
+
+        @Override
+        public synchronized void execute(@NonNull final Runnable command) {
+            mTasks.offer(() -> {
+                try {
+                    command.run();
+                } finally {
+                    scheduleNext();
+                }
+            });
+            if (mActive == null) {
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            mActive = mTasks.poll();
+            if (mActive != null) {
+                mDelegate.execute(mActive);
+            }
         }
     }
 }
@@ -2,15 +2,28 @@ package com.firebase.ui.firestore;
 
 import android.util.Log;
 
+import com.firebase.ui.common.BaseListStateRestorer;
 import com.firebase.ui.common.ChangeEventType;
+import com.firebase.ui.common.ListStateStore;
+import com.firebase.ui.common.SnapshotListTransition;
+import com.firebase.ui.common.SnapshotMemoryTrimmer;
+import com.firebase.ui.common.StableIdMap;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.SnapshotMetadata;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.lifecycle.Lifecycle;
 import androidx.lifecycle.LifecycleObserver;
 import androidx.lifecycle.LifecycleOwner;
 import androidx.lifecycle.OnLifecycleEvent;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 /**
@@ -26,9 +39,53 @@ public abstract class FirestoreRecyclerAdapter<T, VH extends RecyclerView.ViewHo
 
     private static final String TAG = "FirestoreRecycler";
 
+    /**
+     * Payload passed to {@link #notifyItemChanged(int, Object)} for items whose metadata changed
+     * but whose data did not.
+     */
+    private static final Object PAYLOAD_METADATA = new Object();
+
+    /**
+     * Compares snapshots by document, so that documents present in both queries keep their views.
+     */
+    private static final DiffUtil.ItemCallback<DocumentSnapshot> SNAPSHOT_DIFF =
+            new DiffUtil.ItemCallback<DocumentSnapshot>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull DocumentSnapshot oldItem,
+                                               @NonNull DocumentSnapshot newItem) {
+                    return oldItem.getReference().equals(newItem.getReference());
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull DocumentSnapshot oldItem,
+                                                  @NonNull DocumentSnapshot newItem) {
+                    return oldItem.equals(newItem);
+                }
+
+                @Nullable
+                @Override
+                public Object getChangePayload(@NonNull DocumentSnapshot oldItem,
+                                               @NonNull DocumentSnapshot newItem) {
+                    return new ChangedFields(oldItem, newItem);
+                }
+            };
+
     private FirestoreRecyclerOptions<T> mOptions;
     private ObservableSnapshotArray<T> mSnapshots;
 
+    /** Fields changed by the child event currently being dispatched, if known. */
+    private Set<String> mChangedFields;
+
+    /** In-progress diff-based switch to new options, if any. */
+    private Transition mTransition;
+    private boolean mIgnoreEvents;
+
+    /** Stable item IDs, created once stable IDs are first requested. */
+    private StableIdMap mStableIds;
+
+    /** Items restored from the options' state store, shown until the query has loaded. */
+    private StateRestorer mRestorer;
+
     /**
      * Create a new RecyclerView adapter that listens to a Firestore Query.  See {@link
      * FirestoreRecyclerOptions} for configuration options.
@@ -48,6 +105,12 @@ public abstract class FirestoreRecyclerAdapter<T, VH extends RecyclerView.ViewHo
     @OnLifecycleEvent(Lifecycle.Event.ON_START)
     public void startListening() {
         if (!mSnapshots.isListening(this)) {
+            ListStateStore<T> store = mOptions.getStateStore();
+            if (store != null && mRestorer == null) {
+                // Registered before the adapter so that it reconciles before onDataChanged
+                mRestorer = new StateRestorer(store, mSnapshots);
+                mRestorer.start();
+            }
             mSnapshots.addChangeEventListener(this);
         }
     }
@@ -57,6 +120,11 @@ public abstract class FirestoreRecyclerAdapter<T, VH extends RecyclerView.ViewHo
      */
     @OnLifecycleEvent(Lifecycle.Event.ON_STOP)
     public void stopListening() {
+        if (mTransition != null) {
+            mTransition.finish(null);
+        }
+        saveState();
+        discardRestoredState();
         mSnapshots.removeChangeEventListener(this);
     }
 
@@ -66,7 +134,8 @@ public abstract class FirestoreRecyclerAdapter<T, VH extends RecyclerView.ViewHo
     }
 
     /**
-     * Returns the backing {@link ObservableSnapshotArray} used to populate this adapter.
+     * Returns the backing {@link ObservableSnapshotArray} used to populate this adapter. Its
+     * indices only match the adapter's positions when {@link #isShowingRestoredItems()} is false.
      *
      * @return the backing snapshot array
      */
@@ -75,6 +144,15 @@ public abstract class FirestoreRecyclerAdapter<T, VH extends RecyclerView.ViewHo
         return mSnapshots;
     }
 
+    /**
+     * Returns whether the adapter shows the items restored from the options' {@link
+     * ListStateStore} because the query has not loaded yet. Positions then don't correspond to
+     * {@link #getSnapshots()}, while {@link #getItem(int)} returns the restored models.
+     */
+    public boolean isShowingRestoredItems() {
+        return mRestorer != null && mRestorer.isShowingRestoredItems();
+    }
+
     /**
      * Gets the item at the specified position from the backing snapshot array.
      *
@@ -82,9 +160,34 @@ public abstract class FirestoreRecyclerAdapter<T, VH extends RecyclerView.ViewHo
      */
     @NonNull
     public T getItem(int position) {
+        if (isShowingRestoredItems()) {
+            return mRestorer.getRestoredItem(position).getModel();
+        }
         return mSnapshots.get(position);
     }
 
+    /**
+     * Returns a stable ID derived from the document ID at the given position if stable IDs have
+     * been enabled with {@link #setHasStableIds(boolean)}, or {@link RecyclerView#NO_ID} otherwise.
+     * <p>
+     * IDs are checked for collisions and a document keeps its ID for the lifetime of the adapter,
+     * so views are reused precisely across full refreshes. Document IDs must be unique within the
+     * query.
+     */
+    @Override
+    public long getItemId(int position) {
+        if (!hasStableIds()) {
+            return RecyclerView.NO_ID;
+        }
+        if (mStableIds == null) {
+            mStableIds = new StableIdMap();
+        }
+        String key = isShowingRestoredItems()
+                ? mRestorer.getRestoredItem(position).getKey()
+                : mSnapshots.getSnapshot(position).getId();
+        return mStableIds.getId(position, key);
+    }
+
     /**
      * Gets the size of snapshots in adapter.
      *
@@ -93,6 +196,9 @@ public abstract class FirestoreRecyclerAdapter<T, VH extends RecyclerView.ViewHo
      */
     @Override
     public int getItemCount() {
+        if (isShowingRestoredItems()) {
+            return mRestorer.getRestoredCount();
+        }
         return mSnapshots.isListening(this) ? mSnapshots.size() : 0;
     }
 
@@ -101,6 +207,12 @@ public abstract class FirestoreRecyclerAdapter<T, VH extends RecyclerView.ViewHo
      * re-constructing the entire adapter.
      */
     public void updateOptions(@NonNull FirestoreRecyclerOptions<T> options) {
+        if (mTransition != null) {
+            mTransition.cancel();
+        }
+        saveState();
+        discardRestoredState();
+
         // Tear down old options
         boolean wasListening = mSnapshots.isListening(this);
         if (mOptions.getOwner() != null) {
@@ -120,17 +232,47 @@ public abstract class FirestoreRecyclerAdapter<T, VH extends RecyclerView.ViewHo
         }
     }
 
+    /**
+     * Re-initialize the Adapter with a new set of options, optionally keeping the current items on
+     * screen until the new data has loaded.
+     * <p>
+     * If {@code keepDataUntilLoaded} is true and the adapter is listening, the current items stay
+     * visible until the new snapshot array delivers its first {@link #onDataChanged()}. The old and
+     * new items are then diffed by document on a background thread and only the minimal set of
+     * inserts, removes, moves and changes is applied, so documents present in both queries keep
+     * their views. Otherwise this behaves like {@link #updateOptions(FirestoreRecyclerOptions)}.
+     */
+    public void updateOptions(@NonNull FirestoreRecyclerOptions<T> options,
+                              boolean keepDataUntilLoaded) {
+        if (!keepDataUntilLoaded || !mSnapshots.isListening(this)) {
+            updateOptions(options);
+            return;
+        }
+
+        if (mTransition != null) {
+            mTransition.cancel();
+        }
+        saveState();
+        discardRestoredState();
+        mTransition = new Transition(options);
+        mTransition.start();
+    }
+
     @Override
     public void onChildChanged(@NonNull ChangeEventType type,
                                @NonNull DocumentSnapshot snapshot,
                                int newIndex,
                                int oldIndex) {
+        if (mIgnoreEvents || isShowingRestoredItems()) {
+            return;
+        }
+
         switch (type) {
             case ADDED:
                 notifyItemInserted(newIndex);
                 break;
             case CHANGED:
-                notifyItemChanged(newIndex);
+                notifyItemChanged(newIndex, mChangedFields);
                 break;
             case REMOVED:
                 notifyItemRemoved(oldIndex);
@@ -138,11 +280,33 @@ public abstract class FirestoreRecyclerAdapter<T, VH extends RecyclerView.ViewHo
             case MOVED:
                 notifyItemMoved(oldIndex, newIndex);
                 break;
+            case MOVED_AND_CHANGED:
+                notifyItemMoved(oldIndex, newIndex);
+                notifyItemChanged(newIndex, mChangedFields);
+                break;
+            case METADATA_CHANGED:
+                notifyItemChanged(newIndex, PAYLOAD_METADATA);
+                break;
             default:
                 throw new IllegalStateException("Incomplete case statement");
         }
     }
 
+    @Override
+    public void onChildChanged(@NonNull ChangeEventType type,
+                               @NonNull DocumentSnapshot snapshot,
+                               int newIndex,
+                               int oldIndex,
+                               @NonNull Set<String> changedFields) {
+        // Route through the regular callback so that subclasses overriding it still see the event
+        mChangedFields = changedFields;
+        try {
+            onChildChanged(type, snapshot, newIndex, oldIndex);
+        } finally {
+            mChangedFields = null;
+        }
+    }
+
     @Override
     public void onDataChanged() {
     }
@@ -152,14 +316,278 @@ public abstract class FirestoreRecyclerAdapter<T, VH extends RecyclerView.ViewHo
         Log.w(TAG, "onError", e);
     }
 
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        SnapshotMemoryTrimmer.install(recyclerView.getContext());
+    }
+
     @Override
     public void onBindViewHolder(@NonNull VH holder, int position) {
         onBindViewHolder(holder, position, getItem(position));
     }
 
+    @Override
+    @SuppressWarnings("unchecked")
+    public void onBindViewHolder(@NonNull VH holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+
+        boolean metadataChanged = false;
+        Set<String> changedFields = new HashSet<>();
+        for (Object payload : payloads) {
+            if (payload == PAYLOAD_METADATA) {
+                metadataChanged = true;
+            } else if (payload instanceof Set && !((Set<?>) payload).isEmpty()) {
+                changedFields.addAll((Set<String>) payload);
+            } else {
+                // Unknown payload or unknown changed fields, fall back to a full bind
+                onBindViewHolder(holder, position);
+                return;
+            }
+        }
+
+        if (changedFields.isEmpty()) {
+            onBindMetadata(holder, position, mSnapshots.getSnapshot(position).getMetadata());
+        } else if (metadataChanged) {
+            onBindViewHolder(holder, position);
+        } else {
+            onBindViewHolder(holder, position, getItem(position), changedFields);
+        }
+    }
+
+    /**
+     * Persist the leading items to the options' state store, if the query has loaded. Empty lists
+     * are not persisted, since there would be nothing to show on the next start.
+     */
+    private void saveState() {
+        ListStateStore<T> store = mOptions.getStateStore();
+        if (store == null
+                || mRestorer != null
+                || !mSnapshots.isListening(this)
+                || mSnapshots.isEmpty()) {
+            return;
+        }
+
+        int count = Math.min(mSnapshots.size(), store.getMaxItems());
+        List<String> keys = new ArrayList<>(count);
+        List<T> models = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(mSnapshots.getSnapshot(i).getId());
+            models.add(mSnapshots.get(i));
+        }
+        store.save(keys, models);
+    }
+
+    private void discardRestoredState() {
+        if (mRestorer != null) {
+            mRestorer.stop();
+        }
+    }
+
+    @NonNull
+    private static List<DocumentSnapshot> copySnapshots(@NonNull ObservableSnapshotArray<?> array) {
+        List<DocumentSnapshot> snapshots = new ArrayList<>(array.size());
+        for (int i = 0; i < array.size(); i++) {
+            snapshots.add(array.getSnapshot(i));
+        }
+        return snapshots;
+    }
+
     /**
      * @param model the model object containing the data that should be used to populate the view.
      * @see #onBindViewHolder(RecyclerView.ViewHolder, int)
      */
     protected abstract void onBindViewHolder(@NonNull VH holder, int position, @NonNull T model);
+
+    /**
+     * Called instead of a full bind when the item's content changed and the top-level fields that
+     * changed are known. Override this to only update the views that depend on those fields, for
+     * example to avoid reloading an image that did not change.
+     * <p>
+     * The default implementation performs a full bind.
+     *
+     * @param model         the model object containing the data that should be used to populate
+     *                      the view.
+     * @param changedFields the names of the top-level document fields that changed since the
+     *                      item was last bound. Never empty.
+     * @see #onBindViewHolder(RecyclerView.ViewHolder, int, Object)
+     */
+    protected void onBindViewHolder(@NonNull VH holder,
+                                    int position,
+                                    @NonNull T model,
+                                    @NonNull Set<String> changedFields) {
+        onBindViewHolder(holder, position, model);
+    }
+
+    /**
+     * Called instead of a full bind when only the metadata of an item changed, for example when
+     * a pending write has been committed to the backend. Only happens when the options were
+     * configured with {@link FirestoreRecyclerOptions.Builder#setSeparateMetadataChanges(boolean)}.
+     * <p>
+     * Override this to update sync state indicators without rebinding the whole item. The default
+     * implementation performs a full bind.
+     *
+     * @param metadata the new metadata of the item.
+     */
+    protected void onBindMetadata(@NonNull VH holder,
+                                  int position,
+                                  @NonNull SnapshotMetadata metadata) {
+        onBindViewHolder(holder, position);
+    }
+
+    /**
+     * Shows the items persisted by the options' state store until the query has loaded, then
+     * dispatches the difference between the persisted and live items.
+     */
+    private final class StateRestorer
+            extends BaseListStateRestorer<DocumentSnapshot, FirebaseFirestoreException, T>
+            implements ChangeEventListener {
+        private final ObservableSnapshotArray<T> mArray;
+
+        StateRestorer(@NonNull ListStateStore<T> store, @NonNull ObservableSnapshotArray<T> array) {
+            super(store, array, FirestoreRecyclerAdapter.this);
+            mArray = array;
+        }
+
+        @Override
+        protected void onStart() {
+            mArray.addChangeEventListener(this);
+        }
+
+        @Override
+        protected void onStop() {
+            mArray.removeChangeEventListener(this);
+            if (mRestorer == this) {
+                mRestorer = null;
+            }
+        }
+    }
+
+    /**
+     * Keeps the adapter on the old snapshot array until the new one has loaded, then swaps to the
+     * new array and dispatches the difference between the two.
+     */
+    private final class Transition
+            implements ChangeEventListener, SnapshotListTransition.Callback<DocumentSnapshot> {
+        private final FirestoreRecyclerOptions<T> mNewOptions;
+        private final ObservableSnapshotArray<T> mNewSnapshots;
+        private final ObservableSnapshotArray<T> mOldSnapshots;
+        private final SnapshotListTransition<DocumentSnapshot> mDiffer =
+                new SnapshotListTransition<>(SNAPSHOT_DIFF, this);
+
+        /** Watches the old array so that a diff computed against stale data is discarded. */
+        private final ChangeEventListener mOldWatcher = new ChangeEventListener() {
+            @Override
+            public void onChildChanged(@NonNull ChangeEventType type,
+                                       @NonNull DocumentSnapshot snapshot,
+                                       int newIndex,
+                                       int oldIndex) {
+                mDiffer.onChanged();
+            }
+
+            @Override
+            public void onDataChanged() {
+            }
+
+            @Override
+            public void onError(@NonNull FirebaseFirestoreException e) {
+            }
+        };
+
+        Transition(@NonNull FirestoreRecyclerOptions<T> options) {
+            mNewOptions = options;
+            mNewSnapshots = options.getSnapshots();
+            mOldSnapshots = mSnapshots;
+        }
+
+        void start() {
+            mOldSnapshots.addChangeEventListener(mOldWatcher);
+            mNewSnapshots.addChangeEventListener(this);
+        }
+
+        @Override
+        public void onChildChanged(@NonNull ChangeEventType type,
+                                   @NonNull DocumentSnapshot snapshot,
+                                   int newIndex,
+                                   int oldIndex) {
+            mDiffer.onChanged();
+        }
+
+        @Override
+        public void onDataChanged() {
+            mDiffer.onNewDataChanged();
+        }
+
+        @Override
+        public void onError(@NonNull FirebaseFirestoreException e) {
+            FirestoreRecyclerAdapter.this.onError(e);
+        }
+
+        @NonNull
+        @Override
+        public List<DocumentSnapshot> getOldSnapshots() {
+            return copySnapshots(mOldSnapshots);
+        }
+
+        @NonNull
+        @Override
+        public List<DocumentSnapshot> getNewSnapshots() {
+            return copySnapshots(mNewSnapshots);
+        }
+
+        @Override
+        public void onDiffReady(@NonNull DiffUtil.DiffResult result) {
+            finish(result);
+        }
+
+        /**
+         * Swap the adapter to the new options.
+         *
+         * @param result the difference between the old and new data, or null to reset the
+         *               adapter without animating.
+         */
+        void finish(@Nullable DiffUtil.DiffResult result) {
+            mDiffer.stop();
+            mTransition = null;
+
+            boolean wasListening = mOldSnapshots.isListening(FirestoreRecyclerAdapter.this);
+            mOldSnapshots.removeChangeEventListener(mOldWatcher);
+            if (mOptions.getOwner() != null) {
+                mOptions.getOwner().getLifecycle().removeObserver(FirestoreRecyclerAdapter.this);
+            }
+            mOldSnapshots.removeChangeEventListener(FirestoreRecyclerAdapter.this);
+
+            mOptions = mNewOptions;
+            mSnapshots = mNewSnapshots;
+            if (result != null && wasListening) {
+                // The new array already holds the data, only dispatch the difference
+                mIgnoreEvents = true;
+                try {
+                    mNewSnapshots.addChangeEventListener(FirestoreRecyclerAdapter.this);
+                } finally {
+                    mIgnoreEvents = false;
+                }
+                result.dispatchUpdatesTo(FirestoreRecyclerAdapter.this);
+            } else {
+                notifyDataSetChanged();
+            }
+            mNewSnapshots.removeChangeEventListener(this);
+
+            // Observing a started owner starts listening right away, which must find the adapter
+            // already registered above rather than registering it a second time.
+            if (mNewOptions.getOwner() != null) {
+                mNewOptions.getOwner().getLifecycle().addObserver(FirestoreRecyclerAdapter.this);
+            }
+        }
+
+        void cancel() {
+            mDiffer.stop();
+            mTransition = null;
+            mOldSnapshots.removeChangeEventListener(mOldWatcher);
+            mNewSnapshots.removeChangeEventListener(this);
+        }
+    }
 }
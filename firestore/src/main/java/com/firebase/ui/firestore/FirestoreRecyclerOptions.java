@@ -1,8 +1,17 @@
 package com.firebase.ui.firestore;
 
+import com.firebase.ui.common.ListStateStore;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.LoadBundleTask;
 import com.google.firebase.firestore.MetadataChanges;
 import com.google.firebase.firestore.Query;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.lifecycle.LifecycleOwner;
@@ -18,17 +27,25 @@ import static com.firebase.ui.common.Preconditions.assertNull;
 public final class FirestoreRecyclerOptions<T> {
 
     private static final String ERR_SNAPSHOTS_SET = "Snapshot array already set. " +
-            "Call only one of setSnapshotArray or setQuery";
+            "Call only one of setSnapshotArray, setQuery, or setBundle";
     private static final String ERR_SNAPSHOTS_NULL = "Snapshot array cannot be null. " +
-            "Call one of setSnapshotArray or setQuery";
+            "Call one of setSnapshotArray, setQuery, or setBundle";
+    private static final String ERR_OPTIONS_NO_QUERY = "Array options such as an executor " +
+            "can only be used together with setQuery or setBundle";
 
     private ObservableSnapshotArray<T> mSnapshots;
     private LifecycleOwner mOwner;
+    private LoadBundleTask mLoadBundleTask;
+    private ListStateStore<T> mStateStore;
 
     private FirestoreRecyclerOptions(ObservableSnapshotArray<T> snapshots,
-                                     @Nullable LifecycleOwner owner) {
+                                     @Nullable LifecycleOwner owner,
+                                     @Nullable LoadBundleTask loadBundleTask,
+                                     @Nullable ListStateStore<T> stateStore) {
         mSnapshots = snapshots;
         mOwner = owner;
+        mLoadBundleTask = loadBundleTask;
+        mStateStore = stateStore;
     }
 
     /**
@@ -47,6 +64,23 @@ public final class FirestoreRecyclerOptions<T> {
         return mOwner;
     }
 
+    /**
+     * Get the (optional) {@link LoadBundleTask} if the data is seeded from a Firestore bundle. Use
+     * it to observe load progress, for example to show a progress bar on first launch.
+     */
+    @Nullable
+    public LoadBundleTask getLoadBundleTask() {
+        return mLoadBundleTask;
+    }
+
+    /**
+     * Get the (optional) {@link ListStateStore} used to persist the rendered items.
+     */
+    @Nullable
+    public ListStateStore<T> getStateStore() {
+        return mStateStore;
+    }
+
     /**
      * Builder for {@link FirestoreRecyclerOptions}.
      *
@@ -57,6 +91,16 @@ public final class FirestoreRecyclerOptions<T> {
         private ObservableSnapshotArray<T> mSnapshots;
         private LifecycleOwner mOwner;
 
+        private Query mQuery;
+        private Task<Query> mNamedQuery;
+        private LoadBundleTask mLoadBundleTask;
+        private MetadataChanges mMetadataChanges;
+        private SnapshotParser<T> mParser;
+        private Executor mExecutor;
+        private boolean mCombineMoveAndChange;
+        private boolean mSeparateMetadataChanges;
+        private ListStateStore<T> mStateStore;
+
         /**
          * Directly set the {@link ObservableSnapshotArray}.
          * <p>
@@ -65,6 +109,8 @@ public final class FirestoreRecyclerOptions<T> {
         @NonNull
         public Builder<T> setSnapshotArray(@NonNull ObservableSnapshotArray<T> snapshots) {
             assertNull(mSnapshots, ERR_SNAPSHOTS_SET);
+            assertNull(mQuery, ERR_SNAPSHOTS_SET);
+            assertNull(mNamedQuery, ERR_SNAPSHOTS_SET);
 
             mSnapshots = snapshots;
             return this;
@@ -109,8 +155,158 @@ public final class FirestoreRecyclerOptions<T> {
                                    @NonNull MetadataChanges changes,
                                    @NonNull SnapshotParser<T> parser) {
             assertNull(mSnapshots, ERR_SNAPSHOTS_SET);
+            assertNull(mQuery, ERR_SNAPSHOTS_SET);
+            assertNull(mNamedQuery, ERR_SNAPSHOTS_SET);
+
+            mQuery = query;
+            mMetadataChanges = changes;
+            mParser = parser;
+            return this;
+        }
+
+        /**
+         * Calls {@link #setBundle(FirebaseFirestore, LoadBundleTask, String, MetadataChanges,
+         * SnapshotParser)} with a bundle read from the given stream.
+         */
+        @NonNull
+        public Builder<T> setBundle(@NonNull FirebaseFirestore firestore,
+                                    @NonNull InputStream bundle,
+                                    @NonNull String queryName,
+                                    @NonNull Class<T> modelClass) {
+            return setBundle(firestore, bundle, queryName, new ClassSnapshotParser<>(modelClass));
+        }
+
+        /**
+         * Calls {@link #setBundle(FirebaseFirestore, LoadBundleTask, String, MetadataChanges,
+         * SnapshotParser)} with a bundle read from the given stream.
+         */
+        @NonNull
+        public Builder<T> setBundle(@NonNull FirebaseFirestore firestore,
+                                    @NonNull InputStream bundle,
+                                    @NonNull String queryName,
+                                    @NonNull SnapshotParser<T> parser) {
+            return setBundle(firestore, firestore.loadBundle(bundle), queryName,
+                    MetadataChanges.EXCLUDE, parser);
+        }
+
+        /**
+         * Calls {@link #setBundle(FirebaseFirestore, LoadBundleTask, String, MetadataChanges,
+         * SnapshotParser)} with a bundle read from the given buffer.
+         */
+        @NonNull
+        public Builder<T> setBundle(@NonNull FirebaseFirestore firestore,
+                                    @NonNull ByteBuffer bundle,
+                                    @NonNull String queryName,
+                                    @NonNull Class<T> modelClass) {
+            return setBundle(firestore, bundle, queryName, new ClassSnapshotParser<>(modelClass));
+        }
+
+        /**
+         * Calls {@link #setBundle(FirebaseFirestore, LoadBundleTask, String, MetadataChanges,
+         * SnapshotParser)} with a bundle read from the given buffer.
+         */
+        @NonNull
+        public Builder<T> setBundle(@NonNull FirebaseFirestore firestore,
+                                    @NonNull ByteBuffer bundle,
+                                    @NonNull String queryName,
+                                    @NonNull SnapshotParser<T> parser) {
+            return setBundle(firestore, firestore.loadBundle(bundle), queryName,
+                    MetadataChanges.EXCLUDE, parser);
+        }
+
+        /**
+         * Seed the adapter from a Firestore data bundle. Once the bundle has been loaded into the
+         * local cache, the named query is resolved and listened to like any other query. Its first
+         * snapshot is served from the bundled data, so the list renders before any network
+         * traffic, and later snapshots keep it up to date in real time.
+         * <p>
+         * Load progress can be observed through {@link
+         * FirestoreRecyclerOptions#getLoadBundleTask()}. If the bundle fails to load or does not
+         * contain {@code queryName}, the adapter receives the error through {@code onError}.
+         * <p>
+         * Do not call this method after calling {@link #setSnapshotArray(ObservableSnapshotArray)}
+         * or {@code setQuery}.
+         *
+         * @param task      the task loading the bundle, as returned by {@link
+         *                  FirebaseFirestore#loadBundle(InputStream)}.
+         * @param queryName the name of a query included in the bundle.
+         */
+        @NonNull
+        public Builder<T> setBundle(@NonNull final FirebaseFirestore firestore,
+                                    @NonNull LoadBundleTask task,
+                                    @NonNull final String queryName,
+                                    @NonNull MetadataChanges changes,
+                                    @NonNull SnapshotParser<T> parser) {
+            assertNull(mSnapshots, ERR_SNAPSHOTS_SET);
+            assertNull(mQuery, ERR_SNAPSHOTS_SET);
+            assertNull(mNamedQuery, ERR_SNAPSHOTS_SET);
+
+            mLoadBundleTask = task;
+            mNamedQuery = task.continueWithTask(loaded -> {
+                if (loaded.isCanceled()) {
+                    return Tasks.forCanceled();
+                } else if (!loaded.isSuccessful()) {
+                    return Tasks.forException(loaded.getException());
+                }
+                return firestore.getNamedQuery(queryName);
+            });
+            mMetadataChanges = changes;
+            mParser = parser;
+            return this;
+        }
+
+        /**
+         * Set an (optional) {@link Executor} on which query snapshots are received and broken
+         * down into document changes. Only the resulting batch of changes is applied on the main
+         * thread, so large query results do not block the UI.
+         * <p>
+         * The {@link SnapshotParser} will also be called on this executor, so it must be safe to
+         * use from a background thread. Can only be used together with {@code setQuery} or
+         * {@code setBundle}.
+         */
+        @NonNull
+        public Builder<T> setExecutor(@Nullable Executor executor) {
+            mExecutor = executor;
+            return this;
+        }
 
-            mSnapshots = new FirestoreArray<>(query, changes, parser);
+        /**
+         * Deliver a modified document that also moved as a single {@link
+         * com.firebase.ui.common.ChangeEventType#MOVED_AND_CHANGED} event instead of a move
+         * followed by a change. Can only be used together with {@code setQuery} or
+         * {@code setBundle}.
+         *
+         * @see FirestoreArray#setCombineMoveAndChange(boolean)
+         */
+        @NonNull
+        public Builder<T> setCombineMoveAndChange(boolean combine) {
+            mCombineMoveAndChange = combine;
+            return this;
+        }
+
+        /**
+         * Deliver modifications that only affect document metadata as {@link
+         * com.firebase.ui.common.ChangeEventType#METADATA_CHANGED} events. The adapter then
+         * calls {@link FirestoreRecyclerAdapter#onBindMetadata} instead of rebinding the whole
+         * item. Only useful with {@link MetadataChanges#INCLUDE}. Can only be used together with
+         * {@code setQuery} or {@code setBundle}.
+         *
+         * @see FirestoreArray#setSeparateMetadataChanges(boolean)
+         */
+        @NonNull
+        public Builder<T> setSeparateMetadataChanges(boolean separate) {
+            mSeparateMetadataChanges = separate;
+            return this;
+        }
+
+        /**
+         * Set an (optional) {@link ListStateStore} to persist the leading items of the list. On
+         * the next start, the persisted items are shown while the query loads, and then
+         * reconciled with the live data so that only the differences are animated.
+         */
+        @NonNull
+        public Builder<T> setStateStore(@Nullable ListStateStore<T> stateStore) {
+            mStateStore = stateStore;
             return this;
         }
 
@@ -129,9 +325,24 @@ public final class FirestoreRecyclerOptions<T> {
          */
         @NonNull
         public FirestoreRecyclerOptions<T> build() {
+            FirestoreArray<T> array = null;
+            if (mQuery != null) {
+                array = new FirestoreArray<>(mQuery, mMetadataChanges, mParser, mExecutor);
+            } else if (mNamedQuery != null) {
+                array = new FirestoreArray<>(mNamedQuery, mMetadataChanges, mParser, mExecutor);
+            } else if (mExecutor != null || mCombineMoveAndChange || mSeparateMetadataChanges) {
+                throw new IllegalStateException(ERR_OPTIONS_NO_QUERY);
+            }
+
+            if (array != null) {
+                array.setCombineMoveAndChange(mCombineMoveAndChange);
+                array.setSeparateMetadataChanges(mSeparateMetadataChanges);
+                mSnapshots = array;
+            }
             assertNonNull(mSnapshots, ERR_SNAPSHOTS_NULL);
 
-            return new FirestoreRecyclerOptions<>(mSnapshots, mOwner);
+            return new FirestoreRecyclerOptions<>(mSnapshots, mOwner, mLoadBundleTask,
+                    mStateStore);
         }
 
     }
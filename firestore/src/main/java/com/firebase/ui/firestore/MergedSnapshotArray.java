@@ -0,0 +1,214 @@
+package com.firebase.ui.firestore;
+
+import com.firebase.ui.common.BaseCachingSnapshotParser;
+import com.firebase.ui.common.BaseDerivedSnapshotList;
+import com.firebase.ui.common.BaseMergedSnapshotList;
+import com.firebase.ui.common.ChangeEventType;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import androidx.annotation.NonNull;
+
+/**
+ * {@link ObservableSnapshotArray} that merges several arrays into a single list sorted by a
+ * comparator, for example to show the results of several queries that Firestore can't combine
+ * into one.
+ * <p>
+ * The merged list is updated incrementally from the sources' events in O(log n) per event.
+ * Documents with the same path in several sources appear once, using the copy from the first
+ * source in the list that holds them. {@link ChangeEventListener#onDataChanged()} is only called
+ * once every source has loaded, and on each update after that.
+ */
+public class MergedSnapshotArray<T> extends ObservableSnapshotArray<T> {
+
+    private final List<ObservableSnapshotArray<T>> mSources;
+    private final List<ChangeEventListener> mSourceListeners = new ArrayList<>();
+    private final boolean[] mLoaded;
+    private final BaseMergedSnapshotList<DocumentSnapshot, T> mSnapshots;
+
+    /** Fields changed by the source event currently being handled, if known. */
+    private Set<String> mChangedFields;
+
+    private final BaseDerivedSnapshotList.Callback<DocumentSnapshot> mCallback =
+            new BaseDerivedSnapshotList.Callback<DocumentSnapshot>() {
+                @Override
+                public void onInserted(@NonNull DocumentSnapshot snapshot, int index) {
+                    notifyOnChildChanged(ChangeEventType.ADDED, snapshot, index, -1);
+                }
+
+                @Override
+                public void onRemoved(@NonNull DocumentSnapshot snapshot, int index) {
+                    notifyOnChildChanged(ChangeEventType.REMOVED, snapshot, -1, index);
+                }
+
+                @Override
+                public void onMoved(@NonNull DocumentSnapshot snapshot,
+                                    int fromIndex,
+                                    int toIndex) {
+                    notifyOnChildChanged(ChangeEventType.MOVED, snapshot, toIndex, fromIndex);
+                }
+
+                @Override
+                public void onChanged(@NonNull ChangeEventType type,
+                                      @NonNull DocumentSnapshot snapshot,
+                                      int index) {
+                    if (mChangedFields != null) {
+                        notifyOnChildChanged(type, snapshot, index, index, mChangedFields);
+                    } else {
+                        notifyOnChildChanged(type, snapshot, index, index);
+                    }
+                }
+            };
+
+    /**
+     * @param sources    the arrays to merge, in order of precedence for duplicate documents.
+     * @param parser     the parser for the merged array's own cache, usually the sources' parser.
+     * @param comparator the order of the merged list. Models that compare equal are ordered by
+     *                   document path.
+     * @throws IllegalArgumentException if {@code sources} is empty.
+     */
+    public MergedSnapshotArray(@NonNull List<ObservableSnapshotArray<T>> sources,
+                               @NonNull SnapshotParser<T> parser,
+                               @NonNull Comparator<T> comparator) {
+        super(new PathCachingSnapshotParser<>(parser));
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("At least one source is required");
+        }
+        mSources = new ArrayList<>(sources);
+        mLoaded = new boolean[sources.size()];
+        mSnapshots = new BaseMergedSnapshotList<DocumentSnapshot, T>(
+                sources.size(), comparator, mCallback) {
+            @NonNull
+            @Override
+            public String getKey(@NonNull DocumentSnapshot snapshot) {
+                return snapshot.getReference().getPath();
+            }
+        };
+
+        for (int i = 0; i < mSources.size(); i++) {
+            mSourceListeners.add(new SourceListener(i));
+        }
+    }
+
+    @NonNull
+    @Override
+    protected List<DocumentSnapshot> getSnapshots() {
+        return mSnapshots;
+    }
+
+    @NonNull
+    @Override
+    public T get(int index) {
+        return mSnapshots.getModel(index);
+    }
+
+    @Override
+    protected void onCreate() {
+        super.onCreate();
+        for (int i = 0; i < mSources.size(); i++) {
+            mSources.get(i).addChangeEventListener(mSourceListeners.get(i));
+        }
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        for (int i = 0; i < mSources.size(); i++) {
+            mSources.get(i).removeChangeEventListener(mSourceListeners.get(i));
+            mLoaded[i] = false;
+        }
+    }
+
+    private boolean isLoaded() {
+        for (boolean loaded : mLoaded) {
+            if (!loaded) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private final class SourceListener implements ChangeEventListener {
+        private final int mIndex;
+
+        SourceListener(int index) {
+            mIndex = index;
+        }
+
+        @Override
+        public void onChildChanged(@NonNull ChangeEventType type,
+                                   @NonNull DocumentSnapshot snapshot,
+                                   int newIndex,
+                                   int oldIndex) {
+            ObservableSnapshotArray<T> source = mSources.get(mIndex);
+            switch (type) {
+                case ADDED:
+                    mSnapshots.onSourceAdded(mIndex, snapshot, source.get(newIndex));
+                    break;
+                case REMOVED:
+                    mSnapshots.onSourceRemoved(mIndex, snapshot);
+                    break;
+                case MOVED:
+                case MOVED_AND_CHANGED:
+                    mSnapshots.onSourceMoved(mIndex, snapshot, source.get(newIndex),
+                            type == ChangeEventType.MOVED_AND_CHANGED);
+                    break;
+                case CHANGED:
+                case METADATA_CHANGED:
+                    mSnapshots.onSourceChanged(mIndex, type, snapshot, source.get(newIndex));
+                    break;
+                default:
+                    throw new IllegalStateException("Incomplete case statement");
+            }
+        }
+
+        @Override
+        public void onChildChanged(@NonNull ChangeEventType type,
+                                   @NonNull DocumentSnapshot snapshot,
+                                   int newIndex,
+                                   int oldIndex,
+                                   @NonNull Set<String> changedFields) {
+            mChangedFields = changedFields;
+            try {
+                onChildChanged(type, snapshot, newIndex, oldIndex);
+            } finally {
+                mChangedFields = null;
+            }
+        }
+
+        @Override
+        public void onDataChanged() {
+            mLoaded[mIndex] = true;
+            if (isLoaded()) {
+                notifyOnDataChanged();
+            }
+        }
+
+        @Override
+        public void onError(@NonNull FirebaseFirestoreException e) {
+            notifyOnError(e);
+        }
+    }
+
+    /**
+     * Caches models by document path rather than ID, since documents from different collections
+     * can share an ID.
+     */
+    private static final class PathCachingSnapshotParser<T>
+            extends BaseCachingSnapshotParser<DocumentSnapshot, T> {
+        PathCachingSnapshotParser(@NonNull SnapshotParser<T> parser) {
+            super(parser);
+        }
+
+        @NonNull
+        @Override
+        public String getId(@NonNull DocumentSnapshot snapshot) {
+            return snapshot.getReference().getPath();
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.firebase.ui.firestore;
 
 import com.firebase.ui.common.BaseCachingSnapshotParser;
 import com.firebase.ui.common.BaseObservableSnapshotArray;
+import com.firebase.ui.common.SizeEstimator;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestoreException;
 
@@ -18,4 +19,18 @@ public abstract class ObservableSnapshotArray<T>
     public ObservableSnapshotArray(@NonNull SnapshotParser<T> parser) {
         super(new CachingSnapshotParser<>(parser));
     }
+
+    /**
+     * Create an array whose model cache is keyed by something other than the document ID.
+     */
+    ObservableSnapshotArray(@NonNull BaseCachingSnapshotParser<DocumentSnapshot, T> parser) {
+        super(parser);
+    }
+
+    @Override
+    protected long estimateSize(@NonNull DocumentSnapshot snapshot) {
+        return SizeEstimator.OBJECT_SIZE
+                + SizeEstimator.estimate(snapshot.getId())
+                + SizeEstimator.estimate(snapshot.getData());
+    }
 }
@@ -5,20 +5,36 @@ import android.annotation.SuppressLint;
 import com.firebase.ui.firestore.SnapshotParser;
 import com.google.firebase.firestore.DocumentSnapshot;
 
+import java.util.Objects;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.RestrictTo;
 import androidx.recyclerview.widget.DiffUtil;
 
 /**
  * Default diff callback implementation for Firestore snapshots.
+ * <p>
+ * By default contents are compared at the snapshot level, which compares the document reference
+ * and raw data without parsing either snapshot into a model. Metadata is ignored, so a write being
+ * acknowledged by the server doesn't rebind the item. Optionally the parsed models can be compared
+ * with {@link Object#equals(Object)} instead.
  */
 @RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
 public class DefaultSnapshotDiffCallback<T> extends DiffUtil.ItemCallback<DocumentSnapshot> {
 
     private final SnapshotParser<T> mParser;
+    private final boolean mCompareModels;
 
     public DefaultSnapshotDiffCallback(@NonNull SnapshotParser<T> parser) {
+        this(parser, false);
+    }
+
+    /**
+     * @param compareModels true to compare parsed models instead of raw snapshot data.
+     */
+    public DefaultSnapshotDiffCallback(@NonNull SnapshotParser<T> parser, boolean compareModels) {
         mParser = parser;
+        mCompareModels = compareModels;
     }
 
     @Override
@@ -31,6 +47,15 @@ public class DefaultSnapshotDiffCallback<T> extends DiffUtil.ItemCallback<Docume
     @Override
     public boolean areContentsTheSame(@NonNull DocumentSnapshot oldItem,
                                       @NonNull DocumentSnapshot newItem) {
+        if (oldItem == newItem) {
+            return true;
+        }
+
+        if (!mCompareModels) {
+            return oldItem.getReference().equals(newItem.getReference())
+                    && Objects.equals(oldItem.getData(), newItem.getData());
+        }
+
         T oldModel = mParser.parseSnapshot(oldItem);
         T newModel = mParser.parseSnapshot(newItem);
 
@@ -3,6 +3,8 @@ package com.firebase.ui.firestore.paging;
 import com.firebase.ui.firestore.SnapshotParser;
 import com.google.firebase.firestore.DocumentSnapshot;
 
+import java.util.concurrent.Executor;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.lifecycle.Lifecycle;
@@ -12,6 +14,7 @@ import androidx.lifecycle.Observer;
 import androidx.lifecycle.OnLifecycleEvent;
 import androidx.paging.PagingData;
 import androidx.paging.PagingDataAdapter;
+import androidx.paging.PagingDataTransforms;
 import androidx.recyclerview.widget.RecyclerView;
 
 /**
@@ -31,11 +34,11 @@ public abstract class FirestorePagingAdapter<T, VH extends RecyclerView.ViewHold
                         return;
                     }
 
-                    submitData(mOptions.getOwner().getLifecycle(), snapshots);
+                    submitData(mOptions.getOwner().getLifecycle(), preParse(snapshots));
                 }
             };
     private FirestorePagingOptions<T> mOptions;
-    private SnapshotParser<T> mParser;
+    private IdentityCachingSnapshotParser<T> mParser;
     private LiveData<PagingData<DocumentSnapshot>> mSnapshots;
 
     /**
@@ -55,7 +58,7 @@ public abstract class FirestorePagingAdapter<T, VH extends RecyclerView.ViewHold
     private void init() {
         mSnapshots = mOptions.getPagingData();
 
-        mParser = mOptions.getParser();
+        mParser = new IdentityCachingSnapshotParser<>(mOptions.getParser());
 
         if (mOptions.getOwner() != null) {
             mOptions.getOwner().getLifecycle().addObserver(this);
@@ -101,6 +104,24 @@ public abstract class FirestorePagingAdapter<T, VH extends RecyclerView.ViewHold
         mSnapshots.removeObserver(mDataObserver);
     }
 
+    /**
+     * Parses each snapshot on the configured parse executor as its page loads, so that the model
+     * is already cached when the item is bound.
+     */
+    @NonNull
+    private PagingData<DocumentSnapshot> preParse(@NonNull PagingData<DocumentSnapshot> snapshots) {
+        Executor executor = mOptions.getParseExecutor();
+        if (executor == null) {
+            return snapshots;
+        }
+
+        final SnapshotParser<T> parser = mParser;
+        return PagingDataTransforms.map(snapshots, executor, snapshot -> {
+            parser.parseSnapshot(snapshot);
+            return snapshot;
+        });
+    }
+
     @Override
     public void onBindViewHolder(@NonNull VH holder, int position) {
         DocumentSnapshot snapshot = getItem(position);
@@ -6,6 +6,8 @@ import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.Source;
 
+import java.util.concurrent.Executor;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.lifecycle.LifecycleOwner;
@@ -34,15 +36,18 @@ public final class FirestorePagingOptions<T> {
     private final SnapshotParser<T> mParser;
     private final DiffUtil.ItemCallback<DocumentSnapshot> mDiffCallback;
     private final LifecycleOwner mOwner;
+    private final Executor mParseExecutor;
 
     private FirestorePagingOptions(@NonNull LiveData<PagingData<DocumentSnapshot>> pagingData,
                                    @NonNull SnapshotParser<T> parser,
                                    @NonNull DiffUtil.ItemCallback<DocumentSnapshot> diffCallback,
-                                   @Nullable LifecycleOwner owner) {
+                                   @Nullable LifecycleOwner owner,
+                                   @Nullable Executor parseExecutor) {
         mPagingData = pagingData;
         mParser = parser;
         mDiffCallback = diffCallback;
         mOwner = owner;
+        mParseExecutor = parseExecutor;
     }
 
     @NonNull
@@ -65,6 +70,11 @@ public final class FirestorePagingOptions<T> {
         return mOwner;
     }
 
+    @Nullable
+    public Executor getParseExecutor() {
+        return mParseExecutor;
+    }
+
     /**
      * Builder for {@link FirestorePagingOptions}.
      */
@@ -74,6 +84,8 @@ public final class FirestorePagingOptions<T> {
         private SnapshotParser<T> mParser;
         private LifecycleOwner mOwner;
         private DiffUtil.ItemCallback<DocumentSnapshot> mDiffCallback;
+        private boolean mDiffByModelEquality;
+        private Executor mParseExecutor;
 
         /**
          * Directly set data using and parse with a {@link ClassSnapshotParser} based on the given
@@ -184,6 +196,36 @@ public final class FirestorePagingOptions<T> {
             return this;
         }
 
+        /**
+         * Sets whether the default {@link DiffUtil.ItemCallback} compares item contents by parsing
+         * both snapshots and comparing the models with {@link Object#equals(Object)}.
+         * <p>
+         * By default contents are compared at the snapshot level, which avoids parsing snapshots
+         * during diffing. Has no effect if a custom diff callback is set.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder<T> setDiffByModelEquality(boolean diffByModelEquality) {
+            mDiffByModelEquality = diffByModelEquality;
+            return this;
+        }
+
+        /**
+         * Sets an optional {@link Executor} used to parse snapshots into models as pages are
+         * loaded, so that binding a view holder doesn't have to parse on the main thread.
+         * <p>
+         * Parsed models are kept in a bounded cache for as long as the page holds the same
+         * snapshot instance. Without an executor, models are parsed lazily on first bind.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder<T> setParseExecutor(@NonNull Executor executor) {
+            mParseExecutor = executor;
+            return this;
+        }
+
         /**
          * Sets an optional {@link LifecycleOwner} to control the lifecycle of the adapter.
          * Otherwise, you must manually call {@link FirestorePagingAdapter#startListening()} and
@@ -208,10 +250,11 @@ public final class FirestorePagingOptions<T> {
             }
 
             if (mDiffCallback == null) {
-                mDiffCallback = new DefaultSnapshotDiffCallback<>(mParser);
+                mDiffCallback = new DefaultSnapshotDiffCallback<>(mParser, mDiffByModelEquality);
             }
 
-            return new FirestorePagingOptions<>(mPagingData, mParser, mDiffCallback, mOwner);
+            return new FirestorePagingOptions<>(mPagingData, mParser, mDiffCallback, mOwner,
+                    mParseExecutor);
         }
     }
 
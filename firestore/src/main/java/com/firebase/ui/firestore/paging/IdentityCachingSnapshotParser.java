@@ -0,0 +1,25 @@
+package com.firebase.ui.firestore.paging;
+
+import com.firebase.ui.common.BaseIdentityCachingSnapshotParser;
+import com.firebase.ui.firestore.SnapshotParser;
+import com.google.firebase.firestore.DocumentSnapshot;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Implementation of {@link BaseIdentityCachingSnapshotParser} for {@link DocumentSnapshot}.
+ */
+class IdentityCachingSnapshotParser<T>
+        extends BaseIdentityCachingSnapshotParser<DocumentSnapshot, T>
+        implements SnapshotParser<T> {
+
+    IdentityCachingSnapshotParser(@NonNull SnapshotParser<T> parser) {
+        super(parser);
+    }
+
+    @NonNull
+    @Override
+    public String getId(@NonNull DocumentSnapshot snapshot) {
+        return snapshot.getReference().getPath();
+    }
+}
@@ -0,0 +1,75 @@
+import org.jetbrains.kotlin.gradle.dsl.JvmTarget
+
+plugins {
+  id("com.android.library")
+  id("com.vanniktech.maven.publish")
+  id("org.jetbrains.kotlin.android")
+}
+
+android {
+    compileSdk = Config.SdkVersions.compile
+    namespace = "com.firebase.ui.ktx"
+
+    defaultConfig {
+        minSdk = Config.SdkVersions.min
+    }
+
+    testOptions {
+        targetSdk = Config.SdkVersions.target
+        unitTests {
+            isIncludeAndroidResources = true
+        }
+    }
+
+    compileOptions {
+        sourceCompatibility = JavaVersion.VERSION_1_8
+        targetCompatibility = JavaVersion.VERSION_1_8
+    }
+
+    lint {
+        // Common lint options across all modules
+        disable += mutableSetOf(
+            "IconExpectedSize",
+            "InvalidPackage", // Firestore uses GRPC which makes lint mad
+            "NewerVersionAvailable", "GradleDependency", // For reproducible builds
+            "SelectableText", "SyntheticAccessor" // We almost never care about this
+        )
+
+        checkAllWarnings = true
+        warningsAsErrors = true
+        abortOnError = true
+
+        baseline = file("$rootDir/library/quality/lint-baseline.xml")
+    }
+
+    buildTypes {
+        named("release").configure {
+            isMinifyEnabled = false
+        }
+    }
+}
+
+kotlin {
+    compilerOptions {
+        jvmTarget = JvmTarget.JVM_1_8
+    }
+}
+
+dependencies {
+    api(project(":common"))
+    api(libs.kotlinx.coroutines.core)
+    implementation(libs.kotlinx.coroutines.android)
+    implementation(libs.androidx.annotation)
+
+    // Only the extensions for the modules an app depends on can be called
+    compileOnly(project(":database"))
+    compileOnly(project(":firestore"))
+
+    testImplementation(libs.junit)
+    testImplementation(libs.test.core)
+    testImplementation(libs.robolectric)
+    testImplementation(libs.mockito.core)
+    testImplementation(libs.kotlinx.coroutines.test)
+    testImplementation(project(":database"))
+    testImplementation(project(":firestore"))
+}
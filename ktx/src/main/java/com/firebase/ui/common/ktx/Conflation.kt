@@ -0,0 +1,25 @@
+package com.firebase.ui.common.ktx
+
+/**
+ * What to do with the updates of an observable snapshot array that arrive while the collector is
+ * still busy with a previous one.
+ */
+enum class Conflation {
+    /**
+     * Buffer every update so that the collector sees each of them. Memory grows with the number
+     * of pending updates.
+     */
+    NONE,
+
+    /**
+     * Merge pending updates into one with the latest items and the changes of all of them, so
+     * that the collector can still apply the changes incrementally.
+     */
+    MERGE,
+
+    /**
+     * Keep only the latest pending update. Its changes are null if earlier updates were dropped,
+     * since they would only describe part of the difference with the items the collector saw.
+     */
+    LATEST
+}
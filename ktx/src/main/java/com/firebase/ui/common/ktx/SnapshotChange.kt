@@ -0,0 +1,14 @@
+package com.firebase.ui.common.ktx
+
+import com.firebase.ui.common.ChangeEventType
+
+/**
+ * A child event that contributed to a [SnapshotListUpdate]. The indices follow the same
+ * convention for every module, even where the module's change event listeners receive other
+ * indices: an added item only has a [newIndex], a removed item only has an [oldIndex] and an item
+ * changed in place has the same index for both.
+ *
+ * @property newIndex the index of the item after the change, or -1 if it was removed.
+ * @property oldIndex the index of the item before the change, or -1 if it was added.
+ */
+data class SnapshotChange(val type: ChangeEventType, val newIndex: Int, val oldIndex: Int)
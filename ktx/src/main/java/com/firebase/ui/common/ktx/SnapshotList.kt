@@ -0,0 +1,202 @@
+package com.firebase.ui.common.ktx
+
+/**
+ * An immutable list of the models in an observable snapshot array at one point in time.
+ *
+ * Consecutive lists emitted by the same flow share all of their structure except the path to each
+ * changed item, so that a change costs O(log n) time and memory instead of a copy of the whole
+ * list. Indexed access is O(log n) and iteration is O(n). Equality is structural, as for any
+ * [List].
+ */
+class SnapshotList<T> private constructor(private val root: Node<T>?) : AbstractList<T>() {
+
+    override val size: Int
+        get() = sizeOf(root)
+
+    override fun get(index: Int): T {
+        if (index < 0 || index >= size) {
+            throw IndexOutOfBoundsException("Index: $index, Size: $size")
+        }
+
+        var node = root!!
+        var i = index
+        while (true) {
+            val leftSize = sizeOf(node.left)
+            node = when {
+                i < leftSize -> node.left!!
+                i == leftSize -> return node.value
+                else -> {
+                    i -= leftSize + 1
+                    node.right!!
+                }
+            }
+        }
+    }
+
+    override fun iterator(): Iterator<T> = NodeIterator(root)
+
+    internal fun inserted(index: Int, element: T): SnapshotList<T> {
+        checkPosition(index, size + 1)
+        return SnapshotList(insert(root, index, element))
+    }
+
+    internal fun removedAt(index: Int): SnapshotList<T> {
+        checkPosition(index, size)
+        return SnapshotList(remove(root!!, index))
+    }
+
+    internal fun replaced(index: Int, element: T): SnapshotList<T> {
+        checkPosition(index, size)
+        return SnapshotList(replace(root!!, index, element))
+    }
+
+    private fun checkPosition(index: Int, bound: Int) {
+        if (index < 0 || index >= bound) {
+            throw IndexOutOfBoundsException("Index: $index, Size: $size")
+        }
+    }
+
+    /**
+     * A node of an AVL tree ordered by position. Nodes are never modified, a change copies the
+     * nodes on the path to the changed position and shares the rest of the tree.
+     */
+    private class Node<T>(val value: T, val left: Node<T>?, val right: Node<T>?) {
+        val size: Int = sizeOf(left) + sizeOf(right) + 1
+        val height: Int = maxOf(heightOf(left), heightOf(right)) + 1
+    }
+
+    private class NodeIterator<T>(root: Node<T>?) : Iterator<T> {
+        private val path = ArrayList<Node<T>>()
+
+        init {
+            pushLeft(root)
+        }
+
+        override fun hasNext(): Boolean = path.isNotEmpty()
+
+        override fun next(): T {
+            if (path.isEmpty()) {
+                throw NoSuchElementException()
+            }
+            val node = path.removeAt(path.size - 1)
+            pushLeft(node.right)
+            return node.value
+        }
+
+        private fun pushLeft(node: Node<T>?) {
+            var current = node
+            while (current != null) {
+                path.add(current)
+                current = current.left
+            }
+        }
+    }
+
+    companion object {
+        private val EMPTY = SnapshotList<Any?>(null)
+
+        /**
+         * @return an empty list.
+         */
+        @Suppress("UNCHECKED_CAST")
+        @JvmStatic
+        fun <T> empty(): SnapshotList<T> = EMPTY as SnapshotList<T>
+
+        /**
+         * @return a list of the given items, in O(n).
+         */
+        internal fun <T> of(items: List<T>): SnapshotList<T> =
+                SnapshotList(build(items, 0, items.size))
+
+        private fun sizeOf(node: Node<*>?): Int = node?.size ?: 0
+
+        private fun heightOf(node: Node<*>?): Int = node?.height ?: 0
+
+        private fun <T> build(items: List<T>, from: Int, to: Int): Node<T>? {
+            if (from >= to) {
+                return null
+            }
+            val middle = (from + to) ushr 1
+            return Node(items[middle], build(items, from, middle), build(items, middle + 1, to))
+        }
+
+        private fun <T> insert(node: Node<T>?, index: Int, element: T): Node<T> {
+            if (node == null) {
+                return Node(element, null, null)
+            }
+
+            val leftSize = sizeOf(node.left)
+            return if (index <= leftSize) {
+                balance(node.value, insert(node.left, index, element), node.right)
+            } else {
+                balance(node.value, node.left, insert(node.right, index - leftSize - 1, element))
+            }
+        }
+
+        private fun <T> remove(node: Node<T>, index: Int): Node<T>? {
+            val leftSize = sizeOf(node.left)
+            if (index < leftSize) {
+                return balance(node.value, remove(node.left!!, index), node.right)
+            } else if (index > leftSize) {
+                return balance(node.value, node.left, remove(node.right!!, index - leftSize - 1))
+            }
+
+            val left = node.left ?: return node.right
+            val right = node.right ?: return left
+            return balance(first(right), left, removeFirst(right))
+        }
+
+        private fun <T> first(node: Node<T>): T {
+            var current = node
+            while (true) {
+                current = current.left ?: return current.value
+            }
+        }
+
+        private fun <T> removeFirst(node: Node<T>): Node<T>? {
+            val left = node.left ?: return node.right
+            return balance(node.value, removeFirst(left), node.right)
+        }
+
+        private fun <T> replace(node: Node<T>, index: Int, element: T): Node<T> {
+            val leftSize = sizeOf(node.left)
+            return when {
+                index < leftSize ->
+                    Node(node.value, replace(node.left!!, index, element), node.right)
+                index > leftSize -> Node(node.value,
+                        node.left,
+                        replace(node.right!!, index - leftSize - 1, element))
+                else -> Node(element, node.left, node.right)
+            }
+        }
+
+        /**
+         * Create a node from subtrees whose heights differ by at most two, rotating it back into
+         * balance if they differ by two.
+         */
+        private fun <T> balance(value: T, left: Node<T>?, right: Node<T>?): Node<T> {
+            val leftHeight = heightOf(left)
+            val rightHeight = heightOf(right)
+            if (leftHeight > rightHeight + 1) {
+                left!!
+                if (heightOf(left.left) >= heightOf(left.right)) {
+                    return Node(left.value, left.left, Node(value, left.right, right))
+                }
+                val inner = left.right!!
+                return Node(inner.value,
+                        Node(left.value, left.left, inner.left),
+                        Node(value, inner.right, right))
+            } else if (rightHeight > leftHeight + 1) {
+                right!!
+                if (heightOf(right.right) >= heightOf(right.left)) {
+                    return Node(right.value, Node(value, left, right.left), right.right)
+                }
+                val inner = right.left!!
+                return Node(inner.value,
+                        Node(value, left, inner.left),
+                        Node(right.value, inner.right, right.right))
+            }
+            return Node(value, left, right)
+        }
+    }
+}
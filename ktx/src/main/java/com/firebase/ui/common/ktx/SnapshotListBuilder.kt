@@ -0,0 +1,42 @@
+package com.firebase.ui.common.ktx
+
+import com.firebase.ui.common.BaseObservableSnapshotArray
+import com.firebase.ui.common.ChangeEventType
+
+/**
+ * Applies the child events of an observable snapshot array to a [SnapshotList], parsing the
+ * added and changed snapshots with the array's parser. Must be called on the main thread, with
+ * indices normalized as described by [SnapshotChange].
+ */
+internal class SnapshotListBuilder<S : Any, T : Any>(
+    private val array: BaseObservableSnapshotArray<S, *, *, T>
+) {
+    private var items = SnapshotList.empty<T>()
+    private var changes: MutableList<SnapshotChange> = ArrayList()
+
+    fun onChildChanged(type: ChangeEventType, snapshot: S, newIndex: Int, oldIndex: Int) {
+        items = when (type) {
+            ChangeEventType.ADDED -> items.inserted(newIndex, array.parseSnapshot(snapshot))
+            ChangeEventType.REMOVED -> items.removedAt(oldIndex)
+            ChangeEventType.CHANGED, ChangeEventType.METADATA_CHANGED ->
+                items.replaced(newIndex, array.parseSnapshot(snapshot))
+            ChangeEventType.MOVED, ChangeEventType.MOVED_AND_CHANGED ->
+                items.removedAt(oldIndex).inserted(newIndex, array.parseSnapshot(snapshot))
+        }
+        changes.add(SnapshotChange(type, newIndex, oldIndex))
+    }
+
+    /**
+     * @return the items and the changes since the last call.
+     */
+    fun flush(): SnapshotListUpdate<T> {
+        var batch: List<SnapshotChange>? = changes
+        if (items.size != array.size) {
+            // The array was cleared or reset without child events
+            items = SnapshotList.of(array)
+            batch = null
+        }
+        changes = ArrayList()
+        return SnapshotListUpdate(items, batch)
+    }
+}
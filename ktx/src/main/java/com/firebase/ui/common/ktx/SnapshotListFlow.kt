@@ -0,0 +1,64 @@
+package com.firebase.ui.common.ktx
+
+import androidx.annotation.RestrictTo
+import com.firebase.ui.common.BaseChangeEventListener
+import com.firebase.ui.common.BaseObservableSnapshotArray
+import com.firebase.ui.common.ChangeEventType
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.channels.awaitClose
+import kotlinx.coroutines.flow.Flow
+import kotlinx.coroutines.flow.callbackFlow
+import kotlinx.coroutines.flow.conflate
+import kotlinx.coroutines.flow.flow
+import kotlinx.coroutines.flow.flowOn
+
+/**
+ * Observe an array as a flow of [SnapshotListUpdate]s, one for each batch of child events ended
+ * by `onDataChanged()`. The array is listened to on the main thread while the flow is collected.
+ *
+ * @param listenerFactory wraps a listener into the array's own listener type.
+ * @param errorMapper converts the array's errors into the exception the flow fails with.
+ */
+@RestrictTo(RestrictTo.Scope.LIBRARY_GROUP)
+fun <S : Any, E : Any, L : BaseChangeEventListener<S, E>, T : Any>
+        BaseObservableSnapshotArray<S, E, L, T>.snapshotListUpdates(
+    conflation: Conflation,
+    listenerFactory: (BaseChangeEventListener<S, E>) -> L,
+    errorMapper: (E) -> Throwable
+): Flow<SnapshotListUpdate<T>> = flow {
+    val array = this@snapshotListUpdates
+    val buffer = UpdateBuffer<T>(conflation)
+
+    // The signals are conflated: each one drains every update buffered since the last
+    val signals = callbackFlow {
+        val builder = SnapshotListBuilder(array)
+        val listener = listenerFactory(object : BaseChangeEventListener<S, E> {
+            override fun onChildChanged(
+                type: ChangeEventType, snapshot: S, newIndex: Int, oldIndex: Int
+            ) {
+                builder.onChildChanged(type, snapshot, newIndex, oldIndex)
+            }
+
+            override fun onDataChanged() {
+                buffer.offer(builder.flush())
+                trySend(Unit)
+            }
+
+            override fun onError(e: E) {
+                close(errorMapper(e))
+            }
+        })
+
+        array.addChangeEventListener(listener)
+        awaitClose { array.removeChangeEventListener(listener) }
+    }
+
+    signals
+        .conflate()
+        .flowOn(Dispatchers.Main.immediate)
+        .collect {
+            for (update in buffer.drain()) {
+                emit(update)
+            }
+        }
+}
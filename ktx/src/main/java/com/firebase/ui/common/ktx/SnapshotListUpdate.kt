@@ -0,0 +1,19 @@
+package com.firebase.ui.common.ktx
+
+/**
+ * The items of an observable snapshot array after a batch of changes, along with the changes
+ * since the previous update.
+ *
+ * @property items the parsed models in the array, sharing structure with the previous update's.
+ * @property changes the child events since the previous update, in order, or null if they aren't
+ * known, either because [Conflation.LATEST] dropped updates or because the array was reset
+ * without child events. When null, compare [items] with the previous items as a whole, for
+ * example with `DiffUtil`.
+ */
+class SnapshotListUpdate<T> internal constructor(
+    val items: SnapshotList<T>,
+    val changes: List<SnapshotChange>?
+) {
+    override fun toString(): String =
+            "SnapshotListUpdate(size=${items.size}, changes=${changes?.size ?: "unknown"})"
+}
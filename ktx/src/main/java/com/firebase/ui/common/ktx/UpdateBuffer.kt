@@ -0,0 +1,49 @@
+package com.firebase.ui.common.ktx
+
+/**
+ * Holds the updates of a snapshot list flow until its collector takes them, conflating them as
+ * configured. Thread safe.
+ */
+internal class UpdateBuffer<T>(private val conflation: Conflation) {
+
+    private val pending = ArrayList<SnapshotListUpdate<T>>()
+
+    /** The changes of the merged pending update, or null if they are unknown. */
+    private var mergedChanges: MutableList<SnapshotChange>? = null
+
+    @Synchronized
+    fun offer(update: SnapshotListUpdate<T>) {
+        if (conflation == Conflation.NONE) {
+            pending.add(update)
+            return
+        } else if (pending.isEmpty()) {
+            pending.add(update)
+            mergedChanges = update.changes?.let { ArrayList(it) }
+            return
+        }
+
+        val changes = update.changes
+        val merged = mergedChanges
+        if (conflation == Conflation.MERGE && changes != null && merged != null) {
+            // Appended in place so that a long stall doesn't copy the changes over and over
+            merged.addAll(changes)
+        } else {
+            mergedChanges = null
+        }
+        pending[0] = SnapshotListUpdate(update.items, mergedChanges)
+    }
+
+    /**
+     * @return the pending updates, oldest first, removing them from the buffer.
+     */
+    @Synchronized
+    fun drain(): List<SnapshotListUpdate<T>> {
+        if (pending.isEmpty()) {
+            return emptyList()
+        }
+        val updates = ArrayList(pending)
+        pending.clear()
+        mergedChanges = null
+        return updates
+    }
+}
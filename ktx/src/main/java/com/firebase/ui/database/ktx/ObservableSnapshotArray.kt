@@ -0,0 +1,57 @@
+package com.firebase.ui.database.ktx
+
+import com.firebase.ui.common.BaseChangeEventListener
+import com.firebase.ui.common.ChangeEventType
+import com.firebase.ui.common.ktx.Conflation
+import com.firebase.ui.common.ktx.SnapshotListUpdate
+import com.firebase.ui.common.ktx.snapshotListUpdates
+import com.firebase.ui.database.ChangeEventListener
+import com.firebase.ui.database.ObservableSnapshotArray
+import com.google.firebase.database.DataSnapshot
+import com.google.firebase.database.DatabaseError
+import kotlinx.coroutines.flow.Flow
+
+/**
+ * Observe the array as a flow of immutable lists of its parsed models, each emitted along with
+ * the child events that produced it, once the array reports that a batch of changes is complete.
+ *
+ * The array is listened to on the main thread while the flow is collected, and stops listening
+ * once no other listener is attached and collection stops. Consecutive lists share structure, so
+ * each update costs O(log n) per change rather than a copy of the whole list. The flow fails with
+ * a [com.google.firebase.database.DatabaseException] if the array reports an error.
+ *
+ * The indices of each [com.firebase.ui.common.ktx.SnapshotChange] are normalized to match the
+ * other modules': removals report the removed index as `oldIndex` and in place changes report the
+ * changed index as both indices.
+ *
+ * @param conflation what to do with updates that arrive while the collector is busy.
+ */
+fun <T : Any> ObservableSnapshotArray<T>.updates(
+    conflation: Conflation = Conflation.MERGE
+): Flow<SnapshotListUpdate<T>> =
+        snapshotListUpdates(conflation, ::DelegatingListener, DatabaseError::toException)
+
+private class DelegatingListener(
+    private val listener: BaseChangeEventListener<DataSnapshot, DatabaseError>
+) : ChangeEventListener {
+    override fun onChildChanged(
+        type: ChangeEventType, snapshot: DataSnapshot, newIndex: Int, oldIndex: Int
+    ) {
+        // The database arrays only report the old index of moves, so that removals and changes
+        // come with (index, -1)
+        when (type) {
+            ChangeEventType.REMOVED -> listener.onChildChanged(type, snapshot, -1, newIndex)
+            ChangeEventType.CHANGED, ChangeEventType.METADATA_CHANGED ->
+                listener.onChildChanged(type, snapshot, newIndex, newIndex)
+            else -> listener.onChildChanged(type, snapshot, newIndex, oldIndex)
+        }
+    }
+
+    override fun onDataChanged() {
+        listener.onDataChanged()
+    }
+
+    override fun onError(e: DatabaseError) {
+        listener.onError(e)
+    }
+}
@@ -0,0 +1,46 @@
+package com.firebase.ui.firestore.ktx
+
+import com.firebase.ui.common.BaseChangeEventListener
+import com.firebase.ui.common.ChangeEventType
+import com.firebase.ui.common.ktx.Conflation
+import com.firebase.ui.common.ktx.SnapshotListUpdate
+import com.firebase.ui.common.ktx.snapshotListUpdates
+import com.firebase.ui.firestore.ChangeEventListener
+import com.firebase.ui.firestore.ObservableSnapshotArray
+import com.google.firebase.firestore.DocumentSnapshot
+import com.google.firebase.firestore.FirebaseFirestoreException
+import kotlinx.coroutines.flow.Flow
+
+/**
+ * Observe the array as a flow of immutable lists of its parsed models, each emitted along with
+ * the child events that produced it, once the array reports that a query snapshot has been
+ * applied.
+ *
+ * The array is listened to on the main thread while the flow is collected, and stops listening
+ * once no other listener is attached and collection stops. Consecutive lists share structure, so
+ * each update costs O(log n) per change rather than a copy of the whole list. The flow fails with
+ * the [FirebaseFirestoreException] reported by the array, if any.
+ *
+ * @param conflation what to do with updates that arrive while the collector is busy.
+ */
+fun <T : Any> ObservableSnapshotArray<T>.updates(
+    conflation: Conflation = Conflation.MERGE
+): Flow<SnapshotListUpdate<T>> = snapshotListUpdates(conflation, ::DelegatingListener) { it }
+
+private class DelegatingListener(
+    private val listener: BaseChangeEventListener<DocumentSnapshot, FirebaseFirestoreException>
+) : ChangeEventListener {
+    override fun onChildChanged(
+        type: ChangeEventType, snapshot: DocumentSnapshot, newIndex: Int, oldIndex: Int
+    ) {
+        listener.onChildChanged(type, snapshot, newIndex, oldIndex)
+    }
+
+    override fun onDataChanged() {
+        listener.onDataChanged()
+    }
+
+    override fun onError(e: FirebaseFirestoreException) {
+        listener.onError(e)
+    }
+}
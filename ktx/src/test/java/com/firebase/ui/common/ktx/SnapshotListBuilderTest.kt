@@ -0,0 +1,101 @@
+package com.firebase.ui.common.ktx
+
+import com.firebase.ui.common.BaseCachingSnapshotParser
+import com.firebase.ui.common.BaseChangeEventListener
+import com.firebase.ui.common.BaseObservableSnapshotArray
+import com.firebase.ui.common.ChangeEventType
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+
+@RunWith(RobolectricTestRunner::class)
+class SnapshotListBuilderTest {
+
+    private val array = TestArray()
+    private val builder = SnapshotListBuilder(array)
+
+    @Test
+    fun flush_appliesEveryChange() {
+        add(0, "a" to "1")
+        add(1, "b" to "2")
+        add(2, "c" to "3")
+        change(1, "b" to "4")
+        move(0, 2)
+        remove(0)
+
+        val update = builder.flush()
+        assertEquals(listOf("3", "1"), update.items)
+        assertEquals(
+            listOf(
+                SnapshotChange(ChangeEventType.ADDED, 0, -1),
+                SnapshotChange(ChangeEventType.ADDED, 1, -1),
+                SnapshotChange(ChangeEventType.ADDED, 2, -1),
+                SnapshotChange(ChangeEventType.CHANGED, 1, 1),
+                SnapshotChange(ChangeEventType.MOVED, 2, 0),
+                SnapshotChange(ChangeEventType.REMOVED, -1, 0)
+            ),
+            update.changes
+        )
+    }
+
+    @Test
+    fun flush_onlyReportsChangesSinceLastFlush() {
+        add(0, "a" to "1")
+        builder.flush()
+        add(0, "b" to "2")
+
+        val update = builder.flush()
+        assertEquals(listOf("2", "1"), update.items)
+        assertEquals(listOf(SnapshotChange(ChangeEventType.ADDED, 0, -1)), update.changes)
+    }
+
+    @Test
+    fun flush_afterResetWithoutEvents_hasUnknownChanges() {
+        add(0, "a" to "1")
+        builder.flush()
+        array.stored.clear()
+        array.stored.add("b" to "2")
+        array.stored.add("c" to "3")
+
+        val update = builder.flush()
+        assertEquals(listOf("2", "3"), update.items)
+        assertNull(update.changes)
+    }
+
+    private fun add(index: Int, snapshot: Pair<String, String>) {
+        array.stored.add(index, snapshot)
+        builder.onChildChanged(ChangeEventType.ADDED, snapshot, index, -1)
+    }
+
+    private fun change(index: Int, snapshot: Pair<String, String>) {
+        array.stored[index] = snapshot
+        builder.onChildChanged(ChangeEventType.CHANGED, snapshot, index, index)
+    }
+
+    private fun move(fromIndex: Int, toIndex: Int) {
+        val snapshot = array.stored.removeAt(fromIndex)
+        array.stored.add(toIndex, snapshot)
+        builder.onChildChanged(ChangeEventType.MOVED, snapshot, toIndex, fromIndex)
+    }
+
+    private fun remove(index: Int) {
+        val snapshot = array.stored.removeAt(index)
+        builder.onChildChanged(ChangeEventType.REMOVED, snapshot, -1, index)
+    }
+
+    /** Array of (key, value) snapshots whose models are the values. */
+    private class TestArray : BaseObservableSnapshotArray<Pair<String, String>, Exception,
+            BaseChangeEventListener<Pair<String, String>, Exception>, String>(Parser()) {
+        val stored = ArrayList<Pair<String, String>>()
+
+        override fun getSnapshots(): MutableList<Pair<String, String>> = stored
+    }
+
+    /** Caches each value of a key separately, so that changes don't need to invalidate. */
+    private class Parser :
+        BaseCachingSnapshotParser<Pair<String, String>, String>({ it.second }) {
+        override fun getId(snapshot: Pair<String, String>): String = snapshot.toString()
+    }
+}
@@ -0,0 +1,89 @@
+package com.firebase.ui.common.ktx
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.util.Random
+
+class SnapshotListTest {
+
+    @Test
+    fun inserted_atEveryPosition_matchesArrayList() {
+        var list = SnapshotList.empty<Int>()
+        val expected = ArrayList<Int>()
+        for (i in 0 until 100) {
+            val index = (i * 7) % (expected.size + 1)
+            list = list.inserted(index, i)
+            expected.add(index, i)
+        }
+
+        assertEquals(expected, list)
+        assertEquals(expected, list.toList())
+    }
+
+    @Test
+    fun randomChanges_matchArrayList() {
+        val random = Random(42)
+        var list = SnapshotList.empty<Int>()
+        val expected = ArrayList<Int>()
+        for (i in 0 until 2000) {
+            val operation = if (expected.isEmpty()) 0 else random.nextInt(4)
+            when (operation) {
+                0, 1 -> {
+                    val index = random.nextInt(expected.size + 1)
+                    list = list.inserted(index, i)
+                    expected.add(index, i)
+                }
+                2 -> {
+                    val index = random.nextInt(expected.size)
+                    list = list.removedAt(index)
+                    expected.removeAt(index)
+                }
+                else -> {
+                    val index = random.nextInt(expected.size)
+                    list = list.replaced(index, i)
+                    expected[index] = i
+                }
+            }
+        }
+
+        assertEquals(expected, list)
+    }
+
+    @Test
+    fun changes_leavePreviousListUntouched() {
+        val original = SnapshotList.of(listOf("a", "b", "c"))
+
+        original.inserted(1, "x")
+        original.removedAt(0)
+        original.replaced(2, "z")
+
+        assertEquals(listOf("a", "b", "c"), original)
+    }
+
+    @Test
+    fun of_buildsBalancedList() {
+        val items = (0 until 1000).toList()
+
+        val list = SnapshotList.of(items)
+
+        assertEquals(items, list)
+        assertEquals(999, list[999])
+    }
+
+    @Test(expected = IndexOutOfBoundsException::class)
+    fun get_outOfBounds_throws() {
+        SnapshotList.of(listOf("a"))[1]
+    }
+
+    @Test(expected = IndexOutOfBoundsException::class)
+    fun removedAt_empty_throws() {
+        SnapshotList.empty<String>().removedAt(0)
+    }
+
+    @Test
+    fun empty_isEmpty() {
+        assertTrue(SnapshotList.empty<String>().isEmpty())
+        assertEquals(emptyList<String>(), SnapshotList.empty<String>())
+    }
+}
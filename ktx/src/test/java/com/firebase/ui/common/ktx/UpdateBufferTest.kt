@@ -0,0 +1,79 @@
+package com.firebase.ui.common.ktx
+
+import com.firebase.ui.common.ChangeEventType
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class UpdateBufferTest {
+
+    private val first = update(listOf("a"), listOf(added(0)))
+    private val second = update(listOf("a", "b"), listOf(added(1)))
+
+    @Test
+    fun none_keepsEveryUpdate() {
+        val buffer = UpdateBuffer<String>(Conflation.NONE)
+        buffer.offer(first)
+        buffer.offer(second)
+
+        assertEquals(listOf(first, second), buffer.drain())
+    }
+
+    @Test
+    fun merge_combinesChanges() {
+        val buffer = UpdateBuffer<String>(Conflation.MERGE)
+        buffer.offer(first)
+        buffer.offer(second)
+
+        val updates = buffer.drain()
+        assertEquals(1, updates.size)
+        assertEquals(listOf("a", "b"), updates[0].items)
+        assertEquals(listOf(added(0), added(1)), updates[0].changes)
+    }
+
+    @Test
+    fun merge_withUnknownChanges_hasUnknownChanges() {
+        val buffer = UpdateBuffer<String>(Conflation.MERGE)
+        buffer.offer(update(listOf("a"), null))
+        buffer.offer(second)
+
+        assertNull(buffer.drain()[0].changes)
+    }
+
+    @Test
+    fun latest_dropsChanges() {
+        val buffer = UpdateBuffer<String>(Conflation.LATEST)
+        buffer.offer(first)
+        buffer.offer(second)
+
+        val updates = buffer.drain()
+        assertEquals(1, updates.size)
+        assertEquals(listOf("a", "b"), updates[0].items)
+        assertNull(updates[0].changes)
+    }
+
+    @Test
+    fun latest_single_keepsChanges() {
+        val buffer = UpdateBuffer<String>(Conflation.LATEST)
+        buffer.offer(first)
+
+        assertEquals(listOf(added(0)), buffer.drain()[0].changes)
+    }
+
+    @Test
+    fun drain_emptiesBuffer() {
+        val buffer = UpdateBuffer<String>(Conflation.MERGE)
+        buffer.offer(first)
+        buffer.drain()
+        buffer.offer(second)
+
+        assertEquals(listOf(added(1)), buffer.drain()[0].changes)
+        assertTrue(buffer.drain().isEmpty())
+    }
+
+    private fun update(items: List<String>, changes: List<SnapshotChange>?) =
+            SnapshotListUpdate(SnapshotList.of(items), changes)
+
+    private fun added(index: Int) = SnapshotChange(ChangeEventType.ADDED, index, -1)
+}
@@ -0,0 +1,147 @@
+package com.firebase.ui.database.ktx
+
+import com.firebase.ui.common.ChangeEventType
+import com.firebase.ui.common.ktx.Conflation
+import com.firebase.ui.common.ktx.SnapshotChange
+import com.firebase.ui.common.ktx.SnapshotListUpdate
+import com.firebase.ui.database.ObservableSnapshotArray
+import com.firebase.ui.database.SnapshotParser
+import com.google.firebase.database.DataSnapshot
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.UnconfinedTestDispatcher
+import kotlinx.coroutines.test.resetMain
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import kotlinx.coroutines.test.setMain
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.`when`
+import org.robolectric.RobolectricTestRunner
+
+@OptIn(ExperimentalCoroutinesApi::class)
+@RunWith(RobolectricTestRunner::class)
+class ObservableSnapshotArrayTest {
+
+    private val array = TestArray()
+
+    @Before
+    fun setUp() {
+        Dispatchers.setMain(UnconfinedTestDispatcher())
+    }
+
+    @After
+    fun tearDown() {
+        Dispatchers.resetMain()
+    }
+
+    @Test
+    fun updates_normalizesRemovalAndChangeIndices() = runTest {
+        val updates = ArrayList<SnapshotListUpdate<String>>()
+        backgroundScope.launch(UnconfinedTestDispatcher(testScheduler)) {
+            array.updates(Conflation.NONE).toList(updates)
+        }
+        array.add(0, snapshot("a", "1"))
+        array.add(1, snapshot("b", "2"))
+        array.add(2, snapshot("c", "3"))
+        array.loaded()
+        array.change(0, snapshot("a", "4"))
+        array.remove(1)
+        array.loaded()
+        runCurrent()
+
+        assertEquals(2, updates.size)
+        assertEquals(listOf("4", "3"), updates[1].items)
+        assertEquals(
+            listOf(
+                SnapshotChange(ChangeEventType.CHANGED, 0, 0),
+                SnapshotChange(ChangeEventType.REMOVED, -1, 1)
+            ),
+            updates[1].changes
+        )
+    }
+
+    @Test
+    fun updates_keepsAdditionAndMoveIndices() = runTest {
+        val updates = ArrayList<SnapshotListUpdate<String>>()
+        backgroundScope.launch(UnconfinedTestDispatcher(testScheduler)) {
+            array.updates(Conflation.NONE).toList(updates)
+        }
+        array.add(0, snapshot("a", "1"))
+        array.add(1, snapshot("b", "2"))
+        array.move(0, 1)
+        array.remove(0)
+        array.loaded()
+        runCurrent()
+
+        assertEquals(listOf("1"), updates.single().items)
+        assertEquals(
+            listOf(
+                SnapshotChange(ChangeEventType.ADDED, 0, -1),
+                SnapshotChange(ChangeEventType.ADDED, 1, -1),
+                SnapshotChange(ChangeEventType.MOVED, 1, 0),
+                SnapshotChange(ChangeEventType.REMOVED, -1, 0)
+            ),
+            updates.single().changes
+        )
+    }
+
+    @Test
+    fun updates_stopsListeningWhenCollectionStops() = runTest {
+        val job = launch(UnconfinedTestDispatcher(testScheduler)) {
+            array.updates().collect {}
+        }
+        runCurrent()
+        job.cancel()
+        runCurrent()
+
+        assertFalse(array.isListening)
+    }
+
+    private fun snapshot(key: String, value: String): DataSnapshot {
+        val snapshot = mock(DataSnapshot::class.java)
+        `when`(snapshot.key).thenReturn(key)
+        `when`(snapshot.value).thenReturn(value)
+        return snapshot
+    }
+
+    /** Array whose child events use the indices reported by the database arrays. */
+    private class TestArray : ObservableSnapshotArray<String>(
+        SnapshotParser { it.value as String }
+    ) {
+        private val stored = ArrayList<DataSnapshot>()
+
+        override fun getSnapshots(): MutableList<DataSnapshot> = stored
+
+        fun add(index: Int, snapshot: DataSnapshot) {
+            stored.add(index, snapshot)
+            notifyOnChildChanged(ChangeEventType.ADDED, snapshot, index, -1)
+        }
+
+        fun change(index: Int, snapshot: DataSnapshot) {
+            stored[index] = snapshot
+            notifyOnChildChanged(ChangeEventType.CHANGED, snapshot, index, -1)
+        }
+
+        fun move(fromIndex: Int, toIndex: Int) {
+            val snapshot = stored.removeAt(fromIndex)
+            stored.add(toIndex, snapshot)
+            notifyOnChildChanged(ChangeEventType.MOVED, snapshot, toIndex, fromIndex)
+        }
+
+        fun remove(index: Int) {
+            notifyOnChildChanged(ChangeEventType.REMOVED, stored.removeAt(index), index, -1)
+        }
+
+        fun loaded() {
+            notifyOnDataChanged()
+        }
+    }
+}
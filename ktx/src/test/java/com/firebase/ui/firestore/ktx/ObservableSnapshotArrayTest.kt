@@ -0,0 +1,126 @@
+package com.firebase.ui.firestore.ktx
+
+import com.firebase.ui.common.ChangeEventType
+import com.firebase.ui.common.ktx.Conflation
+import com.firebase.ui.common.ktx.SnapshotChange
+import com.firebase.ui.common.ktx.SnapshotListUpdate
+import com.firebase.ui.firestore.ObservableSnapshotArray
+import com.firebase.ui.firestore.SnapshotParser
+import com.google.firebase.firestore.DocumentSnapshot
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.ExperimentalCoroutinesApi
+import kotlinx.coroutines.flow.toList
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.test.UnconfinedTestDispatcher
+import kotlinx.coroutines.test.resetMain
+import kotlinx.coroutines.test.runCurrent
+import kotlinx.coroutines.test.runTest
+import kotlinx.coroutines.test.setMain
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.`when`
+import org.robolectric.RobolectricTestRunner
+
+@OptIn(ExperimentalCoroutinesApi::class)
+@RunWith(RobolectricTestRunner::class)
+class ObservableSnapshotArrayTest {
+
+    private val array = TestArray()
+
+    @Before
+    fun setUp() {
+        Dispatchers.setMain(UnconfinedTestDispatcher())
+    }
+
+    @After
+    fun tearDown() {
+        Dispatchers.resetMain()
+    }
+
+    @Test
+    fun updates_keepsIndices() = runTest {
+        val updates = ArrayList<SnapshotListUpdate<String>>()
+        backgroundScope.launch(UnconfinedTestDispatcher(testScheduler)) {
+            array.updates(Conflation.NONE).toList(updates)
+        }
+        array.add(0, snapshot("a", "1"))
+        array.add(1, snapshot("b", "2"))
+        array.add(2, snapshot("c", "3"))
+        array.loaded()
+        array.change(ChangeEventType.METADATA_CHANGED, 1, snapshot("b", "2"))
+        array.move(0, 2, snapshot("a", "4"))
+        array.change(ChangeEventType.CHANGED, 0, snapshot("b", "5"))
+        array.remove(0)
+        array.loaded()
+        runCurrent()
+
+        assertEquals(2, updates.size)
+        assertEquals(listOf("3", "4"), updates[1].items)
+        assertEquals(
+            listOf(
+                SnapshotChange(ChangeEventType.METADATA_CHANGED, 1, 1),
+                SnapshotChange(ChangeEventType.MOVED_AND_CHANGED, 2, 0),
+                SnapshotChange(ChangeEventType.CHANGED, 0, 0),
+                SnapshotChange(ChangeEventType.REMOVED, -1, 0)
+            ),
+            updates[1].changes
+        )
+    }
+
+    @Test
+    fun updates_stopsListeningWhenCollectionStops() = runTest {
+        val job = launch(UnconfinedTestDispatcher(testScheduler)) {
+            array.updates().collect {}
+        }
+        runCurrent()
+        job.cancel()
+        runCurrent()
+
+        assertFalse(array.isListening)
+    }
+
+    private fun snapshot(key: String, value: String): DocumentSnapshot {
+        val snapshot = mock(DocumentSnapshot::class.java)
+        `when`(snapshot.id).thenReturn(key)
+        `when`(snapshot.getString("value")).thenReturn(value)
+        return snapshot
+    }
+
+    /** Array whose child events use the indices reported by FirestoreArray. */
+    private class TestArray : ObservableSnapshotArray<String>(
+        SnapshotParser { it.getString("value")!! }
+    ) {
+        private val stored = ArrayList<DocumentSnapshot>()
+
+        override fun getSnapshots(): MutableList<DocumentSnapshot> = stored
+
+        fun add(index: Int, snapshot: DocumentSnapshot) {
+            stored.add(index, snapshot)
+            notifyOnChildChanged(ChangeEventType.ADDED, snapshot, index, -1)
+        }
+
+        fun change(type: ChangeEventType, index: Int, snapshot: DocumentSnapshot) {
+            stored[index] = snapshot
+            notifyOnChildChanged(type, snapshot, index, index)
+        }
+
+        fun move(fromIndex: Int, toIndex: Int, snapshot: DocumentSnapshot) {
+            stored.removeAt(fromIndex)
+            stored.add(toIndex, snapshot)
+            notifyOnChildChanged(ChangeEventType.MOVED_AND_CHANGED, snapshot, toIndex, fromIndex)
+        }
+
+        fun remove(index: Int) {
+            notifyOnChildChanged(ChangeEventType.REMOVED, stored.removeAt(index), -1, index)
+        }
+
+        fun loaded() {
+            notifyOnDataChanged()
+        }
+    }
+}
@@ -45,6 +45,7 @@ dependencies {
     api(project(":database"))
     api(project(":firestore"))
     api(project(":storage"))
+    api(project(":ktx"))
 }
 
 tasks.register("prepareArtifacts") {
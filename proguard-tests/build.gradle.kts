@@ -81,6 +81,7 @@ dependencies {
     implementation(project(":firestore"))
     implementation(project(":database"))
     implementation(project(":storage"))
+    implementation(project(":ktx"))
 
     implementation(platform(libs.firebase.bom))
     implementation(libs.androidx.lifecycle.extensions)
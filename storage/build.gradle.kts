@@ -16,6 +16,9 @@ android {
 
     testOptions {
         targetSdk = Config.SdkVersions.target
+        unitTests {
+            isIncludeAndroidResources = true
+        }
     }
 
     compileOptions {
@@ -49,12 +52,20 @@ android {
 
 dependencies {
     api(libs.glide)
+    api(libs.glide.recyclerview)
+    compileOnly(libs.androidx.recyclerview)
 
     implementation(platform(libs.firebase.bom))
     api(libs.firebase.storage)
     // Override Play Services
     implementation(libs.androidx.legacy.support.v4)
 
+    compileOnly(libs.androidx.paging)
+    api(libs.androidx.paging.rxjava3)
+    annotationProcessor(libs.androidx.lifecycle.compiler)
+
     testImplementation(libs.junit)
+    testImplementation(libs.test.core)
+    testImplementation(libs.robolectric)
     testImplementation(libs.mockito.core)
 }
\ No newline at end of file
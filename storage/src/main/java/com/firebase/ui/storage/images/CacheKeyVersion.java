@@ -0,0 +1,18 @@
+package com.firebase.ui.storage.images;
+
+/**
+ * The part of an object's metadata included in the disk cache keys of {@link
+ * FirebaseImageLoader}, so that cached images are invalidated when the object is overwritten.
+ */
+public enum CacheKeyVersion {
+    /**
+     * The object's generation, which changes every time the object is written.
+     */
+    GENERATION,
+
+    /**
+     * The MD5 hash of the object's content, which only changes when the content does. The
+     * generation is used for objects without an MD5 hash, such as composite objects.
+     */
+    MD5_HASH
+}
@@ -0,0 +1,442 @@
+package com.firebase.ui.storage.images;
+
+import com.bumptech.glide.Priority;
+import com.google.firebase.storage.StorageReference;
+import com.google.firebase.storage.StreamDownloadTask;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Shares one download between the fetchers loading the same version of an object at the same
+ * time, for example an avatar repeated in a list at several sizes, which Glide loads as separate
+ * requests.
+ * <p>
+ * The bytes of a shared download go through a buffer of at most {@link #MAX_BUFFER_SIZE} bytes,
+ * which every fetcher reads through its own stream. Objects that fit are kept whole until every
+ * stream has been closed, so that a fetcher joining late still sees the whole object. Past that
+ * size, the bytes every stream has read are dropped, the download waits for the slowest stream
+ * when the buffer is full, and fetchers joining later start a download of their own. The download
+ * is only cancelled once every fetcher sharing it has been cancelled. Thread safe.
+ */
+final class DownloadCoalescer {
+
+    /** Maximum number of bytes of a download held in memory. */
+    static final int MAX_BUFFER_SIZE = 512 * 1024;
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Map<String, Download> mDownloads = new HashMap<>();
+
+    interface Listener {
+        /**
+         * Called once the download has started, on the thread receiving it.
+         */
+        void onStreamReady(@NonNull InputStream stream);
+
+        /**
+         * Called if the download failed before it started.
+         */
+        void onLoadFailed(@NonNull Exception e);
+    }
+
+    /**
+     * Join the download of the given object, starting it if no other fetcher is downloading it.
+     *
+     * @param version   the generation or MD5 hash of the object, if known. Downloads of different
+     *                  versions aren't shared.
+     * @param priority  the priority of the download if it has to be started.
+     * @param scheduler queues the download until a slot is free, if set.
+     * @return a subscription to cancel once the listener is no longer interested in the download.
+     */
+    @NonNull
+    Subscription join(@NonNull StorageReference ref,
+                      @Nullable String version,
+                      @NonNull Priority priority,
+                      @Nullable DownloadScheduler scheduler,
+                      @NonNull Listener listener) {
+        String key = "gs://" + ref.getBucket() + ref.getPath();
+        if (version != null) {
+            key += "#" + version;
+        }
+        Subscription subscription;
+        boolean created = false;
+        synchronized (mDownloads) {
+            Download download = mDownloads.get(key);
+            subscription = download == null ? null : download.retain(listener, true);
+            if (subscription == null) {
+                download = new Download(key, ref, scheduler);
+                subscription = download.retain(listener, false);
+                mDownloads.put(key, download);
+                created = true;
+            }
+        }
+
+        if (created) {
+            subscription.mDownload.schedule(priority);
+        } else {
+            subscription.notifyIfStarted();
+        }
+        return subscription;
+    }
+
+    /**
+     * @return the number of downloads in progress or still being read.
+     */
+    int getDownloadCount() {
+        synchronized (mDownloads) {
+            return mDownloads.size();
+        }
+    }
+
+    private void remove(@NonNull Download download) {
+        synchronized (mDownloads) {
+            if (mDownloads.get(download.mKey) == download) {
+                mDownloads.remove(download.mKey);
+            }
+        }
+    }
+
+    /**
+     * A fetcher's interest in a shared download.
+     */
+    final class Subscription {
+        final Download mDownload;
+        final Listener mListener;
+        private final boolean mDeduplicated;
+        private boolean mNotified;
+        private boolean mCancelled;
+        /** Number of bytes of the object read so far. */
+        private long mPosition;
+
+        Subscription(@NonNull Download download, @NonNull Listener listener, boolean deduplicated) {
+            mDownload = download;
+            mListener = listener;
+            mDeduplicated = deduplicated;
+        }
+
+        /**
+         * @return true if the subscription joined a download started by another fetcher.
+         */
+        boolean isDeduplicated() {
+            return mDeduplicated;
+        }
+
+        /**
+         * Stop waiting for the download and close the stream handed to the listener, if any.
+         * Calling this more than once has no effect.
+         */
+        void cancel() {
+            mDownload.release(this);
+        }
+
+        private void notifyIfStarted() {
+            synchronized (mDownload) {
+                if (!mDownload.mStarted || mNotified) {
+                    return;
+                }
+                mNotified = true;
+            }
+            mListener.onStreamReady(new Reader(this));
+        }
+    }
+
+    private final class Download implements StreamDownloadTask.StreamProcessor {
+        final String mKey;
+        final StorageReference mRef;
+        @Nullable
+        final DownloadScheduler mScheduler;
+
+        private final List<Subscription> mSubscriptions = new ArrayList<>();
+        private DownloadScheduler.Ticket mTicket;
+        private StreamDownloadTask mTask;
+
+        /** Holds the bytes of the object from {@link #mStart} to {@link #mEnd}. */
+        private byte[] mBuffer = EMPTY;
+        private long mStart;
+        private long mEnd;
+        private boolean mStarted;
+        private boolean mComplete;
+        /** Set once the download has failed or nobody is interested in it anymore. */
+        private boolean mClosed;
+        private Exception mError;
+
+        Download(@NonNull String key,
+                 @NonNull StorageReference ref,
+                 @Nullable DownloadScheduler scheduler) {
+            mKey = key;
+            mRef = ref;
+            mScheduler = scheduler;
+        }
+
+        /**
+         * @return a new subscription, or null if the download can no longer be joined because it
+         * is closed or the start of the object has been dropped.
+         */
+        @Nullable
+        synchronized Subscription retain(@NonNull Listener listener, boolean deduplicated) {
+            if (mClosed || mStart > 0) {
+                return null;
+            }
+            Subscription subscription = new Subscription(this, listener, deduplicated);
+            mSubscriptions.add(subscription);
+            return subscription;
+        }
+
+        void release(@NonNull Subscription subscription) {
+            boolean abandoned;
+            StreamDownloadTask task;
+            synchronized (this) {
+                if (subscription.mCancelled) {
+                    return;
+                }
+                subscription.mCancelled = true;
+                mSubscriptions.remove(subscription);
+                notifyAll();
+                if (!mSubscriptions.isEmpty() || mClosed) {
+                    return;
+                }
+
+                abandoned = !mComplete;
+                mClosed = true;
+                mBuffer = EMPTY;
+                task = mTask;
+            }
+
+            remove(this);
+            if (abandoned) {
+                finish();
+                if (task != null && task.isInProgress()) {
+                    task.cancel();
+                }
+            }
+        }
+
+        void schedule(@NonNull Priority priority) {
+            if (mScheduler == null) {
+                start();
+                return;
+            }
+
+            DownloadScheduler.Ticket ticket = mScheduler.enqueue(priority, this::start);
+            synchronized (this) {
+                mTicket = ticket;
+                if (!mClosed && !mComplete) {
+                    return;
+                }
+            }
+            // Finished or abandoned before the ticket was known
+            finish();
+        }
+
+        private void start() {
+            StreamDownloadTask task;
+            synchronized (this) {
+                if (mClosed) {
+                    return;
+                }
+                task = mRef.getStream(this);
+                mTask = task;
+            }
+            task.addOnFailureListener(this::fail);
+        }
+
+        @Override
+        public void doInBackground(@NonNull StreamDownloadTask.TaskSnapshot state,
+                                   @NonNull InputStream stream) throws IOException {
+            List<Subscription> subscriptions;
+            synchronized (this) {
+                if (mClosed) {
+                    return;
+                }
+                long total = state.getTotalByteCount();
+                if (total > 0) {
+                    mBuffer = new byte[(int) Math.min(total, MAX_BUFFER_SIZE)];
+                }
+                mStarted = true;
+                subscriptions = new ArrayList<>(mSubscriptions);
+            }
+            for (Subscription subscription : subscriptions) {
+                subscription.notifyIfStarted();
+            }
+
+            byte[] chunk = new byte[CHUNK_SIZE];
+            int read;
+            while ((read = stream.read(chunk)) != -1) {
+                synchronized (this) {
+                    if (!reserve(read)) {
+                        // Nobody is reading anymore
+                        return;
+                    }
+                    System.arraycopy(chunk, 0, mBuffer, (int) (mEnd - mStart), read);
+                    mEnd += read;
+                    notifyAll();
+                }
+            }
+
+            synchronized (this) {
+                mComplete = true;
+                notifyAll();
+            }
+            finish();
+        }
+
+        /**
+         * Make room in the buffer for the given number of bytes, growing it up to {@link
+         * #MAX_BUFFER_SIZE}, then dropping the bytes every stream has read, then waiting for the
+         * slowest stream to read more.
+         *
+         * @return false if the download was closed meanwhile.
+         */
+        private boolean reserve(int length) throws InterruptedIOException {
+            while (!mClosed) {
+                int buffered = (int) (mEnd - mStart);
+                if (buffered + length <= mBuffer.length) {
+                    return true;
+                }
+                if (buffered + length <= MAX_BUFFER_SIZE) {
+                    mBuffer = Arrays.copyOf(mBuffer, Math.min(
+                            MAX_BUFFER_SIZE, Math.max(buffered + length, mBuffer.length * 2)));
+                    return true;
+                }
+
+                long read = mEnd;
+                for (Subscription subscription : mSubscriptions) {
+                    read = Math.min(read, subscription.mPosition);
+                }
+                if (read > mStart) {
+                    int dropped = (int) (read - mStart);
+                    System.arraycopy(mBuffer, dropped, mBuffer, 0, buffered - dropped);
+                    mStart = read;
+                    continue;
+                }
+
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException();
+                }
+            }
+            return false;
+        }
+
+        private void fail(@NonNull Exception e) {
+            List<Subscription> waiting = new ArrayList<>();
+            synchronized (this) {
+                if (mComplete || mError != null) {
+                    return;
+                }
+                mError = e;
+                mClosed = true;
+                notifyAll();
+                for (Subscription subscription : mSubscriptions) {
+                    if (!subscription.mNotified) {
+                        subscription.mNotified = true;
+                        waiting.add(subscription);
+                    }
+                }
+            }
+
+            remove(this);
+            finish();
+            // Subscriptions reading a stream see the error when they next read
+            for (Subscription subscription : waiting) {
+                subscription.mListener.onLoadFailed(e);
+            }
+        }
+
+        /**
+         * Give up the download's scheduler slot, or its place in the queue.
+         */
+        private void finish() {
+            DownloadScheduler.Ticket ticket;
+            synchronized (this) {
+                ticket = mTicket;
+                mTicket = null;
+            }
+            if (ticket != null) {
+                mScheduler.finish(ticket);
+            }
+        }
+    }
+
+    /**
+     * Reads a shared download's buffer, waiting for more bytes until the download is complete.
+     */
+    private static final class Reader extends InputStream {
+        private final Subscription mSubscription;
+        private final Download mDownload;
+
+        Reader(@NonNull Subscription subscription) {
+            mSubscription = subscription;
+            mDownload = subscription.mDownload;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+
+            synchronized (mDownload) {
+                while (available() == 0 && !mDownload.mComplete) {
+                    if (mSubscription.mCancelled) {
+                        throw new IOException("Stream closed");
+                    } else if (mDownload.mError != null) {
+                        throw new IOException("Download failed", mDownload.mError);
+                    }
+
+                    try {
+                        mDownload.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException();
+                    }
+                }
+                if (mSubscription.mCancelled) {
+                    throw new IOException("Stream closed");
+                }
+
+                int count = Math.min(len, available());
+                if (count == 0) {
+                    return -1;
+                }
+                System.arraycopy(mDownload.mBuffer,
+                        (int) (mSubscription.mPosition - mDownload.mStart), b, off, count);
+                mSubscription.mPosition += count;
+                // The download may be waiting for room in the buffer
+                mDownload.notifyAll();
+                return count;
+            }
+        }
+
+        @Override
+        public int available() {
+            synchronized (mDownload) {
+                return (int) (mDownload.mEnd - mSubscription.mPosition);
+            }
+        }
+
+        @Override
+        public void close() {
+            mSubscription.cancel();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.firebase.ui.storage.images;
+
+import com.google.firebase.storage.StorageReference;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import androidx.annotation.CallSuper;
+import androidx.annotation.NonNull;
+
+/**
+ * A {@link DownloadListener} keeping aggregate counts of the downloads made by {@link
+ * FirebaseImageLoader}. Override its methods, calling through to the superclass, to also report
+ * individual downloads. Thread safe.
+ */
+public class DownloadCounters implements DownloadListener {
+
+    private final AtomicLong mStarted = new AtomicLong();
+    private final AtomicLong mCompleted = new AtomicLong();
+    private final AtomicLong mFailed = new AtomicLong();
+    private final AtomicLong mCancelled = new AtomicLong();
+    private final AtomicLong mDeduplicated = new AtomicLong();
+    private final AtomicLong mBytes = new AtomicLong();
+
+    @CallSuper
+    @Override
+    public void onDownloadStarted(@NonNull StorageReference ref) {
+        mStarted.incrementAndGet();
+    }
+
+    @CallSuper
+    @Override
+    public void onDownloadFinished(@NonNull DownloadMetrics metrics) {
+        if (metrics.isCancelled()) {
+            mCancelled.incrementAndGet();
+        } else if (metrics.getFailure() != null) {
+            mFailed.incrementAndGet();
+        } else {
+            mCompleted.incrementAndGet();
+        }
+        if (metrics.isDeduplicated()) {
+            mDeduplicated.incrementAndGet();
+        }
+        mBytes.addAndGet(metrics.getBytes());
+    }
+
+    /**
+     * @return the number of downloads started and not finished yet.
+     */
+    public long getInFlightCount() {
+        return mStarted.get() - mCompleted.get() - mFailed.get() - mCancelled.get();
+    }
+
+    public long getCompletedCount() {
+        return mCompleted.get();
+    }
+
+    public long getFailedCount() {
+        return mFailed.get();
+    }
+
+    public long getCancelledCount() {
+        return mCancelled.get();
+    }
+
+    /**
+     * @return the number of finished downloads that were shared with another request for the
+     * same object.
+     */
+    public long getDeduplicatedCount() {
+        return mDeduplicated.get();
+    }
+
+    /**
+     * @return the number of bytes read by Glide across all finished downloads, including those
+     * of deduplicated downloads.
+     */
+    public long getBytes() {
+        return mBytes.get();
+    }
+}
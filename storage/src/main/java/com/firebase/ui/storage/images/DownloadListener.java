@@ -0,0 +1,28 @@
+package com.firebase.ui.storage.images;
+
+import com.google.firebase.storage.StorageReference;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Receives the timings and outcome of each download made by {@link FirebaseImageLoader}, for
+ * example to report image performance in the field. See {@link
+ * FirebaseImageLoader.Factory#setDownloadListener(DownloadListener)} and {@link DownloadCounters}.
+ * <p>
+ * Images served from Glide's caches aren't downloaded and aren't reported. Methods are called
+ * from Glide's and Cloud Storage's background threads, so they should not block.
+ */
+public interface DownloadListener {
+    /**
+     * Called when Glide requests an image that has to be downloaded.
+     *
+     * @param ref the image requested.
+     */
+    void onDownloadStarted(@NonNull StorageReference ref);
+
+    /**
+     * Called once for each started download, when Glide has finished reading it, when it fails or
+     * when it is cancelled.
+     */
+    void onDownloadFinished(@NonNull DownloadMetrics metrics);
+}
@@ -0,0 +1,111 @@
+package com.firebase.ui.storage.images;
+
+import com.google.firebase.storage.StorageReference;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * The timings and outcome of a download made by {@link FirebaseImageLoader}. See {@link
+ * DownloadListener}.
+ */
+public final class DownloadMetrics {
+
+    private final StorageReference mRef;
+    private final long mTimeToFirstByteMillis;
+    private final long mDurationMillis;
+    private final long mBytes;
+    private final boolean mDeduplicated;
+    private final boolean mCancelled;
+    @Nullable
+    private final Exception mFailure;
+
+    DownloadMetrics(@NonNull StorageReference ref,
+                    long timeToFirstByteMillis,
+                    long durationMillis,
+                    long bytes,
+                    boolean deduplicated,
+                    boolean cancelled,
+                    @Nullable Exception failure) {
+        mRef = ref;
+        mTimeToFirstByteMillis = timeToFirstByteMillis;
+        mDurationMillis = durationMillis;
+        mBytes = bytes;
+        mDeduplicated = deduplicated;
+        mCancelled = cancelled;
+        mFailure = failure;
+    }
+
+    /**
+     * @return the object downloaded, which is a thumbnail or its original if a {@link
+     * ThumbnailResolver} is set.
+     */
+    @NonNull
+    public StorageReference getReference() {
+        return mRef;
+    }
+
+    /**
+     * @return the time from the request to the download's response, including any time spent
+     * queued by a {@link DownloadScheduler}, or -1 if the download never started.
+     */
+    public long getTimeToFirstByteMillis() {
+        return mTimeToFirstByteMillis;
+    }
+
+    /**
+     * @return the time from the request to the last byte being read, or to the failure or
+     * cancellation.
+     */
+    public long getDurationMillis() {
+        return mDurationMillis;
+    }
+
+    /**
+     * @return the number of bytes read by Glide.
+     */
+    public long getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * @return true if the download was shared with another request for the same object, so it
+     * didn't use any additional bandwidth.
+     */
+    public boolean isDeduplicated() {
+        return mDeduplicated;
+    }
+
+    public boolean isCancelled() {
+        return mCancelled;
+    }
+
+    /**
+     * @return true if the image was downloaded and read without errors.
+     */
+    public boolean isSuccessful() {
+        return !mCancelled && mFailure == null;
+    }
+
+    /**
+     * @return the cause of the failure, or null if the download didn't fail.
+     */
+    @Nullable
+    public Exception getFailure() {
+        return mFailure;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "DownloadMetrics{" +
+                "mRef=" + mRef +
+                ", mTimeToFirstByteMillis=" + mTimeToFirstByteMillis +
+                ", mDurationMillis=" + mDurationMillis +
+                ", mBytes=" + mBytes +
+                ", mDeduplicated=" + mDeduplicated +
+                ", mCancelled=" + mCancelled +
+                ", mFailure=" + mFailure +
+                '}';
+    }
+}
@@ -0,0 +1,125 @@
+package com.firebase.ui.storage.images;
+
+import com.google.firebase.storage.StorageReference;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Measures a fetcher's download and reports it to a {@link DownloadListener}. Only created when
+ * a listener is set, so that downloads aren't measured otherwise.
+ */
+final class DownloadRecorder {
+
+    private static final long NOT_YET = -1;
+
+    private final DownloadListener mListener;
+    private final StorageReference mRef;
+    private final long mStartNanos = System.nanoTime();
+    private final AtomicBoolean mFinished = new AtomicBoolean();
+
+    private volatile boolean mDeduplicated;
+    private volatile long mFirstByteNanos = NOT_YET;
+    @Nullable
+    private volatile MeteredInputStream mStream;
+
+    DownloadRecorder(@NonNull DownloadListener listener, @NonNull StorageReference ref) {
+        mListener = listener;
+        mRef = ref;
+        listener.onDownloadStarted(ref);
+    }
+
+    /**
+     * Record whether the fetcher joined a download started by another fetcher.
+     */
+    void onJoined(boolean deduplicated) {
+        mDeduplicated = deduplicated;
+    }
+
+    /**
+     * @return the stream to hand to Glide, counting the bytes read.
+     */
+    @NonNull
+    InputStream onStreamReady(@NonNull InputStream stream) {
+        mFirstByteNanos = System.nanoTime();
+        MeteredInputStream metered = new MeteredInputStream(stream);
+        mStream = metered;
+        return metered;
+    }
+
+    /**
+     * Report the download, unless it was already reported.
+     */
+    void onFinished(boolean cancelled, @Nullable Exception failure) {
+        if (!mFinished.compareAndSet(false, true)) {
+            return;
+        }
+
+        MeteredInputStream stream = mStream;
+        long endNanos = stream == null || stream.mEndNanos == NOT_YET
+                ? System.nanoTime()
+                : stream.mEndNanos;
+        mListener.onDownloadFinished(new DownloadMetrics(
+                mRef,
+                mFirstByteNanos == NOT_YET ? NOT_YET : toMillis(mFirstByteNanos - mStartNanos),
+                toMillis(endNanos - mStartNanos),
+                stream == null ? 0 : stream.mBytes,
+                mDeduplicated,
+                cancelled,
+                failure));
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static final class MeteredInputStream extends FilterInputStream {
+        volatile long mBytes;
+        volatile long mEndNanos = NOT_YET;
+
+        MeteredInputStream(@NonNull InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b == -1) {
+                onEnd();
+            } else {
+                mBytes++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(@NonNull byte[] b, int off, int len) throws IOException {
+            int read = super.read(b, off, len);
+            if (read == -1) {
+                onEnd();
+            } else {
+                mBytes += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            mBytes += skipped;
+            return skipped;
+        }
+
+        private void onEnd() {
+            if (mEndNanos == NOT_YET) {
+                mEndNanos = System.nanoTime();
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.firebase.ui.storage.images;
+
+import com.bumptech.glide.Priority;
+
+import java.util.TreeSet;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Limits the number of concurrent downloads started by {@link FirebaseImageLoader} and starts
+ * queued downloads in order of their Glide {@link Priority}, then in the order they were requested.
+ * Downloads cancelled while queued are dropped without ever starting. See {@link
+ * FirebaseImageLoader.Factory#setDownloadScheduler(DownloadScheduler)}.
+ * <p>
+ * A download holds its slot until all of its bytes have been received, and downloads shared by
+ * several requests for the same object only take up one slot. Thread safe.
+ */
+public final class DownloadScheduler {
+
+    public static final int DEFAULT_MAX_CONCURRENT_DOWNLOADS = 4;
+
+    private final int mMaxConcurrentDownloads;
+    private final TreeSet<Ticket> mQueue = new TreeSet<>();
+    private int mRunning;
+    private long mNextSequence;
+
+    /**
+     * Create a scheduler running up to {@link #DEFAULT_MAX_CONCURRENT_DOWNLOADS} downloads at a
+     * time.
+     */
+    public DownloadScheduler() {
+        this(DEFAULT_MAX_CONCURRENT_DOWNLOADS);
+    }
+
+    public DownloadScheduler(int maxConcurrentDownloads) {
+        if (maxConcurrentDownloads < 1) {
+            throw new IllegalArgumentException("At least one concurrent download is required");
+        }
+        mMaxConcurrentDownloads = maxConcurrentDownloads;
+    }
+
+    public int getMaxConcurrentDownloads() {
+        return mMaxConcurrentDownloads;
+    }
+
+    /**
+     * Queue a download, which is started right away if a slot is free.
+     *
+     * @param start starts the download, called on the thread that frees up the slot.
+     * @return the ticket to pass to {@link #finish(Ticket)} once the download is done or cancelled.
+     */
+    @NonNull
+    Ticket enqueue(@NonNull Priority priority, @NonNull Runnable start) {
+        Ticket ticket;
+        synchronized (this) {
+            ticket = new Ticket(priority, mNextSequence++, start);
+            if (mRunning >= mMaxConcurrentDownloads) {
+                mQueue.add(ticket);
+                return ticket;
+            }
+            ticket.mState = Ticket.RUNNING;
+            mRunning++;
+        }
+        start.run();
+        return ticket;
+    }
+
+    /**
+     * Release the slot of a finished download, or drop a queued download that was cancelled.
+     * Calling this more than once for a ticket has no effect.
+     */
+    void finish(@NonNull Ticket ticket) {
+        Ticket next;
+        synchronized (this) {
+            if (ticket.mState == Ticket.QUEUED) {
+                mQueue.remove(ticket);
+                ticket.mState = Ticket.FINISHED;
+                return;
+            } else if (ticket.mState == Ticket.FINISHED) {
+                return;
+            }
+
+            ticket.mState = Ticket.FINISHED;
+            mRunning--;
+            next = poll();
+        }
+        if (next != null) {
+            next.mStart.run();
+        }
+    }
+
+    synchronized int getQueuedCount() {
+        return mQueue.size();
+    }
+
+    synchronized int getRunningCount() {
+        return mRunning;
+    }
+
+    @Nullable
+    private Ticket poll() {
+        Ticket next = mQueue.pollFirst();
+        if (next != null) {
+            next.mState = Ticket.RUNNING;
+            mRunning++;
+        }
+        return next;
+    }
+
+    /**
+     * A queued or running download.
+     */
+    static final class Ticket implements Comparable<Ticket> {
+        static final int QUEUED = 0;
+        static final int RUNNING = 1;
+        static final int FINISHED = 2;
+
+        final Priority mPriority;
+        final long mSequence;
+        final Runnable mStart;
+        int mState = QUEUED;
+
+        Ticket(@NonNull Priority priority, long sequence, @NonNull Runnable start) {
+            mPriority = priority;
+            mSequence = sequence;
+            mStart = start;
+        }
+
+        @Override
+        public int compareTo(@NonNull Ticket other) {
+            // Priorities are declared from highest to lowest
+            int result = mPriority.compareTo(other.mPriority);
+            return result != 0 ? result : Long.compare(mSequence, other.mSequence);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.firebase.ui.storage.images;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.google.firebase.storage.StorageReference;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * ModelLoader implementation to download small images from FirebaseStorage into memory with Glide,
+ * so that they are decoded from a {@link ByteBuffer} instead of being copied through a stream.
+ *
+ * <p>
+ * Objects larger than the size limit fail to load with this loader and Glide falls back to the
+ * next loader registered for {@link StorageReference}, so register it ahead of {@link
+ * FirebaseImageLoader} or {@link FirebaseFileLoader}:
+ * <pre>
+ *         {@literal @}Override
+ *         public void registerComponents(Context context, Registry registry) {
+ *             registry.prepend(StorageReference.class, ByteBuffer.class,
+ *                     new FirebaseByteBufferLoader.Factory());
+ *             registry.append(StorageReference.class, InputStream.class,
+ *                     new FirebaseImageLoader.Factory());
+ *         }
+ * </pre>
+ * Up to the size limit is downloaded before an object is found to be too large, so keep the limit
+ * close to the size of the images expected, such as thumbnails.
+ */
+public class FirebaseByteBufferLoader implements ModelLoader<StorageReference, ByteBuffer> {
+
+    public static final long DEFAULT_MAX_BYTES = 512 * 1024;
+
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+    private final long mMaxBytes;
+
+    public FirebaseByteBufferLoader() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * @param maxBytes the size of the largest object to download with this loader.
+     */
+    public FirebaseByteBufferLoader(long maxBytes) {
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * Factory to create {@link FirebaseByteBufferLoader}.
+     */
+    public static class Factory implements ModelLoaderFactory<StorageReference, ByteBuffer> {
+
+        private final long mMaxBytes;
+
+        public Factory() {
+            this(DEFAULT_MAX_BYTES);
+        }
+
+        /**
+         * @param maxBytes the size of the largest object to download with this loader.
+         */
+        public Factory(long maxBytes) {
+            mMaxBytes = maxBytes;
+        }
+
+        @NonNull
+        @Override
+        public ModelLoader<StorageReference, ByteBuffer> build(
+                @NonNull MultiModelLoaderFactory factory) {
+            return new FirebaseByteBufferLoader(mMaxBytes);
+        }
+
+        @Override
+        public void teardown() {
+            // No-op
+        }
+    }
+
+    @Nullable
+    @Override
+    public LoadData<ByteBuffer> buildLoadData(@NonNull StorageReference reference,
+                                              int width,
+                                              int height,
+                                              @NonNull Options options) {
+        return new LoadData<>(
+                new FirebaseImageLoader.FirebaseStorageKey(reference),
+                new ByteBufferFetcher(reference, mMaxBytes));
+    }
+
+    @Override
+    public boolean handles(@NonNull StorageReference reference) {
+        return true;
+    }
+
+    private static class ByteBufferFetcher implements DataFetcher<ByteBuffer> {
+
+        private final StorageReference mRef;
+        private final long mMaxBytes;
+        private volatile boolean mCancelled;
+
+        ByteBufferFetcher(@NonNull StorageReference ref, long maxBytes) {
+            mRef = ref;
+            mMaxBytes = maxBytes;
+        }
+
+        @Override
+        public void loadData(@NonNull Priority priority,
+                             @NonNull final DataCallback<? super ByteBuffer> callback) {
+            // Delivered on the thread completing the download to keep the main thread free
+            mRef.getBytes(mMaxBytes)
+                    .addOnSuccessListener(DIRECT_EXECUTOR, bytes -> {
+                        if (!mCancelled) {
+                            callback.onDataReady(ByteBuffer.wrap(bytes));
+                        }
+                    })
+                    .addOnFailureListener(DIRECT_EXECUTOR, callback::onLoadFailed);
+        }
+
+        @Override
+        public void cleanup() {
+            // No-op
+        }
+
+        @Override
+        public void cancel() {
+            // The download can't be cancelled, its result is ignored instead
+            mCancelled = true;
+        }
+
+        @NonNull
+        @Override
+        public Class<ByteBuffer> getDataClass() {
+            return ByteBuffer.class;
+        }
+
+        @NonNull
+        @Override
+        public DataSource getDataSource() {
+            return DataSource.REMOTE;
+        }
+    }
+}
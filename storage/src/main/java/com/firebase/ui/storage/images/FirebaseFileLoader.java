@@ -0,0 +1,252 @@
+package com.firebase.ui.storage.images;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.google.firebase.storage.FileDownloadTask;
+import com.google.firebase.storage.StorageReference;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * ModelLoader implementation to download large images from FirebaseStorage into files with Glide.
+ * Each file is memory mapped and decoded from a {@link ByteBuffer}, so the image never has to be
+ * held on the heap before it is decoded.
+ *
+ * <p>
+ * Register this class in your AppGlideModule, instead of or ahead of {@link FirebaseImageLoader}:
+ * <pre>
+ *         {@literal @}Override
+ *         public void registerComponents(Context context, Registry registry) {
+ *             registry.prepend(StorageReference.class, ByteBuffer.class,
+ *                     new FirebaseFileLoader.Factory(context));
+ *         }
+ * </pre>
+ *
+ * <p>
+ * Files are downloaded into a directory of the app's cache directory and deleted once mapped. Glide
+ * keeps the downloaded data in its own disk cache as usual.
+ */
+public class FirebaseFileLoader implements ModelLoader<StorageReference, ByteBuffer> {
+
+    private static final String TAG = "FirebaseFileLoader";
+    private static final String DIRECTORY_NAME = "firebaseui_storage_downloads";
+
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+    private final DownloadDirectory mDirectory;
+
+    FirebaseFileLoader(@NonNull DownloadDirectory directory) {
+        mDirectory = directory;
+    }
+
+    /**
+     * Factory to create {@link FirebaseFileLoader}.
+     */
+    public static class Factory implements ModelLoaderFactory<StorageReference, ByteBuffer> {
+
+        private final DownloadDirectory mDirectory;
+
+        /**
+         * Download files into a directory of the app's cache directory.
+         */
+        public Factory(@NonNull Context context) {
+            this(new File(context.getApplicationContext().getCacheDir(), DIRECTORY_NAME));
+        }
+
+        /**
+         * @param directory the directory to download files into, which is managed by the loader.
+         *                  Files left in it by a previous process are deleted.
+         */
+        public Factory(@NonNull File directory) {
+            mDirectory = new DownloadDirectory(directory);
+        }
+
+        @NonNull
+        @Override
+        public ModelLoader<StorageReference, ByteBuffer> build(
+                @NonNull MultiModelLoaderFactory factory) {
+            return new FirebaseFileLoader(mDirectory);
+        }
+
+        @Override
+        public void teardown() {
+            // No-op
+        }
+    }
+
+    @Nullable
+    @Override
+    public LoadData<ByteBuffer> buildLoadData(@NonNull StorageReference reference,
+                                              int width,
+                                              int height,
+                                              @NonNull Options options) {
+        return new LoadData<>(
+                new FirebaseImageLoader.FirebaseStorageKey(reference),
+                new FileFetcher(reference, mDirectory));
+    }
+
+    @Override
+    public boolean handles(@NonNull StorageReference reference) {
+        return true;
+    }
+
+    /**
+     * The directory files are downloaded into.
+     */
+    static final class DownloadDirectory {
+        private final File mDirectory;
+        private final long mCreatedAt = System.currentTimeMillis();
+        private final AtomicBoolean mCleanedUp = new AtomicBoolean();
+
+        DownloadDirectory(@NonNull File directory) {
+            mDirectory = directory;
+        }
+
+        /**
+         * @return a new empty file to download into.
+         */
+        @WorkerThread
+        @NonNull
+        File createFile() throws IOException {
+            if (mCleanedUp.compareAndSet(false, true)) {
+                deleteLeftovers();
+            }
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                throw new IOException("Failed to create " + mDirectory);
+            }
+            return File.createTempFile("download", ".tmp", mDirectory);
+        }
+
+        /**
+         * Delete the files of downloads interrupted by the previous process being killed. Files of
+         * downloads started since the directory was created are still in use.
+         */
+        private void deleteLeftovers() {
+            File[] files = mDirectory.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                if (file.lastModified() < mCreatedAt) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private static class FileFetcher implements DataFetcher<ByteBuffer> {
+
+        private final StorageReference mRef;
+        private final DownloadDirectory mDirectory;
+        private FileDownloadTask mTask;
+        private File mFile;
+        private volatile boolean mCancelled;
+
+        FileFetcher(@NonNull StorageReference ref, @NonNull DownloadDirectory directory) {
+            mRef = ref;
+            mDirectory = directory;
+        }
+
+        @Override
+        public void loadData(@NonNull Priority priority,
+                             @NonNull final DataCallback<? super ByteBuffer> callback) {
+            final File file;
+            try {
+                file = mDirectory.createFile();
+            } catch (IOException e) {
+                callback.onLoadFailed(e);
+                return;
+            }
+            mFile = file;
+
+            // Mapped on the thread completing the download to keep the main thread free
+            mTask = mRef.getFile(file);
+            mTask
+                    .addOnSuccessListener(DIRECT_EXECUTOR, snapshot -> {
+                        if (mCancelled) {
+                            delete(file);
+                            return;
+                        }
+
+                        ByteBuffer buffer;
+                        try {
+                            buffer = map(file);
+                        } catch (IOException e) {
+                            callback.onLoadFailed(e);
+                            return;
+                        } finally {
+                            // The mapping outlives the file
+                            delete(file);
+                        }
+                        callback.onDataReady(buffer);
+                    })
+                    .addOnFailureListener(DIRECT_EXECUTOR, e -> {
+                        delete(file);
+                        callback.onLoadFailed(e);
+                    });
+            if (mCancelled) {
+                cancel();
+            }
+        }
+
+        @NonNull
+        private static ByteBuffer map(@NonNull File file) throws IOException {
+            try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+                FileChannel channel = raf.getChannel();
+                return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).load();
+            }
+        }
+
+        private static void delete(@NonNull File file) {
+            if (file.exists() && !file.delete()) {
+                Log.w(TAG, "Could not delete " + file);
+            }
+        }
+
+        @Override
+        public void cleanup() {
+            if (mFile != null) {
+                delete(mFile);
+            }
+        }
+
+        @Override
+        public void cancel() {
+            mCancelled = true;
+            // Cancel task if possible
+            if (mTask != null && mTask.isInProgress()) {
+                mTask.cancel();
+            }
+        }
+
+        @NonNull
+        @Override
+        public Class<ByteBuffer> getDataClass() {
+            return ByteBuffer.class;
+        }
+
+        @NonNull
+        @Override
+        public DataSource getDataSource() {
+            return DataSource.REMOTE;
+        }
+    }
+}
@@ -10,11 +10,9 @@ import com.bumptech.glide.load.data.DataFetcher;
 import com.bumptech.glide.load.model.ModelLoader;
 import com.bumptech.glide.load.model.ModelLoaderFactory;
 import com.bumptech.glide.load.model.MultiModelLoaderFactory;
-import com.google.android.gms.tasks.OnFailureListener;
-import com.google.android.gms.tasks.OnSuccessListener;
 import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageException;
 import com.google.firebase.storage.StorageReference;
-import com.google.firebase.storage.StreamDownloadTask;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -53,16 +51,119 @@ public class FirebaseImageLoader implements ModelLoader<StorageReference, InputS
 
     private static final String TAG = "FirebaseImageLoader";
 
+    @Nullable
+    private final ThumbnailResolver mThumbnailResolver;
+    @NonNull
+    private final NegativeLookupCache mMissingThumbnails;
+    @Nullable
+    private final CacheKeyVersion mCacheKeyVersion;
+    @Nullable
+    private final StorageMetadataCache mMetadataCache;
+    @Nullable
+    private final DownloadScheduler mScheduler;
+    @NonNull
+    private final DownloadCoalescer mDownloads;
+    @Nullable
+    private final DownloadListener mListener;
+
+    public FirebaseImageLoader() {
+        this(new Factory());
+    }
+
+    FirebaseImageLoader(@NonNull Factory factory) {
+        mThumbnailResolver = factory.mThumbnailResolver;
+        mMissingThumbnails = factory.mMissingThumbnails;
+        mCacheKeyVersion = factory.mCacheKeyVersion;
+        mMetadataCache = factory.mMetadataCache;
+        mScheduler = factory.mScheduler;
+        mDownloads = factory.mDownloads;
+        mListener = factory.mListener;
+    }
 
     /**
      * Factory to create {@link FirebaseImageLoader}.
      */
     public static class Factory implements ModelLoaderFactory<StorageReference, InputStream> {
 
+        @Nullable
+        private ThumbnailResolver mThumbnailResolver;
+        private final NegativeLookupCache mMissingThumbnails = new NegativeLookupCache();
+        @Nullable
+        private CacheKeyVersion mCacheKeyVersion;
+        @Nullable
+        private StorageMetadataCache mMetadataCache;
+        @Nullable
+        private DownloadScheduler mScheduler;
+        private final DownloadCoalescer mDownloads = new DownloadCoalescer();
+        @Nullable
+        private DownloadListener mListener;
+
+        /**
+         * Download a smaller variant of each image when the resolver provides one for the size the
+         * image is shown at, for example {@link ResizedImageResolver}.
+         * <p>
+         * If a variant doesn't exist, the original is downloaded instead without being written to
+         * the disk cache under the variant's key, and the variant is skipped for a while, so that
+         * later requests load the original under its own cache key.
+         */
+        @NonNull
+        public Factory setThumbnailResolver(@Nullable ThumbnailResolver resolver) {
+            mThumbnailResolver = resolver;
+            return this;
+        }
+
+        /**
+         * Include the version of each object in its disk cache key, so that images can stay in
+         * Glide's disk cache indefinitely and are still downloaded again once overwritten.
+         * <p>
+         * Versions are looked up in the given metadata cache without waiting for the network. The
+         * metadata of an object is fetched in the background on its first load, and again once
+         * the cache's TTL has passed. Images are keyed by path only until the object changes, so
+         * they are only re-downloaded when the version changed. Loads of objects invalidated with
+         * {@link StorageMetadataCache#invalidate(StorageReference)} wait for their new version.
+         *
+         * @param version       the part of the metadata to use as the version, or null to key
+         *                      images by path only.
+         * @param metadataCache caches the metadata the versions are read from.
+         */
+        @NonNull
+        public Factory setCacheKeyVersion(@Nullable CacheKeyVersion version,
+                                          @NonNull StorageMetadataCache metadataCache) {
+            mCacheKeyVersion = version;
+            mMetadataCache = version == null ? null : metadataCache;
+            return this;
+        }
+
+        /**
+         * Limit the number of concurrent downloads and start queued downloads in order of their
+         * Glide priority, so that a long list of images doesn't slow down the visible ones.
+         *
+         * @param scheduler the scheduler, which may be shared between factories, or null to start
+         *                  every download right away.
+         */
+        @NonNull
+        public Factory setDownloadScheduler(@Nullable DownloadScheduler scheduler) {
+            mScheduler = scheduler;
+            return this;
+        }
+
+        /**
+         * Report the time to first byte, size, duration and outcome of each download, for
+         * example to a {@link DownloadCounters}. Downloads aren't measured without a listener.
+         *
+         * @param listener the listener, which may be shared between factories, or null to stop
+         *                 reporting downloads.
+         */
+        @NonNull
+        public Factory setDownloadListener(@Nullable DownloadListener listener) {
+            mListener = listener;
+            return this;
+        }
+
         @NonNull
         @Override
         public ModelLoader<StorageReference, InputStream> build(@NonNull MultiModelLoaderFactory factory) {
-            return new FirebaseImageLoader();
+            return new FirebaseImageLoader(this);
         }
 
         @Override
@@ -74,12 +175,54 @@ public class FirebaseImageLoader implements ModelLoader<StorageReference, InputS
     @Nullable
     @Override
     public LoadData<InputStream> buildLoadData(@NonNull StorageReference reference,
-                                               int height,
                                                int width,
+                                               int height,
                                                @NonNull Options options) {
+        StorageReference thumbnail = resolveThumbnail(reference, width, height);
+        if (thumbnail == null) {
+            String version = getVersion(reference);
+            return new LoadData<>(
+                    new FirebaseStorageKey(reference, version),
+                    new FirebaseStorageFetcher(reference, version, null));
+        }
+        String version = getVersion(thumbnail);
         return new LoadData<>(
-                new FirebaseStorageKey(reference),
-                new FirebaseStorageFetcher(reference));
+                new FirebaseStorageKey(thumbnail, version),
+                new FirebaseStorageFetcher(thumbnail, version, reference));
+    }
+
+    @Nullable
+    private String getVersion(@NonNull StorageReference reference) {
+        if (mCacheKeyVersion == null || mMetadataCache == null) {
+            return null;
+        }
+        return mMetadataCache.getVersion(reference, mCacheKeyVersion);
+    }
+
+    /**
+     * Like {@link #getVersion(StorageReference)}, but never waits for the network.
+     */
+    @Nullable
+    private String peekVersion(@NonNull StorageReference reference) {
+        if (mCacheKeyVersion == null || mMetadataCache == null) {
+            return null;
+        }
+        return mMetadataCache.peekVersion(reference, mCacheKeyVersion);
+    }
+
+    @Nullable
+    private StorageReference resolveThumbnail(@NonNull StorageReference reference,
+                                              int width,
+                                              int height) {
+        if (mThumbnailResolver == null) {
+            return null;
+        }
+
+        StorageReference thumbnail = mThumbnailResolver.resolve(reference, width, height);
+        if (thumbnail == null || mMissingThumbnails.contains(thumbnail.getPath())) {
+            return null;
+        }
+        return thumbnail;
     }
 
     @Override
@@ -88,21 +231,33 @@ public class FirebaseImageLoader implements ModelLoader<StorageReference, InputS
     }
 
     /**
-     * ModelLoader that accepts a {@code gs://} URL string and delegates to
-     * {@link FirebaseStorageFetcher}, so callers can pass a plain gs:// string instead of a
-     * {@link StorageReference}.
+     * ModelLoader that accepts a {@code gs://} URL string and delegates to a {@link
+     * StorageReference} loader, so callers can pass a plain gs:// string instead of a {@link
+     * StorageReference}.
      */
     public static class StringLoader implements ModelLoader<String, InputStream> {
 
         @Nullable
         private final FirebaseStorage mStorage;
+        private final ModelLoader<StorageReference, InputStream> mLoader;
 
         public StringLoader() {
-            mStorage = null;
+            this(null, new FirebaseImageLoader());
         }
 
         public StringLoader(@NonNull FirebaseStorage storage) {
+            this(storage, new FirebaseImageLoader());
+        }
+
+        /**
+         * @param storage the instance to resolve URLs with, or null for the default instance.
+         * @param loader  loads the resolved references, such as a {@link FirebaseImageLoader}
+         *                sharing its downloads, thumbnails and cache keys with other loads.
+         */
+        public StringLoader(@Nullable FirebaseStorage storage,
+                            @NonNull ModelLoader<StorageReference, InputStream> loader) {
             mStorage = storage;
+            mLoader = loader;
         }
 
         @Nullable
@@ -114,7 +269,7 @@ public class FirebaseImageLoader implements ModelLoader<StorageReference, InputS
             try {
                 FirebaseStorage storage = mStorage != null ? mStorage : FirebaseStorage.getInstance();
                 StorageReference ref = storage.getReferenceFromUrl(gsUrl);
-                return new LoadData<>(new FirebaseStorageKey(ref), new FirebaseStorageFetcher(ref));
+                return mLoader.buildLoadData(ref, width, height, options);
             } catch (IllegalArgumentException | IllegalStateException e) {
                 return null;
             }
@@ -125,6 +280,11 @@ public class FirebaseImageLoader implements ModelLoader<StorageReference, InputS
             return gsUrl.startsWith("gs://");
         }
 
+        /**
+         * Factory to create {@link StringLoader}. The loaders delegate to the {@link
+         * StorageReference} loader registered with Glide, so that strings share its downloads and
+         * configuration, such as a {@link FirebaseImageLoader.Factory} with a thumbnail resolver.
+         */
         public static class Factory implements ModelLoaderFactory<String, InputStream> {
 
             @Nullable
@@ -141,7 +301,8 @@ public class FirebaseImageLoader implements ModelLoader<StorageReference, InputS
             @NonNull
             @Override
             public ModelLoader<String, InputStream> build(@NonNull MultiModelLoaderFactory factory) {
-                return mStorage != null ? new StringLoader(mStorage) : new StringLoader();
+                return new StringLoader(mStorage,
+                        factory.build(StorageReference.class, InputStream.class));
             }
 
             @Override
@@ -149,17 +310,31 @@ public class FirebaseImageLoader implements ModelLoader<StorageReference, InputS
         }
     }
 
-    private static class FirebaseStorageKey implements Key {
+    static class FirebaseStorageKey implements Key {
 
         private StorageReference mRef;
+        @Nullable
+        private final String mVersion;
 
         public FirebaseStorageKey(StorageReference ref) {
+            this(ref, null);
+        }
+
+        /**
+         * @param version the generation or MD5 hash of the object, if known.
+         */
+        FirebaseStorageKey(StorageReference ref, @Nullable String version) {
             mRef = ref;
+            mVersion = version;
         }
 
         @Override
         public void updateDiskCacheKey(@NonNull MessageDigest digest) {
             digest.update(mRef.getPath().getBytes(Charset.defaultCharset()));
+            if (mVersion != null) {
+                // Unversioned keys are unchanged, so existing cache entries stay valid
+                digest.update(("#" + mVersion).getBytes(Charset.defaultCharset()));
+            }
         }
 
         @Override
@@ -169,35 +344,132 @@ public class FirebaseImageLoader implements ModelLoader<StorageReference, InputS
 
             FirebaseStorageKey key = (FirebaseStorageKey) o;
 
-            return mRef.equals(key.mRef);
+            return mRef.equals(key.mRef)
+                    && (mVersion == null ? key.mVersion == null : mVersion.equals(key.mVersion));
         }
 
         @Override
         public int hashCode() {
-            return mRef.hashCode();
+            return 31 * mRef.hashCode() + (mVersion == null ? 0 : mVersion.hashCode());
         }
     }
 
-    private static class FirebaseStorageFetcher implements DataFetcher<InputStream> {
+    private static boolean isNotFound(@NonNull Exception e) {
+        return e instanceof StorageException && ((StorageException) e).getErrorCode()
+                == StorageException.ERROR_OBJECT_NOT_FOUND;
+    }
+
+    private class FirebaseStorageFetcher
+            implements DataFetcher<InputStream>, DownloadCoalescer.Listener {
 
         private StorageReference mRef;
-        private StreamDownloadTask mStreamTask;
+        @Nullable
+        private String mVersion;
+        @Nullable
+        private StorageReference mOriginal;
+        @Nullable
+        private DownloadRecorder mRecorder;
+        private Priority mPriority;
+        private DataCallback<? super InputStream> mCallback;
+        private DownloadCoalescer.Subscription mSubscription;
         private InputStream mInputStream;
-
-        public FirebaseStorageFetcher(StorageReference ref) {
+        private volatile boolean mCancelled;
+        private volatile boolean mFellBack;
+
+        /**
+         * @param version  the generation or MD5 hash of {@code ref}, if known.
+         * @param original the object {@code ref} is a thumbnail of, downloaded instead if the
+         *                 thumbnail doesn't exist.
+         */
+        FirebaseStorageFetcher(StorageReference ref,
+                               @Nullable String version,
+                               @Nullable StorageReference original) {
             mRef = ref;
+            mVersion = version;
+            mOriginal = original;
         }
 
         @Override
         public void loadData(@NonNull Priority priority,
                              @NonNull final DataCallback<? super InputStream> callback) {
-            mStreamTask = mRef.getStream();
-            mStreamTask
-                    .addOnSuccessListener(snapshot -> {
-                        mInputStream = snapshot.getStream();
-                        callback.onDataReady(mInputStream);
-                    })
-                    .addOnFailureListener(e -> callback.onLoadFailed(e));
+            mPriority = priority;
+            mCallback = callback;
+            join();
+        }
+
+        /**
+         * Join the download of {@link #mRef}, shared with other fetchers of the same object.
+         */
+        private void join() {
+            if (mListener != null) {
+                mRecorder = new DownloadRecorder(mListener, mRef);
+            }
+            DownloadCoalescer.Subscription subscription =
+                    mDownloads.join(mRef, mVersion, mPriority, mScheduler, this);
+            if (mRecorder != null) {
+                mRecorder.onJoined(subscription.isDeduplicated());
+            }
+            synchronized (this) {
+                mSubscription = subscription;
+            }
+            if (mCancelled) {
+                // Cancelled before the subscription was known
+                release();
+            }
+        }
+
+        /**
+         * Leave the shared download, which is cancelled if no other fetcher is waiting for it.
+         */
+        private void release() {
+            DownloadCoalescer.Subscription subscription;
+            synchronized (this) {
+                subscription = mSubscription;
+                mSubscription = null;
+            }
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+
+        @Override
+        public void onStreamReady(@NonNull InputStream stream) {
+            if (mRecorder != null) {
+                stream = mRecorder.onStreamReady(stream);
+            }
+            mInputStream = stream;
+            mCallback.onDataReady(stream);
+        }
+
+        @Override
+        public void onLoadFailed(@NonNull Exception e) {
+            release();
+            if (mRecorder != null) {
+                mRecorder.onFinished(false, e);
+            }
+
+            StorageReference original = mOriginal;
+            if (original != null && isNotFound(e)) {
+                mMissingThumbnails.add(mRef.getPath());
+                if (!mCancelled) {
+                    fallBack(original);
+                    return;
+                }
+            }
+            mCallback.onLoadFailed(e);
+        }
+
+        /**
+         * Download the original in place of the missing thumbnail. See {@link #getDataSource()}
+         * for how it's kept out of the thumbnail's disk cache entry.
+         */
+        private void fallBack(@NonNull StorageReference original) {
+            mFellBack = true;
+            mOriginal = null;
+            mRef = original;
+            // Only used to share the download, since the original isn't written to the disk cache
+            mVersion = peekVersion(original);
+            join();
         }
 
         @Override
@@ -211,13 +483,18 @@ public class FirebaseImageLoader implements ModelLoader<StorageReference, InputS
                     Log.w(TAG, "Could not close stream", e);
                 }
             }
+            release();
+            if (mRecorder != null) {
+                mRecorder.onFinished(false, null);
+            }
         }
 
         @Override
         public void cancel() {
-            // Cancel task if possible
-            if (mStreamTask != null && mStreamTask.isInProgress()) {
-                mStreamTask.cancel();
+            mCancelled = true;
+            release();
+            if (mRecorder != null) {
+                mRecorder.onFinished(true, null);
             }
         }
 
@@ -230,7 +507,10 @@ public class FirebaseImageLoader implements ModelLoader<StorageReference, InputS
         @NonNull
         @Override
         public DataSource getDataSource() {
-            return DataSource.REMOTE;
+            // Glide writes data and resources to the disk cache under the thumbnail's key unless
+            // they come from the memory cache, which a fallback to the original must not be
+            // written to. The original is cached under its own key by later requests.
+            return mFellBack ? DataSource.MEMORY_CACHE : DataSource.REMOTE;
         }
     }
 }
@@ -0,0 +1,60 @@
+package com.firebase.ui.storage.images;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Remembers the paths of objects that were recently found not to exist, so that requests bound to
+ * fail aren't repeated. Entries expire since the objects may be created later, for example by an
+ * extension processing a new upload, and the least recently used entries are dropped beyond a
+ * maximum size. Thread safe.
+ */
+final class NegativeLookupCache {
+
+    static final int DEFAULT_MAX_SIZE = 512;
+    static final long DEFAULT_TTL_NANOS = TimeUnit.MINUTES.toNanos(30);
+
+    private final int mMaxSize;
+    private final long mTtlNanos;
+    private final Map<String, Long> mExpiries;
+
+    NegativeLookupCache() {
+        this(DEFAULT_MAX_SIZE, DEFAULT_TTL_NANOS);
+    }
+
+    NegativeLookupCache(int maxSize, long ttlNanos) {
+        mMaxSize = maxSize;
+        mTtlNanos = ttlNanos;
+        mExpiries = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > mMaxSize;
+            }
+        };
+    }
+
+    /**
+     * @return true if the object at the given path was recently found not to exist.
+     */
+    synchronized boolean contains(@NonNull String path) {
+        Long expiry = mExpiries.get(path);
+        if (expiry == null) {
+            return false;
+        }
+        if (expiry - System.nanoTime() <= 0) {
+            mExpiries.remove(path);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Record that the object at the given path doesn't exist.
+     */
+    synchronized void add(@NonNull String path) {
+        mExpiries.put(path, System.nanoTime() + mTtlNanos);
+    }
+}
@@ -0,0 +1,97 @@
+package com.firebase.ui.storage.images;
+
+import com.google.firebase.storage.StorageReference;
+
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * {@link ThumbnailResolver} for images resized by the
+ * <a href="https://extensions.dev/extensions/firebase/storage-resize-images">Resize Images</a>
+ * extension, which stores each resized copy of {@code dir/name.ext} as {@code
+ * dir/[path/]name_WIDTHxHEIGHT.ext}.
+ * <p>
+ * The smallest size that covers the target size in both dimensions is used. The original is
+ * downloaded when the target is larger than every size or its size is unknown.
+ */
+public class ResizedImageResolver implements ThumbnailResolver {
+
+    private final String mPath;
+    private final String[] mSizes;
+    private final int[] mWidths;
+    private final int[] mHeights;
+
+    /**
+     * @param path  the path of the resized images relative to the originals, as configured in the
+     *              extension, for example {@code "thumbnails"}. Null or empty if they are stored
+     *              next to the originals.
+     * @param sizes the sizes generated by the extension, for example {@code "200x200"}.
+     */
+    public ResizedImageResolver(@Nullable String path, @NonNull String... sizes) {
+        if (sizes.length == 0) {
+            throw new IllegalArgumentException("At least one size is required");
+        }
+
+        mPath = path == null ? "" : path;
+        mSizes = sizes.clone();
+        // Smallest first, so that the first covering size is the best one
+        Arrays.sort(mSizes, (a, b) -> Long.compare(area(a), area(b)));
+        mWidths = new int[mSizes.length];
+        mHeights = new int[mSizes.length];
+        for (int i = 0; i < mSizes.length; i++) {
+            mWidths[i] = parseDimension(mSizes[i], 0);
+            mHeights[i] = parseDimension(mSizes[i], 1);
+        }
+    }
+
+    @Nullable
+    @Override
+    public StorageReference resolve(@NonNull StorageReference original, int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return null;
+        }
+
+        StorageReference parent = original.getParent();
+        if (parent == null) {
+            return null;
+        }
+
+        for (int i = 0; i < mSizes.length; i++) {
+            if (mWidths[i] >= width && mHeights[i] >= height) {
+                StorageReference dir = mPath.isEmpty() ? parent : parent.child(mPath);
+                return dir.child(getResizedName(original.getName(), mSizes[i]));
+            }
+        }
+        return null;
+    }
+
+    @NonNull
+    private static String getResizedName(@NonNull String name, @NonNull String size) {
+        int extension = name.lastIndexOf('.');
+        if (extension <= 0) {
+            return name + "_" + size;
+        }
+        return name.substring(0, extension) + "_" + size + name.substring(extension);
+    }
+
+    private static long area(@NonNull String size) {
+        return (long) parseDimension(size, 0) * parseDimension(size, 1);
+    }
+
+    private static int parseDimension(@NonNull String size, int index) {
+        String[] dimensions = size.split("x");
+        try {
+            if (dimensions.length == 2) {
+                int dimension = Integer.parseInt(dimensions[index]);
+                if (dimension > 0) {
+                    return dimension;
+                }
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Sizes must be formatted as WIDTHxHEIGHT: " + size);
+    }
+}
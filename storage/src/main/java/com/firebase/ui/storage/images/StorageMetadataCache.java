@@ -0,0 +1,462 @@
+package com.firebase.ui.storage.images;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageReference;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Caches the generation and MD5 hash of Cloud Storage objects in memory and, optionally, on disk,
+ * so that {@link FirebaseImageLoader} can version its disk cache keys without fetching metadata on
+ * every load. See {@link FirebaseImageLoader.Factory#setCacheKeyVersion(CacheKeyVersion,
+ * StorageMetadataCache)}.
+ * <p>
+ * Lookups don't wait for the network, except after {@link #invalidate(StorageReference)}: an
+ * object whose metadata isn't cached yet has no version until it has been fetched in the
+ * background, and entries older than the TTL keep being used while they are fetched again. The
+ * version seen by the first fetch of an object is also reported as no version, so that the image
+ * downloaded while it was fetched keeps being used until the object changes. The least recently
+ * used entries are dropped past {@link #MAX_ENTRIES}, and their objects are then treated as never
+ * fetched. Concurrent lookups of the same object share one metadata request, and {@link
+ * #prefetch(Collection)} fetches the metadata of a batch of objects ahead of time. Thread safe.
+ */
+public class StorageMetadataCache {
+
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /** Maximum number of objects kept in memory and on disk. */
+    public static final int MAX_ENTRIES = 2048;
+
+    private static final String TAG = "StorageMetadataCache";
+    private static final String FILE_NAME = "firebaseui_storage_metadata";
+    private static final int MAGIC = 0x4655534d;
+    private static final int VERSION = 2;
+
+    /** Maximum time a lookup waits for the metadata of an invalidated object. */
+    private static final long INVALIDATED_WAIT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    /** Delay before writing changes to disk, to batch the writes of a burst of fetches. */
+    private static final long WRITE_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(2);
+
+    /** Reads and writes the disk cache. Its thread is a daemon, which never keeps the app alive. */
+    private static final ScheduledExecutorService IO_EXECUTOR =
+            Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "FirebaseUI-storage-metadata");
+                thread.setDaemon(true);
+                return thread;
+            });
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+    @Nullable
+    private final File mFile;
+    private final long mTtlMillis;
+    private final ScheduledExecutorService mIoExecutor;
+
+    private final Map<String, Entry> mEntries =
+            new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+    private final Map<String, Task<StorageMetadata>> mInFlight = new HashMap<>();
+    private boolean mLoaded;
+    private boolean mWriteScheduled;
+
+    /**
+     * Create a cache that only keeps metadata in memory, for {@link #DEFAULT_TTL_MILLIS}.
+     */
+    public StorageMetadataCache() {
+        this(null, DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * Create a cache that persists metadata to the app's cache directory, for {@link
+     * #DEFAULT_TTL_MILLIS}.
+     */
+    public StorageMetadataCache(@NonNull Context context) {
+        this(context, DEFAULT_TTL_MILLIS);
+    }
+
+    /**
+     * @param context   used to persist metadata to the app's cache directory, or null to only
+     *                  keep it in memory.
+     * @param ttlMillis the age after which metadata is fetched again. Objects overwritten within
+     *                  this time may show their previous version until then.
+     */
+    public StorageMetadataCache(@Nullable Context context, long ttlMillis) {
+        this(context == null
+                        ? null
+                        : new File(context.getApplicationContext().getCacheDir(), FILE_NAME),
+                ttlMillis,
+                IO_EXECUTOR);
+    }
+
+    /**
+     * @param file       the file to persist metadata to, or null to only keep it in memory.
+     * @param ioExecutor the executor to read and write the file and prefetch on.
+     */
+    StorageMetadataCache(@Nullable File file,
+                         long ttlMillis,
+                         @NonNull ScheduledExecutorService ioExecutor) {
+        mFile = file;
+        mTtlMillis = ttlMillis;
+        mIoExecutor = ioExecutor;
+        if (mFile != null) {
+            // Read ahead, so that the first lookups rarely have to wait for the disk
+            mIoExecutor.execute(this::ensureLoaded);
+        }
+    }
+
+    /**
+     * Fetch the metadata of the given objects in the background, skipping objects whose metadata
+     * is cached or already being fetched.
+     */
+    public void prefetch(@NonNull Collection<StorageReference> refs) {
+        final List<StorageReference> copy = new ArrayList<>(refs);
+        mIoExecutor.execute(() -> {
+            for (StorageReference ref : copy) {
+                Entry entry = get(ref.getPath());
+                if (entry == null || !isFresh(entry)) {
+                    fetch(ref);
+                }
+            }
+        });
+    }
+
+    /**
+     * Fetch the metadata of an object again, for example after overwriting it from this device.
+     * Its next load waits for the metadata, for up to a few seconds, so that it doesn't use the
+     * image cached for the previous version. If the metadata can't be fetched in time, the
+     * previous version is used.
+     */
+    public void invalidate(@NonNull StorageReference ref) {
+        String path = ref.getPath();
+        synchronized (mInFlight) {
+            // A request already in flight may have been answered before the object was overwritten
+            mInFlight.remove(path);
+        }
+        synchronized (this) {
+            // Kept as an entry so that reading the disk cache later doesn't restore the old one
+            mEntries.put(path, Entry.invalidated(mEntries.get(path)));
+        }
+        scheduleWrite();
+    }
+
+    /**
+     * Remove all metadata from memory and disk. Objects are then keyed as on their first load, so
+     * clear Glide's disk cache as well.
+     */
+    public void clear() {
+        synchronized (this) {
+            mEntries.clear();
+            mLoaded = true;
+        }
+        if (mFile != null) {
+            mIoExecutor.execute(mFile::delete);
+        }
+    }
+
+    /**
+     * Get the version of an object to include in its cache key, and fetch its metadata in the
+     * background if it isn't cached or has expired. Waits for the disk cache to be read the first
+     * time, and for the metadata of invalidated objects.
+     *
+     * @return the cached version, even if expired, or null if nothing is cached yet or the object
+     * hasn't changed since its metadata was first fetched.
+     */
+    @WorkerThread
+    @Nullable
+    String getVersion(@NonNull StorageReference ref, @NonNull CacheKeyVersion version) {
+        Entry cached = get(ref.getPath());
+        if (cached != null && cached.mInvalidated) {
+            Entry fetched = awaitFetch(ref);
+            return (fetched == null ? cached : fetched).getVersion(version);
+        }
+        return peekVersion(ref, version);
+    }
+
+    /**
+     * Like {@link #getVersion(StorageReference, CacheKeyVersion)}, but never waits for the
+     * metadata of invalidated objects, whose previous version is returned instead.
+     */
+    @WorkerThread
+    @Nullable
+    String peekVersion(@NonNull StorageReference ref, @NonNull CacheKeyVersion version) {
+        Entry cached = get(ref.getPath());
+        if (cached == null || !isFresh(cached)) {
+            fetch(ref);
+        }
+        return cached == null ? null : cached.getVersion(version);
+    }
+
+    /**
+     * Fetch the metadata of an object and wait for it, for up to {@link #INVALIDATED_WAIT_MILLIS}.
+     *
+     * @return the new entry, or null if the metadata couldn't be fetched in time.
+     */
+    @WorkerThread
+    @Nullable
+    private Entry awaitFetch(@NonNull StorageReference ref) {
+        Task<StorageMetadata> task = fetch(ref);
+        CountDownLatch latch = new CountDownLatch(1);
+        task.addOnCompleteListener(DIRECT_EXECUTOR, result -> latch.countDown());
+        try {
+            if (!latch.await(INVALIDATED_WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                return null;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        // Stored here too, since the listener storing it may not have run yet
+        return task.isSuccessful() ? put(ref.getPath(), task.getResult()) : null;
+    }
+
+    @NonNull
+    private Task<StorageMetadata> fetch(@NonNull StorageReference ref) {
+        final String path = ref.getPath();
+        synchronized (mInFlight) {
+            Task<StorageMetadata> inFlight = mInFlight.get(path);
+            if (inFlight != null) {
+                return inFlight;
+            }
+
+            final Task<StorageMetadata> task = ref.getMetadata();
+            mInFlight.put(path, task);
+            task.addOnCompleteListener(DIRECT_EXECUTOR, result -> {
+                synchronized (mInFlight) {
+                    if (mInFlight.get(path) != task) {
+                        // Superseded by an invalidation
+                        return;
+                    }
+                    mInFlight.remove(path);
+                }
+                if (result.isSuccessful()) {
+                    put(path, result.getResult());
+                }
+            });
+            return task;
+        }
+    }
+
+    @Nullable
+    private synchronized Entry get(@NonNull String path) {
+        ensureLoaded();
+        return mEntries.get(path);
+    }
+
+    @NonNull
+    private Entry put(@NonNull String path, @NonNull StorageMetadata metadata) {
+        Entry entry;
+        synchronized (this) {
+            ensureLoaded();
+            entry = Entry.fetched(mEntries.get(path), metadata, System.currentTimeMillis());
+            mEntries.put(path, entry);
+        }
+        scheduleWrite();
+        return entry;
+    }
+
+    private boolean isFresh(@NonNull Entry entry) {
+        return System.currentTimeMillis() - entry.mFetchedAt < mTtlMillis;
+    }
+
+    private synchronized void scheduleWrite() {
+        if (mFile == null || mWriteScheduled) {
+            return;
+        }
+        mWriteScheduled = true;
+        mIoExecutor.schedule(this::write, WRITE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Read the entries persisted on disk, the first time the cache is used. Entries already in
+     * memory are newer and take precedence.
+     */
+    @WorkerThread
+    private synchronized void ensureLoaded() {
+        if (mLoaded || mFile == null) {
+            return;
+        }
+        mLoaded = true;
+        if (!mFile.exists()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(mFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return;
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                Entry entry = new Entry(readString(in), readString(in), readString(in),
+                        readString(in), in.readLong(), in.readBoolean());
+                if (!mEntries.containsKey(path)) {
+                    mEntries.put(path, entry);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Failed to read storage metadata", e);
+            mFile.delete();
+        }
+    }
+
+    /**
+     * Write the entries to disk now rather than after the pending delay.
+     */
+    @WorkerThread
+    void write() {
+        Map<String, Entry> entries;
+        synchronized (this) {
+            mWriteScheduled = false;
+            ensureLoaded();
+            entries = new LinkedHashMap<>(mEntries);
+        }
+
+        File temp = new File(mFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            // Least recently used first, so that reading them back preserves the order
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                writeString(out, entry.getValue().mGeneration);
+                writeString(out, entry.getValue().mMd5Hash);
+                writeString(out, entry.getValue().mFirstGeneration);
+                writeString(out, entry.getValue().mFirstMd5Hash);
+                out.writeLong(entry.getValue().mFetchedAt);
+                out.writeBoolean(entry.getValue().mInvalidated);
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Failed to write storage metadata", e);
+            temp.delete();
+            return;
+        }
+
+        if (!temp.renameTo(mFile)) {
+            Log.w(TAG, "Failed to save storage metadata");
+            temp.delete();
+        }
+    }
+
+    @Nullable
+    private static String readString(@NonNull DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeString(@NonNull DataOutputStream out, @Nullable String value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static final class Entry {
+        @Nullable
+        final String mGeneration;
+        @Nullable
+        final String mMd5Hash;
+        /** The metadata of the first fetch, whose version is left out of cache keys. */
+        @Nullable
+        final String mFirstGeneration;
+        @Nullable
+        final String mFirstMd5Hash;
+        final long mFetchedAt;
+        final boolean mInvalidated;
+
+        Entry(@Nullable String generation,
+              @Nullable String md5Hash,
+              @Nullable String firstGeneration,
+              @Nullable String firstMd5Hash,
+              long fetchedAt,
+              boolean invalidated) {
+            mGeneration = generation;
+            mMd5Hash = md5Hash;
+            mFirstGeneration = firstGeneration;
+            mFirstMd5Hash = firstMd5Hash;
+            mFetchedAt = fetchedAt;
+            mInvalidated = invalidated;
+        }
+
+        /**
+         * The entry of newly fetched metadata. The first metadata of an object is the version
+         * its loads were keyed without while it was fetched. Objects invalidated before their
+         * first fetch have no such version, since images cached without one may be outdated.
+         */
+        @NonNull
+        static Entry fetched(@Nullable Entry previous,
+                             @NonNull StorageMetadata metadata,
+                             long now) {
+            String generation = metadata.getGeneration();
+            String md5Hash = metadata.getMd5Hash();
+            if (previous == null) {
+                return new Entry(generation, md5Hash, generation, md5Hash, now, false);
+            }
+            return new Entry(generation, md5Hash,
+                    previous.mFirstGeneration, previous.mFirstMd5Hash, now, false);
+        }
+
+        /**
+         * An expired entry keeping the previous version, used until the metadata is fetched
+         * again.
+         */
+        @NonNull
+        static Entry invalidated(@Nullable Entry previous) {
+            if (previous == null) {
+                return new Entry(null, null, null, null, 0, true);
+            }
+            return new Entry(previous.mGeneration, previous.mMd5Hash,
+                    previous.mFirstGeneration, previous.mFirstMd5Hash, 0, true);
+        }
+
+        @Nullable
+        String getVersion(@NonNull CacheKeyVersion version) {
+            String current = select(version, mGeneration, mMd5Hash);
+            String first = select(version, mFirstGeneration, mFirstMd5Hash);
+            return current == null || current.equals(first) ? null : current;
+        }
+
+        @Nullable
+        private static String select(@NonNull CacheKeyVersion version,
+                                     @Nullable String generation,
+                                     @Nullable String md5Hash) {
+            if (version == CacheKeyVersion.MD5_HASH && md5Hash != null) {
+                return md5Hash;
+            }
+            return generation;
+        }
+    }
+}
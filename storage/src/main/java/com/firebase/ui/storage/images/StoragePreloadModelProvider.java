@@ -0,0 +1,119 @@
+package com.firebase.ui.storage.images;
+
+import com.bumptech.glide.ListPreloader;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.integration.recyclerview.RecyclerViewPreloader;
+import com.bumptech.glide.request.BaseRequestOptions;
+import com.google.firebase.storage.StorageReference;
+
+import java.util.Collections;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Provides the images of upcoming items to Glide's {@link ListPreloader}, so that images stored in
+ * FirebaseStorage are downloaded before their items are scrolled into view. Works with any adapter
+ * giving access to its items by position, such as {@code FirebaseRecyclerAdapter} and {@code
+ * FirestoreRecyclerAdapter}:
+ * <pre>
+ *     StoragePreloadModelProvider&lt;Photo&gt; provider = new StoragePreloadModelProvider&lt;&gt;(
+ *             Glide.with(this), adapter::getItem, Photo::getImageRef);
+ *     provider.attachTo(recyclerView, new ViewPreloadSizeProvider&lt;&gt;(), 10);
+ * </pre>
+ * <p>
+ * Images are preloaded through the loaders registered for {@link StorageReference}, for example
+ * {@link FirebaseImageLoader}, at the size given by the size provider. The request options must
+ * match the ones used to show the images, otherwise the preloaded images won't be used.
+ *
+ * @param <T> the model object class.
+ */
+public class StoragePreloadModelProvider<T>
+        implements ListPreloader.PreloadModelProvider<StorageReference> {
+
+    private final RequestManager mRequests;
+    private final ItemLookup<T> mItems;
+    private final StorageReferenceExtractor<T> mExtractor;
+    @Nullable
+    private final BaseRequestOptions<?> mOptions;
+
+    /**
+     * Looks up the item shown at a position, for example {@code adapter::getItem}.
+     *
+     * @param <T> the model object class.
+     */
+    public interface ItemLookup<T> {
+        /**
+         * @throws IndexOutOfBoundsException if there is no item at the given position.
+         */
+        @NonNull
+        T getItem(int position);
+    }
+
+    public StoragePreloadModelProvider(@NonNull RequestManager requests,
+                                       @NonNull ItemLookup<T> items,
+                                       @NonNull StorageReferenceExtractor<T> extractor) {
+        this(requests, items, extractor, null);
+    }
+
+    /**
+     * @param options the options of the requests showing the images, such as their
+     *                transformations.
+     */
+    public StoragePreloadModelProvider(@NonNull RequestManager requests,
+                                       @NonNull ItemLookup<T> items,
+                                       @NonNull StorageReferenceExtractor<T> extractor,
+                                       @Nullable BaseRequestOptions<?> options) {
+        mRequests = requests;
+        mItems = items;
+        mExtractor = extractor;
+        mOptions = options;
+    }
+
+    /**
+     * Start preloading the images of the items ahead of the scroll direction of a list.
+     *
+     * @param sizes      the size each image is shown at, for example a {@link
+     *                   com.bumptech.glide.util.ViewPreloadSizeProvider} given the image view of a
+     *                   bound item.
+     * @param maxPreload the number of items to preload ahead.
+     * @return the preloader, to remove with {@link RecyclerView#removeOnScrollListener}.
+     */
+    @NonNull
+    public RecyclerViewPreloader<StorageReference> attachTo(
+            @NonNull RecyclerView recyclerView,
+            @NonNull ListPreloader.PreloadSizeProvider<StorageReference> sizes,
+            int maxPreload) {
+        RecyclerViewPreloader<StorageReference> preloader =
+                new RecyclerViewPreloader<>(mRequests, this, sizes, maxPreload);
+        recyclerView.addOnScrollListener(preloader);
+        return preloader;
+    }
+
+    @NonNull
+    @Override
+    public List<StorageReference> getPreloadItems(int position) {
+        T item;
+        try {
+            item = mItems.getItem(position);
+        } catch (IndexOutOfBoundsException e) {
+            // The list may have shrunk since the preloader last saw its size
+            return Collections.emptyList();
+        }
+
+        StorageReference ref = mExtractor.getStorageReference(item);
+        return ref == null
+                ? Collections.<StorageReference>emptyList()
+                : Collections.singletonList(ref);
+    }
+
+    @Nullable
+    @Override
+    public RequestBuilder<?> getPreloadRequestBuilder(@NonNull StorageReference ref) {
+        RequestBuilder<?> request = mRequests.load(ref);
+        return mOptions == null ? request : request.apply(mOptions);
+    }
+}
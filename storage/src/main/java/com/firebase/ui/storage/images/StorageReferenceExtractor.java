@@ -0,0 +1,20 @@
+package com.firebase.ui.storage.images;
+
+import com.google.firebase.storage.StorageReference;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Extracts the image of a model, for example the reference built from a path stored in the model.
+ * See {@link StoragePreloadModelProvider}.
+ *
+ * @param <T> the model object class.
+ */
+public interface StorageReferenceExtractor<T> {
+    /**
+     * @return the image to preload for the given model, or null if it has none.
+     */
+    @Nullable
+    StorageReference getStorageReference(@NonNull T model);
+}
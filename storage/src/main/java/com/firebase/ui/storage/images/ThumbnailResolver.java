@@ -0,0 +1,23 @@
+package com.firebase.ui.storage.images;
+
+import com.google.firebase.storage.StorageReference;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Chooses a smaller, pre-generated variant of an image to download for the size it will be shown
+ * at. See {@link FirebaseImageLoader.Factory#setThumbnailResolver(ThumbnailResolver)}.
+ */
+public interface ThumbnailResolver {
+    /**
+     * Called from Glide's background threads, so it should not block.
+     *
+     * @param original the image being loaded.
+     * @param width    the target width in pixels, or a negative value if unknown.
+     * @param height   the target height in pixels, or a negative value if unknown.
+     * @return the variant best suited to the target size, or null to download the original.
+     */
+    @Nullable
+    StorageReference resolve(@NonNull StorageReference original, int width, int height);
+}
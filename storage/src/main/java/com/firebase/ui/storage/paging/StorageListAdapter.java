@@ -0,0 +1,155 @@
+package com.firebase.ui.storage.paging;
+
+import com.google.firebase.storage.StorageReference;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LifecycleRegistry;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.Observer;
+import androidx.lifecycle.OnLifecycleEvent;
+import androidx.paging.PagingData;
+import androidx.paging.PagingDataAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Paginated RecyclerView Adapter for the files in a Cloud Storage folder.
+ * <p>
+ * Configured with {@link StorageListOptions}. Images are typically shown by loading each file's
+ * {@link StorageReference} with Glide, through {@link
+ * com.firebase.ui.storage.images.FirebaseImageLoader}.
+ */
+public abstract class StorageListAdapter<VH extends RecyclerView.ViewHolder>
+        extends PagingDataAdapter<StorageReference, VH>
+        implements LifecycleObserver {
+
+    private final Observer<PagingData<StorageReference>> mDataObserver =
+            new Observer<PagingData<StorageReference>>() {
+                @Override
+                public void onChanged(@Nullable PagingData<StorageReference> files) {
+                    if (files == null) {
+                        return;
+                    }
+
+                    submitData(getDataLifecycle(), files);
+                }
+            };
+    private StorageListOptions mOptions;
+    private LiveData<PagingData<StorageReference>> mFiles;
+    /** Scopes the submitted data while listening, if the options have no lifecycle owner. */
+    @Nullable
+    private ListeningLifecycleOwner mListeningOwner;
+
+    /**
+     * Construct a new StorageListAdapter from the given {@link StorageListOptions}.
+     */
+    public StorageListAdapter(@NonNull StorageListOptions options) {
+        super(options.getDiffCallback());
+
+        mOptions = options;
+
+        init();
+    }
+
+    /**
+     * Initializes files
+     */
+    private void init() {
+        mFiles = mOptions.getPagingData();
+
+        if (mOptions.getOwner() != null) {
+            mOptions.getOwner().getLifecycle().addObserver(this);
+        }
+    }
+
+    /**
+     * Re-initialize the Adapter with a new set of options. Can be used to change the folder
+     * without re-constructing the entire adapter.
+     */
+    public void updateOptions(@NonNull StorageListOptions options) {
+        // Tear down old options
+        boolean hasObservers = mFiles.hasObservers();
+        if (mOptions.getOwner() != null) {
+            mOptions.getOwner().getLifecycle().removeObserver(this);
+        }
+        stopListening();
+
+        mOptions = options;
+
+        // Reinit Options
+        init();
+
+        if (hasObservers) {
+            startListening();
+        }
+    }
+
+    /**
+     * Start listening to paging / scrolling events and populating adapter data.
+     */
+    @OnLifecycleEvent(Lifecycle.Event.ON_START)
+    public void startListening() {
+        if (mOptions.getOwner() == null && mListeningOwner == null) {
+            mListeningOwner = new ListeningLifecycleOwner();
+        }
+        mFiles.observeForever(mDataObserver);
+    }
+
+    /**
+     * Unsubscribe from paging / scrolling events, no more data will be populated, but the existing
+     * data will remain.
+     */
+    @OnLifecycleEvent(Lifecycle.Event.ON_STOP)
+    public void stopListening() {
+        mFiles.removeObserver(mDataObserver);
+        if (mListeningOwner != null) {
+            mListeningOwner.destroy();
+            mListeningOwner = null;
+        }
+    }
+
+    @NonNull
+    private Lifecycle getDataLifecycle() {
+        LifecycleOwner owner = mOptions.getOwner();
+        return owner == null ? mListeningOwner.getLifecycle() : owner.getLifecycle();
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull VH holder, int position) {
+        StorageReference file = getItem(position);
+        onBindViewHolder(holder, position, file);
+    }
+
+    /**
+     * @param file the file at the given position.
+     * @see #onBindViewHolder(RecyclerView.ViewHolder, int)
+     */
+    protected abstract void onBindViewHolder(@NonNull VH holder,
+                                             int position,
+                                             @NonNull StorageReference file);
+
+    /**
+     * Resumed from {@link #startListening()} until {@link #stopListening()}, which stops loading
+     * the data submitted meanwhile.
+     */
+    private static final class ListeningLifecycleOwner implements LifecycleOwner {
+        private final LifecycleRegistry mLifecycle = new LifecycleRegistry(this);
+
+        ListeningLifecycleOwner() {
+            mLifecycle.setCurrentState(Lifecycle.State.RESUMED);
+        }
+
+        void destroy() {
+            mLifecycle.setCurrentState(Lifecycle.State.DESTROYED);
+        }
+
+        @NonNull
+        @Override
+        public Lifecycle getLifecycle() {
+            return mLifecycle;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.firebase.ui.storage.paging;
+
+import com.firebase.ui.storage.images.StorageMetadataCache;
+import com.google.firebase.storage.StorageReference;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.lifecycle.LiveData;
+import androidx.paging.Pager;
+import androidx.paging.PagingConfig;
+import androidx.paging.PagingData;
+import androidx.paging.PagingLiveData;
+import androidx.recyclerview.widget.DiffUtil;
+
+/**
+ * Options to configure a {@link StorageListAdapter}.
+ * <p>
+ * Use {@link Builder} to create a new instance.
+ */
+public final class StorageListOptions {
+
+    private static final String ERR_DATA_SET = "Data already set. " +
+            "Call only one of setPagingData() or setFolder()";
+
+    private final LiveData<PagingData<StorageReference>> mPagingData;
+    private final DiffUtil.ItemCallback<StorageReference> mDiffCallback;
+    private final LifecycleOwner mOwner;
+
+    private StorageListOptions(@NonNull LiveData<PagingData<StorageReference>> pagingData,
+                               @NonNull DiffUtil.ItemCallback<StorageReference> diffCallback,
+                               @Nullable LifecycleOwner owner) {
+        mPagingData = pagingData;
+        mDiffCallback = diffCallback;
+        mOwner = owner;
+    }
+
+    @NonNull
+    public LiveData<PagingData<StorageReference>> getPagingData() {
+        return mPagingData;
+    }
+
+    @NonNull
+    public DiffUtil.ItemCallback<StorageReference> getDiffCallback() {
+        return mDiffCallback;
+    }
+
+    @Nullable
+    public LifecycleOwner getOwner() {
+        return mOwner;
+    }
+
+    /**
+     * Builder for {@link StorageListOptions}.
+     */
+    public static final class Builder {
+
+        private LiveData<PagingData<StorageReference>> mPagingData;
+        private StorageReference mFolder;
+        private PagingConfig mConfig;
+        private StorageMetadataCache mMetadataCache;
+        private LifecycleOwner mOwner;
+        private DiffUtil.ItemCallback<StorageReference> mDiffCallback;
+
+        /**
+         * Directly set data.
+         * <p>
+         * Do not call this method after calling {@code setFolder}.
+         */
+        @NonNull
+        public Builder setPagingData(@NonNull LiveData<PagingData<StorageReference>> pagingData) {
+            if (mPagingData != null || mFolder != null) {
+                throw new IllegalStateException(ERR_DATA_SET);
+            }
+
+            mPagingData = pagingData;
+            return this;
+        }
+
+        /**
+         * Sets the Cloud Storage folder whose files to list.
+         *
+         * @param folder the folder. Files in its subfolders aren't listed.
+         * @param config paging configuration, passed directly to the support paging library. Pages
+         *               are limited to {@link StoragePagingSource#MAX_PAGE_SIZE} files and the
+         *               prefetch distance controls how far ahead of the user pages are loaded.
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder setFolder(@NonNull StorageReference folder, @NonNull PagingConfig config) {
+            if (mPagingData != null || mFolder != null) {
+                throw new IllegalStateException(ERR_DATA_SET);
+            }
+
+            mFolder = folder;
+            mConfig = config;
+            return this;
+        }
+
+        /**
+         * Sets an optional {@link StorageMetadataCache} to fetch the metadata of each page of
+         * files as it loads, as one batch. Use the same cache as {@link
+         * com.firebase.ui.storage.images.FirebaseImageLoader.Factory#setCacheKeyVersion} so that
+         * the images of a page are more likely to be loaded with their versions.
+         * <p>
+         * Has no effect with {@link #setPagingData(LiveData)}.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder setMetadataCache(@Nullable StorageMetadataCache metadataCache) {
+            mMetadataCache = metadataCache;
+            return this;
+        }
+
+        /**
+         * Sets an optional custom {@link DiffUtil.ItemCallback} to compare {@link
+         * StorageReference} objects.
+         * <p>
+         * By default files are compared by their path.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder setDiffCallback(
+                @NonNull DiffUtil.ItemCallback<StorageReference> diffCallback) {
+            mDiffCallback = diffCallback;
+            return this;
+        }
+
+        /**
+         * Sets an optional {@link LifecycleOwner} to control the lifecycle of the adapter.
+         * Otherwise, you must manually call {@link StorageListAdapter#startListening()} and
+         * {@link StorageListAdapter#stopListening()}.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder setLifecycleOwner(@NonNull LifecycleOwner owner) {
+            mOwner = owner;
+            return this;
+        }
+
+        /**
+         * Build the {@link StorageListOptions} object.
+         */
+        @NonNull
+        public StorageListOptions build() {
+            if (mPagingData == null && mFolder == null) {
+                throw new IllegalStateException("Must call setFolder() or setPagingData()" +
+                        " before calling build().");
+            }
+
+            if (mPagingData == null) {
+                final StorageReference folder = mFolder;
+                final StorageMetadataCache metadataCache = mMetadataCache;
+                Pager<String, StorageReference> pager = new Pager<>(mConfig,
+                        () -> new StoragePagingSource(folder, metadataCache));
+
+                mPagingData = PagingLiveData.getLiveData(pager);
+                if (mOwner != null) {
+                    mPagingData = PagingLiveData.cachedIn(mPagingData, mOwner.getLifecycle());
+                }
+            }
+
+            if (mDiffCallback == null) {
+                mDiffCallback = new PathDiffCallback();
+            }
+
+            return new StorageListOptions(mPagingData, mDiffCallback, mOwner);
+        }
+    }
+
+    private static final class PathDiffCallback extends DiffUtil.ItemCallback<StorageReference> {
+        @Override
+        public boolean areItemsTheSame(@NonNull StorageReference oldItem,
+                                       @NonNull StorageReference newItem) {
+            return oldItem.getPath().equals(newItem.getPath());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull StorageReference oldItem,
+                                          @NonNull StorageReference newItem) {
+            return oldItem.equals(newItem);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.firebase.ui.storage.paging;
+
+import com.firebase.ui.storage.images.StorageMetadataCache;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.storage.ListResult;
+import com.google.firebase.storage.StorageReference;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.paging.PagingState;
+import androidx.paging.rxjava3.RxPagingSource;
+import io.reactivex.rxjava3.core.Single;
+
+/**
+ * Pages through the files in a Cloud Storage folder with {@link StorageReference#list(int,
+ * String)}, so that large folders are loaded a page at a time rather than all at once with {@link
+ * StorageReference#listAll()}. Files are listed in lexicographical order of their names and
+ * subfolders are skipped.
+ * <p>
+ * Keys are the page tokens returned by Cloud Storage, so pages can only be loaded forward.
+ */
+public class StoragePagingSource extends RxPagingSource<String, StorageReference> {
+
+    /** The largest number of results Cloud Storage returns in a page. */
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    /**
+     * Completes loads on the thread completing the list request rather than the main thread, and
+     * without holding a background thread while waiting for it.
+     */
+    private static final Executor DIRECT_EXECUTOR = Runnable::run;
+
+    private final StorageReference mFolder;
+    @Nullable
+    private final StorageMetadataCache mMetadataCache;
+
+    public StoragePagingSource(@NonNull StorageReference folder) {
+        this(folder, null);
+    }
+
+    /**
+     * @param metadataCache fetches the metadata of each page of files as it loads, in the
+     *                      background, if set.
+     */
+    public StoragePagingSource(@NonNull StorageReference folder,
+                               @Nullable StorageMetadataCache metadataCache) {
+        mFolder = folder;
+        mMetadataCache = metadataCache;
+    }
+
+    @NonNull
+    @Override
+    public Single<LoadResult<String, StorageReference>> loadSingle(
+            @NonNull LoadParams<String> params) {
+        int loadSize = Math.min(Math.max(params.getLoadSize(), 1), MAX_PAGE_SIZE);
+        final Task<ListResult> task;
+        if (params.getKey() == null) {
+            task = mFolder.list(loadSize);
+        } else {
+            task = mFolder.list(loadSize, params.getKey());
+        }
+
+        return Single.<ListResult>create(emitter -> task
+                .addOnSuccessListener(DIRECT_EXECUTOR, emitter::onSuccess)
+                .addOnFailureListener(DIRECT_EXECUTOR, emitter::onError))
+                .map(result -> {
+                    List<StorageReference> files = result.getItems();
+                    if (mMetadataCache != null && !files.isEmpty()) {
+                        mMetadataCache.prefetch(files);
+                    }
+                    return toLoadResult(files, result.getPageToken());
+                })
+                .onErrorReturn(LoadResult.Error::new);
+    }
+
+    private LoadResult<String, StorageReference> toLoadResult(
+            @NonNull List<StorageReference> files,
+            @Nullable String nextPageToken
+    ) {
+        return new LoadResult.Page<>(
+                files,
+                null, // Only paging forward.
+                nextPageToken,
+                LoadResult.Page.COUNT_UNDEFINED,
+                LoadResult.Page.COUNT_UNDEFINED);
+    }
+
+    @Nullable
+    @Override
+    public String getRefreshKey(@NonNull PagingState<String, StorageReference> state) {
+        return null;
+    }
+}
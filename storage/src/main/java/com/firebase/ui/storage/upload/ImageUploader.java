@@ -0,0 +1,486 @@
+package com.firebase.ui.storage.upload;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.util.Log;
+
+import com.bumptech.glide.load.engine.bitmap_recycle.ArrayPool;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPoolAdapter;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruArrayPool;
+import com.bumptech.glide.load.resource.bitmap.DefaultImageHeaderParser;
+import com.bumptech.glide.load.resource.bitmap.TransformationUtils;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.OnProgressListener;
+import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageReference;
+import com.google.firebase.storage.UploadTask;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+/**
+ * Uploads images to Cloud Storage after downscaling and compressing them on the device, so that
+ * full resolution camera photos don't have to be uploaded and resized on the server.
+ * <p>
+ * Each image is decoded at the largest subsampling that still covers the maximum dimensions,
+ * scaled down to fit them, turned upright according to its Exif orientation and re-encoded in the
+ * configured format and quality, all on a background executor. The compressed image is kept in
+ * the app's files directory until its upload completes and the upload session is persisted, so
+ * that uploads interrupted by the process being killed can be resumed with {@link
+ * #resumePendingUploads()}.
+ * <p>
+ * Use {@link Builder} to create a new instance.
+ */
+public final class ImageUploader {
+
+    public static final int DEFAULT_MAX_DIMENSION = 2048;
+    public static final int DEFAULT_QUALITY = 85;
+
+    private static final String TAG = "ImageUploader";
+    private static final String DIRECTORY_NAME = "firebaseui_uploads";
+    private static final String PREFS_NAME = "com.firebase.ui.storage.upload";
+
+    private static final String KEY_BUCKET = "bucket";
+    private static final String KEY_PATH = "path";
+    private static final String KEY_FILE = "file";
+    private static final String KEY_CONTENT_TYPE = "contentType";
+    private static final String KEY_SESSION = "session";
+
+    /**
+     * Decodes one image at a time, since full resolution photos take a lot of memory. Its thread
+     * is a daemon, which never keeps the app alive.
+     */
+    private static final Executor DEFAULT_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "FirebaseUI-image-upload");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final BitmapPool BITMAP_POOL = new BitmapPoolAdapter();
+    private static final ArrayPool ARRAY_POOL = new LruArrayPool();
+
+    /** IDs of the uploads started by this process, which shouldn't be resumed again. */
+    static final Set<String> ACTIVE_UPLOADS = Collections.synchronizedSet(new HashSet<>());
+
+    private final Context mContext;
+    private final int mMaxWidth;
+    private final int mMaxHeight;
+    private final int mQuality;
+    private final Bitmap.CompressFormat mFormat;
+    private final Executor mExecutor;
+    private final File mDirectory;
+    private final SharedPreferences mPending;
+
+    private ImageUploader(@NonNull Builder builder) {
+        mContext = builder.mContext;
+        mMaxWidth = builder.mMaxWidth;
+        mMaxHeight = builder.mMaxHeight;
+        mQuality = builder.mQuality;
+        mFormat = builder.mFormat;
+        mExecutor = builder.mExecutor;
+        mDirectory = new File(mContext.getFilesDir(), DIRECTORY_NAME);
+        mPending = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * See {@link #upload(Uri, StorageReference, StorageMetadata)}.
+     */
+    @NonNull
+    public Task<UploadTask> upload(@NonNull Uri image, @NonNull StorageReference destination) {
+        return upload(image, destination, null);
+    }
+
+    /**
+     * Compress an image and upload it.
+     *
+     * @param image       the image to upload, for example a {@code content://} URI returned by the
+     *                    camera or photo picker.
+     * @param destination the object to upload the image to.
+     * @param metadata    the metadata of the object, if any. Its content type is replaced by the
+     *                    one of the configured format.
+     * @return a task completing with the upload once the image has been compressed, or failing if
+     * the image couldn't be read.
+     */
+    @NonNull
+    public Task<UploadTask> upload(@NonNull final Uri image,
+                                   @NonNull final StorageReference destination,
+                                   @Nullable final StorageMetadata metadata) {
+        final TaskCompletionSource<UploadTask> source = new TaskCompletionSource<>();
+        mExecutor.execute(() -> {
+            String id = UUID.randomUUID().toString();
+            File file = new File(mDirectory, id + getExtension());
+            ACTIVE_UPLOADS.add(id);
+            try {
+                compress(image, file);
+
+                String contentType = getContentType();
+                StorageMetadata.Builder builder = metadata == null
+                        ? new StorageMetadata.Builder()
+                        : new StorageMetadata.Builder(metadata);
+                builder.setContentType(contentType);
+
+                savePending(id, destination, file, contentType, null);
+                source.setResult(start(id, destination, file, builder.build(), null));
+            } catch (IOException | RuntimeException e) {
+                // Otherwise the task would never complete and the file would never be deleted
+                removePending(id);
+                ACTIVE_UPLOADS.remove(id);
+                file.delete();
+                source.setException(e);
+            }
+        });
+        return source.getTask();
+    }
+
+    /**
+     * Resume the uploads interrupted by a previous process being killed, for example on app
+     * start. Uploads are resumed where they stopped if their session was created, and restarted
+     * otherwise. Custom metadata is not restored when an upload has to be restarted.
+     * <p>
+     * Uploads are resumed to the buckets of the default {@link FirebaseStorage} app.
+     *
+     * @return the resumed uploads.
+     */
+    @WorkerThread
+    @NonNull
+    public List<UploadTask> resumePendingUploads() {
+        List<UploadTask> tasks = new ArrayList<>();
+        Set<String> files = new HashSet<>();
+        for (Map.Entry<String, ?> entry : mPending.getAll().entrySet()) {
+            String id = entry.getKey();
+            try {
+                JSONObject json = new JSONObject((String) entry.getValue());
+                File file = new File(json.getString(KEY_FILE));
+                files.add(file.getName());
+                if (ACTIVE_UPLOADS.contains(id)) {
+                    continue;
+                } else if (!file.exists()) {
+                    removePending(id);
+                    continue;
+                }
+
+                StorageReference destination = FirebaseStorage
+                        .getInstance("gs://" + json.getString(KEY_BUCKET))
+                        .getReference(json.getString(KEY_PATH));
+                String contentType = json.getString(KEY_CONTENT_TYPE);
+                Uri session = json.has(KEY_SESSION) ? Uri.parse(json.getString(KEY_SESSION)) : null;
+                StorageMetadata metadata = new StorageMetadata.Builder()
+                        .setContentType(contentType)
+                        .build();
+                tasks.add(start(id, destination, file, metadata, session));
+            } catch (JSONException | ClassCastException | IllegalArgumentException e) {
+                Log.w(TAG, "Dropping unreadable pending upload", e);
+                removePending(id);
+            }
+        }
+
+        deleteOrphans(files);
+        return tasks;
+    }
+
+    @NonNull
+    private UploadTask start(@NonNull final String id,
+                             @NonNull final StorageReference destination,
+                             @NonNull final File file,
+                             @NonNull final StorageMetadata metadata,
+                             @Nullable final Uri session) {
+        ACTIVE_UPLOADS.add(id);
+        UploadTask task = session == null
+                ? destination.putFile(Uri.fromFile(file), metadata)
+                : destination.putFile(Uri.fromFile(file), metadata, session);
+
+        final String contentType = metadata.getContentType();
+        task.addOnProgressListener(new OnProgressListener<UploadTask.TaskSnapshot>() {
+            private Uri mSavedSession = session;
+
+            @Override
+            public void onProgress(@NonNull UploadTask.TaskSnapshot snapshot) {
+                Uri current = snapshot.getUploadSessionUri();
+                if (current != null && !current.equals(mSavedSession)) {
+                    mSavedSession = current;
+                    savePending(id, destination, file, contentType, current);
+                }
+            }
+        });
+        task.addOnCompleteListener(mExecutor, result -> {
+            // Failed uploads aren't retried since the failure would most likely repeat
+            removePending(id);
+            ACTIVE_UPLOADS.remove(id);
+            file.delete();
+        });
+        return task;
+    }
+
+    private void savePending(@NonNull String id,
+                             @NonNull StorageReference destination,
+                             @NonNull File file,
+                             @NonNull String contentType,
+                             @Nullable Uri session) {
+        try {
+            JSONObject json = new JSONObject()
+                    .put(KEY_BUCKET, destination.getBucket())
+                    .put(KEY_PATH, destination.getPath())
+                    .put(KEY_FILE, file.getAbsolutePath())
+                    .put(KEY_CONTENT_TYPE, contentType);
+            if (session != null) {
+                json.put(KEY_SESSION, session.toString());
+            }
+            mPending.edit().putString(id, json.toString()).apply();
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void removePending(@NonNull String id) {
+        mPending.edit().remove(id).apply();
+    }
+
+    /**
+     * Delete the compressed images of uploads that were never saved as pending, because the
+     * process was killed while compressing them.
+     */
+    private void deleteOrphans(@NonNull Set<String> pendingFiles) {
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            int extension = name.lastIndexOf('.');
+            String id = extension < 0 ? name : name.substring(0, extension);
+            if (!pendingFiles.contains(name) && !ACTIVE_UPLOADS.contains(id)) {
+                file.delete();
+            }
+        }
+    }
+
+    @WorkerThread
+    private void compress(@NonNull Uri image, @NonNull File destination) throws IOException {
+        ContentResolver resolver = mContext.getContentResolver();
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        try (InputStream in = open(resolver, image)) {
+            BitmapFactory.decodeStream(in, null, options);
+        }
+        int width = options.outWidth;
+        int height = options.outHeight;
+        if (width <= 0 || height <= 0) {
+            throw new IOException("Could not decode " + image);
+        }
+
+        int orientation;
+        try (InputStream in = open(resolver, image)) {
+            orientation = new DefaultImageHeaderParser().getOrientation(in, ARRAY_POOL);
+        }
+
+        // The maximum dimensions apply to the image once turned upright
+        boolean sideways = TransformationUtils.getExifOrientationDegrees(orientation) % 180 != 0;
+        int maxWidth = sideways ? mMaxHeight : mMaxWidth;
+        int maxHeight = sideways ? mMaxWidth : mMaxHeight;
+        float scale = getScale(width, height, maxWidth, maxHeight);
+
+        Bitmap bitmap;
+        options = new BitmapFactory.Options();
+        options.inSampleSize = getSampleSize(scale);
+        try (InputStream in = open(resolver, image)) {
+            bitmap = BitmapFactory.decodeStream(in, null, options);
+        } catch (OutOfMemoryError e) {
+            throw new IOException("Not enough memory to decode " + image, e);
+        }
+        if (bitmap == null) {
+            throw new IOException("Could not decode " + image);
+        }
+
+        try {
+            int targetWidth = Math.max(1, Math.round(width * scale));
+            int targetHeight = Math.max(1, Math.round(height * scale));
+            if (bitmap.getWidth() != targetWidth || bitmap.getHeight() != targetHeight) {
+                bitmap = replace(bitmap,
+                        Bitmap.createScaledBitmap(bitmap, targetWidth, targetHeight, true));
+            }
+            bitmap = replace(bitmap,
+                    TransformationUtils.rotateImageExif(BITMAP_POOL, bitmap, orientation));
+
+            if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+                throw new IOException("Failed to create " + mDirectory);
+            }
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(destination))) {
+                if (!bitmap.compress(mFormat, mQuality, out)) {
+                    throw new IOException("Could not encode " + image);
+                }
+            }
+        } catch (OutOfMemoryError e) {
+            throw new IOException("Not enough memory to resize " + image, e);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * @return the factor to scale an image by to fit in the given dimensions, at most 1.
+     */
+    static float getScale(int width, int height, int maxWidth, int maxHeight) {
+        return Math.min(1f, Math.min((float) maxWidth / width, (float) maxHeight / height));
+    }
+
+    /**
+     * @return the largest power of two to subsample an image by that still keeps at least the
+     * number of pixels of the image scaled by the given factor.
+     */
+    static int getSampleSize(float scale) {
+        int sampleSize = 1;
+        while (sampleSize * 2 * scale <= 1) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    @NonNull
+    private static Bitmap replace(@NonNull Bitmap old, @NonNull Bitmap replacement) {
+        if (replacement != old) {
+            old.recycle();
+        }
+        return replacement;
+    }
+
+    @NonNull
+    private static InputStream open(@NonNull ContentResolver resolver, @NonNull Uri image)
+            throws IOException {
+        InputStream in = resolver.openInputStream(image);
+        if (in == null) {
+            throw new FileNotFoundException("Could not open " + image);
+        }
+        return in;
+    }
+
+    @NonNull
+    private String getExtension() {
+        if (mFormat == Bitmap.CompressFormat.JPEG) {
+            return ".jpg";
+        } else if (mFormat == Bitmap.CompressFormat.PNG) {
+            return ".png";
+        } else {
+            return ".webp";
+        }
+    }
+
+    @NonNull
+    private String getContentType() {
+        if (mFormat == Bitmap.CompressFormat.JPEG) {
+            return "image/jpeg";
+        } else if (mFormat == Bitmap.CompressFormat.PNG) {
+            return "image/png";
+        } else {
+            return "image/webp";
+        }
+    }
+
+    /**
+     * Builder for {@link ImageUploader}.
+     */
+    public static final class Builder {
+
+        private final Context mContext;
+        private int mMaxWidth = DEFAULT_MAX_DIMENSION;
+        private int mMaxHeight = DEFAULT_MAX_DIMENSION;
+        private int mQuality = DEFAULT_QUALITY;
+        private Bitmap.CompressFormat mFormat = Bitmap.CompressFormat.JPEG;
+        private Executor mExecutor = DEFAULT_EXECUTOR;
+
+        public Builder(@NonNull Context context) {
+            mContext = context.getApplicationContext();
+        }
+
+        /**
+         * Sets the size images are scaled down to fit in, keeping their aspect ratio. Smaller
+         * images aren't scaled up. Defaults to {@link #DEFAULT_MAX_DIMENSION} in both directions.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder setMaxDimensions(int maxWidth, int maxHeight) {
+            if (maxWidth < 1 || maxHeight < 1) {
+                throw new IllegalArgumentException("Maximum dimensions must be positive");
+            }
+            mMaxWidth = maxWidth;
+            mMaxHeight = maxHeight;
+            return this;
+        }
+
+        /**
+         * Sets the quality to encode images at, from 0 to 100. Ignored by lossless formats.
+         * Defaults to {@link #DEFAULT_QUALITY}.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder setQuality(int quality) {
+            if (quality < 0 || quality > 100) {
+                throw new IllegalArgumentException("Quality must be between 0 and 100");
+            }
+            mQuality = quality;
+            return this;
+        }
+
+        /**
+         * Sets the format to encode images in, for example {@link
+         * Bitmap.CompressFormat#WEBP_LOSSY} on API 30 and above. Defaults to JPEG.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder setFormat(@NonNull Bitmap.CompressFormat format) {
+            mFormat = format;
+            return this;
+        }
+
+        /**
+         * Sets an optional {@link Executor} to decode and encode images on. By default images are
+         * compressed one at a time on a shared background thread.
+         *
+         * @return this, for chaining.
+         */
+        @NonNull
+        public Builder setExecutor(@NonNull Executor executor) {
+            mExecutor = executor;
+            return this;
+        }
+
+        /**
+         * Build the {@link ImageUploader} object.
+         */
+        @NonNull
+        public ImageUploader build() {
+            return new ImageUploader(this);
+        }
+    }
+}
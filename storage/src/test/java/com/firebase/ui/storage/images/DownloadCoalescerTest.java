@@ -0,0 +1,268 @@
+package com.firebase.ui.storage.images;
+
+import com.bumptech.glide.Priority;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.firebase.storage.StorageException;
+import com.google.firebase.storage.StorageReference;
+import com.google.firebase.storage.StreamDownloadTask;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+
+import androidx.annotation.NonNull;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class DownloadCoalescerTest {
+
+    private static final byte[] CONTENT = "image bytes".getBytes();
+
+    @Mock StorageReference mRef;
+    @Mock StreamDownloadTask mTask;
+    @Mock StreamDownloadTask.TaskSnapshot mSnapshot;
+
+    private final DownloadCoalescer mDownloads = new DownloadCoalescer();
+    private StreamDownloadTask.StreamProcessor mProcessor;
+    private OnFailureListener mFailureListener;
+
+    @Before
+    public void setUp() {
+        when(mRef.getBucket()).thenReturn("bucket");
+        when(mRef.getPath()).thenReturn("/images/avatar.png");
+        when(mRef.getStream(any(StreamDownloadTask.StreamProcessor.class)))
+                .thenAnswer(invocation -> {
+                    mProcessor = invocation.getArgument(0);
+                    return mTask;
+                });
+        when(mTask.addOnFailureListener(any(OnFailureListener.class)))
+                .thenAnswer(invocation -> {
+                    mFailureListener = invocation.getArgument(0);
+                    return mTask;
+                });
+        when(mTask.isInProgress()).thenReturn(true);
+        when(mSnapshot.getTotalByteCount()).thenReturn((long) CONTENT.length);
+    }
+
+    // join()
+
+    @Test
+    public void join_sameObject_downloadsOnce() throws IOException {
+        RecordingListener first = join(null);
+        RecordingListener second = join(null);
+        download();
+
+        verify(mRef, times(1)).getStream(any(StreamDownloadTask.StreamProcessor.class));
+        assertArrayEquals(CONTENT, readFully(first.mStream));
+        assertArrayEquals(CONTENT, readFully(second.mStream));
+    }
+
+    @Test
+    public void join_differentVersions_downloadsEach() {
+        join("1");
+        join("2");
+
+        verify(mRef, times(2)).getStream(any(StreamDownloadTask.StreamProcessor.class));
+    }
+
+    @Test
+    public void join_afterDownloadWhileStillRead_readsBuffer() throws IOException {
+        RecordingListener first = join(null);
+        download();
+        RecordingListener late = join(null);
+
+        verify(mRef, times(1)).getStream(any(StreamDownloadTask.StreamProcessor.class));
+        assertArrayEquals(CONTENT, readFully(late.mStream));
+        first.mStream.close();
+    }
+
+    @Test
+    public void join_afterEveryStreamClosed_downloadsAgain() throws IOException {
+        RecordingListener first = join(null);
+        download();
+        first.mStream.close();
+        join(null);
+
+        verify(mRef, times(2)).getStream(any(StreamDownloadTask.StreamProcessor.class));
+    }
+
+    @Test
+    public void join_withScheduler_takesOneSlot() {
+        DownloadScheduler scheduler = new DownloadScheduler(2);
+        mDownloads.join(mRef, null, Priority.NORMAL, scheduler, new RecordingListener());
+        mDownloads.join(mRef, null, Priority.NORMAL, scheduler, new RecordingListener());
+
+        assertEquals(1, scheduler.getRunningCount());
+    }
+
+    // cancel()
+
+    @Test
+    public void cancel_oneOfSeveral_keepsDownloading() throws IOException {
+        DownloadCoalescer.Subscription first =
+                mDownloads.join(mRef, null, Priority.NORMAL, null, new RecordingListener());
+        RecordingListener second = join(null);
+
+        first.cancel();
+        download();
+
+        verify(mTask, never()).cancel();
+        assertArrayEquals(CONTENT, readFully(second.mStream));
+    }
+
+    @Test
+    public void cancel_all_cancelsDownload() {
+        DownloadCoalescer.Subscription first =
+                mDownloads.join(mRef, null, Priority.NORMAL, null, new RecordingListener());
+        DownloadCoalescer.Subscription second =
+                mDownloads.join(mRef, null, Priority.NORMAL, null, new RecordingListener());
+
+        first.cancel();
+        second.cancel();
+
+        verify(mTask).cancel();
+        assertEquals(0, mDownloads.getDownloadCount());
+    }
+
+    @Test
+    public void cancel_queued_neverStarts() {
+        DownloadScheduler scheduler = new DownloadScheduler(1);
+        scheduler.enqueue(Priority.NORMAL, () -> {});
+        DownloadCoalescer.Subscription subscription =
+                mDownloads.join(mRef, null, Priority.NORMAL, scheduler, new RecordingListener());
+
+        subscription.cancel();
+
+        assertEquals(0, scheduler.getQueuedCount());
+        verify(mRef, never()).getStream(any(StreamDownloadTask.StreamProcessor.class));
+    }
+
+    // Failures
+
+    @Test
+    public void failure_notifiesEveryListener() {
+        RecordingListener first = join(null);
+        RecordingListener second = join(null);
+        StorageException e = mock(StorageException.class);
+
+        mFailureListener.onFailure(e);
+
+        assertSame(e, first.mError);
+        assertSame(e, second.mError);
+        assertNull(first.mStream);
+        assertEquals(0, mDownloads.getDownloadCount());
+    }
+
+    // Large objects
+
+    @Test
+    public void download_largerThanBuffer_streamsToEveryReader() throws Exception {
+        byte[] content = createLargeContent();
+        RecordingListener first = join(null);
+        RecordingListener second = join(null);
+
+        startDownload(content);
+        FutureTask<byte[]> secondRead = new FutureTask<>(() -> readFully(second.awaitStream()));
+        new Thread(secondRead).start();
+
+        assertArrayEquals(content, readFully(first.awaitStream()));
+        assertArrayEquals(content, secondRead.get());
+    }
+
+    @Test
+    public void join_afterStartOfLargeObjectDropped_downloadsAgain() throws Exception {
+        byte[] content = createLargeContent();
+        RecordingListener first = join(null);
+
+        startDownload(content);
+        assertArrayEquals(content, readFully(first.awaitStream()));
+        join(null);
+
+        verify(mRef, times(2)).getStream(any(StreamDownloadTask.StreamProcessor.class));
+        first.mStream.close();
+    }
+
+    private RecordingListener join(String version) {
+        RecordingListener listener = new RecordingListener();
+        mDownloads.join(mRef, version, Priority.NORMAL, null, listener);
+        return listener;
+    }
+
+    private void download() throws IOException {
+        mProcessor.doInBackground(mSnapshot, new ByteArrayInputStream(CONTENT));
+    }
+
+    /**
+     * Download on another thread, since the download waits for the streams once its buffer is
+     * full.
+     */
+    private void startDownload(byte[] content) {
+        StreamDownloadTask.StreamProcessor processor = mProcessor;
+        new Thread(() -> {
+            try {
+                processor.doInBackground(mSnapshot, new ByteArrayInputStream(content));
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }).start();
+    }
+
+    private static byte[] createLargeContent() {
+        byte[] content = new byte[DownloadCoalescer.MAX_BUFFER_SIZE * 3 + 1];
+        new Random(0).nextBytes(content);
+        return content;
+    }
+
+    private static byte[] readFully(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static class RecordingListener implements DownloadCoalescer.Listener {
+        private final CountDownLatch mNotified = new CountDownLatch(1);
+        InputStream mStream;
+        Exception mError;
+
+        @Override
+        public void onStreamReady(@NonNull InputStream stream) {
+            mStream = stream;
+            mNotified.countDown();
+        }
+
+        @Override
+        public void onLoadFailed(@NonNull Exception e) {
+            mError = e;
+            mNotified.countDown();
+        }
+
+        InputStream awaitStream() throws InterruptedException {
+            mNotified.await();
+            return mStream;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.firebase.ui.storage.images;
+
+import com.google.firebase.storage.StorageReference;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class DownloadRecorderTest {
+
+    private static final byte[] CONTENT = "image bytes".getBytes();
+
+    @Mock StorageReference mRef;
+
+    private final RecordingCounters mCounters = new RecordingCounters();
+
+    @Test
+    public void finished_afterReading_reportsBytes() throws IOException {
+        DownloadRecorder recorder = new DownloadRecorder(mCounters, mRef);
+        InputStream stream = recorder.onStreamReady(new ByteArrayInputStream(CONTENT));
+        while (stream.read(new byte[4]) != -1) {
+            // Read everything
+        }
+        recorder.onFinished(false, null);
+
+        DownloadMetrics metrics = mCounters.mFinished.get(0);
+        assertTrue(metrics.isSuccessful());
+        assertEquals(CONTENT.length, metrics.getBytes());
+        assertTrue(metrics.getTimeToFirstByteMillis() >= 0);
+        assertEquals(1, mCounters.getCompletedCount());
+        assertEquals(0, mCounters.getInFlightCount());
+    }
+
+    @Test
+    public void finished_beforeStreamReady_hasNoTimeToFirstByte() {
+        DownloadRecorder recorder = new DownloadRecorder(mCounters, mRef);
+        recorder.onFinished(true, null);
+
+        DownloadMetrics metrics = mCounters.mFinished.get(0);
+        assertTrue(metrics.isCancelled());
+        assertEquals(-1, metrics.getTimeToFirstByteMillis());
+        assertEquals(1, mCounters.getCancelledCount());
+    }
+
+    @Test
+    public void finished_twice_reportsOnce() {
+        DownloadRecorder recorder = new DownloadRecorder(mCounters, mRef);
+        recorder.onFinished(false, new Exception());
+        recorder.onFinished(true, null);
+
+        assertEquals(1, mCounters.mFinished.size());
+        assertEquals(1, mCounters.getFailedCount());
+        assertEquals(0, mCounters.getCancelledCount());
+    }
+
+    @Test
+    public void joined_deduplicated_reportsDeduplicated() {
+        DownloadRecorder recorder = new DownloadRecorder(mCounters, mRef);
+        recorder.onJoined(true);
+        recorder.onFinished(false, null);
+
+        DownloadMetrics metrics = mCounters.mFinished.get(0);
+        assertSame(mRef, metrics.getReference());
+        assertTrue(metrics.isDeduplicated());
+        assertEquals(1, mCounters.getDeduplicatedCount());
+        assertFalse(metrics.isCancelled());
+    }
+
+    private static class RecordingCounters extends DownloadCounters {
+        final List<DownloadMetrics> mFinished = new ArrayList<>();
+
+        @Override
+        public void onDownloadFinished(@NonNull DownloadMetrics metrics) {
+            super.onDownloadFinished(metrics);
+            mFinished.add(metrics);
+        }
+    }
+}
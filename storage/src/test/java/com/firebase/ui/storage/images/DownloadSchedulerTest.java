@@ -0,0 +1,116 @@
+package com.firebase.ui.storage.images;
+
+import com.bumptech.glide.Priority;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DownloadSchedulerTest {
+
+    private final List<String> mStarted = new ArrayList<>();
+
+    // enqueue()
+
+    @Test
+    public void enqueue_belowLimit_startsRightAway() {
+        DownloadScheduler scheduler = new DownloadScheduler(2);
+        enqueue(scheduler, Priority.NORMAL, "a");
+        enqueue(scheduler, Priority.NORMAL, "b");
+
+        assertEquals(Arrays.asList("a", "b"), mStarted);
+        assertEquals(2, scheduler.getRunningCount());
+        assertEquals(0, scheduler.getQueuedCount());
+    }
+
+    @Test
+    public void enqueue_atLimit_queues() {
+        DownloadScheduler scheduler = new DownloadScheduler(1);
+        enqueue(scheduler, Priority.NORMAL, "a");
+        enqueue(scheduler, Priority.NORMAL, "b");
+
+        assertEquals(Arrays.asList("a"), mStarted);
+        assertEquals(1, scheduler.getQueuedCount());
+    }
+
+    // finish()
+
+    @Test
+    public void finish_startsHighestPriorityFirst() {
+        DownloadScheduler scheduler = new DownloadScheduler(1);
+        DownloadScheduler.Ticket first = enqueue(scheduler, Priority.NORMAL, "a");
+        enqueue(scheduler, Priority.LOW, "low");
+        enqueue(scheduler, Priority.NORMAL, "normal");
+        enqueue(scheduler, Priority.IMMEDIATE, "immediate");
+
+        scheduler.finish(first);
+
+        assertEquals(Arrays.asList("a", "immediate"), mStarted);
+    }
+
+    @Test
+    public void finish_samePriority_startsInRequestOrder() {
+        DownloadScheduler scheduler = new DownloadScheduler(1);
+        DownloadScheduler.Ticket first = enqueue(scheduler, Priority.HIGH, "a");
+        DownloadScheduler.Ticket second = enqueue(scheduler, Priority.HIGH, "b");
+        enqueue(scheduler, Priority.HIGH, "c");
+
+        scheduler.finish(first);
+        scheduler.finish(second);
+
+        assertEquals(Arrays.asList("a", "b", "c"), mStarted);
+    }
+
+    @Test
+    public void finish_queuedTicket_neverStarts() {
+        DownloadScheduler scheduler = new DownloadScheduler(1);
+        DownloadScheduler.Ticket first = enqueue(scheduler, Priority.NORMAL, "a");
+        DownloadScheduler.Ticket cancelled = enqueue(scheduler, Priority.HIGH, "cancelled");
+        enqueue(scheduler, Priority.NORMAL, "b");
+
+        scheduler.finish(cancelled);
+        scheduler.finish(first);
+
+        assertEquals(Arrays.asList("a", "b"), mStarted);
+        assertEquals(0, scheduler.getQueuedCount());
+    }
+
+    @Test
+    public void finish_twice_releasesOneSlot() {
+        DownloadScheduler scheduler = new DownloadScheduler(2);
+        DownloadScheduler.Ticket first = enqueue(scheduler, Priority.NORMAL, "a");
+        enqueue(scheduler, Priority.NORMAL, "b");
+        enqueue(scheduler, Priority.NORMAL, "c");
+        enqueue(scheduler, Priority.NORMAL, "d");
+
+        scheduler.finish(first);
+        scheduler.finish(first);
+
+        assertEquals(Arrays.asList("a", "b", "c"), mStarted);
+        assertEquals(2, scheduler.getRunningCount());
+    }
+
+    // Constructor
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_noSlots_throws() {
+        new DownloadScheduler(0);
+    }
+
+    @Test
+    public void constructor_default_usesDefaultLimit() {
+        assertTrue(new DownloadScheduler().getMaxConcurrentDownloads()
+                == DownloadScheduler.DEFAULT_MAX_CONCURRENT_DOWNLOADS);
+    }
+
+    private DownloadScheduler.Ticket enqueue(DownloadScheduler scheduler,
+                                             Priority priority,
+                                             String name) {
+        return scheduler.enqueue(priority, () -> mStarted.add(name));
+    }
+}
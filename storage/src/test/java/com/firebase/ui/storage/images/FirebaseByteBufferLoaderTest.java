@@ -0,0 +1,134 @@
+package com.firebase.ui.storage.images;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoader.LoadData;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.storage.StorageReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class FirebaseByteBufferLoaderTest {
+
+    private static final long MAX_BYTES = 1024;
+    private static final byte[] CONTENT = "image bytes".getBytes();
+
+    @Mock StorageReference mRef;
+    @Mock Task<byte[]> mTask;
+
+    private OnSuccessListener<byte[]> mSuccessListener;
+    private OnFailureListener mFailureListener;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        when(mRef.getBucket()).thenReturn("bucket");
+        when(mRef.getPath()).thenReturn("/thumbnails/avatar.png");
+        when(mRef.getBytes(anyLong())).thenReturn(mTask);
+        when(mTask.addOnSuccessListener(any(Executor.class), any(OnSuccessListener.class)))
+                .thenAnswer(invocation -> {
+                    mSuccessListener = invocation.getArgument(1);
+                    return mTask;
+                });
+        when(mTask.addOnFailureListener(any(Executor.class), any(OnFailureListener.class)))
+                .thenAnswer(invocation -> {
+                    mFailureListener = invocation.getArgument(1);
+                    return mTask;
+                });
+    }
+
+    @Test
+    public void load_requestsAtMostMaxBytes() {
+        load(buildLoadData(new FirebaseByteBufferLoader(MAX_BYTES)));
+
+        verify(mRef).getBytes(MAX_BYTES);
+    }
+
+    @Test
+    public void load_defaultFactory_usesDefaultMaxBytes() {
+        load(buildLoadData(new FirebaseByteBufferLoader.Factory().build(null)));
+
+        verify(mRef).getBytes(FirebaseByteBufferLoader.DEFAULT_MAX_BYTES);
+    }
+
+    @Test
+    public void load_withinLimit_deliversBytes() {
+        RecordingCallback callback = load(buildLoadData(new FirebaseByteBufferLoader(MAX_BYTES)));
+
+        mSuccessListener.onSuccess(CONTENT);
+
+        assertNull(callback.mError);
+        assertEquals(ByteBuffer.wrap(CONTENT), callback.mBuffer);
+    }
+
+    @Test
+    public void load_overLimit_failsSoNextLoaderIsTried() {
+        RecordingCallback callback = load(buildLoadData(new FirebaseByteBufferLoader(MAX_BYTES)));
+
+        // Thrown by getBytes() once more than the limit has been downloaded
+        IndexOutOfBoundsException e = new IndexOutOfBoundsException();
+        mFailureListener.onFailure(e);
+
+        assertSame(e, callback.mError);
+        assertNull(callback.mBuffer);
+    }
+
+    @Test
+    public void load_cancelled_ignoresBytes() {
+        LoadData<ByteBuffer> data = buildLoadData(new FirebaseByteBufferLoader(MAX_BYTES));
+        RecordingCallback callback = load(data);
+        data.fetcher.cancel();
+
+        mSuccessListener.onSuccess(CONTENT);
+
+        assertNull(callback.mBuffer);
+    }
+
+    private LoadData<ByteBuffer> buildLoadData(ModelLoader<StorageReference, ByteBuffer> loader) {
+        return loader.buildLoadData(mRef, 100, 100, new Options());
+    }
+
+    private static RecordingCallback load(LoadData<ByteBuffer> data) {
+        RecordingCallback callback = new RecordingCallback();
+        data.fetcher.loadData(Priority.NORMAL, callback);
+        return callback;
+    }
+
+    private static final class RecordingCallback implements DataFetcher.DataCallback<ByteBuffer> {
+        @Nullable ByteBuffer mBuffer;
+        @Nullable Exception mError;
+
+        @Override
+        public void onDataReady(@Nullable ByteBuffer data) {
+            mBuffer = data;
+        }
+
+        @Override
+        public void onLoadFailed(@NonNull Exception e) {
+            mError = e;
+        }
+    }
+}
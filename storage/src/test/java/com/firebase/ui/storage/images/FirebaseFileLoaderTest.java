@@ -0,0 +1,203 @@
+package com.firebase.ui.storage.images;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader.LoadData;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.firebase.storage.FileDownloadTask;
+import com.google.firebase.storage.StorageReference;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class FirebaseFileLoaderTest {
+
+    private static final byte[] CONTENT = "image bytes".getBytes();
+
+    @Rule public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Mock StorageReference mRef;
+    @Mock FileDownloadTask mTask;
+
+    private File mDirectory;
+    private File mFile;
+    private OnSuccessListener<FileDownloadTask.TaskSnapshot> mSuccessListener;
+    private OnFailureListener mFailureListener;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        mDirectory = new File(mFolder.getRoot(), "downloads");
+        when(mRef.getBucket()).thenReturn("bucket");
+        when(mRef.getPath()).thenReturn("/images/avatar.png");
+        when(mRef.getFile(any(File.class))).thenAnswer(invocation -> {
+            mFile = invocation.getArgument(0);
+            return mTask;
+        });
+        when(mTask.addOnSuccessListener(any(Executor.class), any(OnSuccessListener.class)))
+                .thenAnswer(invocation -> {
+                    mSuccessListener = invocation.getArgument(1);
+                    return mTask;
+                });
+        when(mTask.addOnFailureListener(any(Executor.class), any(OnFailureListener.class)))
+                .thenAnswer(invocation -> {
+                    mFailureListener = invocation.getArgument(1);
+                    return mTask;
+                });
+        when(mTask.isInProgress()).thenReturn(true);
+    }
+
+    @Test
+    public void load_success_mapsFileAndDeletesIt() throws IOException {
+        RecordingCallback callback = load(buildLoadData());
+        assertTrue(mFile.exists());
+        assertEquals(mDirectory, mFile.getParentFile());
+
+        complete();
+
+        assertNull(callback.mError);
+        assertNotNull(callback.mBuffer);
+        byte[] bytes = new byte[callback.mBuffer.remaining()];
+        callback.mBuffer.get(bytes);
+        assertEquals(new String(CONTENT), new String(bytes));
+        assertFalse(mFile.exists());
+    }
+
+    @Test
+    public void load_failure_deletesFile() {
+        RecordingCallback callback = load(buildLoadData());
+
+        Exception e = new Exception("Download failed");
+        mFailureListener.onFailure(e);
+
+        assertSame(e, callback.mError);
+        assertFalse(mFile.exists());
+    }
+
+    @Test
+    public void load_cancelledDuringDownload_cancelsTaskAndDeletesFile() throws IOException {
+        LoadData<ByteBuffer> data = buildLoadData();
+        RecordingCallback callback = load(data);
+
+        data.fetcher.cancel();
+        verify(mTask).cancel();
+
+        // The task may still complete if it was already finishing
+        complete();
+
+        assertNull(callback.mBuffer);
+        assertFalse(mFile.exists());
+    }
+
+    @Test
+    public void load_cancelledBeforeLoad_cancelsTask() {
+        LoadData<ByteBuffer> data = buildLoadData();
+        data.fetcher.cancel();
+
+        load(data);
+
+        verify(mTask).cancel();
+    }
+
+    @Test
+    public void cleanup_unfinishedDownload_deletesFile() {
+        LoadData<ByteBuffer> data = buildLoadData();
+        load(data);
+
+        data.fetcher.cleanup();
+
+        assertFalse(mFile.exists());
+    }
+
+    @Test
+    public void load_firstDownload_deletesLeftoverFiles() throws IOException {
+        assertTrue(mDirectory.mkdirs());
+        File leftover = new File(mDirectory, "download1.tmp");
+        assertTrue(leftover.createNewFile());
+        assertTrue(leftover.setLastModified(System.currentTimeMillis() - 60_000));
+
+        LoadData<ByteBuffer> data = buildLoadData();
+        load(data);
+
+        assertFalse(leftover.exists());
+        assertTrue(mFile.exists());
+    }
+
+    @Test
+    public void load_laterDownload_keepsFilesInUse() {
+        FirebaseFileLoader loader = new FirebaseFileLoader(
+                new FirebaseFileLoader.DownloadDirectory(mDirectory));
+        load(loader.buildLoadData(mRef, 100, 100, new Options()));
+        File first = mFile;
+
+        load(loader.buildLoadData(mRef, 100, 100, new Options()));
+
+        assertTrue(first.exists());
+        assertTrue(mFile.exists());
+    }
+
+    private LoadData<ByteBuffer> buildLoadData() {
+        LoadData<ByteBuffer> data = new FirebaseFileLoader.Factory(mDirectory)
+                .build(null)
+                .buildLoadData(mRef, 100, 100, new Options());
+        assertNotNull(data);
+        return data;
+    }
+
+    private static RecordingCallback load(LoadData<ByteBuffer> data) {
+        RecordingCallback callback = new RecordingCallback();
+        data.fetcher.loadData(Priority.NORMAL, callback);
+        return callback;
+    }
+
+    /** Write the content to the download file and complete the task. */
+    private void complete() throws IOException {
+        try (FileOutputStream out = new FileOutputStream(mFile)) {
+            out.write(CONTENT);
+        }
+        mSuccessListener.onSuccess(mock(FileDownloadTask.TaskSnapshot.class));
+    }
+
+    private static final class RecordingCallback implements DataFetcher.DataCallback<ByteBuffer> {
+        @Nullable ByteBuffer mBuffer;
+        @Nullable Exception mError;
+
+        @Override
+        public void onDataReady(@Nullable ByteBuffer data) {
+            mBuffer = data;
+        }
+
+        @Override
+        public void onLoadFailed(@NonNull Exception e) {
+            mError = e;
+        }
+    }
+}
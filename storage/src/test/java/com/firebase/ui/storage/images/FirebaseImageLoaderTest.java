@@ -0,0 +1,185 @@
+package com.firebase.ui.storage.images;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader.LoadData;
+import com.google.android.gms.tasks.OnFailureListener;
+import com.google.firebase.storage.StorageException;
+import com.google.firebase.storage.StorageReference;
+import com.google.firebase.storage.StreamDownloadTask;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class FirebaseImageLoaderTest {
+
+    private static final byte[] CONTENT = "image bytes".getBytes();
+
+    @Mock StorageReference mOriginal;
+    @Mock StorageReference mThumbnail;
+    @Mock StreamDownloadTask.TaskSnapshot mSnapshot;
+
+    private final Download mOriginalDownload = new Download();
+    private final Download mThumbnailDownload = new Download();
+    private FirebaseImageLoader mLoader;
+
+    @Before
+    public void setUp() {
+        mOriginalDownload.stub(mOriginal, "/images/avatar.png");
+        mThumbnailDownload.stub(mThumbnail, "/thumbnails/avatar_200x200.png");
+        when(mSnapshot.getTotalByteCount()).thenReturn((long) CONTENT.length);
+
+        mLoader = (FirebaseImageLoader) new FirebaseImageLoader.Factory()
+                .setThumbnailResolver((original, width, height) ->
+                        original == mOriginal ? mThumbnail : null)
+                .build(null);
+    }
+
+    // Missing thumbnails
+
+    @Test
+    public void load_missingThumbnail_fallsBackToOriginal() throws IOException {
+        LoadData<InputStream> data = buildLoadData();
+        RecordingCallback callback = load(data);
+
+        mThumbnailDownload.fail(notFound());
+        mOriginalDownload.complete(mSnapshot);
+
+        assertNull(callback.mError);
+        assertNotNull(callback.mStream);
+        assertEquals(DataSource.MEMORY_CACHE, data.fetcher.getDataSource());
+    }
+
+    @Test
+    public void load_missingThumbnail_laterLoadsUseOriginalKey() {
+        LoadData<InputStream> first = buildLoadData();
+        load(first);
+        mThumbnailDownload.fail(notFound());
+
+        LoadData<InputStream> second = buildLoadData();
+        assertEquals(new FirebaseImageLoader.FirebaseStorageKey(mOriginal), second.sourceKey);
+        assertEquals(DataSource.REMOTE, second.fetcher.getDataSource());
+    }
+
+    @Test
+    public void load_thumbnailOtherFailure_doesNotFallBack() {
+        RecordingCallback callback = load(buildLoadData());
+        StorageException e = mock(StorageException.class);
+        when(e.getErrorCode()).thenReturn(StorageException.ERROR_UNKNOWN);
+
+        mThumbnailDownload.fail(e);
+
+        assertSame(e, callback.mError);
+        verify(mOriginal, never()).getStream(any(StreamDownloadTask.StreamProcessor.class));
+    }
+
+    @Test
+    public void load_existingThumbnail_isDiskCacheable() throws IOException {
+        LoadData<InputStream> data = buildLoadData();
+        RecordingCallback callback = load(data);
+
+        mThumbnailDownload.complete(mSnapshot);
+
+        assertNotNull(callback.mStream);
+        assertEquals(DataSource.REMOTE, data.fetcher.getDataSource());
+        verify(mOriginal, never()).getStream(any(StreamDownloadTask.StreamProcessor.class));
+    }
+
+    @Test
+    public void load_cancelledThumbnail_doesNotFallBack() {
+        LoadData<InputStream> data = buildLoadData();
+        load(data);
+        data.fetcher.cancel();
+
+        mThumbnailDownload.fail(notFound());
+
+        verify(mOriginal, never()).getStream(any(StreamDownloadTask.StreamProcessor.class));
+    }
+
+    private LoadData<InputStream> buildLoadData() {
+        LoadData<InputStream> data = mLoader.buildLoadData(mOriginal, 200, 200, new Options());
+        assertNotNull(data);
+        return data;
+    }
+
+    private static RecordingCallback load(LoadData<InputStream> data) {
+        RecordingCallback callback = new RecordingCallback();
+        data.fetcher.loadData(Priority.NORMAL, callback);
+        return callback;
+    }
+
+    private static StorageException notFound() {
+        StorageException e = mock(StorageException.class);
+        when(e.getErrorCode()).thenReturn(StorageException.ERROR_OBJECT_NOT_FOUND);
+        return e;
+    }
+
+    /** The download of one object, completed or failed by the test. */
+    private static final class Download {
+        private final StreamDownloadTask mTask = mock(StreamDownloadTask.class);
+        private StreamDownloadTask.StreamProcessor mProcessor;
+        private OnFailureListener mFailureListener;
+
+        void stub(StorageReference ref, String path) {
+            when(ref.getBucket()).thenReturn("bucket");
+            when(ref.getPath()).thenReturn(path);
+            when(ref.getStream(any(StreamDownloadTask.StreamProcessor.class)))
+                    .thenAnswer(invocation -> {
+                        mProcessor = invocation.getArgument(0);
+                        return mTask;
+                    });
+            when(mTask.addOnFailureListener(any(OnFailureListener.class)))
+                    .thenAnswer(invocation -> {
+                        mFailureListener = invocation.getArgument(0);
+                        return mTask;
+                    });
+            when(mTask.isInProgress()).thenReturn(true);
+        }
+
+        void complete(StreamDownloadTask.TaskSnapshot snapshot) throws IOException {
+            mProcessor.doInBackground(snapshot, new ByteArrayInputStream(CONTENT));
+        }
+
+        void fail(Exception e) {
+            mFailureListener.onFailure(e);
+        }
+    }
+
+    private static final class RecordingCallback implements DataFetcher.DataCallback<InputStream> {
+        @Nullable InputStream mStream;
+        @Nullable Exception mError;
+
+        @Override
+        public void onDataReady(@Nullable InputStream data) {
+            mStream = data;
+        }
+
+        @Override
+        public void onLoadFailed(@NonNull Exception e) {
+            mError = e;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.firebase.ui.storage.images;
+
+import com.bumptech.glide.request.target.Target;
+import com.google.firebase.storage.StorageReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class ResizedImageResolverTest {
+
+    @Mock StorageReference mOriginal;
+    @Mock StorageReference mParent;
+    @Mock StorageReference mThumbnails;
+
+    @Before
+    public void setUp() {
+        when(mOriginal.getName()).thenReturn("photo.jpg");
+        when(mOriginal.getParent()).thenReturn(mParent);
+        when(mParent.child("thumbnails")).thenReturn(mThumbnails);
+    }
+
+    // resolve()
+
+    @Test
+    public void resolve_smallTarget_returnsSmallestCoveringSize() {
+        StorageReference small = mockChild(mThumbnails, "photo_200x200.jpg");
+        mockChild(mThumbnails, "photo_680x680.jpg");
+
+        ResizedImageResolver resolver =
+                new ResizedImageResolver("thumbnails", "680x680", "200x200");
+        assertSame(small, resolver.resolve(mOriginal, 96, 96));
+    }
+
+    @Test
+    public void resolve_targetBetweenSizes_returnsNextLargerSize() {
+        mockChild(mThumbnails, "photo_200x200.jpg");
+        StorageReference large = mockChild(mThumbnails, "photo_680x680.jpg");
+
+        ResizedImageResolver resolver =
+                new ResizedImageResolver("thumbnails", "200x200", "680x680");
+        assertSame(large, resolver.resolve(mOriginal, 300, 150));
+    }
+
+    @Test
+    public void resolve_noPath_returnsSibling() {
+        StorageReference sibling = mockChild(mParent, "photo_200x200.jpg");
+
+        assertSame(sibling, new ResizedImageResolver(null, "200x200").resolve(mOriginal, 50, 50));
+    }
+
+    @Test
+    public void resolve_noExtension_appendsSize() {
+        when(mOriginal.getName()).thenReturn("photo");
+        StorageReference thumbnail = mockChild(mThumbnails, "photo_200x200");
+
+        ResizedImageResolver resolver = new ResizedImageResolver("thumbnails", "200x200");
+        assertSame(thumbnail, resolver.resolve(mOriginal, 50, 50));
+    }
+
+    @Test
+    public void resolve_targetLargerThanEverySize_returnsNull() {
+        ResizedImageResolver resolver = new ResizedImageResolver("thumbnails", "200x200");
+        assertNull(resolver.resolve(mOriginal, 1080, 1080));
+    }
+
+    @Test
+    public void resolve_originalSize_returnsNull() {
+        ResizedImageResolver resolver = new ResizedImageResolver("thumbnails", "200x200");
+        assertNull(resolver.resolve(mOriginal, Target.SIZE_ORIGINAL, Target.SIZE_ORIGINAL));
+    }
+
+    // Constructor
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_malformedSize_throws() {
+        new ResizedImageResolver("thumbnails", "200");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_noSizes_throws() {
+        new ResizedImageResolver("thumbnails");
+    }
+
+    private static StorageReference mockChild(StorageReference parent, String name) {
+        StorageReference child = mock(StorageReference.class);
+        when(parent.child(name)).thenReturn(child);
+        return child;
+    }
+}
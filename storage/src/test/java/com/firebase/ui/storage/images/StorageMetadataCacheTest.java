@@ -0,0 +1,343 @@
+package com.firebase.ui.storage.images;
+
+import com.google.android.gms.tasks.TaskCompletionSource;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageReference;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class StorageMetadataCacheTest {
+
+    private static final long TTL_MILLIS = 60_000;
+
+    @Rule public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Mock StorageReference mRef;
+    @Mock StorageMetadata mMetadata;
+
+    private ScheduledExecutorService mExecutor;
+
+    @Before
+    public void setUp() {
+        // Never runs the delayed writes, tests write explicitly
+        mExecutor = Executors.newSingleThreadScheduledExecutor();
+        when(mRef.getPath()).thenReturn("/images/avatar.png");
+        when(mRef.getMetadata()).thenAnswer(invocation -> Tasks.forResult(mMetadata));
+        when(mMetadata.getGeneration()).thenReturn("1");
+        when(mMetadata.getMd5Hash()).thenReturn("hash1");
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    // getVersion()
+
+    @Test
+    public void getVersion_notCached_returnsNullAndFetches() {
+        StorageMetadataCache cache = new StorageMetadataCache(null, TTL_MILLIS, mExecutor);
+
+        assertNull(cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+        verify(mRef, times(1)).getMetadata();
+    }
+
+    @Test
+    public void getVersion_firstVersion_keepsPathOnlyKey() {
+        StorageMetadataCache cache = new StorageMetadataCache(null, 0, mExecutor);
+        cache.getVersion(mRef, CacheKeyVersion.GENERATION);
+
+        // The image downloaded by the first load is still current
+        assertNull(cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+        assertNull(cache.getVersion(mRef, CacheKeyVersion.MD5_HASH));
+    }
+
+    @Test
+    public void getVersion_changedVersion_returnsIt() {
+        StorageMetadataCache cache = new StorageMetadataCache(null, 0, mExecutor);
+        fetchSecondVersion(cache);
+
+        assertEquals("2", cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+        assertEquals("hash2", cache.getVersion(mRef, CacheKeyVersion.MD5_HASH));
+    }
+
+    @Test
+    public void getVersion_md5Hash_ignoresNewGenerationWithSameContent() {
+        StorageMetadataCache cache = new StorageMetadataCache(null, 0, mExecutor);
+        cache.getVersion(mRef, CacheKeyVersion.GENERATION);
+
+        when(mMetadata.getGeneration()).thenReturn("2");
+        cache.getVersion(mRef, CacheKeyVersion.GENERATION);
+
+        assertEquals("2", cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+        assertNull(cache.getVersion(mRef, CacheKeyVersion.MD5_HASH));
+    }
+
+    @Test
+    public void getVersion_md5Hash_fallsBackToGeneration() {
+        when(mMetadata.getMd5Hash()).thenReturn(null);
+        StorageMetadataCache cache = new StorageMetadataCache(null, 0, mExecutor);
+        cache.getVersion(mRef, CacheKeyVersion.MD5_HASH);
+
+        when(mMetadata.getGeneration()).thenReturn("2");
+        cache.getVersion(mRef, CacheKeyVersion.MD5_HASH);
+        assertEquals("2", cache.getVersion(mRef, CacheKeyVersion.MD5_HASH));
+    }
+
+    @Test
+    public void getVersion_fetchInProgress_sharesRequest() {
+        TaskCompletionSource<StorageMetadata> source = new TaskCompletionSource<>();
+        when(mRef.getMetadata()).thenReturn(source.getTask());
+        StorageMetadataCache cache = new StorageMetadataCache(null, TTL_MILLIS, mExecutor);
+
+        assertNull(cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+        assertNull(cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+        verify(mRef, times(1)).getMetadata();
+
+        source.setResult(mMetadata);
+        assertNull(cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+        verify(mRef, times(1)).getMetadata();
+    }
+
+    @Test
+    public void getVersion_fetchFailed_retriesOnNextLoad() {
+        when(mRef.getMetadata()).thenReturn(Tasks.forException(new IOException("offline")));
+        StorageMetadataCache cache = new StorageMetadataCache(null, TTL_MILLIS, mExecutor);
+
+        assertNull(cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+        assertNull(cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+        verify(mRef, times(2)).getMetadata();
+    }
+
+    // TTL
+
+    @Test
+    public void getVersion_fresh_doesNotFetchAgain() {
+        StorageMetadataCache cache = new StorageMetadataCache(null, TTL_MILLIS, mExecutor);
+        cache.getVersion(mRef, CacheKeyVersion.GENERATION);
+
+        when(mMetadata.getGeneration()).thenReturn("2");
+        assertNull(cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+        verify(mRef, times(1)).getMetadata();
+    }
+
+    @Test
+    public void getVersion_expired_returnsPreviousVersionAndRefreshes() {
+        TaskCompletionSource<StorageMetadata> source = new TaskCompletionSource<>();
+        StorageMetadataCache cache = new StorageMetadataCache(null, 0, mExecutor);
+        fetchSecondVersion(cache);
+
+        when(mRef.getMetadata()).thenReturn(source.getTask());
+        assertEquals("2", cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+        verify(mRef, times(3)).getMetadata();
+
+        when(mMetadata.getGeneration()).thenReturn("3");
+        source.setResult(mMetadata);
+        assertEquals("3", cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+    }
+
+    // invalidate()
+
+    @Test
+    public void invalidate_waitsForNewVersion() {
+        TaskCompletionSource<StorageMetadata> source = new TaskCompletionSource<>();
+        StorageMetadataCache cache = new StorageMetadataCache(null, TTL_MILLIS, mExecutor);
+        cache.getVersion(mRef, CacheKeyVersion.GENERATION);
+
+        when(mRef.getMetadata()).thenReturn(source.getTask());
+        when(mMetadata.getGeneration()).thenReturn("2");
+        cache.invalidate(mRef);
+        mExecutor.schedule(() -> source.setResult(mMetadata), 100, TimeUnit.MILLISECONDS);
+
+        assertEquals("2", cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+        verify(mRef, times(2)).getMetadata();
+    }
+
+    @Test
+    public void invalidate_fetchFailed_usesPreviousVersion() {
+        StorageMetadataCache cache = new StorageMetadataCache(null, 0, mExecutor);
+        fetchSecondVersion(cache);
+
+        when(mRef.getMetadata()).thenReturn(Tasks.forException(new IOException("offline")));
+        cache.invalidate(mRef);
+
+        assertEquals("2", cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+    }
+
+    @Test
+    public void invalidate_unchangedObject_keepsPathOnlyKey() {
+        StorageMetadataCache cache = new StorageMetadataCache(null, TTL_MILLIS, mExecutor);
+        cache.getVersion(mRef, CacheKeyVersion.GENERATION);
+
+        cache.invalidate(mRef);
+        assertNull(cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+        verify(mRef, times(2)).getMetadata();
+    }
+
+    @Test
+    public void invalidate_requestInFlight_isNotJoined() {
+        StorageMetadataCache cache = new StorageMetadataCache(null, 0, mExecutor);
+        cache.getVersion(mRef, CacheKeyVersion.GENERATION);
+        TaskCompletionSource<StorageMetadata> stale = new TaskCompletionSource<>();
+        when(mRef.getMetadata()).thenReturn(stale.getTask());
+        cache.getVersion(mRef, CacheKeyVersion.GENERATION);
+
+        when(mRef.getMetadata()).thenAnswer(invocation -> Tasks.forResult(mMetadata));
+        when(mMetadata.getGeneration()).thenReturn("2");
+        cache.invalidate(mRef);
+        assertEquals("2", cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+        verify(mRef, times(3)).getMetadata();
+
+        // Answered before the object was overwritten, but completing after the invalidation
+        StorageMetadata previous = mock(StorageMetadata.class);
+        when(previous.getGeneration()).thenReturn("1");
+        stale.setResult(previous);
+        assertEquals("2", cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+    }
+
+    @Test
+    public void invalidate_beforeFirstFetch_usesVersionedKey() {
+        StorageMetadataCache cache = new StorageMetadataCache(null, TTL_MILLIS, mExecutor);
+
+        // An image cached by path only may predate the object being overwritten
+        cache.invalidate(mRef);
+        assertEquals("1", cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+    }
+
+    @Test
+    public void invalidate_beforeDiskRead_isNotRestored() {
+        File file = new File(mFolder.getRoot(), "metadata");
+        StorageMetadataCache cache = new StorageMetadataCache(file, 0, mExecutor);
+        fetchSecondVersion(cache);
+        cache.write();
+
+        when(mMetadata.getGeneration()).thenReturn("3");
+        StorageMetadataCache restored = new StorageMetadataCache(file, TTL_MILLIS, mExecutor);
+        restored.invalidate(mRef);
+        assertEquals("3", restored.getVersion(mRef, CacheKeyVersion.GENERATION));
+    }
+
+    // Persistence
+
+    @Test
+    public void write_roundTrip_restoresVersions() {
+        File file = new File(mFolder.getRoot(), "metadata");
+        StorageMetadataCache cache = new StorageMetadataCache(file, 0, mExecutor);
+        fetchSecondVersion(cache);
+        cache.write();
+
+        StorageMetadataCache restored = new StorageMetadataCache(file, TTL_MILLIS, mExecutor);
+        assertEquals("2", restored.getVersion(mRef, CacheKeyVersion.GENERATION));
+        assertEquals("hash2", restored.getVersion(mRef, CacheKeyVersion.MD5_HASH));
+        verify(mRef, times(2)).getMetadata();
+    }
+
+    @Test
+    public void write_roundTrip_restoresFirstVersion() {
+        File file = new File(mFolder.getRoot(), "metadata");
+        StorageMetadataCache cache = new StorageMetadataCache(file, TTL_MILLIS, mExecutor);
+        cache.getVersion(mRef, CacheKeyVersion.GENERATION);
+        cache.write();
+
+        StorageMetadataCache restored = new StorageMetadataCache(file, TTL_MILLIS, mExecutor);
+        assertNull(restored.getVersion(mRef, CacheKeyVersion.GENERATION));
+        verify(mRef, times(1)).getMetadata();
+    }
+
+    @Test
+    public void write_roundTrip_keepsMissingHash() {
+        when(mMetadata.getMd5Hash()).thenReturn(null);
+        File file = new File(mFolder.getRoot(), "metadata");
+        StorageMetadataCache cache = new StorageMetadataCache(file, 0, mExecutor);
+        cache.getVersion(mRef, CacheKeyVersion.GENERATION);
+        when(mMetadata.getGeneration()).thenReturn("2");
+        cache.getVersion(mRef, CacheKeyVersion.GENERATION);
+        cache.write();
+
+        StorageMetadataCache restored = new StorageMetadataCache(file, TTL_MILLIS, mExecutor);
+        assertEquals("2", restored.getVersion(mRef, CacheKeyVersion.MD5_HASH));
+    }
+
+    @Test
+    public void write_roundTrip_keepsFetchTime() {
+        File file = new File(mFolder.getRoot(), "metadata");
+        StorageMetadataCache cache = new StorageMetadataCache(file, TTL_MILLIS, mExecutor);
+        cache.getVersion(mRef, CacheKeyVersion.GENERATION);
+        cache.write();
+
+        // Already expired with a shorter TTL, so it is fetched again
+        StorageMetadataCache restored = new StorageMetadataCache(file, 0, mExecutor);
+        restored.getVersion(mRef, CacheKeyVersion.GENERATION);
+        verify(mRef, times(2)).getMetadata();
+    }
+
+    @Test
+    public void write_roundTrip_keepsInvalidation() {
+        File file = new File(mFolder.getRoot(), "metadata");
+        StorageMetadataCache cache = new StorageMetadataCache(file, TTL_MILLIS, mExecutor);
+        cache.getVersion(mRef, CacheKeyVersion.GENERATION);
+        cache.invalidate(mRef);
+        cache.write();
+
+        when(mMetadata.getGeneration()).thenReturn("2");
+        StorageMetadataCache restored = new StorageMetadataCache(file, TTL_MILLIS, mExecutor);
+        assertEquals("2", restored.getVersion(mRef, CacheKeyVersion.GENERATION));
+    }
+
+    @Test
+    public void read_unknownFormat_ignoresFile() throws IOException {
+        File file = new File(mFolder.getRoot(), "metadata");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(0x4655534d);
+            out.writeInt(Integer.MAX_VALUE);
+            out.writeInt(1);
+        }
+
+        StorageMetadataCache cache = new StorageMetadataCache(file, TTL_MILLIS, mExecutor);
+        assertNull(cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+    }
+
+    @Test
+    public void clear_forgetsVersions() {
+        StorageMetadataCache cache = new StorageMetadataCache(null, 0, mExecutor);
+        fetchSecondVersion(cache);
+
+        cache.clear();
+        assertNull(cache.getVersion(mRef, CacheKeyVersion.GENERATION));
+    }
+
+    /**
+     * Fetch the metadata of {@link #mRef} before and after it is overwritten, with a cache whose
+     * entries have already expired.
+     */
+    private void fetchSecondVersion(StorageMetadataCache cache) {
+        cache.getVersion(mRef, CacheKeyVersion.GENERATION);
+        when(mMetadata.getGeneration()).thenReturn("2");
+        when(mMetadata.getMd5Hash()).thenReturn("hash2");
+        cache.getVersion(mRef, CacheKeyVersion.GENERATION);
+    }
+}
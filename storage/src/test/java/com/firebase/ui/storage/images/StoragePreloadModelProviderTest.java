@@ -0,0 +1,106 @@
+package com.firebase.ui.storage.images;
+
+import android.graphics.drawable.Drawable;
+
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.request.RequestOptions;
+import com.google.firebase.storage.StorageReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import androidx.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class StoragePreloadModelProviderTest {
+
+    @Mock RequestManager mRequests;
+    @Mock RequestBuilder<Drawable> mRequest;
+    @Mock RequestBuilder<Drawable> mRequestWithOptions;
+    @Mock StorageReference mFirstRef;
+    @Mock StorageReference mSecondRef;
+
+    private final RequestOptions mOptions = new RequestOptions();
+
+    /** Items in the list, where a null item has no image. */
+    private List<StorageReference> mItems;
+
+    @Before
+    public void setUp() {
+        mItems = Arrays.asList(mFirstRef, null, mSecondRef);
+        when(mRequests.load(any(Object.class))).thenReturn(mRequest);
+        when(mRequest.apply(mOptions)).thenReturn(mRequestWithOptions);
+    }
+
+    @Test
+    public void getPreloadItems_itemWithImage_returnsItsReference() {
+        StoragePreloadModelProvider<Integer> provider = buildProvider(null);
+
+        assertEquals(Collections.singletonList(mFirstRef), provider.getPreloadItems(0));
+        assertEquals(Collections.singletonList(mSecondRef), provider.getPreloadItems(2));
+    }
+
+    @Test
+    public void getPreloadItems_itemWithoutImage_returnsNothing() {
+        StoragePreloadModelProvider<Integer> provider = buildProvider(null);
+
+        assertTrue(provider.getPreloadItems(1).isEmpty());
+    }
+
+    @Test
+    public void getPreloadItems_positionPastEnd_returnsNothing() {
+        StoragePreloadModelProvider<Integer> provider = buildProvider(null);
+
+        // The list shrank since the preloader last saw its size
+        assertTrue(provider.getPreloadItems(3).isEmpty());
+    }
+
+    @Test
+    public void getPreloadRequestBuilder_withoutOptions_loadsReference() {
+        StoragePreloadModelProvider<Integer> provider = buildProvider(null);
+
+        assertSame(mRequest, provider.getPreloadRequestBuilder(mFirstRef));
+        verify(mRequests).load(mFirstRef);
+        verify(mRequest, never()).apply(any());
+    }
+
+    @Test
+    public void getPreloadRequestBuilder_withOptions_appliesThem() {
+        StoragePreloadModelProvider<Integer> provider = buildProvider(mOptions);
+
+        assertSame(mRequestWithOptions, provider.getPreloadRequestBuilder(mFirstRef));
+        verify(mRequests).load(mFirstRef);
+    }
+
+    /**
+     * Build a provider whose items are positions, mapped to references through {@link #mItems}.
+     */
+    private StoragePreloadModelProvider<Integer> buildProvider(@Nullable RequestOptions options) {
+        return new StoragePreloadModelProvider<>(
+                mRequests,
+                position -> {
+                    if (position >= mItems.size()) {
+                        throw new IndexOutOfBoundsException();
+                    }
+                    return position;
+                },
+                mItems::get,
+                options);
+    }
+}
@@ -1,7 +1,10 @@
 package com.firebase.ui.storage.images;
 
 import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader;
 import com.bumptech.glide.load.model.ModelLoader.LoadData;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
 import com.google.firebase.storage.FirebaseStorage;
 import com.google.firebase.storage.StorageReference;
 
@@ -17,10 +20,15 @@ import java.io.InputStream;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
-@RunWith(MockitoJUnitRunner.class)
+@RunWith(MockitoJUnitRunner.Silent.class)
 public class StringLoaderTest {
 
     private static final String VALID_GS_URL = "gs://my-bucket.appspot.com/images/photo.png";
@@ -28,10 +36,17 @@ public class StringLoaderTest {
 
     @Mock FirebaseStorage mStorage;
     @Mock StorageReference mRef;
+    @Mock MultiModelLoaderFactory mMultiFactory;
+    @Mock ModelLoader<StorageReference, InputStream> mReferenceLoader;
 
     @Before
     public void setUp() {
         when(mStorage.getReferenceFromUrl(VALID_GS_URL)).thenReturn(mRef);
+        when(mMultiFactory.build(StorageReference.class, InputStream.class))
+                .thenReturn(mReferenceLoader);
+        when(mReferenceLoader.buildLoadData(eq(mRef), anyInt(), anyInt(), any(Options.class)))
+                .thenReturn(new LoadData<>(
+                        new FirebaseImageLoader.FirebaseStorageKey(mRef), mock(DataFetcher.class)));
     }
 
     // handles()
@@ -78,20 +93,34 @@ public class StringLoaderTest {
     @Test
     public void factory_noArg_buildsStringLoader() {
         // Verify the no-arg Factory produces a non-null loader without throwing
-        FirebaseImageLoader.StringLoader loader =
-                (FirebaseImageLoader.StringLoader) new FirebaseImageLoader.StringLoader.Factory().build(null);
+        FirebaseImageLoader.StringLoader loader = (FirebaseImageLoader.StringLoader)
+                new FirebaseImageLoader.StringLoader.Factory().build(mMultiFactory);
         assertNotNull(loader);
     }
 
     @Test
     public void factory_withStorage_buildsStringLoaderUsingProvidedInstance() {
-        FirebaseImageLoader.StringLoader loader =
-                (FirebaseImageLoader.StringLoader) new FirebaseImageLoader.StringLoader.Factory(mStorage).build(null);
+        FirebaseImageLoader.StringLoader loader = (FirebaseImageLoader.StringLoader)
+                new FirebaseImageLoader.StringLoader.Factory(mStorage).build(mMultiFactory);
         // The provided storage instance should be used — valid URL resolves without exception
         LoadData<InputStream> result = loader.buildLoadData(VALID_GS_URL, 0, 0, new Options());
         assertNotNull(result);
     }
 
+    @Test
+    public void factory_delegatesToRegisteredReferenceLoader() {
+        LoadData<InputStream> expected = new LoadData<>(
+                new FirebaseImageLoader.FirebaseStorageKey(mRef), mock(DataFetcher.class));
+        when(mReferenceLoader.buildLoadData(eq(mRef), eq(100), eq(200), any(Options.class)))
+                .thenReturn(expected);
+
+        LoadData<InputStream> result = new FirebaseImageLoader.StringLoader.Factory(mStorage)
+                .build(mMultiFactory)
+                .buildLoadData(VALID_GS_URL, 100, 200, new Options());
+
+        assertSame(expected, result);
+    }
+
     private FirebaseImageLoader.StringLoader loaderWithMockStorage() {
         return new FirebaseImageLoader.StringLoader(mStorage);
     }
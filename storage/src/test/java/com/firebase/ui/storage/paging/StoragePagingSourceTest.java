@@ -0,0 +1,124 @@
+package com.firebase.ui.storage.paging;
+
+import com.firebase.ui.storage.images.StorageMetadataCache;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.storage.ListResult;
+import com.google.firebase.storage.StorageReference;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import androidx.paging.PagingSource.LoadParams.Append;
+import androidx.paging.PagingSource.LoadParams.Refresh;
+import androidx.paging.PagingSource.LoadResult;
+import androidx.paging.PagingSource.LoadResult.Page;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class StoragePagingSourceTest {
+
+    @Mock StorageReference mFolder;
+    @Mock StorageMetadataCache mMetadataCache;
+
+    private final List<StorageReference> mFiles =
+            Arrays.asList(mock(StorageReference.class), mock(StorageReference.class));
+
+    @Before
+    public void setUp() {
+        mockList(mFiles, "next");
+    }
+
+    @Test
+    public void load_firstPage_listsFolder() {
+        LoadResult<String, StorageReference> result = new StoragePagingSource(mFolder)
+                .loadSingle(new Refresh<>(null, 2, false))
+                .blockingGet();
+
+        verify(mFolder).list(2);
+        assertEquals(new Page<>(mFiles, null, "next"), result);
+    }
+
+    @Test
+    public void load_nextPage_passesPageToken() {
+        LoadResult<String, StorageReference> result = new StoragePagingSource(mFolder)
+                .loadSingle(new Append<>("next", 2, false))
+                .blockingGet();
+
+        verify(mFolder).list(2, "next");
+        assertEquals(new Page<>(mFiles, null, "next"), result);
+    }
+
+    @Test
+    public void load_largeLoadSize_isClampedToMaxPageSize() {
+        new StoragePagingSource(mFolder)
+                .loadSingle(new Refresh<>(null, StoragePagingSource.MAX_PAGE_SIZE * 3, false))
+                .blockingGet();
+
+        verify(mFolder).list(StoragePagingSource.MAX_PAGE_SIZE);
+    }
+
+    @Test
+    public void load_lastPage_hasNoNextKey() {
+        mockList(mFiles, null);
+
+        LoadResult<String, StorageReference> result = new StoragePagingSource(mFolder)
+                .loadSingle(new Refresh<>(null, 2, false))
+                .blockingGet();
+
+        assertEquals(new Page<>(mFiles, null, null), result);
+    }
+
+    @Test
+    public void load_failure_returnsError() {
+        Exception e = new Exception("Could not list files");
+        when(mFolder.list(2)).thenReturn(Tasks.forException(e));
+
+        LoadResult<String, StorageReference> result = new StoragePagingSource(mFolder)
+                .loadSingle(new Refresh<>(null, 2, false))
+                .blockingGet();
+
+        assertEquals(new LoadResult.Error<String, StorageReference>(e), result);
+    }
+
+    @Test
+    public void load_withMetadataCache_prefetchesPage() {
+        new StoragePagingSource(mFolder, mMetadataCache)
+                .loadSingle(new Refresh<>(null, 2, false))
+                .blockingGet();
+
+        verify(mMetadataCache).prefetch(mFiles);
+    }
+
+    @Test
+    public void load_emptyPage_doesNotPrefetch() {
+        mockList(Collections.emptyList(), null);
+
+        new StoragePagingSource(mFolder, mMetadataCache)
+                .loadSingle(new Refresh<>(null, 2, false))
+                .blockingGet();
+
+        verify(mMetadataCache, never()).prefetch(anyCollection());
+    }
+
+    private void mockList(List<StorageReference> files, String pageToken) {
+        ListResult result = mock(ListResult.class);
+        when(result.getItems()).thenReturn(files);
+        when(result.getPageToken()).thenReturn(pageToken);
+        when(mFolder.list(2)).thenReturn(Tasks.forResult(result));
+        when(mFolder.list(2, "next")).thenReturn(Tasks.forResult(result));
+        when(mFolder.list(StoragePagingSource.MAX_PAGE_SIZE)).thenReturn(Tasks.forResult(result));
+    }
+}
@@ -0,0 +1,200 @@
+package com.firebase.ui.storage.upload;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+import android.net.Uri;
+
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.storage.StorageReference;
+import com.google.firebase.storage.UploadTask;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.IOException;
+
+import androidx.annotation.NonNull;
+import androidx.test.core.app.ApplicationProvider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class ImageUploaderTest {
+
+    private static final String PREFS_NAME = "com.firebase.ui.storage.upload";
+
+    private Context mContext;
+    private File mDirectory;
+    private SharedPreferences mPending;
+
+    @Before
+    public void setUp() {
+        mContext = ApplicationProvider.getApplicationContext();
+        mDirectory = new File(mContext.getFilesDir(), "firebaseui_uploads");
+        mDirectory.mkdirs();
+        mPending = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    @After
+    public void tearDown() {
+        ImageUploader.ACTIVE_UPLOADS.clear();
+        mPending.edit().clear().commit();
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    // Sampling
+
+    @Test
+    public void getScale_smallerImage_isNotScaledUp() {
+        assertEquals(1f, ImageUploader.getScale(100, 50, 2048, 2048), 0);
+    }
+
+    @Test
+    public void getScale_largerImage_fitsTighterDimension() {
+        assertEquals(1f / 3, ImageUploader.getScale(4000, 3000, 2000, 1000), 1e-6);
+    }
+
+    @Test
+    public void getSampleSize_noScale_decodesFullImage() {
+        assertEquals(1, ImageUploader.getSampleSize(1f));
+        assertEquals(1, ImageUploader.getSampleSize(0.6f));
+    }
+
+    @Test
+    public void getSampleSize_keepsAtLeastScaledPixels() {
+        assertEquals(2, ImageUploader.getSampleSize(0.5f));
+        assertEquals(2, ImageUploader.getSampleSize(0.3f));
+        assertEquals(4, ImageUploader.getSampleSize(0.25f));
+        assertEquals(8, ImageUploader.getSampleSize(0.1f));
+    }
+
+    // upload()
+
+    @Test
+    public void upload_unreadableImage_failsAndCleansUp() {
+        Uri image = Uri.fromFile(new File(mContext.getCacheDir(), "missing.jpg"));
+
+        Task<UploadTask> task = newUploader(mContext)
+                .upload(image, mock(StorageReference.class));
+
+        assertTrue(task.getException() instanceof IOException);
+        assertCleanedUp();
+    }
+
+    @Test
+    public void upload_unexpectedException_failsAndCleansUp() {
+        Context context = new ContextWrapper(mContext) {
+            @Override
+            public Context getApplicationContext() {
+                return this;
+            }
+
+            @Override
+            public ContentResolver getContentResolver() {
+                throw new IllegalStateException("No content resolver");
+            }
+        };
+
+        Task<UploadTask> task = newUploader(context)
+                .upload(Uri.parse("content://images/1"), mock(StorageReference.class));
+
+        assertTrue(task.getException() instanceof IllegalStateException);
+        assertCleanedUp();
+    }
+
+    // resumePendingUploads()
+
+    @Test
+    public void resume_missingFile_dropsPendingUpload() throws JSONException {
+        savePending("missing", new File(mDirectory, "missing.jpg"));
+
+        assertTrue(newUploader(mContext).resumePendingUploads().isEmpty());
+        assertFalse(mPending.contains("missing"));
+    }
+
+    @Test
+    public void resume_unreadableEntry_dropsPendingUpload() {
+        mPending.edit().putString("unreadable", "{").commit();
+
+        assertTrue(newUploader(mContext).resumePendingUploads().isEmpty());
+        assertFalse(mPending.contains("unreadable"));
+    }
+
+    @Test
+    public void resume_activeUpload_isNotResumedOrDeleted() throws IOException, JSONException {
+        File file = createFile("active.jpg");
+        savePending("active", file);
+        ImageUploader.ACTIVE_UPLOADS.add("active");
+
+        assertTrue(newUploader(mContext).resumePendingUploads().isEmpty());
+        assertTrue(mPending.contains("active"));
+        assertTrue(file.exists());
+    }
+
+    @Test
+    public void resume_orphanFile_isDeleted() throws IOException {
+        File orphan = createFile("orphan.jpg");
+
+        newUploader(mContext).resumePendingUploads();
+
+        assertFalse(orphan.exists());
+    }
+
+    @Test
+    public void resume_fileBeingCompressed_isKept() throws IOException {
+        File compressing = createFile("compressing.jpg");
+        ImageUploader.ACTIVE_UPLOADS.add("compressing");
+
+        newUploader(mContext).resumePendingUploads();
+
+        assertTrue(compressing.exists());
+    }
+
+    @NonNull
+    private ImageUploader newUploader(@NonNull Context context) {
+        return new ImageUploader.Builder(context)
+                .setExecutor(Runnable::run)
+                .build();
+    }
+
+    @NonNull
+    private File createFile(@NonNull String name) throws IOException {
+        File file = new File(mDirectory, name);
+        assertTrue(file.createNewFile());
+        return file;
+    }
+
+    private void savePending(@NonNull String id, @NonNull File file) throws JSONException {
+        JSONObject json = new JSONObject()
+                .put("bucket", "bucket")
+                .put("path", "/photos/" + id + ".jpg")
+                .put("file", file.getAbsolutePath())
+                .put("contentType", "image/jpeg");
+        mPending.edit().putString(id, json.toString()).commit();
+    }
+
+    private void assertCleanedUp() {
+        assertTrue(ImageUploader.ACTIVE_UPLOADS.isEmpty());
+        assertTrue(mPending.getAll().isEmpty());
+        String[] files = mDirectory.list();
+        assertEquals(0, files == null ? 0 : files.length);
+    }
+}